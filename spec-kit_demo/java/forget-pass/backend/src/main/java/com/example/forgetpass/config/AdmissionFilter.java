@@ -0,0 +1,94 @@
+package com.example.forgetpass.config;
+
+import com.example.forgetpass.util.TokenBuckets;
+import com.example.forgetpass.util.TrustedProxies;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-client-IP admission control, registered ahead of Spring Security so a flood is turned away before
+ * authentication, controllers, BCrypt or reCAPTCHA see it. Each route (longest matching path prefix) has
+ * its own token bucket per client; requests to paths without a route pass straight through. A request
+ * without a token gets 429 with Retry-After in whole seconds. The resolved client address is left in the
+ * {@link #CLIENT_ADDRESS} request attribute for anything further down that keys on it.
+ */
+public class AdmissionFilter implements Filter {
+
+    public static final String CLIENT_ADDRESS = AdmissionFilter.class.getName() + ".clientAddress";
+
+    public record Route(String pathPrefix, TokenBuckets.Limit limit) {}
+
+    private static final byte[] REJECTED_BODY = "{\"message\":\"Too many requests. Please try again later.\"}"
+        .getBytes(StandardCharsets.UTF_8);
+
+    private final List<Route> routes;
+    private final TokenBuckets buckets;
+    private final TrustedProxies proxies;
+    private final List<Counter> rejected = new ArrayList<>();
+
+    public AdmissionFilter(List<Route> routes, TokenBuckets buckets, TrustedProxies proxies, MeterRegistry registry) {
+        this.routes = routes.stream().sorted(Comparator.comparingInt((Route r) -> r.pathPrefix().length()).reversed()).toList();
+        this.buckets = buckets;
+        this.proxies = proxies;
+        for (Route r : this.routes) {
+            rejected.add(Counter.builder("forgetpass.admission.rejected").tag("route", r.pathPrefix()).register(registry));
+        }
+        Gauge.builder("forgetpass.admission.clients", buckets, TokenBuckets::size).register(registry);
+        Gauge.builder("forgetpass.admission.overflowed", buckets, TokenBuckets::overflowed).register(registry);
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) req;
+        String client = proxies.clientAddress(request.getRemoteAddr(), request.getHeader("X-Forwarded-For"));
+        request.setAttribute(CLIENT_ADDRESS, client);
+
+        int route = route(request.getRequestURI());
+        if (route >= 0) {
+            Route r = routes.get(route);
+            long waitNanos = buckets.tryAcquire(r.pathPrefix(), client, r.limit());
+            if (waitNanos > 0) {
+                rejected.get(route).increment();
+                HttpServletResponse response = (HttpServletResponse) res;
+                response.setStatus(429);
+                response.setHeader("Retry-After", Long.toString(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999))));
+                response.setContentType("application/json");
+                response.setContentLength(REJECTED_BODY.length);
+                response.getOutputStream().write(REJECTED_BODY);
+                return;
+            }
+        }
+        chain.doFilter(req, res);
+    }
+
+    /** Drops the buckets of clients that have not been seen for long enough to have refilled. */
+    @Scheduled(fixedDelayString = "${forgetpass.admission.evict-interval-ms:60000}")
+    public int evictExpired() {
+        return buckets.evictExpired();
+    }
+
+    private int route(String path) {
+        for (int i = 0; i < routes.size(); i++) {
+            // Whole path segments only, so /register does not also cover /registerX
+            String prefix = routes.get(i).pathPrefix();
+            if (path.equals(prefix) || path.startsWith(prefix + "/")) return i;
+        }
+        return -1;
+    }
+}
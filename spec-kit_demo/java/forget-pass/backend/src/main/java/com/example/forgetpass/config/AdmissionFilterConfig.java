@@ -0,0 +1,64 @@
+package com.example.forgetpass.config;
+
+import com.example.forgetpass.util.TokenBuckets;
+import com.example.forgetpass.util.TrustedProxies;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@Configuration
+@ConditionalOnProperty(name = "forgetpass.admission.enabled", havingValue = "true", matchIfMissing = true)
+public class AdmissionFilterConfig {
+
+    static final String DEFAULT_ROUTES = "/api/v1/patients/register=10/1m,/api/v1/patients/password-reset=30/1m,"
+        + "/api/v1/patients/verify-email=30/1m,/api/v1/patients/resend-verification=10/1m";
+
+    // Comma-separated path-prefix=capacity/period; the longest matching prefix applies, other paths are not limited
+    @Value("${forgetpass.admission.routes:" + DEFAULT_ROUTES + "}")
+    private String routes;
+
+    // Comma-separated proxy addresses or CIDR blocks whose X-Forwarded-For is believed
+    @Value("${forgetpass.admission.trusted-proxies:}")
+    private String trustedProxies;
+
+    @Value("${forgetpass.admission.max-clients:100000}")
+    private int maxClients;
+
+    @Bean
+    public AdmissionFilter admissionFilter(MeterRegistry meterRegistry) {
+        return new AdmissionFilter(parse(routes), new TokenBuckets(maxClients, System::nanoTime),
+            new TrustedProxies(Arrays.asList(trustedProxies.split(","))), meterRegistry);
+    }
+
+    @Bean
+    public FilterRegistrationBean<AdmissionFilter> admissionFilterRegistration(AdmissionFilter admissionFilter) {
+        FilterRegistrationBean<AdmissionFilter> registration = new FilterRegistrationBean<>(admissionFilter);
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER - 10);
+        return registration;
+    }
+
+    static List<AdmissionFilter.Route> parse(String routes) {
+        List<AdmissionFilter.Route> parsed = new ArrayList<>();
+        for (String entry : routes.split(",")) {
+            if (entry.isBlank()) continue;
+            int eq = entry.indexOf('=');
+            int slash = entry.indexOf('/', eq + 1);
+            if (eq < 0 || slash < 0) {
+                throw new IllegalStateException("forgetpass.admission.routes entries must be path-prefix=capacity/period, got '" + entry.trim() + "'");
+            }
+            parsed.add(new AdmissionFilter.Route(entry.substring(0, eq).trim(),
+                new TokenBuckets.Limit(Integer.parseInt(entry.substring(eq + 1, slash).trim()),
+                    DurationStyle.detectAndParse(entry.substring(slash + 1).trim()))));
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.forgetpass.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Picks the highest BCrypt cost whose hash time on this host fits a latency budget. Each cost step
+ * doubles the work, so a cheap probe cost is timed a few times, extrapolated, and the chosen cost
+ * is then confirmed with a real hash, stepping down while that hash is over budget.
+ */
+public class BCryptCalibrator {
+    private static final Logger log = LoggerFactory.getLogger(BCryptCalibrator.class);
+    private static final int PROBE_STRENGTH = 8;
+    private static final int PROBE_SAMPLES = 5;
+
+    public record Result(int strength, double hashMillis, double hashesPerSecond, boolean calibrated) {}
+
+    private final int minStrength;
+    private final int maxStrength;
+    private final Duration budget;
+    private final int workers;
+    private final IntToDoubleFunction measureMillis;
+
+    public BCryptCalibrator(int minStrength, int maxStrength, Duration budget, int workers) {
+        this(minStrength, maxStrength, budget, workers, BCryptCalibrator::timeOneHash);
+    }
+
+    BCryptCalibrator(int minStrength, int maxStrength, Duration budget, int workers, IntToDoubleFunction measureMillis) {
+        this.minStrength = minStrength;
+        this.maxStrength = Math.max(minStrength, maxStrength);
+        this.budget = budget;
+        this.workers = workers;
+        this.measureMillis = measureMillis;
+    }
+
+    public Result calibrate() {
+        int probe = Math.min(PROBE_STRENGTH, minStrength);
+        measureMillis.applyAsDouble(probe); // warm-up
+        double[] samples = new double[PROBE_SAMPLES];
+        for (int i = 0; i < samples.length; i++) samples[i] = measureMillis.applyAsDouble(probe);
+        Arrays.sort(samples);
+        double probeMillis = samples[samples.length / 2];
+
+        double budgetMillis = budget.toNanos() / 1e6;
+        int chosen = minStrength;
+        for (int cost = minStrength + 1; cost <= maxStrength; cost++) {
+            if (probeMillis * Math.pow(2, cost - probe) <= budgetMillis) chosen = cost;
+        }
+        // The extrapolation can be off by more than one step; the published figures are the last real hash
+        double chosenMillis = measureMillis.applyAsDouble(chosen);
+        while (chosenMillis > budgetMillis && chosen > minStrength) {
+            chosen--;
+            chosenMillis = measureMillis.applyAsDouble(chosen);
+        }
+        Result result = new Result(chosen, chosenMillis, workers * 1000.0 / chosenMillis, true);
+        log.info("BCrypt calibrated: strength={} (~{} ms/hash, budget {} ms), capacity ~{} hashes/s on {} workers",
+            chosen, Math.round(chosenMillis), Math.round(budgetMillis), Math.round(result.hashesPerSecond()), workers);
+        return result;
+    }
+
+    private static double timeOneHash(int strength) {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength);
+        long start = System.nanoTime();
+        encoder.encode("calibration-probe");
+        return (System.nanoTime() - start) / 1e6;
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.forgetpass.config;
+
+import com.example.forgetpass.services.WriteLane;
+import com.example.forgetpass.util.StatementCache;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.flyway.FlywayDataSource;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.time.Duration;
+
+/**
+ * SQLite allows one writer at a time, so writes get a pool of their own (a single connection by
+ * default, used by Flyway at startup and then by the {@link WriteLane}, which every writer goes through)
+ * and {@code @Transactional(readOnly = true)} work a separate pool. The repositories are read-only
+ * transactional, so their finders outside a lane unit go to the read pool; anything run outside a
+ * transaction still lands on the write pool and waits behind the lane. Every connection is opened with
+ * the {@link SqliteProfile} pragmas (WAL, so readers are not blocked by the writer) and its own prepared
+ * statement cache; read connections are opened with
+ * {@code SQLITE_OPEN_READONLY} and {@code query_only} and get a larger page cache. Hikari publishes
+ * {@code hikaricp.*} metrics for each pool, tagged {@code pool=forget-pass-write|read}.
+ */
+@Configuration
+public class DataSourceConfig {
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    @Value("${forgetpass.datasource.journal-mode:WAL}")
+    private String journalMode;
+
+    @Value("${forgetpass.datasource.synchronous:NORMAL}")
+    private String synchronous;
+
+    @Value("${forgetpass.datasource.cache-size:16MB}")
+    private DataSize cacheSize;
+
+    @Value("${forgetpass.datasource.mmap-size:256MB}")
+    private DataSize mmapSize;
+
+    @Value("${forgetpass.datasource.temp-store:MEMORY}")
+    private String tempStore;
+
+    @Value("${forgetpass.datasource.busy-timeout:5s}")
+    private Duration busyTimeout;
+
+    // Prepared statements kept per connection; 0 disables the cache
+    @Value("${forgetpass.datasource.statement-cache-size:64}")
+    private int statementCacheSize;
+
+    @Value("${forgetpass.datasource.connection-timeout:30s}")
+    private Duration connectionTimeout;
+
+    @Value("${forgetpass.datasource.write-pool-size:1}")
+    private int writePoolSize;
+
+    @Value("${forgetpass.datasource.read-pool-size:8}")
+    private int readPoolSize;
+
+    // Per read connection, instead of cache-size
+    @Value("${forgetpass.datasource.read-cache-size:32MB}")
+    private DataSize readCacheSize;
+
+    @Value("${forgetpass.write-lane.enabled:true}")
+    private boolean writeLaneEnabled;
+
+    @Value("${forgetpass.write-lane.max-batch:64}")
+    private int writeLaneMaxBatch;
+
+    @Value("${forgetpass.write-lane.queue-capacity:1024}")
+    private int writeLaneQueueCapacity;
+
+    @Bean
+    public SqliteProfile sqliteProfile() {
+        return new SqliteProfile(journalMode, synchronous, cacheSize, mmapSize, tempStore, busyTimeout, statementCacheSize);
+    }
+
+    @Bean(destroyMethod = "close")
+    @FlywayDataSource
+    public HikariDataSource writeDataSource(SqliteProfile sqliteProfile, MeterRegistry meterRegistry) {
+        return pool("forget-pass-write", writePoolSize, sqliteProfile, false, meterRegistry);
+    }
+
+    // Created after the writer: a read-only open needs the file to exist, and cannot change the journal mode
+    @Bean(destroyMethod = "close")
+    @DependsOn("writeDataSource")
+    public HikariDataSource readDataSource(SqliteProfile sqliteProfile, MeterRegistry meterRegistry) {
+        return pool("forget-pass-read", readPoolSize, sqliteProfile.withCacheSize(readCacheSize), true, meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("writeDataSource") DataSource writeDataSource,
+                                 @Qualifier("readDataSource") DataSource readDataSource) {
+        LazyConnectionDataSourceProxy proxy =
+            new LazyConnectionDataSourceProxy(new ReadWriteRoutingDataSource(writeDataSource, readDataSource));
+        proxy.setDefaultAutoCommit(true);
+        proxy.setDefaultTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        return proxy;
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public WriteLane writeLane(PlatformTransactionManager transactionManager, EntityManagerFactory entityManagerFactory,
+                               MeterRegistry meterRegistry) {
+        if (!writeLaneEnabled) return WriteLane.direct(transactionManager);
+        return new WriteLane(transactionManager, SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory),
+            writeLaneMaxBatch, writeLaneQueueCapacity, meterRegistry);
+    }
+
+    private HikariDataSource pool(String name, int size, SqliteProfile profile, boolean readOnly, MeterRegistry meterRegistry) {
+        StatementCache.Stats statements = new StatementCache.Stats();
+        FunctionCounter.builder("forgetpass.datasource.statement.cache", statements, StatementCache.Stats::hits)
+            .tag("pool", name).tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("forgetpass.datasource.statement.cache", statements, StatementCache.Stats::misses)
+            .tag("pool", name).tag("result", "miss").register(meterRegistry);
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(name);
+        config.setDataSource(profile.dataSource(url, readOnly, statements));
+        config.setMaximumPoolSize(size);
+        config.setMinimumIdle(Math.min(2, size));
+        config.setConnectionTimeout(connectionTimeout.toMillis());
+        if (readOnly) {
+            config.setReadOnly(true);
+            config.setConnectionInitSql("PRAGMA query_only = ON");
+        }
+        return new HikariDataSource(config);
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.forgetpass.config;
+
+import com.example.forgetpass.services.SendGridTransport;
+import com.example.forgetpass.util.CircuitBreaker;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class EmailTransportConfig {
+
+    @Value("${forgetpass.email.transport.host:api.sendgrid.com}")
+    private String host;
+
+    @Value("${forgetpass.email.transport.plain-http:false}")
+    private boolean plainHttp;
+
+    @Value("${forgetpass.email.transport.max-connections:8}")
+    private int maxConnections;
+
+    @Value("${forgetpass.email.transport.max-in-flight:8}")
+    private int maxInFlight;
+
+    @Value("${forgetpass.email.transport.connect-timeout:5s}")
+    private Duration connectTimeout;
+
+    @Value("${forgetpass.email.transport.socket-timeout:10s}")
+    private Duration socketTimeout;
+
+    @Value("${forgetpass.email.transport.idle-timeout:60s}")
+    private Duration idleTimeout;
+
+    @Value("${forgetpass.email.transport.acquire-timeout:5s}")
+    private Duration acquireTimeout;
+
+    @Value("${forgetpass.email.circuit.window-size:20}")
+    private int circuitWindowSize;
+
+    @Value("${forgetpass.email.circuit.minimum-calls:10}")
+    private int circuitMinimumCalls;
+
+    @Value("${forgetpass.email.circuit.failure-rate-threshold:0.5}")
+    private double circuitFailureRateThreshold;
+
+    @Value("${forgetpass.email.circuit.slow-call-duration:5s}")
+    private Duration circuitSlowCallDuration;
+
+    @Value("${forgetpass.email.circuit.slow-call-rate-threshold:0.8}")
+    private double circuitSlowCallRateThreshold;
+
+    @Value("${forgetpass.email.circuit.open-duration:30s}")
+    private Duration circuitOpenDuration;
+
+    @Value("${forgetpass.email.circuit.half-open-calls:3}")
+    private int circuitHalfOpenCalls;
+
+    @Bean
+    public CircuitBreaker sendGridCircuitBreaker(MeterRegistry meterRegistry) {
+        return new CircuitBreaker("sendgrid", new CircuitBreaker.Config(circuitWindowSize, circuitMinimumCalls,
+            circuitFailureRateThreshold, circuitSlowCallDuration, circuitSlowCallRateThreshold,
+            circuitOpenDuration, circuitHalfOpenCalls), meterRegistry);
+    }
+
+    @Bean(destroyMethod = "close")
+    public SendGridTransport sendGridTransport(MeterRegistry meterRegistry) {
+        return new SendGridTransport(host, plainHttp, maxConnections, maxInFlight,
+            connectTimeout, socketTimeout, idleTimeout, acquireTimeout, meterRegistry);
+    }
+}
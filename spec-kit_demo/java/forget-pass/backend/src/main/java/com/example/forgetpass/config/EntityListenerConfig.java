@@ -0,0 +1,25 @@
+package com.example.forgetpass.config;
+
+import com.example.forgetpass.services.LookupFilterListener;
+import com.example.forgetpass.services.TokenExpiryListener;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers the services' insert listeners with Hibernate once the EntityManagerFactory is built, so the
+ * entities in {@code domain} carry no reference to the services that follow their inserts.
+ */
+@Configuration
+public class EntityListenerConfig {
+
+    public EntityListenerConfig(EntityManagerFactory entityManagerFactory,
+                                TokenExpiryListener tokenExpiryListener,
+                                LookupFilterListener lookupFilterListener) {
+        entityManagerFactory.unwrap(SessionFactoryImplementor.class).getServiceRegistry()
+            .requireService(EventListenerRegistry.class)
+            .appendListeners(EventType.POST_INSERT, tokenExpiryListener, lookupFilterListener);
+    }
+}
@@ -1,19 +1,72 @@
 package com.example.forgetpass.config;
 
+import com.example.forgetpass.services.PasswordHashingService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
 
 @Configuration
 public class PasswordEncoderConfig {
+    private static final Logger log = LoggerFactory.getLogger(PasswordEncoderConfig.class);
 
+    // Fixed strength, and the floor when calibration is enabled
     @Value("${app.security.bcrypt-strength:12}")
     private int bcryptStrength;
 
+    @Value("${app.security.bcrypt-calibration.enabled:true}")
+    private boolean calibrationEnabled;
+
+    @Value("${app.security.bcrypt-calibration.max-strength:14}")
+    private int calibrationMaxStrength;
+
+    @Value("${app.security.bcrypt-calibration.budget:250ms}")
+    private Duration calibrationBudget;
+
+    // Hashing demand to size against (0 = not set); a registration costs one hash
+    @Value("${app.security.bcrypt-calibration.target-hashes-per-second:0}")
+    private double targetHashesPerSecond;
+
+    // 0 = one worker per available processor
+    @Value("${app.security.hashing.threads:0}")
+    private int hashingThreads;
+
+    @Value("${app.security.hashing.queue-capacity:32}")
+    private int hashingQueueCapacity;
+
+    @Value("${app.security.hashing.timeout:3s}")
+    private Duration hashingTimeout;
+
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder(bcryptStrength);
+    public BCryptCalibrator.Result bcryptCalibration(MeterRegistry meterRegistry) {
+        BCryptCalibrator.Result result = calibrationEnabled
+            ? new BCryptCalibrator(bcryptStrength, calibrationMaxStrength, calibrationBudget, workerCount()).calibrate()
+            : new BCryptCalibrator.Result(bcryptStrength, Double.NaN, Double.NaN, false);
+        if (result.calibrated() && targetHashesPerSecond > 0 && result.hashesPerSecond() < targetHashesPerSecond) {
+            log.warn("BCrypt capacity ~{} hashes/s is below the target of {} hashes/s",
+                Math.round(result.hashesPerSecond()), targetHashesPerSecond);
+        }
+        Gauge.builder("forgetpass.bcrypt.strength", result, BCryptCalibrator.Result::strength).register(meterRegistry);
+        Gauge.builder("forgetpass.bcrypt.hash.millis", result, BCryptCalibrator.Result::hashMillis).register(meterRegistry);
+        Gauge.builder("forgetpass.bcrypt.capacity", result, BCryptCalibrator.Result::hashesPerSecond)
+            .description("Estimated BCrypt hashes per second across all hashing workers")
+            .register(meterRegistry);
+        return result;
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public PasswordHashingService passwordEncoder(MeterRegistry meterRegistry, BCryptCalibrator.Result bcryptCalibration) {
+        return new PasswordHashingService(new BCryptPasswordEncoder(bcryptCalibration.strength()),
+            workerCount(), hashingQueueCapacity, hashingTimeout, meterRegistry);
+    }
+
+    private int workerCount() {
+        return hashingThreads > 0 ? hashingThreads : Runtime.getRuntime().availableProcessors();
     }
 }
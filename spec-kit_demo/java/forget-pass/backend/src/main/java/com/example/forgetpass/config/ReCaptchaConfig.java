@@ -2,15 +2,33 @@ package com.example.forgetpass.config;
 
 import com.example.forgetpass.services.DefaultReCaptchaClient;
 import com.example.forgetpass.services.ReCaptchaService;
+import com.example.forgetpass.util.RetryScheduler;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.net.URI;
+import java.time.Duration;
+
 @Configuration
 public class ReCaptchaConfig {
 
+    @Value("${forgetpass.recaptcha.verify-url:https://www.google.com/recaptcha/api/siteverify}")
+    private URI verifyUrl;
+
+    @Value("${forgetpass.recaptcha.max-in-flight:64}")
+    private int maxInFlight;
+
+    @Value("${forgetpass.recaptcha.connect-timeout:3s}")
+    private Duration connectTimeout;
+
+    @Value("${forgetpass.recaptcha.request-timeout:3s}")
+    private Duration requestTimeout;
+
     @Bean
-    public DefaultReCaptchaClient defaultReCaptchaClient() {
-        return new DefaultReCaptchaClient();
+    public DefaultReCaptchaClient defaultReCaptchaClient(RetryScheduler retryScheduler, MeterRegistry meterRegistry) {
+        return new DefaultReCaptchaClient(verifyUrl, maxInFlight, connectTimeout, requestTimeout, retryScheduler, meterRegistry);
     }
 
     @Bean
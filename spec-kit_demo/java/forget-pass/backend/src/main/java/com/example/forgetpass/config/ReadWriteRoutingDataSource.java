@@ -0,0 +1,27 @@
+package com.example.forgetpass.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Sends read-only transactions to the read pool and everything else to the write pool. Only correct
+ * behind a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: the read-only
+ * flag is set after the transaction manager has asked for its connection.
+ */
+class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+    enum Route { READ, WRITE }
+
+    ReadWriteRoutingDataSource(DataSource writeDataSource, DataSource readDataSource) {
+        setTargetDataSources(Map.of(Route.WRITE, writeDataSource, Route.READ, readDataSource));
+        setDefaultTargetDataSource(writeDataSource);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly() ? Route.READ : Route.WRITE;
+    }
+}
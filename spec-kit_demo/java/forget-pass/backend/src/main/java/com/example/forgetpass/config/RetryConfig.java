@@ -0,0 +1,20 @@
+package com.example.forgetpass.config;
+
+import com.example.forgetpass.util.RetryScheduler;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class RetryConfig {
+
+    // Threads that run retry attempts once their delay has expired
+    @Value("${forgetpass.retry.worker-threads:2}")
+    private int workerThreads;
+
+    @Bean(destroyMethod = "shutdown")
+    public RetryScheduler retryScheduler(MeterRegistry meterRegistry) {
+        return new RetryScheduler(workerThreads, meterRegistry);
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.forgetpass.config;
+
+import com.example.forgetpass.util.StatementCache;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.util.unit.DataSize;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Pragmas applied to every SQLite connection as it is opened, plus the size of the per-connection
+ * prepared statement cache. A null setting (or 0 for the cache) leaves the driver default.
+ */
+public record SqliteProfile(String journalMode, String synchronous, DataSize cacheSize, DataSize mmapSize,
+                            String tempStore, Duration busyTimeout, int statementCacheSize) {
+
+    /** Driver defaults throughout: rollback journal, synchronous=FULL, 2MB cache, no mmap, no statement cache. */
+    public static SqliteProfile driverDefaults() {
+        return new SqliteProfile(null, null, null, null, null, null, 0);
+    }
+
+    public SqliteProfile withCacheSize(DataSize cacheSize) {
+        return new SqliteProfile(journalMode, synchronous, cacheSize, mmapSize, tempStore, busyTimeout, statementCacheSize);
+    }
+
+    public SqliteProfile withJournalMode(String journalMode) {
+        return new SqliteProfile(journalMode, synchronous, cacheSize, mmapSize, tempStore, busyTimeout, statementCacheSize);
+    }
+
+    /** The pragmas this profile sets, as they would be written in SQL. */
+    public Map<String, String> pragmas() {
+        Map<String, String> pragmas = new LinkedHashMap<>();
+        if (journalMode != null) pragmas.put("journal_mode", journalMode.toUpperCase(Locale.ROOT));
+        if (synchronous != null) pragmas.put("synchronous", synchronous.toUpperCase(Locale.ROOT));
+        // Negative cache_size is in KiB rather than pages
+        if (cacheSize != null) pragmas.put("cache_size", String.valueOf(-cacheSize.toKilobytes()));
+        if (mmapSize != null) pragmas.put("mmap_size", String.valueOf(mmapSize.toBytes()));
+        if (tempStore != null) pragmas.put("temp_store", tempStore.toUpperCase(Locale.ROOT));
+        if (busyTimeout != null) pragmas.put("busy_timeout", String.valueOf(busyTimeout.toMillis()));
+        return pragmas;
+    }
+
+    /**
+     * A non-pooling DataSource that opens {@code url} with this profile; read-only connections are
+     * opened with {@code SQLITE_OPEN_READONLY} and never set the journal mode, which needs write access.
+     */
+    public DataSource dataSource(String url, boolean readOnly, StatementCache.Stats statementStats) {
+        SQLiteConfig config = new SQLiteConfig();
+        pragmas().forEach((name, value) -> {
+            if (name.equals("busy_timeout")) config.setBusyTimeout(Integer.parseInt(value));
+            else if (!(readOnly && name.equals("journal_mode"))) config.setPragma(pragma(name), value);
+        });
+        config.setReadOnly(readOnly);
+        SQLiteDataSource sqlite = new SQLiteDataSource(config);
+        sqlite.setUrl(url);
+        if (statementCacheSize <= 0) return sqlite;
+        return new DelegatingDataSource(sqlite) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                return StatementCache.wrap(super.getConnection(), statementCacheSize, statementStats);
+            }
+        };
+    }
+
+    private static SQLiteConfig.Pragma pragma(String name) {
+        return SQLiteConfig.Pragma.valueOf(name.toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.forgetpass.config;
+
+import com.example.forgetpass.services.TokenSigner;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Configuration
+public class TokenSigningConfig {
+
+    // Hand out signed (t1.) tokens instead of selector.verifier ones
+    @Value("${forgetpass.tokens.signing.enabled:false}")
+    private boolean enabled;
+
+    @Value("${forgetpass.tokens.signing.active-key:}")
+    private String activeKey;
+
+    // Comma-separated id:base64-secret pairs; every key listed verifies, only the active one signs
+    @Value("${forgetpass.tokens.signing.keys:}")
+    private String keys;
+
+    @Bean
+    public TokenSigner tokenSigner(MeterRegistry meterRegistry) {
+        Map<String, byte[]> ring = new LinkedHashMap<>();
+        for (String entry : keys.split(",")) {
+            if (entry.isBlank()) continue;
+            int colon = entry.indexOf(':');
+            if (colon < 0) throw new IllegalStateException("forgetpass.tokens.signing.keys entries must be id:base64-secret");
+            ring.put(entry.substring(0, colon).trim(), Base64.getDecoder().decode(entry.substring(colon + 1).trim()));
+        }
+        return new TokenSigner(ring, activeKey, enabled, meterRegistry);
+    }
+}
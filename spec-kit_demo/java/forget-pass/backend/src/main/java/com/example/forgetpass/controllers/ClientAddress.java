@@ -0,0 +1,21 @@
+package com.example.forgetpass.controllers;
+
+import com.example.forgetpass.config.AdmissionFilter;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+// Address of the client of the request being handled, for per-IP rate limits; null outside a request
+final class ClientAddress {
+
+    private ClientAddress() {
+    }
+
+    static String current() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes servlet)) return null;
+        // Resolved through trusted proxies by the admission filter when it is enabled
+        Object resolved = servlet.getRequest().getAttribute(AdmissionFilter.CLIENT_ADDRESS);
+        return resolved instanceof String address ? address : servlet.getRequest().getRemoteAddr();
+    }
+}
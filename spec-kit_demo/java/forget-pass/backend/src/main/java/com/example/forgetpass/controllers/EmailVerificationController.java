@@ -1,8 +1,10 @@
 package com.example.forgetpass.controllers;
 
 import com.example.forgetpass.services.EmailVerificationService;
+import com.example.forgetpass.services.RateLimitService;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
@@ -14,9 +16,11 @@ import java.util.Map;
 public class EmailVerificationController {
 
     private final EmailVerificationService emailVerificationService;
+    private final RateLimitService rateLimiter;
 
-    public EmailVerificationController(EmailVerificationService emailVerificationService) {
+    public EmailVerificationController(EmailVerificationService emailVerificationService, RateLimitService rateLimiter) {
         this.emailVerificationService = emailVerificationService;
+        this.rateLimiter = rateLimiter;
     }
 
     public record VerifyRequest(@NotBlank String token) {}
@@ -33,6 +37,9 @@ public class EmailVerificationController {
 
     @PostMapping("/resend-verification")
     public ResponseEntity<?> resend(@RequestBody ResendRequest req) {
+        if (!rateLimiter.tryAcquire(RateLimitService.VERIFICATION_RESEND_IP, ClientAddress.current())) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(Map.of("message", "Too many requests. Please try again later."));
+        }
         String baseUrl;
         try {
             baseUrl = ServletUriComponentsBuilder.fromCurrentContextPath().build().toUriString();
@@ -1,8 +1,10 @@
 package com.example.forgetpass.controllers;
 
 import com.example.forgetpass.services.PasswordResetService;
+import com.example.forgetpass.services.RateLimitService;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -14,10 +16,13 @@ public class PasswordResetController {
 
     private final PasswordResetService passwordResetService;
     private final com.example.forgetpass.services.ReCaptchaService reCaptchaService;
+    private final RateLimitService rateLimiter;
 
-    public PasswordResetController(PasswordResetService passwordResetService, com.example.forgetpass.services.ReCaptchaService reCaptchaService) {
+    public PasswordResetController(PasswordResetService passwordResetService, com.example.forgetpass.services.ReCaptchaService reCaptchaService,
+                                   RateLimitService rateLimiter) {
         this.passwordResetService = passwordResetService;
         this.reCaptchaService = reCaptchaService;
+        this.rateLimiter = rateLimiter;
     }
 
     public record RequestDto(@Email String email, String recaptchaToken) {}
@@ -26,6 +31,9 @@ public class PasswordResetController {
 
     @PostMapping("/request")
     public ResponseEntity<?> request(@RequestBody RequestDto dto) {
+        if (!rateLimiter.tryAcquire(RateLimitService.PASSWORD_RESET_IP, ClientAddress.current())) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(Map.of("message", "Too many requests. Please try again later."));
+        }
         // Validate reCAPTCHA token for action 'password_reset_request'
         try {
             boolean ok = reCaptchaService.validate(dto.recaptchaToken(), "password_reset_request");
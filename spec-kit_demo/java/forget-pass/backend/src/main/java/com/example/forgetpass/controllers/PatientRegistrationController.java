@@ -3,16 +3,23 @@ package com.example.forgetpass.controllers;
 import com.example.forgetpass.domain.Patient;
 import com.example.forgetpass.services.PatientRegistrationService;
 import com.example.forgetpass.services.AuditService;
+import com.example.forgetpass.services.ReCaptchaSaturatedException;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @RestController
 @RequestMapping("/api/v1/patients")
@@ -21,13 +28,19 @@ public class PatientRegistrationController {
     private final PatientRegistrationService registrationService;
     private final AuditService auditService;
     private final com.example.forgetpass.services.ReCaptchaService reCaptchaService;
+    private static final long RETRY_AFTER_SECONDS = 1;
+
+    // Longest a request waits for the reCAPTCHA verdict; no verdict by then is a failed check
+    private final Duration verdictTimeout;
 
     public PatientRegistrationController(PatientRegistrationService registrationService,
                                          AuditService auditService,
-                                         com.example.forgetpass.services.ReCaptchaService reCaptchaService) {
+                                         com.example.forgetpass.services.ReCaptchaService reCaptchaService,
+                                         @Value("${forgetpass.recaptcha.verdict-timeout:5s}") Duration verdictTimeout) {
         this.registrationService = registrationService;
         this.auditService = auditService;
         this.reCaptchaService = reCaptchaService;
+        this.verdictTimeout = verdictTimeout;
     }
 
     public record RegisterRequest(@NotBlank String firstName,
@@ -42,13 +55,35 @@ public class PatientRegistrationController {
                                       @RequestHeader(value = "X-Forwarded-For", required = false) String xff,
                                       @RequestHeader(value = "User-Agent", required = false) String ua,
                                       @RequestHeader(value = "X-ReCaptcha-Token", required = false) String captchaToken) {
-        // require reCAPTCHA validation
-        if (!reCaptchaService.validate(captchaToken == null ? "" : captchaToken, "register")) {
-            auditService.log("registration", null, xff, ua, false,
-                java.util.Map.of("reason", "recaptcha_failed"));
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "reCAPTCHA validation failed"));
-        }
+        // reCAPTCHA is verified while the input is checked; nothing is hashed or written until it has passed
+        CompletableFuture<Boolean> human = reCaptchaService.validateAsync(captchaToken == null ? "" : captchaToken, "register");
         try {
+            boolean emailTaken = false;
+            RuntimeException rejected = null;
+            try {
+                emailTaken = registrationService.precheck(req.email(), req.dateOfBirth(), req.password());
+            } catch (RuntimeException ex) {
+                rejected = ex;
+            }
+            Boolean verdict = verdict(human);
+            if (verdict == null) {
+                // The verifier is at its own cap; the client is not at fault and may try again shortly
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", Long.toString(RETRY_AFTER_SECONDS))
+                    .body(Map.of("message", "Service busy. Please try again shortly."));
+            }
+            if (!verdict) {
+                auditService.log("registration", null, xff, ua, false,
+                    java.util.Map.of("reason", "recaptcha_failed"));
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "reCAPTCHA validation failed"));
+            }
+            // Only a client that passed reCAPTCHA learns how its input fared, including whether the email is registered
+            if (rejected != null) {
+                throw rejected;
+            }
+            if (emailTaken) {
+                throw new IllegalStateException("email_already_exists");
+            }
             String baseUrl;
             try {
                 baseUrl = ServletUriComponentsBuilder.fromCurrentContextPath().build().toUriString();
@@ -102,8 +137,20 @@ public class PatientRegistrationController {
         }
     }
 
-    // Backwards-compatible overload used by existing unit tests
-    public ResponseEntity<?> register(RegisterRequest req, String xff, String ua) {
-        return register(req, xff, ua, null);
+    // Waits at most verdictTimeout; a verification still running then is abandoned and counts as failed.
+    // Null when the verifier was saturated and never checked the token
+    private Boolean verdict(CompletableFuture<Boolean> human) {
+        try {
+            return human.get(verdictTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            human.cancel(true);
+            return false;
+        } catch (InterruptedException ex) {
+            human.cancel(true);
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException ex) {
+            return ex.getCause() instanceof ReCaptchaSaturatedException ? null : false;
+        }
     }
 }
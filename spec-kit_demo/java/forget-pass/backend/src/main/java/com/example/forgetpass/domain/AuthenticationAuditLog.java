@@ -34,12 +34,16 @@ public class AuthenticationAuditLog {
     @Column(name = "metadata")
     private String metadataJson; // store JSON as text in SQLite
 
+    // When the event happened, for entries persisted later by the asynchronous audit writer
+    @Transient
+    private Instant occurredAt;
+
     @PrePersist
     public void onCreate() {
         if (logId == null) {
             logId = UUID.randomUUID();
         }
-        timestamp = Instant.now();
+        timestamp = occurredAt != null ? occurredAt : Instant.now();
     }
 
     public UUID getLogId() { return logId; }
@@ -58,4 +62,6 @@ public class AuthenticationAuditLog {
     public void setSuccess(boolean success) { this.success = success; }
     public String getMetadataJson() { return metadataJson; }
     public void setMetadataJson(String metadataJson) { this.metadataJson = metadataJson; }
+    public Instant getOccurredAt() { return occurredAt; }
+    public void setOccurredAt(Instant occurredAt) { this.occurredAt = occurredAt; }
 }
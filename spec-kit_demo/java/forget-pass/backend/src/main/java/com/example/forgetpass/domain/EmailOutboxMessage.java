@@ -0,0 +1,87 @@
+package com.example.forgetpass.domain;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+import java.util.UUID;
+
+@Entity
+@Table(name = "email_outbox", indexes = {
+    @Index(name = "idx_email_outbox_status_next_attempt", columnList = "status, next_attempt_at")
+})
+public class EmailOutboxMessage {
+
+    public static final String STATUS_PENDING = "pending";
+    public static final String STATUS_SENT = "sent";
+    public static final String STATUS_FAILED = "failed";
+
+    @Id
+    @Column(name = "message_id", nullable = false, updatable = false)
+    private UUID messageId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "template", nullable = false, length = 50)
+    private EmailTemplate template;
+
+    @Column(name = "recipient", nullable = false, length = 255)
+    private String recipient;
+
+    // Carries a raw token; cleared once the message is sent or given up on
+    @Column(name = "link", length = 1024)
+    private String link;
+
+    @Column(name = "status", nullable = false, length = 20)
+    private String status = STATUS_PENDING;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private Instant nextAttemptAt;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt = Instant.now();
+
+    @Column(name = "sent_at")
+    private Instant sentAt;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    // Set by the dispatcher run that claimed the row; next_attempt_at is then the lease expiry
+    @Column(name = "lease_id", length = 64)
+    private String leaseId;
+
+    @PrePersist
+    public void onCreate() {
+        if (messageId == null) {
+            messageId = UUID.randomUUID();
+        }
+        createdAt = Instant.now();
+        if (nextAttemptAt == null) {
+            nextAttemptAt = createdAt;
+        }
+    }
+
+    public UUID getMessageId() { return messageId; }
+    public void setMessageId(UUID messageId) { this.messageId = messageId; }
+    public EmailTemplate getTemplate() { return template; }
+    public void setTemplate(EmailTemplate template) { this.template = template; }
+    public String getRecipient() { return recipient; }
+    public void setRecipient(String recipient) { this.recipient = recipient; }
+    public String getLink() { return link; }
+    public void setLink(String link) { this.link = link; }
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+    public Instant getNextAttemptAt() { return nextAttemptAt; }
+    public void setNextAttemptAt(Instant nextAttemptAt) { this.nextAttemptAt = nextAttemptAt; }
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+    public Instant getSentAt() { return sentAt; }
+    public void setSentAt(Instant sentAt) { this.sentAt = sentAt; }
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+    public String getLeaseId() { return leaseId; }
+    public void setLeaseId(String leaseId) { this.leaseId = leaseId; }
+}
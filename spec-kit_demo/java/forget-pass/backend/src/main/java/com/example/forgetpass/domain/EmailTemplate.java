@@ -0,0 +1,32 @@
+package com.example.forgetpass.domain;
+
+/** Transactional emails the service sends; the body is rendered with the action link, if any. */
+public enum EmailTemplate {
+    VERIFICATION("Verify your account",
+        "Please verify your account by clicking: %s\nThis link expires in 24 hours."),
+    PASSWORD_RESET("Password reset request",
+        "You requested a password reset. Use this link within 1 hour: %s"),
+    PASSWORD_CHANGED("Your password was changed",
+        "This is a confirmation that your password was successfully changed. If this wasn't you, contact support immediately.");
+
+    /** Placeholder SendGrid substitutes per recipient when one request carries many personalizations. */
+    public static final String LINK_PLACEHOLDER = "-link-";
+
+    private final String subject;
+    private final String bodyFormat;
+
+    EmailTemplate(String subject, String bodyFormat) {
+        this.subject = subject;
+        this.bodyFormat = bodyFormat;
+    }
+
+    public String subject() { return subject; }
+
+    public String render(String link) {
+        return bodyFormat.contains("%s") ? String.format(bodyFormat, link) : bodyFormat;
+    }
+
+    public boolean hasLink() {
+        return bodyFormat.contains("%s");
+    }
+}
@@ -1,12 +1,13 @@
 package com.example.forgetpass.domain;
 
 import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
 import java.time.Instant;
 import java.util.UUID;
 
 @Entity
 @Table(name = "password_reset_tokens")
-public class PasswordResetToken {
+public class PasswordResetToken implements Persistable<UUID> {
 
     @Id
     @Column(name = "token_id", nullable = false, updatable = false)
@@ -42,6 +43,23 @@ public class PasswordResetToken {
         createdAt = Instant.now();
     }
 
+    // The id is assigned up front (it is the token's selector), so isNew cannot go by a null id;
+    // without this save() would merge, reading the row before inserting it
+    @Transient
+    private boolean persisted;
+
+    @PostPersist
+    @PostLoad
+    void markPersisted() {
+        persisted = true;
+    }
+
+    @Override
+    public UUID getId() { return tokenId; }
+
+    @Override
+    public boolean isNew() { return !persisted; }
+
     public UUID getTokenId() { return tokenId; }
     public void setTokenId(UUID tokenId) { this.tokenId = tokenId; }
     public Patient getPatient() { return patient; }
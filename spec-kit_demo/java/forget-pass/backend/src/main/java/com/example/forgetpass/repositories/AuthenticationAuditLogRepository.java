@@ -3,10 +3,12 @@ package com.example.forgetpass.repositories;
 import com.example.forgetpass.domain.AuthenticationAuditLog;
 import com.example.forgetpass.domain.Patient;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.UUID;
 
+@Transactional(readOnly = true)
 public interface AuthenticationAuditLogRepository extends JpaRepository<AuthenticationAuditLog, UUID> {
     List<AuthenticationAuditLog> findByPatient(Patient patient);
 }
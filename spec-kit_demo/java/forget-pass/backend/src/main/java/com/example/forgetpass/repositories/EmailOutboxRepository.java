@@ -0,0 +1,31 @@
+package com.example.forgetpass.repositories;
+
+import com.example.forgetpass.domain.EmailOutboxMessage;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+// Finders run on the read pool; claim() joins the WriteLane transaction it is called from
+@Transactional(readOnly = true)
+public interface EmailOutboxRepository extends JpaRepository<EmailOutboxMessage, UUID> {
+    List<EmailOutboxMessage> findByStatusAndNextAttemptAtLessThanEqual(String status, Instant now, Pageable page);
+    long countByStatus(String status);
+
+    // Leases the given rows that are still pending and due; a row another dispatcher leased first is no longer due
+    @Modifying
+    @Query("update EmailOutboxMessage m set m.leaseId = :lease, m.nextAttemptAt = :leaseUntil " +
+           "where m.messageId in :ids and m.status = 'pending' and m.nextAttemptAt <= :now")
+    int claim(@Param("ids") Collection<UUID> ids, @Param("lease") String leaseId,
+              @Param("now") Instant now, @Param("leaseUntil") Instant leaseUntil);
+
+    @Query("select m.messageId from EmailOutboxMessage m where m.leaseId = :lease")
+    List<UUID> findIdsByLeaseId(@Param("lease") String leaseId);
+}
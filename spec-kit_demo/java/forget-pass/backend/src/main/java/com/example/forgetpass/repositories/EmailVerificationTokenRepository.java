@@ -2,14 +2,47 @@ package com.example.forgetpass.repositories;
 
 import com.example.forgetpass.domain.EmailVerificationToken;
 import com.example.forgetpass.domain.Patient;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
+// Finders run on the read pool; the @Modifying queries join the WriteLane transaction they are called from
+@Transactional(readOnly = true)
 public interface EmailVerificationTokenRepository extends JpaRepository<EmailVerificationToken, UUID> {
     List<EmailVerificationToken> findByPatient(Patient patient);
+    // Legacy tokens only (issued before the selector.verifier format); goes with ux_email_verification_tokens_token_hash
+    // once none of them are left unexpired
     Optional<EmailVerificationToken> findByTokenHash(String tokenHash);
     long countByPatientAndCreatedAtAfter(Patient patient, java.time.Instant after);
+
+    // Marks the token verified if it is still unverified and unexpired; 1 for the caller that claimed it, 0 for everyone else
+    @Modifying
+    @Query("update EmailVerificationToken t set t.verifiedAt = :now " +
+           "where t.tokenId = :id and t.verifiedAt is null and t.expiresAt > :now")
+    int consume(@Param("id") UUID tokenId, @Param("now") Instant now);
+
+    // Deletes at most `limit` expired tokens; callers loop until it returns less than the limit
+    @Modifying
+    @Query(value = "DELETE FROM email_verification_tokens WHERE rowid IN (" +
+                   "SELECT rowid FROM email_verification_tokens WHERE expires_at < :now LIMIT :limit)",
+           nativeQuery = true)
+    int deleteExpired(@Param("now") Instant now, @Param("limit") int limit);
+
+    // Keyset page (by token id) of tokens that have not expired yet
+    @Query("select t.tokenId as tokenId, t.expiresAt as expiresAt from EmailVerificationToken t " +
+           "where t.expiresAt >= :now and t.tokenId > :after order by t.tokenId")
+    List<TokenExpiry> findUnexpiredAfter(@Param("now") Instant now, @Param("after") UUID after, Pageable page);
+
+    @Modifying
+    @Query("delete from EmailVerificationToken t where t.tokenId in :ids and t.expiresAt < :now")
+    int deleteExpiredByIds(@Param("ids") Collection<UUID> ids, @Param("now") Instant now);
 }
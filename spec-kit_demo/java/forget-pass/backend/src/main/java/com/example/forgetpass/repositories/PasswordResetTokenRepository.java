@@ -2,16 +2,52 @@ package com.example.forgetpass.repositories;
 
 import com.example.forgetpass.domain.PasswordResetToken;
 import com.example.forgetpass.domain.Patient;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
+// Finders run on the read pool; the @Modifying queries join the WriteLane transaction they are called from
+@Transactional(readOnly = true)
 public interface PasswordResetTokenRepository extends JpaRepository<PasswordResetToken, UUID> {
     List<PasswordResetToken> findByPatient(Patient patient);
+    // Legacy tokens only (issued before the selector.verifier format); goes with ux_password_reset_tokens_token_hash
+    // once none of them are left unexpired
     Optional<PasswordResetToken> findByTokenHash(String tokenHash);
-    List<PasswordResetToken> findByPatientAndUsedAtIsNull(Patient patient);
     long countByPatientAndCreatedAtAfter(Patient patient, Instant after);
+
+    // Marks the token used if it is still unused and unexpired; 1 for the caller that claimed it, 0 for everyone else
+    @Modifying
+    @Query("update PasswordResetToken t set t.usedAt = :now " +
+           "where t.tokenId = :id and t.usedAt is null and t.expiresAt > :now")
+    int consume(@Param("id") UUID tokenId, @Param("now") Instant now);
+
+    // Marks every unused token of the patient used in one statement; returns how many there were
+    @Modifying
+    @Query("update PasswordResetToken t set t.usedAt = :now where t.patient = :patient and t.usedAt is null")
+    int invalidateActive(@Param("patient") Patient patient, @Param("now") Instant now);
+
+    // Deletes at most `limit` used or expired tokens; callers loop until it returns less than the limit
+    @Modifying
+    @Query(value = "DELETE FROM password_reset_tokens WHERE rowid IN (" +
+                   "SELECT rowid FROM password_reset_tokens WHERE used_at IS NOT NULL OR expires_at < :now LIMIT :limit)",
+           nativeQuery = true)
+    int deleteUsedOrExpired(@Param("now") Instant now, @Param("limit") int limit);
+
+    // Keyset page (by token id) of tokens that have not expired yet
+    @Query("select t.tokenId as tokenId, t.expiresAt as expiresAt from PasswordResetToken t " +
+           "where t.expiresAt >= :now and t.tokenId > :after order by t.tokenId")
+    List<TokenExpiry> findUnexpiredAfter(@Param("now") Instant now, @Param("after") UUID after, Pageable page);
+
+    @Modifying
+    @Query("delete from PasswordResetToken t where t.tokenId in :ids and t.expiresAt < :now")
+    int deleteExpiredByIds(@Param("ids") Collection<UUID> ids, @Param("now") Instant now);
 }
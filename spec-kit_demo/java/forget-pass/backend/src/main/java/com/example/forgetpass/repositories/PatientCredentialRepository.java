@@ -3,10 +3,12 @@ package com.example.forgetpass.repositories;
 import com.example.forgetpass.domain.Patient;
 import com.example.forgetpass.domain.PatientCredential;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 import java.util.UUID;
 
+@Transactional(readOnly = true)
 public interface PatientCredentialRepository extends JpaRepository<PatientCredential, UUID> {
     Optional<PatientCredential> findByPatient(Patient patient);
 }
@@ -1,12 +1,22 @@
 package com.example.forgetpass.repositories;
 
 import com.example.forgetpass.domain.Patient;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
+@Transactional(readOnly = true)
 public interface PatientRepository extends JpaRepository<Patient, UUID> {
     Optional<Patient> findByEmail(String email);
     boolean existsByEmail(String email);
+
+    // Keyset page of registered emails, read from the unique index on email
+    @Query("select p.email from Patient p where p.email > :after order by p.email")
+    List<String> findEmailsAfter(@Param("after") String after, Pageable page);
 }
@@ -0,0 +1,10 @@
+package com.example.forgetpass.repositories;
+
+import java.time.Instant;
+import java.util.UUID;
+
+// Id and expiry of a token, without loading the entity
+public interface TokenExpiry {
+    UUID getTokenId();
+    Instant getExpiresAt();
+}
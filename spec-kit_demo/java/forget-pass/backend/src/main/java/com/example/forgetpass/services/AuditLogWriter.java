@@ -0,0 +1,242 @@
+package com.example.forgetpass.services;
+
+import com.example.forgetpass.domain.AuthenticationAuditLog;
+import com.example.forgetpass.repositories.AuthenticationAuditLogRepository;
+import com.example.forgetpass.repositories.PatientRepository;
+import com.example.forgetpass.util.MpscRingBuffer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes audit entries off the request path. Entries go into a bounded lock-free ring buffer and a
+ * single flusher thread persists them with batched inserts, one {@link WriteLane} unit per batch, whenever
+ * {@code batch-size} entries are waiting or {@code flush-interval} has passed. When the buffer is
+ * full the overflow policy decides: BLOCK waits up to {@code block-timeout} for space, DROP discards
+ * (counted), SPILL appends the entry to a JSON-lines file that is replayed on the next start. Batches
+ * that fail to insert are spilled too. Everything still buffered is flushed on shutdown.
+ */
+@Component
+public class AuditLogWriter {
+    private static final Logger log = LoggerFactory.getLogger(AuditLogWriter.class);
+
+    public enum OverflowPolicy { BLOCK, DROP, SPILL }
+
+    private final AuthenticationAuditLogRepository repo;
+    private final PatientRepository patientRepository;
+    private final WriteLane writeLane;
+    private final MpscRingBuffer<AuthenticationAuditLog> buffer;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final OverflowPolicy overflowPolicy;
+    private final Duration blockTimeout;
+    private final Path spillFile;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Object spillLock = new Object();
+    private final Counter written;
+    private final Counter dropped;
+    private final Counter spilled;
+    private final Timer flushTimer;
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    public AuditLogWriter(AuthenticationAuditLogRepository repo,
+                          PatientRepository patientRepository,
+                          WriteLane writeLane,
+                          MeterRegistry meterRegistry,
+                          @Value("${forgetpass.audit.capacity:8192}") int capacity,
+                          @Value("${forgetpass.audit.batch-size:256}") int batchSize,
+                          @Value("${forgetpass.audit.flush-interval:500ms}") Duration flushInterval,
+                          @Value("${forgetpass.audit.overflow:spill}") OverflowPolicy overflowPolicy,
+                          @Value("${forgetpass.audit.block-timeout:50ms}") Duration blockTimeout,
+                          @Value("${forgetpass.audit.spill-file:${user.dir}/data/audit-spill.jsonl}") Path spillFile) {
+        this.repo = repo;
+        this.patientRepository = patientRepository;
+        this.writeLane = writeLane;
+        this.buffer = new MpscRingBuffer<>(capacity);
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeout = blockTimeout;
+        this.spillFile = spillFile;
+        this.written = Counter.builder("forgetpass.audit.written").register(meterRegistry);
+        this.dropped = Counter.builder("forgetpass.audit.dropped").register(meterRegistry);
+        this.spilled = Counter.builder("forgetpass.audit.spilled").register(meterRegistry);
+        this.flushTimer = Timer.builder("forgetpass.audit.flush").register(meterRegistry);
+        Gauge.builder("forgetpass.audit.queue.depth", buffer, MpscRingBuffer::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        replaySpillFile();
+        running = true;
+        flusher = new Thread(this::run, "audit-writer");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public void append(AuthenticationAuditLog entry) {
+        if (!running) {
+            write(List.of(entry));
+            return;
+        }
+        if (buffer.offer(entry)) {
+            if (buffer.size() >= batchSize) LockSupport.unpark(flusher);
+            return;
+        }
+        switch (overflowPolicy) {
+            case BLOCK -> {
+                long deadline = System.nanoTime() + blockTimeout.toNanos();
+                while (System.nanoTime() < deadline) {
+                    LockSupport.unpark(flusher);
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                    if (buffer.offer(entry)) return;
+                }
+                dropped.increment();
+            }
+            case DROP -> dropped.increment();
+            case SPILL -> spill(List.of(entry));
+        }
+    }
+
+    public int pending() {
+        return buffer.size();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (flusher != null) {
+            LockSupport.unpark(flusher);
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        flushAll();
+    }
+
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(flushInterval.toNanos());
+            try {
+                flushAll();
+            } catch (RuntimeException ex) {
+                log.error("Audit flush failed: {}", ex.getMessage(), ex);
+            }
+        }
+    }
+
+    // Single consumer: called from the flusher thread, or during shutdown after it has stopped
+    private synchronized void flushAll() {
+        List<AuthenticationAuditLog> batch = new ArrayList<>(batchSize);
+        while (buffer.drainTo(batch::add, batchSize) > 0) {
+            write(batch);
+            batch = new ArrayList<>(batchSize);
+        }
+    }
+
+    private void write(List<AuthenticationAuditLog> batch) {
+        long start = System.nanoTime();
+        try {
+            writeLane.executeWithoutResult(() -> {
+                for (AuthenticationAuditLog entry : batch) {
+                    // A reference avoids Hibernate checking whether the patient row exists yet
+                    if (entry.getPatient() != null && entry.getPatient().getPatientId() != null) {
+                        entry.setPatient(patientRepository.getReferenceById(entry.getPatient().getPatientId()));
+                    }
+                }
+                repo.saveAll(batch);
+            });
+            written.increment(batch.size());
+        } catch (RuntimeException ex) {
+            log.error("Failed to write {} audit entries, spilling to {}: {}", batch.size(), spillFile, ex.getMessage());
+            spill(batch);
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void spill(List<AuthenticationAuditLog> entries) {
+        synchronized (spillLock) {
+            spillLocked(entries);
+        }
+    }
+
+    private void spillLocked(List<AuthenticationAuditLog> entries) {
+        try {
+            Files.createDirectories(spillFile.toAbsolutePath().getParent());
+            try (BufferedWriter out = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (AuthenticationAuditLog e : entries) {
+                    out.write(mapper.writeValueAsString(SpilledEntry.of(e)));
+                    out.newLine();
+                }
+            }
+            spilled.increment(entries.size());
+        } catch (IOException ex) {
+            dropped.increment(entries.size());
+            log.error("Could not spill {} audit entries to {}: {}", entries.size(), spillFile, ex.getMessage());
+        }
+    }
+
+    private void replaySpillFile() {
+        if (!Files.exists(spillFile)) return;
+        try {
+            List<AuthenticationAuditLog> entries = new ArrayList<>();
+            for (String line : Files.readAllLines(spillFile, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) entries.add(mapper.readValue(line, SpilledEntry.class).toEntry(patientRepository));
+            }
+            Path replaying = spillFile.resolveSibling(spillFile.getFileName() + ".replaying");
+            Files.move(spillFile, replaying);
+            for (int i = 0; i < entries.size(); i += batchSize) {
+                write(entries.subList(i, Math.min(entries.size(), i + batchSize)));
+            }
+            Files.delete(replaying);
+            log.info("Replayed {} spilled audit entries from {}", entries.size(), spillFile);
+        } catch (IOException ex) {
+            log.error("Could not replay spilled audit entries from {}: {}", spillFile, ex.getMessage());
+        }
+    }
+
+    record SpilledEntry(String eventType, UUID patientId, String ipAddress, String userAgent, String timestamp,
+                        boolean success, String metadataJson) {
+        static SpilledEntry of(AuthenticationAuditLog e) {
+            Instant at = e.getOccurredAt() != null ? e.getOccurredAt() : e.getTimestamp();
+            return new SpilledEntry(e.getEventType(), e.getPatient() != null ? e.getPatient().getPatientId() : null,
+                e.getIpAddress(), e.getUserAgent(), at != null ? at.toString() : null, e.isSuccess(), e.getMetadataJson());
+        }
+
+        AuthenticationAuditLog toEntry(PatientRepository patients) {
+            AuthenticationAuditLog e = new AuthenticationAuditLog();
+            e.setEventType(eventType);
+            if (patientId != null) e.setPatient(patients.getReferenceById(patientId));
+            e.setIpAddress(ipAddress);
+            e.setUserAgent(userAgent);
+            e.setOccurredAt(timestamp != null ? Instant.parse(timestamp) : null);
+            e.setSuccess(success);
+            e.setMetadataJson(metadataJson);
+            return e;
+        }
+    }
+}
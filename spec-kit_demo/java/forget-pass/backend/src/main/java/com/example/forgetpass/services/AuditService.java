@@ -7,18 +7,34 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Instant;
 import java.util.Map;
 
+/**
+ * Records authentication events. With an {@link AuditLogWriter} entries are queued and written in
+ * batches off the request thread, once the surrounding transaction (if any) has committed; without one
+ * (the single-argument constructor) they are saved inline.
+ */
 @Service
 public class AuditService {
     private static final Logger log = LoggerFactory.getLogger(AuditService.class);
     private final AuthenticationAuditLogRepository repo;
+    private final AuditLogWriter writer;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     public AuditService(AuthenticationAuditLogRepository repo) {
+        this(repo, null);
+    }
+
+    @Autowired
+    public AuditService(AuthenticationAuditLogRepository repo, AuditLogWriter writer) {
         this.repo = repo;
+        this.writer = writer;
     }
 
     public void log(String eventType, Patient patient, String ip, String userAgent, boolean success, Map<String, Object> metadata) {
@@ -33,6 +49,21 @@ public class AuditService {
         } catch (JsonProcessingException e) {
             log.warn("Failed to serialize audit metadata: {}", e.getMessage());
         }
-        repo.save(entry);
+        if (writer != null) {
+            entry.setOccurredAt(Instant.now());
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                // Write-lane batches can roll back and run a unit again; only record what was committed
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        writer.append(entry);
+                    }
+                });
+            } else {
+                writer.append(entry);
+            }
+        } else {
+            repo.save(entry);
+        }
     }
 }
@@ -0,0 +1,47 @@
+package com.example.forgetpass.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@code PRAGMA optimize} as a {@link WriteLane} unit every {@code optimize-interval-ms}, so the
+ * query planner statistics follow the data as the token tables grow and shrink. SQLite only re-analyzes
+ * tables whose size has changed enough since the last run, so most runs cost next to nothing.
+ */
+@Service
+public class DatabaseMaintenanceService {
+    private static final Logger log = LoggerFactory.getLogger(DatabaseMaintenanceService.class);
+
+    private final JdbcTemplate jdbc;
+    private final WriteLane writeLane;
+    private final Timer optimizeTimer;
+
+    public DatabaseMaintenanceService(DataSource dataSource, WriteLane writeLane, MeterRegistry meterRegistry) {
+        this.jdbc = new JdbcTemplate(dataSource);
+        this.writeLane = writeLane;
+        this.optimizeTimer = Timer.builder("forgetpass.datasource.optimize").register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${forgetpass.datasource.optimize-interval-ms:3600000}",
+        initialDelayString = "${forgetpass.datasource.optimize-interval-ms:3600000}")
+    public void optimize() {
+        long start = System.nanoTime();
+        try {
+            writeLane.executeWithoutResult(() -> jdbc.execute("PRAGMA optimize"));
+            log.debug("DatabaseMaintenanceService: PRAGMA optimize took {} ms", (System.nanoTime() - start) / 1_000_000);
+        } catch (DataAccessException ex) {
+            log.warn("DatabaseMaintenanceService: PRAGMA optimize failed: {}", ex.toString());
+        } finally {
+            optimizeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
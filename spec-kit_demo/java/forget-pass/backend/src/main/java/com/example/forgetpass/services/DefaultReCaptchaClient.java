@@ -1,35 +1,137 @@
 package com.example.forgetpass.services;
 
+import com.example.forgetpass.util.RetryPolicy;
+import com.example.forgetpass.util.RetryScheduler;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
-import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
 import java.net.URI;
-import java.util.Map;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-@Component
+/**
+ * Verifies reCAPTCHA tokens over one long-lived JDK {@link HttpClient}, which keeps its connections
+ * (HTTP/2 where the verifier offers it) open across calls. Calls never block the caller: at most
+ * {@code maxInFlight} verifications run at once and the next one fails fast rather than queueing.
+ * The response body is parsed once, straight from its bytes, with fields this side does not use ignored.
+ * <p>
+ * A siteverify token is good for one check, so a request the verifier may have seen is never sent
+ * again: only a failure to connect is retried, on the shared {@link RetryScheduler}.
+ */
 public class DefaultReCaptchaClient implements ReCaptchaClient {
-    private static final Logger log = LoggerFactory.getLogger(DefaultReCaptchaClient.class);
-    private final RestTemplate restTemplate;
-    private final ObjectMapper mapper = new ObjectMapper();
-
-    public DefaultReCaptchaClient() {
-        SimpleClientHttpRequestFactory rf = new SimpleClientHttpRequestFactory();
-        rf.setConnectTimeout(3000);
-        rf.setReadTimeout(3000);
-        this.restTemplate = new RestTemplate(rf);
+
+    static final String OPERATION = "recaptcha.verify";
+
+    // Nothing was sent when the connection could not be made; the whole exchange stays within a request budget
+    static final RetryPolicy RETRY_POLICY = new RetryPolicy(3, Duration.ofMillis(100), Duration.ofMillis(400), Duration.ofSeconds(2))
+        .retryingOn(ex -> ex instanceof ConnectException || ex instanceof HttpConnectTimeoutException);
+
+    private static final ObjectReader READER = new ObjectMapper()
+        .readerFor(ReCaptchaResponse.class)
+        .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    private final HttpClient httpClient;
+    private final URI verifyUrl;
+    private final Duration requestTimeout;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final Counter saturated;
+    private final RetryScheduler retryScheduler;
+
+    public DefaultReCaptchaClient(URI verifyUrl, int maxInFlight, Duration connectTimeout, Duration requestTimeout,
+                                  RetryScheduler retryScheduler, MeterRegistry registry) {
+        this.httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(connectTimeout)
+            .build();
+        this.verifyUrl = verifyUrl;
+        this.requestTimeout = requestTimeout;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.retryScheduler = retryScheduler;
+        this.saturated = Counter.builder("forgetpass.recaptcha.saturated")
+            .description("Verifications refused because the cap on verifications in flight was reached").register(registry);
+        Gauge.builder("forgetpass.recaptcha.in.flight", this, DefaultReCaptchaClient::inFlight).register(registry);
     }
 
     @Override
-    public ReCaptchaResponse verify(String secret, String token) throws Exception {
-        URI uri = new URI("https://www.google.com/recaptcha/api/siteverify");
-        Map<String,String> params = Map.of("secret", secret, "response", token);
-        String resp = restTemplate.postForObject(uri, params, String.class);
-        ReCaptchaResponse rc = mapper.readValue(resp, ReCaptchaResponse.class);
-        log.debug("reCAPTCHA response: {}", resp);
-        return rc;
+    public CompletableFuture<ReCaptchaResponse> verify(String secret, String token) {
+        if (!inFlight.tryAcquire()) {
+            saturated.increment();
+            return CompletableFuture.failedFuture(
+                new ReCaptchaSaturatedException("reCAPTCHA verifier saturated (" + maxInFlight + " verifications in flight)"));
+        }
+        HttpRequest request = HttpRequest.newBuilder(verifyUrl)
+            .timeout(requestTimeout)
+            .header("Content-Type", "application/x-www-form-urlencoded")
+            .POST(HttpRequest.BodyPublishers.ofString("secret=" + URLEncoder.encode(secret, StandardCharsets.UTF_8)
+                + "&response=" + URLEncoder.encode(token == null ? "" : token, StandardCharsets.UTF_8)))
+            .build();
+        CompletableFuture<ReCaptchaResponse> result = new CompletableFuture<>();
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) inFlight.release();
+        };
+        CompletableFuture<ReCaptchaResponse> attempts = retryScheduler.executeAsync(OPERATION, RETRY_POLICY, () -> exchange(request));
+        // Released before the result completes, so a caller that sees the result sees the permit back;
+        // a caller that cancels gets the permit back and aborts the exchange in progress
+        result.whenComplete((r, ex) -> {
+            release.run();
+            if (result.isCancelled()) attempts.cancel(true);
+        });
+        attempts.whenComplete((response, ex) -> {
+            release.run();
+            if (ex != null) result.completeExceptionally(ex);
+            else result.complete(response);
+        });
+        return result;
+    }
+
+    public int inFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    // One exchange; anything but a parsed 200 fails it. Cancelling the returned future aborts the exchange
+    private CompletableFuture<ReCaptchaResponse> exchange(HttpRequest request) {
+        CompletableFuture<HttpResponse<ReCaptchaResponse>> sent = httpClient.sendAsync(request, DefaultReCaptchaClient::parse);
+        CompletableFuture<ReCaptchaResponse> body = sent.thenApply(response -> {
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("reCAPTCHA verifier answered " + response.statusCode());
+            }
+            return response.body();
+        });
+        body.whenComplete((r, ex) -> {
+            if (body.isCancelled()) sent.cancel(true);
+        });
+        return body;
+    }
+
+    // Error bodies are not JSON, so only a 200 is parsed
+    private static HttpResponse.BodySubscriber<ReCaptchaResponse> parse(HttpResponse.ResponseInfo info) {
+        if (info.statusCode() != 200) {
+            return HttpResponse.BodySubscribers.replacing(null);
+        }
+        return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofByteArray(), bytes -> {
+            try {
+                return READER.readValue(bytes);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
     }
 }
@@ -0,0 +1,299 @@
+package com.example.forgetpass.services;
+
+import com.example.forgetpass.domain.EmailOutboxMessage;
+import com.example.forgetpass.domain.EmailTemplate;
+import com.example.forgetpass.repositories.EmailOutboxRepository;
+import com.example.forgetpass.util.RetryPolicy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drains the {@code email_outbox} table in the background. Due messages are fetched in batches and
+ * sent on a small pool; failures are rescheduled by writing a jittered next attempt time (see
+ * {@link RetryPolicy}) until max-attempts or max-elapsed is reached, after which the message is marked
+ * failed. No thread waits between attempts. Drains run on the dispatcher's own poller thread, so they never
+ * overlap, and a slow SendGrid batch does not hold up the application's other scheduled jobs.
+ *
+ * <p>With batching on, due messages of one template are sent as a single mail/send request with a
+ * personalization per recipient. A template group is held back until it fills a request or its
+ * oldest message has waited for the batching window. If a batched request fails, each of its
+ * messages is sent on its own so failures and retries stay per recipient.
+ *
+ * <p>Several processes may drain the same outbox. Before sending, a run leases the messages it is about to
+ * send with one conditional UPDATE (only rows still pending and due are taken) and sends just the ones it
+ * got. While leased, a message's next attempt time is the lease expiry, so a message whose sender died
+ * is picked up again once the lease runs out; it may then be sent twice. Saving the message after the
+ * send clears the lease.
+ *
+ * <p>While the SendGrid circuit is open nothing is fetched or sent; messages stay pending in the
+ * outbox without using up attempts.
+ */
+@Component
+public class EmailOutboxDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(EmailOutboxDispatcher.class);
+
+    private final EmailOutboxRepository outboxRepository;
+    private final EmailService emailService;
+    private final WriteLane writeLane;
+    private final boolean enabled;
+    private final int batchSize;
+    private final RetryPolicy retryPolicy;
+    private final boolean batching;
+    private final int maxRecipients;
+    private final Duration batchingWindow;
+    private final Duration lease;
+    private final long pollIntervalMs;
+    private final ExecutorService senders;
+    private ScheduledExecutorService poller;
+    private final Counter apiCalls;
+    private final Counter sent;
+    private final Counter retried;
+    private final Counter failed;
+    // Refreshed at the end of every drain so a metrics scrape never has to query the outbox
+    private volatile long pending;
+
+    public EmailOutboxDispatcher(EmailOutboxRepository outboxRepository,
+                                 EmailService emailService,
+                                 WriteLane writeLane,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${forgetpass.email.outbox.enabled:true}") boolean enabled,
+                                 @Value("${forgetpass.email.outbox.poll-interval-ms:2000}") long pollIntervalMs,
+                                 @Value("${forgetpass.email.outbox.batch-size:500}") int batchSize,
+                                 @Value("${forgetpass.email.outbox.concurrency:4}") int concurrency,
+                                 @Value("${forgetpass.email.outbox.max-attempts:6}") int maxAttempts,
+                                 @Value("${forgetpass.email.outbox.initial-backoff:30s}") Duration initialBackoff,
+                                 @Value("${forgetpass.email.outbox.max-backoff:30m}") Duration maxBackoff,
+                                 @Value("${forgetpass.email.outbox.max-elapsed:24h}") Duration maxElapsed,
+                                 @Value("${forgetpass.email.outbox.batching.enabled:true}") boolean batching,
+                                 @Value("${forgetpass.email.outbox.batching.max-recipients:500}") int maxRecipients,
+                                 @Value("${forgetpass.email.outbox.batching.window:1s}") Duration batchingWindow,
+                                 @Value("${forgetpass.email.outbox.lease:10m}") Duration lease) {
+        this.outboxRepository = outboxRepository;
+        this.emailService = emailService;
+        this.writeLane = writeLane;
+        this.enabled = enabled;
+        this.pollIntervalMs = pollIntervalMs;
+        this.batchSize = batchSize;
+        this.retryPolicy = new RetryPolicy(maxAttempts, initialBackoff, maxBackoff, maxElapsed);
+        this.batching = batching;
+        // SendGrid caps a single mail/send request at 1000 personalizations
+        this.maxRecipients = Math.min(maxRecipients, 1000);
+        this.batchingWindow = batchingWindow;
+        this.lease = lease;
+        AtomicInteger seq = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread t = new Thread(r, "email-outbox-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.apiCalls = Counter.builder("forgetpass.email.outbox.requests").register(meterRegistry);
+        this.sent = Counter.builder("forgetpass.email.outbox.sent").register(meterRegistry);
+        this.retried = Counter.builder("forgetpass.email.outbox.retried").register(meterRegistry);
+        this.failed = Counter.builder("forgetpass.email.outbox.failed").register(meterRegistry);
+        Gauge.builder("forgetpass.email.outbox.pending", this, d -> d.pending).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "email-outbox-poller");
+            t.setDaemon(true);
+            return t;
+        });
+        poller.scheduleWithFixedDelay(() -> {
+            try {
+                drain();
+            } catch (RuntimeException ex) {
+                // A failed run must not cancel the schedule; the next poll tries again
+                log.warn("Outbox drain failed: {}", ex.getMessage(), ex);
+            }
+        }, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void drain() {
+        if (!enabled) return;
+        int fetched;
+        int handled;
+        do {
+            List<EmailOutboxMessage> due = fetchDue(Instant.now());
+            fetched = due.size();
+            handled = send(due, Instant.now());
+        } while (fetched == batchSize && handled > 0);
+        pending = outboxRepository.countByStatus(EmailOutboxMessage.STATUS_PENDING);
+    }
+
+    /** Sends one batch of due messages and returns how many were handled (not held back). */
+    int drainBatch(Instant now) {
+        return send(fetchDue(now), now);
+    }
+
+    private List<EmailOutboxMessage> fetchDue(Instant now) {
+        if (emailService.circuitOpen()) return List.of();
+        return outboxRepository.findByStatusAndNextAttemptAtLessThanEqual(
+            EmailOutboxMessage.STATUS_PENDING, now, PageRequest.of(0, batchSize, Sort.by("nextAttemptAt")));
+    }
+
+    private int send(List<EmailOutboxMessage> due, Instant now) {
+        if (due.isEmpty()) return 0;
+        List<EmailOutboxMessage> picked = new ArrayList<>();
+        if (!batching) {
+            picked.addAll(due);
+        } else {
+            for (List<EmailOutboxMessage> group : groupByTemplate(due)) {
+                if (!holdBack(group, now)) picked.addAll(group);
+            }
+        }
+        if (picked.isEmpty()) return 0;
+
+        Set<UUID> claimed = claim(picked, now);
+        List<CompletableFuture<Void>> sends = new ArrayList<>();
+        for (List<EmailOutboxMessage> group : groupByTemplate(picked)) {
+            List<EmailOutboxMessage> ours = group.stream().filter(m -> claimed.contains(m.getMessageId())).toList();
+            int chunkSize = batching ? maxRecipients : 1;
+            for (int i = 0; i < ours.size(); i += chunkSize) {
+                List<EmailOutboxMessage> chunk = ours.subList(i, Math.min(ours.size(), i + chunkSize));
+                sends.add(CompletableFuture.runAsync(() -> deliverChunk(chunk), senders));
+            }
+        }
+        CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0])).join();
+        return picked.size();
+    }
+
+    // Ids of the messages this run leased; messages another dispatcher leased first are left to it
+    private Set<UUID> claim(List<EmailOutboxMessage> messages, Instant now) {
+        String leaseId = UUID.randomUUID().toString();
+        List<UUID> ids = messages.stream().map(EmailOutboxMessage::getMessageId).toList();
+        if (writeLane.execute(() -> outboxRepository.claim(ids, leaseId, now, now.plus(lease))) == 0) return Set.of();
+        return new HashSet<>(outboxRepository.findIdsByLeaseId(leaseId));
+    }
+
+    private static Collection<List<EmailOutboxMessage>> groupByTemplate(List<EmailOutboxMessage> messages) {
+        Map<EmailTemplate, List<EmailOutboxMessage>> groups = new LinkedHashMap<>();
+        for (EmailOutboxMessage message : messages) {
+            groups.computeIfAbsent(message.getTemplate(), t -> new ArrayList<>()).add(message);
+        }
+        return groups.values();
+    }
+
+    // Wait for more messages of the same template unless the group is full or has waited long enough
+    private boolean holdBack(List<EmailOutboxMessage> group, Instant now) {
+        if (group.size() >= Math.min(maxRecipients, batchSize)) return false;
+        Instant oldest = group.stream().map(EmailOutboxMessage::getCreatedAt).min(Comparator.naturalOrder()).orElse(now);
+        return oldest.plus(batchingWindow).isAfter(now);
+    }
+
+    private void deliverChunk(List<EmailOutboxMessage> chunk) {
+        if (chunk.size() == 1) {
+            deliver(chunk.get(0));
+            return;
+        }
+        List<EmailService.Recipient> recipients = new ArrayList<>(chunk.size());
+        int attempt = 1;
+        for (EmailOutboxMessage message : chunk) {
+            recipients.add(new EmailService.Recipient(message.getRecipient(), message.getLink()));
+            attempt = Math.max(attempt, message.getAttempts() + 1);
+        }
+        String error;
+        try {
+            apiCalls.increment();
+            error = emailService.deliverBatch(chunk.get(0).getTemplate(), recipients, attempt);
+        } catch (RuntimeException ex) {
+            error = ex.getClass().getSimpleName() + ": " + ex.getMessage();
+        }
+        if (EmailService.CIRCUIT_OPEN.equals(error)) {
+            writeLane.execute(() -> outboxRepository.saveAll(chunk)); // releases the lease
+            return;
+        }
+        if (error == null) {
+            Instant sentAt = Instant.now();
+            for (EmailOutboxMessage message : chunk) {
+                message.setAttempts(message.getAttempts() + 1);
+                markSent(message, sentAt);
+            }
+            writeLane.execute(() -> outboxRepository.saveAll(chunk));
+            return;
+        }
+        log.warn("Batched send of {} {} emails failed ({}); falling back to individual sends",
+            chunk.size(), chunk.get(0).getTemplate(), error);
+        chunk.forEach(this::deliver);
+    }
+
+    private void deliver(EmailOutboxMessage message) {
+        int attempt = message.getAttempts() + 1;
+        String error;
+        try {
+            apiCalls.increment();
+            error = emailService.deliver(message.getRecipient(), message.getTemplate().subject(),
+                message.getTemplate().render(message.getLink()), attempt);
+        } catch (RuntimeException ex) {
+            error = ex.getClass().getSimpleName() + ": " + ex.getMessage();
+        }
+        if (EmailService.CIRCUIT_OPEN.equals(error)) {
+            // Not attempted: saved as fetched, which releases the lease without using up an attempt
+            writeLane.execute(() -> outboxRepository.save(message));
+            return;
+        }
+        message.setAttempts(attempt);
+        if (error == null) {
+            markSent(message, Instant.now());
+        } else {
+            Instant retryAt = Instant.now().plus(retryPolicy.nextDelay(attempt));
+            boolean outOfBudget = retryAt.isAfter(message.getCreatedAt().plus(retryPolicy.maxElapsed()));
+            if (attempt >= retryPolicy.maxAttempts() || outOfBudget) {
+                message.setStatus(EmailOutboxMessage.STATUS_FAILED);
+                message.setLink(null);
+                message.setLastError(error);
+                failed.increment();
+                log.error("Email delivery ultimately failed after {} attempts: message={} template={}",
+                    attempt, message.getMessageId(), message.getTemplate());
+            } else {
+                message.setNextAttemptAt(retryAt);
+                message.setLastError(error);
+                retried.increment();
+            }
+        }
+        writeLane.execute(() -> outboxRepository.save(message));
+    }
+
+    private void markSent(EmailOutboxMessage message, Instant sentAt) {
+        message.setStatus(EmailOutboxMessage.STATUS_SENT);
+        message.setSentAt(sentAt);
+        message.setLink(null);
+        message.setLastError(null);
+        sent.increment();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (poller != null) poller.shutdownNow();
+        senders.shutdownNow();
+    }
+}
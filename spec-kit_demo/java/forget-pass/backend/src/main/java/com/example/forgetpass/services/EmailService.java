@@ -1,8 +1,18 @@
 package com.example.forgetpass.services;
 
+import com.example.forgetpass.domain.EmailOutboxMessage;
+import com.example.forgetpass.domain.EmailTemplate;
+import com.example.forgetpass.repositories.EmailOutboxRepository;
+import com.example.forgetpass.util.CircuitBreaker;
+import com.example.forgetpass.util.RetryPolicy;
+import com.example.forgetpass.util.RetryScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.sendgrid.Method;
 import com.sendgrid.Request;
@@ -11,84 +21,275 @@ import com.sendgrid.SendGrid;
 import com.sendgrid.helpers.mail.Mail;
 import com.sendgrid.helpers.mail.objects.Content;
 import com.sendgrid.helpers.mail.objects.Email;
+import com.sendgrid.helpers.mail.objects.Personalization;
 import java.io.IOException;
 import java.time.Duration;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Sends transactional emails. With an outbox the send* methods only insert an {@code email_outbox}
+ * row in the caller's transaction and {@link EmailOutboxDispatcher} delivers it later; with the outbox
+ * turned off they call SendGrid directly and retry failures on
+ * a {@link RetryScheduler} timer, so the caller only waits for the first attempt. A direct send made
+ * inside a transaction, such as a write-lane unit, goes out after the commit, entirely on the retry
+ * workers.
+ *
+ * <p>Every SendGrid call goes through a {@link CircuitBreaker}. While it is open nothing is sent:
+ * outbox rows simply stay pending, and direct sends are parked in a bounded in-memory spill-over queue
+ * that is flushed once calls are allowed again. Concurrency is capped by the {@link SendGridTransport}.
+ */
 @Service
 public class EmailService {
     private static final Logger log = LoggerFactory.getLogger(EmailService.class);
 
+    /** Failure reason returned when the circuit breaker refused the call; nothing was sent. */
+    static final String CIRCUIT_OPEN = "circuit_open";
+
     protected String apiKey = System.getenv("SENDGRID_API_KEY");
     private String fromAddress = System.getenv().getOrDefault("SENDGRID_FROM", "no-reply@forget-pass.local");
     protected int maxAttempts = 3;
+    protected Duration retryInitialDelay = Duration.ofSeconds(2);
+    protected Duration retryMaxDelay = Duration.ofSeconds(8);
+    protected Duration retryMaxElapsed = Duration.ofSeconds(30);
+    protected int spilloverCapacity = 1000;
+
+    private final EmailOutboxRepository outboxRepository;
+    private final SendGridTransport transport;
+    private final RetryScheduler retryScheduler;
+    private final CircuitBreaker circuitBreaker;
+    private final Deque<PendingEmail> spillover = new ArrayDeque<>();
+    private volatile SendGrid sendGrid;
+
+    /**
+     * With {@code forgetpass.email.outbox.enabled=false} the repository is dropped and emails are sent
+     * directly, since no dispatcher would deliver the rows.
+     */
+    public EmailService(EmailOutboxRepository outboxRepository, SendGridTransport transport, RetryScheduler retryScheduler,
+                        CircuitBreaker sendGridCircuitBreaker,
+                        @Value("${forgetpass.email.outbox.enabled:true}") boolean outboxEnabled) {
+        this.outboxRepository = outboxEnabled ? outboxRepository : null;
+        this.transport = transport;
+        this.retryScheduler = retryScheduler;
+        this.circuitBreaker = sendGridCircuitBreaker;
+    }
 
     public void sendVerificationEmail(String to, String link) {
-        String subject = "Verify your account";
-        String body = "Please verify your account by clicking: " + link + "\nThis link expires in 24 hours.";
-        dispatch(to, subject, body);
+        send(EmailTemplate.VERIFICATION, to, link);
     }
 
     public void sendPasswordResetEmail(String to, String link) {
-        String subject = "Password reset request";
-        String body = "You requested a password reset. Use this link within 1 hour: " + link;
-        dispatch(to, subject, body);
+        send(EmailTemplate.PASSWORD_RESET, to, link);
     }
 
     public void sendPasswordChangedConfirmation(String to) {
-        String subject = "Your password was changed";
-        String body = "This is a confirmation that your password was successfully changed. If this wasn't you, contact support immediately.";
-        dispatch(to, subject, body);
+        send(EmailTemplate.PASSWORD_CHANGED, to, null);
+    }
+
+    private void send(EmailTemplate template, String to, String link) {
+        if (outboxRepository == null) {
+            sendDirect(new PendingEmail(to, template.subject(), template.render(link)));
+            return;
+        }
+        EmailOutboxMessage message = new EmailOutboxMessage();
+        message.setTemplate(template);
+        message.setRecipient(to);
+        message.setLink(link);
+        outboxRepository.save(message);
+    }
+
+    private void sendDirect(PendingEmail email) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            dispatch(email.to(), email.subject(), email.content(), false);
+            return;
+        }
+        // Inside a transaction (a write-lane unit, typically): a rolled-back unit may run again, and the
+        // committing thread must not wait on SendGrid, so send once committed and from a retry worker
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                dispatch(email.to(), email.subject(), email.content(), true);
+            }
+        });
     }
 
-    private void dispatch(String to, String subject, String content) {
+    private void dispatch(String to, String subject, String content, boolean offThread) {
+        if (circuitBreaker.isOpen()) {
+            spill(new PendingEmail(to, subject, content));
+            return;
+        }
+        RetryPolicy policy = new RetryPolicy(maxAttempts, retryInitialDelay, retryMaxDelay, retryMaxElapsed)
+            .retryingOn(ex -> !(ex instanceof CircuitOpenException));
+        AtomicInteger attempts = new AtomicInteger();
+        Callable<Void> attempt = () -> {
+            String error = deliver(to, subject, content, attempts.incrementAndGet());
+            if (CIRCUIT_OPEN.equals(error)) throw new CircuitOpenException();
+            if (error != null) throw new IOException(error);
+            return null;
+        };
+        CompletableFuture<Void> sending = offThread
+            ? retryScheduler.submit("email.send", policy, attempt)
+            : retryScheduler.execute("email.send", policy, attempt);
+        sending.whenComplete((ignored, ex) -> {
+            if (ex instanceof CircuitOpenException || (ex != null && ex.getCause() instanceof CircuitOpenException)) {
+                spill(new PendingEmail(to, subject, content));
+            } else if (ex != null) {
+                log.error("Email delivery ultimately failed after {} attempts: to='{}' subject='{}'", attempts.get(), to, subject);
+            }
+        });
+    }
+
+    /** True while the SendGrid circuit is open and sends would be refused. */
+    public boolean circuitOpen() {
+        return circuitBreaker.isOpen();
+    }
+
+    /** Re-dispatches direct sends parked while the circuit was open. */
+    @Scheduled(fixedDelayString = "${forgetpass.email.circuit.spillover-flush-ms:5000}")
+    public int flushSpillover() {
+        int flushed = 0;
+        // Bounded by the current size: a send refused again goes back to the end of the queue
+        int budget = spilloverSize();
+        while (flushed < budget && !circuitBreaker.isOpen()) {
+            PendingEmail pending;
+            synchronized (spillover) {
+                pending = spillover.pollFirst();
+            }
+            if (pending == null) break;
+            dispatch(pending.to(), pending.subject(), pending.content(), false);
+            flushed++;
+        }
+        return flushed;
+    }
+
+    public int spilloverSize() {
+        synchronized (spillover) {
+            return spillover.size();
+        }
+    }
+
+    private void spill(PendingEmail pending) {
+        synchronized (spillover) {
+            if (spillover.size() >= spilloverCapacity) {
+                PendingEmail dropped = spillover.pollFirst();
+                log.error("Email spill-over queue full; dropping oldest: to='{}' subject='{}'", dropped.to(), dropped.subject());
+            }
+            spillover.addLast(pending);
+        }
+        log.warn("SendGrid circuit open; parked email: to='{}' subject='{}'", pending.to(), pending.subject());
+    }
+
+    /** Single delivery attempt; returns null on success (or dry run), otherwise a short failure reason. */
+    String deliver(String to, String subject, String content, int attempt) {
         if (apiKey == null || apiKey.isBlank()) {
             log.info("[EMAIL:DRY-RUN] to='{}' subject='{}' content='{}'", to, subject, abbreviate(content));
-            return;
+            return null;
         }
         Email from = new Email(fromAddress);
         Email recipient = new Email(to);
         Content plain = new Content("text/plain", content);
-        Mail mail = new Mail(from, subject, recipient, plain);
-
-        SendGrid sg = createSendGrid(apiKey);
-        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
-            try {
-                Request request = new Request();
-                request.setMethod(Method.POST);
-                request.setEndpoint("mail/send");
-                request.setBody(mail.build());
-                Response response = sg.api(request);
-                int code = response.getStatusCode();
-                if (code >= 200 && code < 300) {
-                    log.info("Email sent: to='{}' subject='{}' status={}", to, subject, code);
-                    return;
-                }
-                log.warn("Email send failed attempt {}: status={} body={} headers={}", attempt, code, abbreviate(response.getBody()), response.getHeaders());
-            } catch (IOException ex) {
-                log.warn("Email send IOException attempt {}: {}", attempt, ex.getMessage());
+        return post(new Mail(from, subject, recipient, plain), "to='" + to + "'", subject, attempt);
+    }
+
+    /**
+     * Sends one template to many recipients in a single mail/send call, one personalization per
+     * recipient with its own link substitution. SendGrid accepts or rejects the request as a whole.
+     */
+    String deliverBatch(EmailTemplate template, List<Recipient> recipients, int attempt) {
+        if (apiKey == null || apiKey.isBlank()) {
+            log.info("[EMAIL:DRY-RUN] recipients={} subject='{}'", recipients.size(), template.subject());
+            return null;
+        }
+        Mail mail = new Mail();
+        mail.setFrom(new Email(fromAddress));
+        mail.setSubject(template.subject());
+        mail.addContent(new Content("text/plain", template.render(EmailTemplate.LINK_PLACEHOLDER)));
+        for (Recipient r : recipients) {
+            Personalization p = new Personalization();
+            p.addTo(new Email(r.to()));
+            if (template.hasLink()) {
+                p.addSubstitution(EmailTemplate.LINK_PLACEHOLDER, r.link());
             }
-            backoff(attempt);
+            mail.addPersonalization(p);
         }
-        log.error("Email delivery ultimately failed after {} attempts: to='{}' subject='{}'", maxAttempts, to, subject);
+        return post(mail, "recipients=" + recipients.size(), template.subject(), attempt);
     }
 
-    protected void backoff(int attempt) {
-        long sleepMs = Duration.ofSeconds((long) Math.pow(2, attempt)).toMillis();
+    private String post(Mail mail, String target, String subject, int attempt) {
+        Request request = new Request();
+        request.setMethod(Method.POST);
+        request.setEndpoint("mail/send");
         try {
-            TimeUnit.MILLISECONDS.sleep(sleepMs);
-        } catch (InterruptedException ie) {
-            Thread.currentThread().interrupt();
+            request.setBody(mail.build());
+        } catch (IOException ex) {
+            log.warn("Email could not be serialized: {}", ex.getMessage());
+            return "IOException: " + abbreviate(ex.getMessage());
+        }
+        if (!circuitBreaker.tryAcquirePermission()) {
+            log.debug("Email not sent, circuit open: {} subject='{}'", target, subject);
+            return CIRCUIT_OPEN;
+        }
+        long start = System.nanoTime();
+        try {
+            Response response = sendGrid().api(request);
+            int code = response.getStatusCode();
+            // Only throttling and server errors say the provider is unhealthy; other 4xx are about the message
+            circuitBreaker.onResult(Duration.ofNanos(System.nanoTime() - start), code != 429 && code < 500);
+            if (code >= 200 && code < 300) {
+                log.info("Email sent: {} subject='{}' status={}", target, subject, code);
+                return null;
+            }
+            log.warn("Email send failed attempt {}: status={} body={} headers={}", attempt, code, abbreviate(response.getBody()), response.getHeaders());
+            return "status " + code;
+        } catch (EmailTransportSaturatedException ex) {
+            circuitBreaker.onIgnored();
+            log.warn("Email send rejected attempt {}: {}", attempt, ex.getMessage());
+            return ex.getMessage();
+        } catch (IOException ex) {
+            circuitBreaker.onResult(Duration.ofNanos(System.nanoTime() - start), false);
+            log.warn("Email send IOException attempt {}: {}", attempt, ex.getMessage());
+            return "IOException: " + abbreviate(ex.getMessage());
+        } catch (RuntimeException ex) {
+            circuitBreaker.onResult(Duration.ofNanos(System.nanoTime() - start), false);
+            throw ex;
+        }
+    }
+
+    private record PendingEmail(String to, String subject, String content) {
+    }
+
+    private static class CircuitOpenException extends IOException {
+        CircuitOpenException() {
+            super(CIRCUIT_OPEN);
         }
     }
 
+    record Recipient(String to, String link) {
+    }
+
     private String abbreviate(String s) {
         if (s == null) return "";
         return s.length() > 180 ? s.substring(0, 177) + "..." : s;
     }
 
+    // Created once and reused so every send shares the transport's connection pool
+    private SendGrid sendGrid() {
+        SendGrid sg = sendGrid;
+        if (sg == null) {
+            synchronized (this) {
+                if (sendGrid == null) sendGrid = createSendGrid(apiKey);
+                sg = sendGrid;
+            }
+        }
+        return sg;
+    }
+
     /** Factory method to create SendGrid client — overridable for tests. */
     protected SendGrid createSendGrid(String apiKey) {
-        return new SendGrid(apiKey);
+        return transport.newClient(apiKey);
     }
 }
@@ -0,0 +1,10 @@
+package com.example.forgetpass.services;
+
+import java.io.IOException;
+
+/** Thrown by {@link SendGridTransport} when its cap on requests in flight is reached. */
+public class EmailTransportSaturatedException extends IOException {
+    public EmailTransportSaturatedException(String message) {
+        super(message);
+    }
+}
@@ -13,51 +13,96 @@ import java.time.Instant;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 @Service
 public class EmailVerificationService {
+    private static final int MAX_RESENDS = 3;
+    private static final Duration RESEND_WINDOW = Duration.ofHours(24);
+
     private final PatientRepository patientRepository;
     private final EmailVerificationTokenRepository tokenRepository;
     private final EmailService emailService;
     private final AuditService auditService;
+    private final WriteLane writeLane;
+    private final TokenSigner tokenSigner;
+    private final LookupFilterService lookupFilter;
+    private final TokenLookup<EmailVerificationToken> tokenLookup;
 
     public EmailVerificationService(PatientRepository patientRepository,
                                     EmailVerificationTokenRepository tokenRepository,
                                     EmailService emailService,
-                                    AuditService auditService) {
+                                    AuditService auditService,
+                                    WriteLane writeLane,
+                                    TokenSigner tokenSigner,
+                                    LookupFilterService lookupFilter) {
         this.patientRepository = patientRepository;
         this.tokenRepository = tokenRepository;
         this.emailService = emailService;
         this.auditService = auditService;
+        this.writeLane = writeLane;
+        this.tokenSigner = tokenSigner;
+        this.lookupFilter = lookupFilter;
+        this.tokenLookup = new TokenLookup<>(TokenSigner.Purpose.EMAIL_VERIFICATION, tokenRepository, tokenRepository::findByTokenHash,
+            EmailVerificationToken::getTokenHash, tokenSigner, lookupFilter);
     }
 
-    @Transactional
     public void issueVerification(Patient patient, String baseUrl) {
-        String token = TokenUtil.generateToken();
-        String hash = TokenUtil.sha256(token);
+        writeLane.executeWithoutResult(() -> issue(patient, baseUrl));
+    }
+
+    // The lookup (and for signed tokens the signature check) runs on the caller's thread; only the
+    // conditional update and the activation go through the write lane
+    public boolean verify(String token) {
+        Optional<EmailVerificationToken> opt = tokenLookup.find(token);
+        if (opt.isEmpty()) return false;
+        return writeLane.execute(() -> consume(opt.get()));
+    }
+
+    public boolean resend(String email, String baseUrl) {
+        if (!lookupFilter.mayBeRegistered(email)) return false;
+        Optional<Patient> patientOpt = patientRepository.findByEmail(email);
+        if (patientOpt.isEmpty()) return false;
+        Patient patient = patientOpt.get();
+        return writeLane.execute(() -> reissue(patient, baseUrl));
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<EmailVerificationToken> latestToken(Patient patient) {
+        List<EmailVerificationToken> tokens = tokenRepository.findByPatient(patient);
+        return tokens.stream().max(Comparator.comparing(EmailVerificationToken::getCreatedAt));
+    }
+
+    private void issue(Patient patient, String baseUrl) {
         EmailVerificationToken evt = new EmailVerificationToken();
+        evt.setTokenId(UUID.randomUUID());
         evt.setPatient(patient);
-        evt.setTokenHash(hash);
         evt.setExpiresAt(Instant.now().plus(Duration.ofHours(24)));
+        String token;
+        if (tokenSigner.issuesSignedTokens()) {
+            token = tokenSigner.sign(new TokenSigner.Claims(TokenSigner.Purpose.EMAIL_VERIFICATION, evt.getTokenId(),
+                patient.getPatientId(), evt.getExpiresAt()));
+            evt.setTokenHash(TokenUtil.sha256(token));
+        } else {
+            String verifier = TokenUtil.generateToken();
+            token = TokenUtil.selectorToken(evt.getTokenId(), verifier);
+            evt.setTokenHash(TokenUtil.sha256(verifier));
+        }
         tokenRepository.save(evt);
         String link = baseUrl + "/verify-email?token=" + token;
         emailService.sendVerificationEmail(patient.getEmail(), link);
         auditService.log("verification_issued", patient, null, null, true, java.util.Map.of());
     }
 
-    @Transactional
-    public boolean verify(String token) {
-        String hash = TokenUtil.sha256(token);
-        Optional<EmailVerificationToken> opt = tokenRepository.findByTokenHash(hash);
-        if (opt.isEmpty()) return false;
-        EmailVerificationToken evt = opt.get();
-        if (evt.getVerifiedAt() != null || evt.getExpiresAt().isBefore(Instant.now())) {
+    private boolean consume(EmailVerificationToken evt) {
+        Instant now = Instant.now();
+        // The conditional update decides: of any number of concurrent verifies, exactly one sees a row change
+        if (tokenRepository.consume(evt.getTokenId(), now) == 0) {
+            boolean expired = evt.getVerifiedAt() == null && !evt.getExpiresAt().isAfter(now);
             auditService.log("verification_confirm", evt.getPatient(), null, null, false,
-                java.util.Map.of("reason", evt.getVerifiedAt() != null ? "already_verified" : "expired"));
+                java.util.Map.of("reason", expired ? "expired" : "already_verified"));
             return false;
         }
-        evt.setVerifiedAt(Instant.now());
-        tokenRepository.save(evt);
 
         Patient patient = evt.getPatient();
         patient.setAccountStatus("active");
@@ -66,29 +111,16 @@ public class EmailVerificationService {
         return true;
     }
 
-    @Transactional
-    public boolean resend(String email, String baseUrl) {
-        Optional<Patient> patientOpt = patientRepository.findByEmail(email);
-        if (patientOpt.isEmpty()) return false;
-        Patient patient = patientOpt.get();
-
-        // Limit to maximum 3 resends per 24 hours (fresh tokens)
-        Instant cutoff = Instant.now().minus(Duration.ofHours(24));
-        long createdLast24h = tokenRepository.countByPatientAndCreatedAtAfter(patient, cutoff);
-        // First issuance may have happened already; allow up to 3 resends -> total up to 4 tokens in 24h
-        if (createdLast24h >= 4) {
+    // Counted on the writer, one unit at a time, so concurrent resends cannot both see room under the limit
+    private boolean reissue(Patient patient, String baseUrl) {
+        // At most 3 resends per patient in any 24 hours, on top of the first issuance
+        Instant cutoff = Instant.now().minus(RESEND_WINDOW);
+        if (tokenRepository.countByPatientAndCreatedAtAfter(patient, cutoff) > MAX_RESENDS) {
             auditService.log("verification_resend", patient, null, null, false, java.util.Map.of("reason", "limit_exceeded"));
             return false;
         }
-
-        issueVerification(patient, baseUrl);
+        issue(patient, baseUrl);
         auditService.log("verification_resend", patient, null, null, true, java.util.Map.of());
         return true;
     }
-
-    @Transactional(readOnly = true)
-    public Optional<EmailVerificationToken> latestToken(Patient patient) {
-        List<EmailVerificationToken> tokens = tokenRepository.findByPatient(patient);
-        return tokens.stream().max(Comparator.comparing(EmailVerificationToken::getCreatedAt));
-    }
 }
@@ -0,0 +1,16 @@
+package com.example.forgetpass.services;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/** Thrown when the password hashing pool is saturated or a hash does not finish in time. */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class HashingUnavailableException extends RuntimeException {
+    public HashingUnavailableException(String message) {
+        super(message);
+    }
+
+    public HashingUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
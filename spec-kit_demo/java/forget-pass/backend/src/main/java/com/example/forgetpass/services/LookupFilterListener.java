@@ -0,0 +1,39 @@
+package com.example.forgetpass.services;
+
+import com.example.forgetpass.domain.EmailVerificationToken;
+import com.example.forgetpass.domain.PasswordResetToken;
+import com.example.forgetpass.domain.Patient;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hibernate post-insert listener that adds each inserted patient's email or token id to
+ * {@link LookupFilterService}. Runs once the INSERT has been executed and before the transaction commits.
+ * Registered the same way as {@link TokenExpiryListener}.
+ */
+@Component
+public class LookupFilterListener implements PostInsertEventListener {
+    private final LookupFilterService lookupFilter;
+
+    public LookupFilterListener(LookupFilterService lookupFilter) {
+        this.lookupFilter = lookupFilter;
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Patient p) {
+            lookupFilter.emailAdded(p.getEmail());
+        } else if (event.getEntity() instanceof PasswordResetToken t) {
+            lookupFilter.tokenAdded(t.getTokenId());
+        } else if (event.getEntity() instanceof EmailVerificationToken t) {
+            lookupFilter.tokenAdded(t.getTokenId());
+        }
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.forgetpass.services;
+
+import com.example.forgetpass.repositories.EmailVerificationTokenRepository;
+import com.example.forgetpass.repositories.PasswordResetTokenRepository;
+import com.example.forgetpass.repositories.PatientRepository;
+import com.example.forgetpass.repositories.TokenExpiry;
+import com.example.forgetpass.util.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * In-memory Bloom filters in front of the email and token lookups, so that unknown emails and token ids
+ * (stale links, guessing) are answered without a SQLite read. A false answer is definite; a true one
+ * means "look in the database". Entries are added by {@link LookupFilterListener} when a patient or
+ * token row is inserted, before the row is committed, so a row is never visible without being in the
+ * filter. Until the filters have been seeded from the database on the first tick every lookup goes to
+ * the database.
+ * <p>
+ * Emails are never deleted, so one filter holds them all. Tokens are deleted as they expire, which a
+ * Bloom filter cannot do; instead new token ids go into the current generation and lookups check the
+ * current and the previous one. Every {@code generation-ms} the previous generation is dropped, so a
+ * token id is kept for at least one full generation, which must be at least the longest token lifetime.
+ * <p>
+ * Callers return exactly what they would for a row that is not there: the response is the same and
+ * the work skipped is only the index probe that would have come back empty.
+ * <p>
+ * The filters only see rows inserted through this process. A row written by another process (a second
+ * instance, a script, a restore) is missing until the next restart and would be answered as absent, so
+ * the filter is off by default and only correct when this process is the database's only writer.
+ */
+@Service
+public class LookupFilterService {
+    private static final Logger log = LoggerFactory.getLogger(LookupFilterService.class);
+
+    // Email verification tokens, the longest-lived ones
+    static final Duration LONGEST_TOKEN_LIFETIME = Duration.ofHours(24);
+
+    private static final UUID FIRST_ID = new UUID(0, 0);
+    private static final int PAGE_SIZE = 1000;
+
+    private final PatientRepository patientRepository;
+    private final PasswordResetTokenRepository passwordResetTokenRepository;
+    private final EmailVerificationTokenRepository emailVerificationTokenRepository;
+    private final TransactionTemplate readTx;
+    private final boolean enabled;
+    private final long expectedTokens;
+    private final double fpp;
+    private final BloomFilter emails;
+    private final Counter skippedEmails;
+    private final Counter skippedTokens;
+
+    private volatile BloomFilter currentTokens;
+    private volatile BloomFilter previousTokens;
+    private volatile boolean seeded;
+
+    @Autowired
+    public LookupFilterService(PatientRepository patientRepository,
+                               PasswordResetTokenRepository passwordResetTokenRepository,
+                               EmailVerificationTokenRepository emailVerificationTokenRepository,
+                               PlatformTransactionManager transactionManager,
+                               MeterRegistry meterRegistry,
+                               @Value("${forgetpass.lookup-filter.enabled:false}") boolean enabled,
+                               @Value("${forgetpass.lookup-filter.expected-emails:1000000}") long expectedEmails,
+                               @Value("${forgetpass.lookup-filter.expected-tokens:1000000}") long expectedTokens,
+                               @Value("${forgetpass.lookup-filter.fpp:0.01}") double fpp,
+                               @Value("${forgetpass.lookup-filter.generation-ms:86400000}") long generationMillis) {
+        if (enabled && generationMillis < LONGEST_TOKEN_LIFETIME.toMillis()) {
+            throw new IllegalArgumentException("forgetpass.lookup-filter.generation-ms must be at least the longest token lifetime ("
+                + LONGEST_TOKEN_LIFETIME.toMillis() + " ms)");
+        }
+        this.patientRepository = patientRepository;
+        this.passwordResetTokenRepository = passwordResetTokenRepository;
+        this.emailVerificationTokenRepository = emailVerificationTokenRepository;
+        this.readTx = transactionManager == null ? null : readOnly(transactionManager);
+        this.enabled = enabled;
+        this.expectedTokens = expectedTokens;
+        this.fpp = fpp;
+        this.emails = enabled ? new BloomFilter(expectedEmails, fpp) : null;
+        this.currentTokens = enabled ? new BloomFilter(expectedTokens, fpp) : null;
+        this.previousTokens = enabled ? new BloomFilter(expectedTokens, fpp) : null;
+
+        this.skippedEmails = Counter.builder("forgetpass.lookup-filter.skipped").tag("filter", "emails")
+            .description("Lookups answered as not found without reading the database").register(meterRegistry);
+        this.skippedTokens = Counter.builder("forgetpass.lookup-filter.skipped").tag("filter", "tokens")
+            .description("Lookups answered as not found without reading the database").register(meterRegistry);
+        if (enabled) {
+            Gauge.builder("forgetpass.lookup-filter.bytes", this, s -> s.emails.sizeInBytes())
+                .tag("filter", "emails").baseUnit("bytes").register(meterRegistry);
+            Gauge.builder("forgetpass.lookup-filter.bytes", this, s -> s.currentTokens.sizeInBytes() + s.previousTokens.sizeInBytes())
+                .tag("filter", "tokens").baseUnit("bytes").register(meterRegistry);
+            Gauge.builder("forgetpass.lookup-filter.fpp", this, LookupFilterService::emailFpp)
+                .tag("filter", "emails").register(meterRegistry);
+            Gauge.builder("forgetpass.lookup-filter.fpp", this, LookupFilterService::tokenFpp)
+                .tag("filter", "tokens").register(meterRegistry);
+        }
+    }
+
+    /** Every lookup goes to the database. */
+    public static LookupFilterService disabled() {
+        return new LookupFilterService(null, null, null, null, new SimpleMeterRegistry(), false, 1, 1, 0.5, 0);
+    }
+
+    /** False only if no patient has registered with {@code email}. */
+    public boolean mayBeRegistered(String email) {
+        if (!seeded || email == null || emails.mightContain(email)) return true;
+        skippedEmails.increment();
+        return false;
+    }
+
+    /** False only if no token with this id has been stored within the last generation. */
+    public boolean mayBeLiveToken(UUID tokenId) {
+        if (!seeded || currentTokens.mightContain(tokenId) || previousTokens.mightContain(tokenId)) return true;
+        skippedTokens.increment();
+        return false;
+    }
+
+    public void emailAdded(String email) {
+        if (enabled && email != null) emails.put(email);
+    }
+
+    public void tokenAdded(UUID tokenId) {
+        if (enabled && tokenId != null) currentTokens.put(tokenId);
+    }
+
+    /** Seeds the filters on the first run; every later run starts a new token generation. */
+    @Scheduled(fixedDelayString = "${forgetpass.lookup-filter.generation-ms:86400000}")
+    public void rotate() {
+        if (!enabled) return;
+        if (!seeded) {
+            seed();
+            return;
+        }
+        // A put racing with the swap lands in what becomes the previous generation, which is still checked
+        previousTokens = currentTokens;
+        currentTokens = new BloomFilter(expectedTokens, fpp);
+        log.info("LookupFilterService: new token generation; emails fpp now {}", String.format("%.4f", emailFpp()));
+    }
+
+    public double emailFpp() {
+        return enabled ? emails.expectedFpp() : 1.0;
+    }
+
+    public double tokenFpp() {
+        return enabled ? 1 - (1 - currentTokens.expectedFpp()) * (1 - previousTokens.expectedFpp()) : 1.0;
+    }
+
+    private void seed() {
+        long start = System.nanoTime();
+        Instant now = Instant.now();
+        int emailCount = 0;
+        String after = "";
+        while (true) {
+            String from = after;
+            List<String> page = readTx.execute(s -> patientRepository.findEmailsAfter(from, Pageable.ofSize(PAGE_SIZE)));
+            page.forEach(emails::put);
+            emailCount += page.size();
+            if (page.size() < PAGE_SIZE) break;
+            after = page.get(page.size() - 1);
+        }
+        int tokenCount = seedTokens(id -> passwordResetTokenRepository.findUnexpiredAfter(now, id, Pageable.ofSize(PAGE_SIZE)))
+            + seedTokens(id -> emailVerificationTokenRepository.findUnexpiredAfter(now, id, Pageable.ofSize(PAGE_SIZE)));
+        seeded = true;
+        log.info("LookupFilterService: seeded {} emails and {} tokens in {} ms ({} KiB, fpp emails {} tokens {})",
+            emailCount, tokenCount, (System.nanoTime() - start) / 1_000_000,
+            (emails.sizeInBytes() + 2 * currentTokens.sizeInBytes()) / 1024,
+            String.format("%.4f", emailFpp()), String.format("%.4f", tokenFpp()));
+    }
+
+    private int seedTokens(Function<UUID, List<TokenExpiry>> pageAfter) {
+        int count = 0;
+        UUID after = FIRST_ID;
+        while (true) {
+            UUID from = after;
+            List<TokenExpiry> page = readTx.execute(s -> pageAfter.apply(from));
+            for (TokenExpiry t : page) currentTokens.put(t.getTokenId());
+            count += page.size();
+            if (page.size() < PAGE_SIZE) return count;
+            after = page.get(page.size() - 1).getTokenId();
+        }
+    }
+
+    private static TransactionTemplate readOnly(PlatformTransactionManager transactionManager) {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        return tx;
+    }
+}
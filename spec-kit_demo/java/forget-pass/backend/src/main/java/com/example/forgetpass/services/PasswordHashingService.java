@@ -0,0 +1,138 @@
+package com.example.forgetpass.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs BCrypt work on a dedicated CPU-sized pool with a bounded queue so request threads are not
+ * pinned by hashing during spikes. Work that cannot be queued is rejected immediately with
+ * {@link HashingUnavailableException} (503); blocking callers give up after the configured timeout.
+ */
+public class PasswordHashingService implements PasswordEncoder {
+    private static final Logger log = LoggerFactory.getLogger(PasswordHashingService.class);
+
+    private final PasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final Duration timeout;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Timer queueWaitTimer;
+    private final Counter rejected;
+    private final Counter timeouts;
+
+    public PasswordHashingService(PasswordEncoder delegate, int threads, int queueCapacity, Duration timeout, MeterRegistry registry) {
+        this.delegate = delegate;
+        this.timeout = timeout;
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            r -> {
+                Thread t = new Thread(r, "bcrypt-" + seq.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+
+        this.encodeTimer = Timer.builder("forgetpass.hashing.duration").tag("op", "encode").register(registry);
+        this.matchesTimer = Timer.builder("forgetpass.hashing.duration").tag("op", "matches").register(registry);
+        this.queueWaitTimer = Timer.builder("forgetpass.hashing.queue.wait").register(registry);
+        this.rejected = Counter.builder("forgetpass.hashing.rejected").register(registry);
+        this.timeouts = Counter.builder("forgetpass.hashing.timeouts").register(registry);
+        Gauge.builder("forgetpass.hashing.queue.depth", executor, e -> e.getQueue().size()).register(registry);
+        Gauge.builder("forgetpass.hashing.active", executor, ThreadPoolExecutor::getActiveCount).register(registry);
+    }
+
+    public CompletableFuture<String> encodeAsync(CharSequence rawPassword) {
+        return submit(encodeTimer, () -> delegate.encode(rawPassword));
+    }
+
+    public CompletableFuture<Boolean> matchesAsync(CharSequence rawPassword, String encodedPassword) {
+        return submit(matchesTimer, () -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return await(encodeAsync(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return await(matchesAsync(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    public int queueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /** Waits for hashing work with the configured per-caller timeout, cancelling it on expiry. */
+    public <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            future.cancel(false);
+            timeouts.increment();
+            throw new HashingUnavailableException("password hashing timed out", ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            future.cancel(false);
+            throw new HashingUnavailableException("interrupted while waiting for password hashing", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    // Cancelling the returned future before a worker picks the task up skips the hash entirely.
+    private <T> CompletableFuture<T> submit(Timer timer, Callable<T> work) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        long enqueuedAt = System.nanoTime();
+        Runnable task = () -> {
+            if (future.isDone()) return;
+            long start = System.nanoTime();
+            queueWaitTimer.record(start - enqueuedAt, TimeUnit.NANOSECONDS);
+            T result;
+            try {
+                result = work.call();
+            } catch (Throwable t) {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                future.completeExceptionally(t);
+                return;
+            }
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            future.complete(result);
+        };
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            rejected.increment();
+            log.warn("Password hashing rejected: queue full ({} waiting)", executor.getQueue().size());
+            future.completeExceptionally(new HashingUnavailableException("password hashing capacity exceeded", ex));
+        }
+        return future;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.forgetpass.services;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Checks a candidate password against stored hashes concurrently on the hashing pool and returns
+ * as soon as one matches. Checks still waiting in the queue are cancelled and never hashed.
+ */
+@Component
+public class PasswordHistoryVerifier {
+    private final PasswordHashingService hashingService;
+
+    public PasswordHistoryVerifier(PasswordHashingService hashingService) {
+        this.hashingService = hashingService;
+    }
+
+    /** Index of a hash in {@code hashes} that matches {@code rawPassword}, or empty if none does. */
+    public OptionalInt findMatch(CharSequence rawPassword, List<String> hashes) {
+        List<CompletableFuture<Boolean>> checks = new ArrayList<>(hashes.size());
+        CompletableFuture<Integer> firstMatch = new CompletableFuture<>();
+        for (int i = 0; i < hashes.size(); i++) {
+            String hash = hashes.get(i);
+            if (hash == null || hash.isBlank()) {
+                checks.add(CompletableFuture.completedFuture(false));
+                continue;
+            }
+            int index = i;
+            CompletableFuture<Boolean> check = hashingService.matchesAsync(rawPassword, hash);
+            check.thenAccept(matched -> {
+                if (matched) firstMatch.complete(index);
+            });
+            checks.add(check);
+        }
+        // Dependents may run in any order, so re-scan the results instead of assuming thenAccept ran first
+        CompletableFuture.allOf(checks.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, ex) -> {
+            for (int i = 0; i < checks.size(); i++) {
+                CompletableFuture<Boolean> check = checks.get(i);
+                if (check.isDone() && !check.isCompletedExceptionally() && check.join()) {
+                    firstMatch.complete(i);
+                    return;
+                }
+            }
+            if (ex != null) {
+                firstMatch.completeExceptionally(ex);
+            } else {
+                firstMatch.complete(-1);
+            }
+        });
+        try {
+            int index = hashingService.await(firstMatch);
+            return index >= 0 ? OptionalInt.of(index) : OptionalInt.empty();
+        } finally {
+            checks.forEach(c -> c.cancel(false));
+        }
+    }
+}
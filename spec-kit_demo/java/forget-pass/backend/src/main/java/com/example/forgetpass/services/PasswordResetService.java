@@ -13,61 +13,63 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.UUID;
 
 @Service
 public class PasswordResetService {
+    private static final int MAX_RESETS = 3;
+    private static final Duration RESET_WINDOW = Duration.ofHours(1);
+
     private final PatientRepository patientRepository;
     private final PasswordResetTokenRepository tokenRepository;
     private final PatientCredentialRepository credentialRepository;
     private final PasswordEncoder passwordEncoder;
+    private final PasswordHistoryVerifier passwordHistoryVerifier;
     private final EmailService emailService;
     private final PasswordValidationService passwordValidationService;
     private final AuditService auditService;
+    private final WriteLane writeLane;
+    private final TokenSigner tokenSigner;
+    private final LookupFilterService lookupFilter;
+    private final TokenLookup<PasswordResetToken> tokenLookup;
 
     public PasswordResetService(PatientRepository patientRepository,
                                 PasswordResetTokenRepository tokenRepository,
                                 PatientCredentialRepository credentialRepository,
                                 PasswordEncoder passwordEncoder,
+                                PasswordHistoryVerifier passwordHistoryVerifier,
                                 EmailService emailService,
                                 PasswordValidationService passwordValidationService,
-                                AuditService auditService) {
+                                AuditService auditService,
+                                WriteLane writeLane,
+                                TokenSigner tokenSigner,
+                                LookupFilterService lookupFilter) {
         this.patientRepository = patientRepository;
         this.tokenRepository = tokenRepository;
         this.credentialRepository = credentialRepository;
         this.passwordEncoder = passwordEncoder;
+        this.passwordHistoryVerifier = passwordHistoryVerifier;
         this.emailService = emailService;
         this.passwordValidationService = passwordValidationService;
         this.auditService = auditService;
+        this.writeLane = writeLane;
+        this.tokenSigner = tokenSigner;
+        this.lookupFilter = lookupFilter;
+        this.tokenLookup = new TokenLookup<>(TokenSigner.Purpose.PASSWORD_RESET, tokenRepository, tokenRepository::findByTokenHash,
+            PasswordResetToken::getTokenHash, tokenSigner, lookupFilter);
     }
 
-    @Transactional
     public void requestReset(String email, String baseUrl) {
-        Optional<Patient> patientOpt = patientRepository.findByEmail(email);
+        // An email the filter has never seen gets the same treatment as one the database does not have
+        Optional<Patient> patientOpt = lookupFilter.mayBeRegistered(email)
+            ? patientRepository.findByEmail(email) : Optional.empty();
         if (patientOpt.isPresent()) {
             Patient patient = patientOpt.get();
-            // Invalidate previous tokens
-            List<PasswordResetToken> active = tokenRepository.findByPatientAndUsedAtIsNull(patient);
-            for (PasswordResetToken t : active) {
-                t.setUsedAt(Instant.now());
-            }
-            tokenRepository.saveAll(active);
-
-            String token = TokenUtil.generateToken();
-            String hash = TokenUtil.sha256(token);
-            PasswordResetToken prt = new PasswordResetToken();
-            prt.setPatient(patient);
-            prt.setTokenHash(hash);
-            prt.setExpiresAt(Instant.now().plus(Duration.ofHours(1)));
-            // IP/User-Agent no longer captured in rollback
-            tokenRepository.save(prt);
-
-            String link = baseUrl + "/reset?token=" + token;
-            emailService.sendPasswordResetEmail(patient.getEmail(), link);
-
-            auditService.log("password_reset_request", patient, null, null, true,
-                java.util.Map.of("invalidatedTokens", active.size()));
+            writeLane.executeWithoutResult(() -> issueResetToken(patient, baseUrl));
         }
         // Log generic request to prevent enumeration (no patient linkage)
         if (patientOpt.isEmpty()) {
@@ -77,22 +79,55 @@ public class PasswordResetService {
         // Always succeed with generic message to prevent enumeration
     }
 
-    @Transactional
+    // Counted on the writer, one unit at a time, so concurrent requests cannot both see room under the limit
+    private void issueResetToken(Patient patient, String baseUrl) {
+        // At most 3 reset emails per patient in any hour; the caller gets the same generic response either way
+        if (tokenRepository.countByPatientAndCreatedAtAfter(patient, Instant.now().minus(RESET_WINDOW)) >= MAX_RESETS) {
+            auditService.log("password_reset_request", patient, null, null, false,
+                java.util.Map.of("reason", "rate_limited"));
+            return;
+        }
+        // Invalidate previous tokens
+        int invalidated = tokenRepository.invalidateActive(patient, Instant.now());
+
+        PasswordResetToken prt = new PasswordResetToken();
+        prt.setTokenId(UUID.randomUUID());
+        prt.setPatient(patient);
+        prt.setExpiresAt(Instant.now().plus(Duration.ofHours(1)));
+        String token;
+        if (tokenSigner.issuesSignedTokens()) {
+            token = tokenSigner.sign(new TokenSigner.Claims(TokenSigner.Purpose.PASSWORD_RESET, prt.getTokenId(),
+                patient.getPatientId(), prt.getExpiresAt()));
+            prt.setTokenHash(TokenUtil.sha256(token));
+        } else {
+            String verifier = TokenUtil.generateToken();
+            token = TokenUtil.selectorToken(prt.getTokenId(), verifier);
+            prt.setTokenHash(TokenUtil.sha256(verifier));
+        }
+        // IP/User-Agent no longer captured in rollback
+        tokenRepository.save(prt);
+
+        String link = baseUrl + "/reset?token=" + token;
+        emailService.sendPasswordResetEmail(patient.getEmail(), link);
+
+        auditService.log("password_reset_request", patient, null, null, true,
+            java.util.Map.of("invalidatedTokens", invalidated));
+    }
+
+    @Transactional(readOnly = true)
     public boolean validateToken(String token) {
-        String hash = TokenUtil.sha256(token);
-        Optional<PasswordResetToken> opt = tokenRepository.findByTokenHash(hash);
-        return opt.filter(t -> t.getUsedAt() == null && t.getExpiresAt().isAfter(Instant.now())).isPresent();
+        return tokenLookup.find(token).filter(t -> t.getUsedAt() == null && t.getExpiresAt().isAfter(Instant.now())).isPresent();
     }
 
-    @Transactional
+    // Lookups, the reuse check and the new hash run on the caller's thread; only the writes go
+    // through the write lane, so the writer never waits on BCrypt
     public boolean confirm(String token, String newPassword) {
         if (!passwordValidationService.meetsPolicy(newPassword)) {
             auditService.log("password_reset_confirm", null, null, null, false,
                 java.util.Map.of("reason", "weak_password"));
             throw new IllegalArgumentException("weak_password");
         }
-        String hash = TokenUtil.sha256(token);
-        Optional<PasswordResetToken> opt = tokenRepository.findByTokenHash(hash);
+        Optional<PasswordResetToken> opt = tokenLookup.find(token);
         if (opt.isEmpty()) {
             auditService.log("password_reset_confirm", null, null, null, false,
                 java.util.Map.of("reason", "token_missing"));
@@ -113,41 +148,41 @@ public class PasswordResetService {
             return false;
         }
         PatientCredential cred = credOpt.get();
-        // Prevent reuse of last 5 passwords
-        String newHashCandidate = passwordEncoder.encode(newPassword);
-        // Compare raw password by matching with stored hashes
-        for (String prevHash : cred.getPreviousPasswordHashes()) {
-            if (passwordEncoder.matches(newPassword, prevHash)) {
-                auditService.log("password_reset_confirm", patient, null, null, false,
-                    java.util.Map.of("reason", "password_reuse"));
-                throw new IllegalArgumentException("weak_password_or_reuse");
-            }
-        }
-        // Also ensure not equal to current hash
-        if (passwordEncoder.matches(newPassword, cred.getPasswordHash())) {
+        // Prevent reuse of the current and last 5 passwords; checks run concurrently and stop at the first match
+        List<String> knownHashes = new ArrayList<>();
+        knownHashes.add(cred.getPasswordHash());
+        knownHashes.addAll(cred.getPreviousPasswordHashes());
+        OptionalInt reused = passwordHistoryVerifier.findMatch(newPassword, knownHashes);
+        if (reused.isPresent()) {
             auditService.log("password_reset_confirm", patient, null, null, false,
-                java.util.Map.of("reason", "password_reuse_current"));
+                java.util.Map.of("reason", reused.getAsInt() == 0 ? "password_reuse_current" : "password_reuse"));
             throw new IllegalArgumentException("weak_password_or_reuse");
         }
+        // Only pay for the new hash once the reuse check has passed
+        String newHashCandidate = passwordEncoder.encode(newPassword);
 
         // Save previous current hash into history and set new password
         cred.pushPreviousPasswordHash(cred.getPasswordHash(), 5);
         cred.setPasswordHash(newHashCandidate);
         cred.setPasswordChangedAt(Instant.now());
-        credentialRepository.save(cred);
-
-        // Invalidate this and any other active tokens
-        t.setUsedAt(Instant.now());
-        tokenRepository.save(t);
-        List<PasswordResetToken> others = tokenRepository.findByPatientAndUsedAtIsNull(patient);
-        for (PasswordResetToken ot : others) {
-            ot.setUsedAt(Instant.now());
-        }
-        tokenRepository.saveAll(others);
 
-        emailService.sendPasswordChangedConfirmation(patient.getEmail());
-        auditService.log("password_reset_confirm", patient, null, null, true,
-            java.util.Map.of());
-        return true;
+        return writeLane.execute(() -> {
+            // Claim the token first: of any number of concurrent confirms only one updates the row,
+            // and the rest leave the credential alone
+            if (tokenRepository.consume(t.getTokenId(), Instant.now()) == 0) {
+                auditService.log("password_reset_confirm", patient, null, null, false,
+                    java.util.Map.of("reason", "token_used"));
+                return false;
+            }
+            credentialRepository.save(cred);
+
+            // Invalidate any other active tokens
+            tokenRepository.invalidateActive(patient, Instant.now());
+
+            emailService.sendPasswordChangedConfirmation(patient.getEmail());
+            auditService.log("password_reset_confirm", patient, null, null, true,
+                java.util.Map.of());
+            return true;
+        });
     }
 }
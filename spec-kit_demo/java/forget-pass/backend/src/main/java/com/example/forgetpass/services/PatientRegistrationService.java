@@ -4,12 +4,14 @@ import com.example.forgetpass.domain.Patient;
 import com.example.forgetpass.domain.PatientCredential;
 import com.example.forgetpass.repositories.PatientRepository;
 import com.example.forgetpass.repositories.PatientCredentialRepository;
+import org.sqlite.SQLiteErrorCode;
+import org.sqlite.SQLiteException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
-import java.util.Optional;
 
 @Service
 public class PatientRegistrationService {
@@ -21,6 +23,8 @@ public class PatientRegistrationService {
     private final PasswordValidationService passwordValidationService;
     private final EmailVerificationService emailVerificationService;
     private final AuditService auditService;
+    private final WriteLane writeLane;
+    private final LookupFilterService lookupFilter;
 
     public PatientRegistrationService(PatientRepository patientRepository,
                                       PatientCredentialRepository credentialRepository,
@@ -28,7 +32,9 @@ public class PatientRegistrationService {
                                       EmailValidationService emailValidationService,
                                       PasswordValidationService passwordValidationService,
                                       EmailVerificationService emailVerificationService,
-                                      AuditService auditService) {
+                                      AuditService auditService,
+                                      WriteLane writeLane,
+                                      LookupFilterService lookupFilter) {
         this.patientRepository = patientRepository;
         this.credentialRepository = credentialRepository;
         this.passwordEncoder = passwordEncoder;
@@ -36,10 +42,37 @@ public class PatientRegistrationService {
         this.passwordValidationService = passwordValidationService;
         this.emailVerificationService = emailVerificationService;
         this.auditService = auditService;
+        this.writeLane = writeLane;
+        this.lookupFilter = lookupFilter;
     }
 
-    @Transactional
     public Patient register(String firstName, String lastName, String email, String phone, LocalDate dob, String rawPassword) {
+        String passwordHash = checkAndHash(email, dob, rawPassword);
+        return writeLane.execute(() -> insert(firstName, lastName, email, phone, dob, passwordHash));
+    }
+
+    public Patient registerAndIssueVerification(String firstName, String lastName, String email, String phone, LocalDate dob, String rawPassword, String baseUrl) {
+        String passwordHash = checkAndHash(email, dob, rawPassword);
+        return writeLane.execute(() -> {
+            Patient saved = insert(firstName, lastName, email, phone, dob, passwordHash);
+            // Issue verification email and audit the registration
+            try {
+                emailVerificationService.issueVerification(saved, baseUrl);
+                auditService.log("registration", saved, null, null, true, java.util.Map.of("email", saved.getEmail()));
+            } catch (Exception ex) {
+                // Do not fail registration on email issues; log and proceed
+                auditService.log("registration", saved, null, null, false, java.util.Map.of("reason", "email_issue", "error", ex.getMessage()));
+            }
+            return saved;
+        });
+    }
+
+    /**
+     * The checks {@code register} makes before hashing: throws {@link IllegalArgumentException} for input it
+     * would reject and returns whether the email is already registered, without throwing for that, so a
+     * caller can hold the answer back until the client has proven it is not a bot.
+     */
+    public boolean precheck(String email, LocalDate dob, String rawPassword) {
         if (!emailValidationService.isValidFormat(email) || emailValidationService.isDisposable(email)) {
             throw new IllegalArgumentException("invalid_email");
         }
@@ -49,38 +82,49 @@ public class PatientRegistrationService {
         if (!passwordValidationService.meetsPolicy(rawPassword)) {
             throw new IllegalArgumentException("weak_password");
         }
-        Optional<Patient> existing = patientRepository.findByEmail(email);
-        if (existing.isPresent()) {
+        return lookupFilter.mayBeRegistered(email) && patientRepository.findByEmail(email).isPresent();
+    }
+
+    // Everything that can reject the request, then the BCrypt hash, all before the write lane is involved
+    private String checkAndHash(String email, LocalDate dob, String rawPassword) {
+        if (precheck(email, dob, rawPassword)) {
             throw new IllegalStateException("email_already_exists");
         }
+        return passwordEncoder.encode(rawPassword);
+    }
+
+    private Patient insert(String firstName, String lastName, String email, String phone, LocalDate dob, String passwordHash) {
         Patient p = new Patient();
         p.setFirstName(firstName);
         p.setLastName(lastName);
         p.setEmail(email);
         p.setPhoneNumber(phone);
         p.setDateOfBirth(dob);
-        Patient saved = patientRepository.save(p);
+        Patient saved;
+        try {
+            saved = patientRepository.save(p);
+            patientRepository.flush();
+        } catch (DataAccessException ex) {
+            // A registration that took the email after our precheck; email is the only unique column a new patient can hit
+            if (uniqueViolation(ex)) throw new IllegalStateException("email_already_exists", ex);
+            throw ex;
+        }
 
         PatientCredential cred = new PatientCredential();
         cred.setPatient(saved);
-        cred.setPasswordHash(passwordEncoder.encode(rawPassword));
+        cred.setPasswordHash(passwordHash);
         credentialRepository.save(cred);
 
         return saved;
     }
 
-    @Transactional
-    public Patient registerAndIssueVerification(String firstName, String lastName, String email, String phone, LocalDate dob, String rawPassword, String baseUrl) {
-        Patient saved = register(firstName, lastName, email, phone, dob, rawPassword);
-        // Issue verification email and audit the registration
-        try {
-            emailVerificationService.issueVerification(saved, baseUrl);
-            auditService.log("registration", saved, null, null, true, java.util.Map.of("email", saved.getEmail()));
-        } catch (Exception ex) {
-            // Do not fail registration on email issues; log and proceed
-            auditService.log("registration", saved, null, null, false, java.util.Map.of("reason", "email_issue", "error", ex.getMessage()));
+    // Batched inserts reach us as a JpaSystemException rather than a DataIntegrityViolationException
+    private static boolean uniqueViolation(DataAccessException ex) {
+        if (ex instanceof DataIntegrityViolationException) return true;
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof SQLiteException e && e.getResultCode() == SQLiteErrorCode.SQLITE_CONSTRAINT_UNIQUE) return true;
         }
-        return saved;
+        return false;
     }
 
     private boolean isAdult(LocalDate dob) {
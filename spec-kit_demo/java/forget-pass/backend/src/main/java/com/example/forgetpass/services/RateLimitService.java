@@ -0,0 +1,181 @@
+package com.example.forgetpass.services;
+
+import com.example.forgetpass.util.MappedSlidingWindowLimiter;
+import com.example.forgetpass.util.RateLimiter;
+import com.example.forgetpass.util.SlidingWindowLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-endpoint rate limits on top of a {@link SlidingWindowLimiter}. Policies are configured as
+ * {@code name=limit/window} pairs; a policy left out of the list is not enforced. Checks are in-memory
+ * only and approximate, so they suit the per-address limits; the per-account resend and reset limits
+ * are counted exactly from the token tables instead. Every {@code snapshot-interval-ms} idle keys are evicted and the rest are written to
+ * {@code rate_limit_windows} as one {@link WriteLane} unit (and once more on shutdown); the first run
+ * restores the last snapshot, so limits survive a restart, minus at most one interval after a crash.
+ * <p>
+ * With {@code shared-file} set the counters live in that memory-mapped file instead
+ * ({@link MappedSlidingWindowLimiter}), shared by every process on the host that maps it, and are
+ * neither snapshotted nor restored: the file outlives the processes.
+ */
+@Service
+public class RateLimitService {
+    private static final Logger log = LoggerFactory.getLogger(RateLimitService.class);
+
+    public static final String VERIFICATION_RESEND_IP = "verification-resend-ip";
+    public static final String PASSWORD_RESET_IP = "password-reset-ip";
+
+    static final String DEFAULT_POLICIES = "verification-resend-ip=20/1h,password-reset-ip=20/1h";
+
+    private final RateLimiter limiter;
+    // The in-memory limiter, when that is the one in use; only it is snapshotted
+    private final SlidingWindowLimiter memory;
+    private final JdbcTemplate jdbc;
+    private final WriteLane writeLane;
+    private final Map<String, Counter> rejected = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    private volatile boolean restored;
+
+    @Autowired
+    public RateLimitService(DataSource dataSource,
+                            WriteLane writeLane,
+                            MeterRegistry meterRegistry,
+                            @Value("${forgetpass.rate-limit.policies:" + DEFAULT_POLICIES + "}") String policies,
+                            @Value("${forgetpass.rate-limit.shared-file:}") String sharedFile,
+                            @Value("${forgetpass.rate-limit.shared-slots:65536}") int sharedSlots) {
+        this(dataSource == null ? null : new JdbcTemplate(dataSource), writeLane, meterRegistry,
+            sharedFile.isBlank() ? new SlidingWindowLimiter(parse(policies), System::currentTimeMillis)
+                : mapped(Path.of(sharedFile), parse(policies), sharedSlots));
+        log.info("RateLimitService: policies {}{}", policies, sharedFile.isBlank() ? "" : ", shared through " + sharedFile);
+    }
+
+    RateLimitService(JdbcTemplate jdbc, MeterRegistry meterRegistry, List<SlidingWindowLimiter.Policy> policies,
+                     LongSupplier clock) {
+        this(jdbc, null, meterRegistry, new SlidingWindowLimiter(policies, clock));
+    }
+
+    RateLimitService(JdbcTemplate jdbc, MeterRegistry meterRegistry, RateLimiter limiter) {
+        this(jdbc, null, meterRegistry, limiter);
+    }
+
+    /** @param writeLane null to write snapshots in a plain transaction on {@code jdbc}'s data source */
+    RateLimitService(JdbcTemplate jdbc, WriteLane writeLane, MeterRegistry meterRegistry, RateLimiter limiter) {
+        this.limiter = limiter;
+        this.memory = limiter instanceof SlidingWindowLimiter inMemory ? inMemory : null;
+        this.jdbc = memory == null ? null : jdbc;
+        this.writeLane = writeLane != null || this.jdbc == null ? writeLane
+            : WriteLane.direct(new DataSourceTransactionManager(this.jdbc.getDataSource()));
+        this.meterRegistry = meterRegistry;
+        this.restored = this.jdbc == null;
+        Gauge.builder("forgetpass.ratelimit.keys", limiter, RateLimiter::size).register(meterRegistry);
+    }
+
+    /** The default policies, in memory only. */
+    public static RateLimitService inMemory() {
+        return new RateLimitService(null, new SimpleMeterRegistry(), parse(DEFAULT_POLICIES), System::currentTimeMillis);
+    }
+
+    /** Counts a hit for {@code key} and returns true, or returns false if {@code key} is over the policy's limit. */
+    public boolean tryAcquire(String policy, String key) {
+        if (key == null || !limiter.hasPolicy(policy)) return true;
+        if (limiter.tryAcquire(policy, key)) return true;
+        rejected.computeIfAbsent(policy, p -> Counter.builder("forgetpass.ratelimit.rejected").tag("policy", p)
+            .register(meterRegistry)).increment();
+        return false;
+    }
+
+    /** Restores the last snapshot on the first run; afterwards evicts idle keys and writes a new snapshot. */
+    @Scheduled(fixedDelayString = "${forgetpass.rate-limit.snapshot-interval-ms:30000}")
+    public void snapshot() {
+        if (jdbc == null) return;
+        try {
+            if (!restored) {
+                restore();
+                return;
+            }
+            int evicted = memory.evictIdle();
+            int written = write(memory.snapshot());
+            log.debug("RateLimitService: evicted {} idle keys, saved {}", evicted, written);
+        } catch (DataAccessException ex) {
+            log.warn("RateLimitService: snapshot failed: {}", ex.toString());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (restored) snapshot();
+    }
+
+    private void restore() {
+        // On the lane as well: outside a read-only transaction this would take the writer connection
+        List<SlidingWindowLimiter.Window> saved = writeLane.execute(() -> jdbc.query(
+            "SELECT policy, limit_key, window_index, previous_count, current_count FROM rate_limit_windows",
+            (rs, i) -> new SlidingWindowLimiter.Window(rs.getString(1), rs.getString(2), rs.getLong(3), rs.getInt(4), rs.getInt(5))));
+        int live = memory.restore(saved);
+        restored = true;
+        log.info("RateLimitService: restored {} of {} saved windows", live, saved.size());
+    }
+
+    // Replaces the saved state in one transaction
+    private int write(List<SlidingWindowLimiter.Window> windows) {
+        return writeLane.execute(() -> {
+            jdbc.update("DELETE FROM rate_limit_windows");
+            jdbc.batchUpdate("INSERT INTO rate_limit_windows (policy, limit_key, window_index, previous_count, current_count) VALUES (?, ?, ?, ?, ?)",
+                windows, windows.size(), (insert, w) -> {
+                    insert.setString(1, w.policy());
+                    insert.setString(2, w.key());
+                    insert.setLong(3, w.window());
+                    insert.setInt(4, w.previous());
+                    insert.setInt(5, w.current());
+                });
+            return windows.size();
+        });
+    }
+
+    private static MappedSlidingWindowLimiter mapped(Path file, List<SlidingWindowLimiter.Policy> policies, int slots) {
+        try {
+            return new MappedSlidingWindowLimiter(file, policies, slots, System::currentTimeMillis);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not map rate limit file " + file, ex);
+        }
+    }
+
+    static List<SlidingWindowLimiter.Policy> parse(String policies) {
+        List<SlidingWindowLimiter.Policy> parsed = new ArrayList<>();
+        for (String entry : policies.split(",")) {
+            if (entry.isBlank()) continue;
+            int eq = entry.indexOf('=');
+            int slash = entry.indexOf('/', eq + 1);
+            if (eq < 0 || slash < 0) {
+                throw new IllegalStateException("forgetpass.rate-limit.policies entries must be name=limit/window, got '" + entry.trim() + "'");
+            }
+            parsed.add(new SlidingWindowLimiter.Policy(entry.substring(0, eq).trim(),
+                Integer.parseInt(entry.substring(eq + 1, slash).trim()),
+                DurationStyle.detectAndParse(entry.substring(slash + 1).trim())));
+        }
+        return parsed;
+    }
+}
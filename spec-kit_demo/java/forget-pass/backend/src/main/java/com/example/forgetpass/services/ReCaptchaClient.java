@@ -1,5 +1,8 @@
 package com.example.forgetpass.services;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface ReCaptchaClient {
-    ReCaptchaResponse verify(String secret, String token) throws Exception;
+    /** Completes with the verifier's answer, or exceptionally if there was none. */
+    CompletableFuture<ReCaptchaResponse> verify(String secret, String token);
 }
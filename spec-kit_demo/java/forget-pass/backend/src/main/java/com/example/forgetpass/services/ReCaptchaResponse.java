@@ -1,11 +1,14 @@
 package com.example.forgetpass.services;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import java.util.List;
 
 public class ReCaptchaResponse {
     private boolean success;
     private double score;
     private String action;
+    @JsonProperty("error-codes")
     private List<String> errorCodes;
 
     public boolean isSuccess() { return success; }
@@ -0,0 +1,10 @@
+package com.example.forgetpass.services;
+
+import java.io.IOException;
+
+/** Thrown by {@link DefaultReCaptchaClient} when its cap on verifications in flight is reached. */
+public class ReCaptchaSaturatedException extends IOException {
+    public ReCaptchaSaturatedException(String message) {
+        super(message);
+    }
+}
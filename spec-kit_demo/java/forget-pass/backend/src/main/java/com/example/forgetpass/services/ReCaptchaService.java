@@ -4,6 +4,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 @Service
 public class ReCaptchaService {
     private static final Logger log = LoggerFactory.getLogger(ReCaptchaService.class);
@@ -34,27 +37,54 @@ public class ReCaptchaService {
         return 0.5;
     }
 
+    /** Blocking form of {@link #validateAsync}; a saturated verifier surfaces as a {@code CompletionException}. */
     public boolean validate(String token, String action) {
+        return validateAsync(token, action).join();
+    }
+
+    /**
+     * Completes with whether the token passes; a failed verification is a false. Only a
+     * {@link ReCaptchaSaturatedException} completes it exceptionally, since that is the server's own cap
+     * and says nothing about the client. Cancelling the returned future abandons the verification.
+     */
+    public CompletableFuture<Boolean> validateAsync(String token, String action) {
         String secret = resolveSecret();
         if (secret.isBlank()) {
             log.info("reCAPTCHA secret not set — skipping validation (dev)");
-            return true;
+            return CompletableFuture.completedFuture(true);
         }
+        CompletableFuture<ReCaptchaResponse> verification;
         try {
-            ReCaptchaResponse resp = client.verify(secret, token);
-            if (!resp.isSuccess()) {
-                log.warn("reCAPTCHA failed: {}", resp.getErrorCodes());
-                return false;
-            }
-            if (!action.equals(resp.getAction())) {
-                log.warn("reCAPTCHA action mismatch: expected={}, got={}", action, resp.getAction());
-                return false;
-            }
-            double minScore = resolveMinScore();
-            return resp.getScore() >= minScore;
-        } catch (Exception ex) {
-            log.warn("reCAPTCHA verification error: {}", ex.getMessage());
+            verification = client.verify(secret, token);
+        } catch (RuntimeException ex) {
+            verification = CompletableFuture.failedFuture(ex);
+        }
+        CompletableFuture<ReCaptchaResponse> pending = verification;
+        CompletableFuture<Boolean> result = verification.handle((resp, ex) -> {
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            if (cause instanceof ReCaptchaSaturatedException) throw new CompletionException(cause);
+            return verdict(resp, cause, action);
+        });
+        result.whenComplete((ok, ex) -> {
+            if (result.isCancelled()) pending.cancel(true);
+        });
+        return result;
+    }
+
+    private boolean verdict(ReCaptchaResponse resp, Throwable error, String action) {
+        if (error != null) {
+            log.warn("reCAPTCHA verification error: {}", error.getMessage());
+            return false;
+        }
+        if (!resp.isSuccess()) {
+            log.warn("reCAPTCHA failed: {}", resp.getErrorCodes());
+            return false;
+        }
+        if (!action.equals(resp.getAction())) {
+            log.warn("reCAPTCHA action mismatch: expected={}, got={}", action, resp.getAction());
             return false;
         }
+        double minScore = resolveMinScore();
+        return resp.getScore() >= minScore;
     }
 }
@@ -0,0 +1,117 @@
+package com.example.forgetpass.services;
+
+import com.sendgrid.Client;
+import com.sendgrid.Request;
+import com.sendgrid.Response;
+import com.sendgrid.SendGrid;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived HTTP transport for SendGrid: one pooled keep-alive client shared by every send, with a
+ * cap on requests in flight so a slow API cannot tie up every sender thread. SendGrid clients handed
+ * out by {@link #newClient(String)} all reuse the same connection pool.
+ */
+public class SendGridTransport implements Closeable {
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final Duration acquireTimeout;
+    private final String host;
+    private final boolean plainHttp;
+
+    /**
+     * @param host      API host, {@code host[:port]}
+     * @param plainHttp use http instead of https (local stub servers only)
+     */
+    public SendGridTransport(String host, boolean plainHttp, int maxConnections, int maxInFlight,
+                             Duration connectTimeout, Duration socketTimeout, Duration idleTimeout,
+                             Duration acquireTimeout, MeterRegistry registry) {
+        this.host = host;
+        this.plainHttp = plainHttp;
+        this.maxInFlight = maxInFlight;
+        this.acquireTimeout = acquireTimeout;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.connectionManager = new PoolingHttpClientConnectionManager(5, TimeUnit.MINUTES);
+        connectionManager.setMaxTotal(maxConnections);
+        // Everything goes to a single host, so one route may use the whole pool
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        connectionManager.setValidateAfterInactivity(2000);
+        RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectTimeout((int) connectTimeout.toMillis())
+            .setSocketTimeout((int) socketTimeout.toMillis())
+            .setConnectionRequestTimeout((int) acquireTimeout.toMillis())
+            .build();
+        this.httpClient = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            .evictExpiredConnections()
+            .evictIdleConnections(idleTimeout.toMillis(), TimeUnit.MILLISECONDS)
+            .build();
+
+        Gauge.builder("forgetpass.email.transport.connections.leased", this, t -> t.poolStats().getLeased()).register(registry);
+        Gauge.builder("forgetpass.email.transport.connections.available", this, t -> t.poolStats().getAvailable()).register(registry);
+        Gauge.builder("forgetpass.email.transport.connections.pending", this, t -> t.poolStats().getPending()).register(registry);
+        Gauge.builder("forgetpass.email.transport.in.flight", this, SendGridTransport::inFlight).register(registry);
+    }
+
+    public SendGrid newClient(String apiKey) {
+        SendGrid sendGrid = new SendGrid(apiKey, new Client(httpClient, plainHttp)) {
+            @Override
+            public Response api(Request request) throws IOException {
+                return send(() -> super.api(request));
+            }
+        };
+        if (host != null && !host.isBlank()) {
+            sendGrid.setHost(host);
+        }
+        return sendGrid;
+    }
+
+    public PoolStats poolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    public int inFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    private Response send(IoCall call) throws IOException {
+        boolean acquired;
+        try {
+            acquired = inFlight.tryAcquire(acquireTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted waiting for email transport", ex);
+        }
+        if (!acquired) {
+            throw new EmailTransportSaturatedException("email transport saturated (" + maxInFlight + " requests in flight)");
+        }
+        try {
+            return call.run();
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    private interface IoCall {
+        Response run() throws IOException;
+    }
+}
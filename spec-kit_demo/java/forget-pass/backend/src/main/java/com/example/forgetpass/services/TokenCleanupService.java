@@ -1,7 +1,5 @@
 package com.example.forgetpass.services;
 
-import com.example.forgetpass.domain.EmailVerificationToken;
-import com.example.forgetpass.domain.PasswordResetToken;
 import com.example.forgetpass.repositories.EmailVerificationTokenRepository;
 import com.example.forgetpass.repositories.PasswordResetTokenRepository;
 import org.slf4j.Logger;
@@ -10,55 +8,106 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.Instant;
-import java.util.List;
+import java.util.function.IntUnaryOperator;
 
+/**
+ * Removes used and expired tokens with set-based deletes of at most {@code chunk-size} rows, each its
+ * own {@link WriteLane} unit, sleeping {@code pause} between chunks so request writes queued on the lane
+ * are not held behind a run of deletes. Rows are never loaded into memory.
+ */
 @Service
 public class TokenCleanupService {
     private static final Logger log = LoggerFactory.getLogger(TokenCleanupService.class);
 
+    public record Result(long passwordResetTokens, long emailVerificationTokens, Duration duration) {
+        public long total() {
+            return passwordResetTokens + emailVerificationTokens;
+        }
+
+        public double rowsPerSecond() {
+            long nanos = duration.toNanos();
+            return nanos == 0 ? 0 : total() * 1_000_000_000.0 / nanos;
+        }
+    }
+
     private final PasswordResetTokenRepository passwordResetTokenRepository;
     private final EmailVerificationTokenRepository emailVerificationTokenRepository;
+    private final WriteLane writeLane;
 
     private final String cleanupCron;
+    private final int chunkSize;
+    private final Duration pause;
 
     public TokenCleanupService(PasswordResetTokenRepository passwordResetTokenRepository,
                                EmailVerificationTokenRepository emailVerificationTokenRepository,
-                               @Value("${forgetpass.cleanup.cron:0 0 3 * * *}") String cleanupCron) {
+                               WriteLane writeLane,
+                               @Value("${forgetpass.cleanup.cron:0 0 3 * * *}") String cleanupCron,
+                               @Value("${forgetpass.cleanup.chunk-size:5000}") int chunkSize,
+                               @Value("${forgetpass.cleanup.pause:100ms}") Duration pause) {
+        if (chunkSize <= 0) throw new IllegalArgumentException("chunkSize must be positive");
         this.passwordResetTokenRepository = passwordResetTokenRepository;
         this.emailVerificationTokenRepository = emailVerificationTokenRepository;
+        this.writeLane = writeLane;
         this.cleanupCron = cleanupCron;
+        this.chunkSize = chunkSize;
+        this.pause = pause;
     }
 
     // Run once a day at 03:00 by default, can be configured via `forgetpass.cleanup.cron`
     @Scheduled(cron = "${forgetpass.cleanup.cron:0 0 3 * * *}")
     public void cleanupExpiredAndUsedTokens() {
-        Instant now = Instant.now();
+        cleanup(Instant.now());
+    }
 
-        // Cleanup password reset tokens: remove tokens that are used or expired
-        List<PasswordResetToken> allPrt = passwordResetTokenRepository.findAll();
-        int removedPrt = 0;
-        for (PasswordResetToken t : allPrt) {
-            if (t.getUsedAt() != null || t.getExpiresAt() == null || t.getExpiresAt().isBefore(now)) {
-                passwordResetTokenRepository.delete(t);
-                removedPrt++;
-            }
-        }
-        log.info("TokenCleanupService: removed {} password reset tokens", removedPrt);
+    public Result cleanup(Instant now) {
+        long start = System.nanoTime();
 
-        // Cleanup email verification tokens: remove expired tokens
-        List<EmailVerificationToken> allEvt = emailVerificationTokenRepository.findAll();
-        int removedEvt = 0;
-        for (EmailVerificationToken t : allEvt) {
-            if (t.getExpiresAt() == null || t.getExpiresAt().isBefore(now)) {
-                emailVerificationTokenRepository.delete(t);
-                removedEvt++;
-            }
-        }
-        log.info("TokenCleanupService: removed {} email verification tokens", removedEvt);
+        // Password reset tokens: remove tokens that are used or expired
+        long removedPrt = deleteInChunks("password reset tokens",
+            limit -> passwordResetTokenRepository.deleteUsedOrExpired(now, limit));
+        // Email verification tokens: remove expired tokens
+        long removedEvt = deleteInChunks("email verification tokens",
+            limit -> emailVerificationTokenRepository.deleteExpired(now, limit));
+
+        Result result = new Result(removedPrt, removedEvt, Duration.ofNanos(System.nanoTime() - start));
+        log.info("TokenCleanupService: removed {} password reset and {} email verification tokens in {} ms ({} rows/s)",
+            removedPrt, removedEvt, result.duration().toMillis(), Math.round(result.rowsPerSecond()));
+        return result;
     }
 
     public String getCleanupCron() {
         return cleanupCron;
     }
+
+    private long deleteInChunks(String what, IntUnaryOperator deleteChunk) {
+        long start = System.nanoTime();
+        long removed = 0;
+        int chunks = 0;
+        while (true) {
+            int n = writeLane.execute(() -> deleteChunk.applyAsInt(chunkSize));
+            removed += n;
+            chunks++;
+            if (n < chunkSize) break;
+            if (!pause()) {
+                log.warn("TokenCleanupService: interrupted after removing {} {}", removed, what);
+                break;
+            }
+        }
+        log.debug("TokenCleanupService: removed {} {} in {} chunk(s), {} ms",
+            removed, what, chunks, Duration.ofNanos(System.nanoTime() - start).toMillis());
+        return removed;
+    }
+
+    private boolean pause() {
+        if (pause.isZero() || pause.isNegative()) return true;
+        try {
+            Thread.sleep(pause.toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
 }
@@ -0,0 +1,35 @@
+package com.example.forgetpass.services;
+
+import com.example.forgetpass.domain.EmailVerificationToken;
+import com.example.forgetpass.domain.PasswordResetToken;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hibernate post-insert listener that hands new tokens to {@link TokenExpiryService}. Registered by
+ * {@link com.example.forgetpass.config.EntityListenerConfig}, so the token entities do not refer to it.
+ */
+@Component
+public class TokenExpiryListener implements PostInsertEventListener {
+    private final TokenExpiryService expiryService;
+
+    public TokenExpiryListener(TokenExpiryService expiryService) {
+        this.expiryService = expiryService;
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof PasswordResetToken t) {
+            expiryService.track(TokenExpiryService.TokenTable.PASSWORD_RESET, t.getTokenId(), t.getExpiresAt());
+        } else if (event.getEntity() instanceof EmailVerificationToken t) {
+            expiryService.track(TokenExpiryService.TokenTable.EMAIL_VERIFICATION, t.getTokenId(), t.getExpiresAt());
+        }
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+}
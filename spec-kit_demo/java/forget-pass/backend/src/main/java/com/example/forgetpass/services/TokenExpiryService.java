@@ -0,0 +1,216 @@
+package com.example.forgetpass.services;
+
+import com.example.forgetpass.repositories.EmailVerificationTokenRepository;
+import com.example.forgetpass.repositories.PasswordResetTokenRepository;
+import com.example.forgetpass.repositories.TokenExpiry;
+import com.example.forgetpass.util.TimingWheel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * Deletes tokens continuously as they expire instead of waiting for the nightly sweep. Upcoming
+ * expiries are kept in a {@link TimingWheel}, seeded from the database on the first tick and fed by
+ * {@link TokenExpiryListener} as tokens are inserted. Each tick deletes due tokens in slices of
+ * {@code slice-size} rows, one {@link WriteLane} unit per slice, and never more than {@code max-deletes-per-second}
+ * overall; whatever is left carries over to the next tick. Rows that expired before startup, or that
+ * were not tracked because the index was full, are swept with the same budget.
+ */
+@Service
+public class TokenExpiryService {
+    private static final Logger log = LoggerFactory.getLogger(TokenExpiryService.class);
+
+    public enum TokenTable { PASSWORD_RESET, EMAIL_VERIFICATION }
+
+    record Expiring(TokenTable table, UUID tokenId) {}
+
+    private static final UUID FIRST_ID = new UUID(0, 0);
+
+    private final PasswordResetTokenRepository passwordResetTokenRepository;
+    private final EmailVerificationTokenRepository emailVerificationTokenRepository;
+    private final WriteLane writeLane;
+    private final LongSupplier clock;
+    private final boolean enabled;
+    private final int sliceSize;
+    private final int budgetPerTick;
+    private final int maxTracked;
+    private final TimingWheel<Expiring> wheel;
+    private final ArrayDeque<Expiring> due = new ArrayDeque<>();
+    private final Object tickLock = new Object();
+    private final Counter deletedResetTokens;
+    private final Counter deletedVerificationTokens;
+    private final Counter untracked;
+
+    private volatile boolean seeded;
+    private volatile boolean backlog = true;
+
+    @Autowired
+    public TokenExpiryService(PasswordResetTokenRepository passwordResetTokenRepository,
+                              EmailVerificationTokenRepository emailVerificationTokenRepository,
+                              WriteLane writeLane,
+                              MeterRegistry meterRegistry,
+                              @Value("${forgetpass.expiry.enabled:true}") boolean enabled,
+                              @Value("${forgetpass.expiry.tick-ms:1000}") long tickMillis,
+                              @Value("${forgetpass.expiry.wheel-size:60}") int wheelSize,
+                              @Value("${forgetpass.expiry.slice-size:100}") int sliceSize,
+                              @Value("${forgetpass.expiry.max-deletes-per-second:500}") int maxDeletesPerSecond,
+                              @Value("${forgetpass.expiry.max-tracked:1000000}") int maxTracked) {
+        this(passwordResetTokenRepository, emailVerificationTokenRepository, writeLane, meterRegistry,
+            enabled, tickMillis, wheelSize, sliceSize, maxDeletesPerSecond, maxTracked, System::currentTimeMillis);
+    }
+
+    TokenExpiryService(PasswordResetTokenRepository passwordResetTokenRepository,
+                       EmailVerificationTokenRepository emailVerificationTokenRepository,
+                       WriteLane writeLane,
+                       MeterRegistry meterRegistry,
+                       boolean enabled, long tickMillis, int wheelSize, int sliceSize,
+                       int maxDeletesPerSecond, int maxTracked, LongSupplier clock) {
+        this.passwordResetTokenRepository = passwordResetTokenRepository;
+        this.emailVerificationTokenRepository = emailVerificationTokenRepository;
+        this.writeLane = writeLane;
+        this.clock = clock;
+        this.enabled = enabled;
+        this.sliceSize = sliceSize;
+        this.budgetPerTick = (int) Math.max(1, Math.round(maxDeletesPerSecond * tickMillis / 1000.0));
+        this.maxTracked = maxTracked;
+        this.wheel = new TimingWheel<>(tickMillis, wheelSize, clock.getAsLong());
+
+        this.deletedResetTokens = Counter.builder("forgetpass.expiry.deleted").tag("table", "password_reset_tokens").register(meterRegistry);
+        this.deletedVerificationTokens = Counter.builder("forgetpass.expiry.deleted").tag("table", "email_verification_tokens").register(meterRegistry);
+        this.untracked = Counter.builder("forgetpass.expiry.untracked")
+            .description("Tokens not indexed because max-tracked was reached; removed by the sweep instead")
+            .register(meterRegistry);
+        Gauge.builder("forgetpass.expiry.tracked", this, TokenExpiryService::tracked).register(meterRegistry);
+        Gauge.builder("forgetpass.expiry.due", this, TokenExpiryService::pendingDeletes).register(meterRegistry);
+    }
+
+    /** Indexes a token so it is deleted shortly after {@code expiresAt}. */
+    public void track(TokenTable table, UUID tokenId, Instant expiresAt) {
+        if (!enabled || tokenId == null || expiresAt == null) return;
+        Expiring e = new Expiring(table, tokenId);
+        synchronized (this) {
+            if (wheel.size() >= maxTracked) {
+                untracked.increment();
+                backlog = true;
+                return;
+            }
+            if (!wheel.add(e, expiresAt.toEpochMilli())) due.add(e);
+        }
+    }
+
+    /** Runs one tick: seeds the index if needed, then deletes due tokens within the per-tick budget. */
+    @Scheduled(fixedDelayString = "${forgetpass.expiry.tick-ms:1000}")
+    public int expireDue() {
+        if (!enabled) return 0;
+        // Ticks never overlap; `this` only guards the index so track() is not held up by deletes
+        synchronized (tickLock) {
+            if (!seeded) seed();
+
+            long now = clock.getAsLong();
+            synchronized (this) {
+                wheel.advance(now, due::add);
+            }
+            Instant cutoff = Instant.ofEpochMilli(now);
+            int budget = budgetPerTick;
+            int deleted = 0;
+            while (budget > 0) {
+                List<Expiring> slice = takeDue(Math.min(budget, sliceSize));
+                if (slice.isEmpty()) break;
+                budget -= slice.size();
+                deleted += delete(slice, cutoff);
+            }
+            if (backlog && budget > 0) {
+                deleted += sweep(cutoff, budget);
+            }
+            return deleted;
+        }
+    }
+
+    public synchronized int tracked() {
+        return wheel.size();
+    }
+
+    public synchronized int pendingDeletes() {
+        return due.size();
+    }
+
+    private void seed() {
+        long start = System.nanoTime();
+        Instant now = Instant.ofEpochMilli(clock.getAsLong());
+        int pr = seed(TokenTable.PASSWORD_RESET, now);
+        int ev = seed(TokenTable.EMAIL_VERIFICATION, now);
+        seeded = true;
+        log.info("TokenExpiryService: indexed {} password reset and {} email verification tokens in {} ms",
+            pr, ev, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private int seed(TokenTable table, Instant now) {
+        int count = 0;
+        UUID after = FIRST_ID;
+        while (true) {
+            List<TokenExpiry> page = table == TokenTable.PASSWORD_RESET
+                ? passwordResetTokenRepository.findUnexpiredAfter(now, after, Pageable.ofSize(sliceSize * 10))
+                : emailVerificationTokenRepository.findUnexpiredAfter(now, after, Pageable.ofSize(sliceSize * 10));
+            for (TokenExpiry t : page) {
+                track(table, t.getTokenId(), t.getExpiresAt());
+                count++;
+            }
+            if (page.size() < sliceSize * 10) return count;
+            after = page.get(page.size() - 1).getTokenId();
+        }
+    }
+
+    private synchronized List<Expiring> takeDue(int max) {
+        List<Expiring> slice = new ArrayList<>(Math.min(max, due.size()));
+        while (slice.size() < max && !due.isEmpty()) slice.add(due.poll());
+        return slice;
+    }
+
+    private int delete(List<Expiring> slice, Instant cutoff) {
+        List<UUID> resetIds = new ArrayList<>();
+        List<UUID> verificationIds = new ArrayList<>();
+        for (Expiring e : slice) {
+            (e.table() == TokenTable.PASSWORD_RESET ? resetIds : verificationIds).add(e.tokenId());
+        }
+        try {
+            // Counted once committed: a lane unit can run more than once
+            int[] removed = writeLane.execute(() -> new int[] {
+                resetIds.isEmpty() ? 0 : passwordResetTokenRepository.deleteExpiredByIds(resetIds, cutoff),
+                verificationIds.isEmpty() ? 0 : emailVerificationTokenRepository.deleteExpiredByIds(verificationIds, cutoff)
+            });
+            deletedResetTokens.increment(removed[0]);
+            deletedVerificationTokens.increment(removed[1]);
+            return removed[0] + removed[1];
+        } catch (RuntimeException ex) {
+            // Leave them to the sweep rather than retrying the same slice every tick
+            log.warn("TokenExpiryService: failed to delete {} expired tokens: {}", slice.size(), ex.toString());
+            backlog = true;
+            return 0;
+        }
+    }
+
+    // Removes untracked used/expired rows with the chunked deletes; clears the backlog once both tables come up short
+    private int sweep(Instant cutoff, int budget) {
+        int chunk = Math.max(1, Math.min(sliceSize, budget / 2));
+        int removedPr = writeLane.execute(() -> passwordResetTokenRepository.deleteUsedOrExpired(cutoff, chunk));
+        int removedEv = writeLane.execute(() -> emailVerificationTokenRepository.deleteExpired(cutoff, chunk));
+        deletedResetTokens.increment(removedPr);
+        deletedVerificationTokens.increment(removedEv);
+        if (removedPr < chunk && removedEv < chunk) backlog = false;
+        return removedPr + removedEv;
+    }
+}
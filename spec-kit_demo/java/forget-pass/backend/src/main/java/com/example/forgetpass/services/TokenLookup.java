@@ -0,0 +1,54 @@
+package com.example.forgetpass.services;
+
+import com.example.forgetpass.util.TokenUtil;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Finds the token row behind a token a client presents, for one {@link TokenSigner.Purpose}. Signed
+ * tokens are checked without I/O and only then fetched by their id; selector.verifier tokens are
+ * fetched by primary key and the verifier checked here; tokens issued before either format are still
+ * looked up by hash until they have all expired. Ids the lookup filter has never seen are not looked up.
+ */
+final class TokenLookup<T> {
+    private final TokenSigner.Purpose purpose;
+    private final JpaRepository<T, UUID> repository;
+    private final Function<String, Optional<T>> findByTokenHash;
+    private final Function<T, String> tokenHash;
+    private final TokenSigner tokenSigner;
+    private final LookupFilterService lookupFilter;
+
+    TokenLookup(TokenSigner.Purpose purpose,
+                JpaRepository<T, UUID> repository,
+                Function<String, Optional<T>> findByTokenHash,
+                Function<T, String> tokenHash,
+                TokenSigner tokenSigner,
+                LookupFilterService lookupFilter) {
+        this.purpose = purpose;
+        this.repository = repository;
+        this.findByTokenHash = findByTokenHash;
+        this.tokenHash = tokenHash;
+        this.tokenSigner = tokenSigner;
+        this.lookupFilter = lookupFilter;
+    }
+
+    Optional<T> find(String token) {
+        if (TokenSigner.isSigned(token)) {
+            return tokenSigner.verify(token, purpose, Instant.now())
+                .filter(claims -> lookupFilter.mayBeLiveToken(claims.tokenId()))
+                .flatMap(claims -> repository.findById(claims.tokenId()))
+                .filter(t -> TokenUtil.hashMatches(token, tokenHash.apply(t)));
+        }
+        Optional<UUID> selector = TokenUtil.selector(token);
+        if (selector.isEmpty()) {
+            return findByTokenHash.apply(TokenUtil.sha256(token));
+        }
+        if (!lookupFilter.mayBeLiveToken(selector.get())) return Optional.empty();
+        return repository.findById(selector.get())
+            .filter(t -> TokenUtil.hashMatches(TokenUtil.verifier(token), tokenHash.apply(t)));
+    }
+}
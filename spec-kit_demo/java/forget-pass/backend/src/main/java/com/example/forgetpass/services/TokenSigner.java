@@ -0,0 +1,144 @@
+package com.example.forgetpass.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Self-contained tokens, {@code t1.<key id>.<claims>.<mac>}: the claims (purpose, token id, patient id,
+ * expiry) are HMAC-SHA256 signed with one key of a ring, so a tampered or expired token is turned away
+ * without touching the database. A valid signature says nothing about single use; callers still load
+ * the row by {@link Claims#tokenId()} for that. New tokens are signed with the active key; the other keys
+ * in the ring only verify, which is how keys are rotated: add the new key, make it active, and drop the
+ * old one once the longest-lived token signed with it has expired.
+ */
+public class TokenSigner {
+
+    public enum Purpose { PASSWORD_RESET, EMAIL_VERIFICATION }
+
+    public record Claims(Purpose purpose, UUID tokenId, UUID patientId, Instant expiresAt) {}
+
+    private static final String PREFIX = "t1.";
+    private static final int CLAIMS_BYTES = 1 + 16 + 16 + 8;
+    private static final int MIN_KEY_BYTES = 32;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final Map<String, ThreadLocal<Mac>> ring = new LinkedHashMap<>();
+    private final String activeKey;
+    private final boolean issue;
+    private final Map<Reason, Counter> rejected = new EnumMap<>(Reason.class);
+
+    private enum Reason { MALFORMED, UNKNOWN_KEY, BAD_SIGNATURE, WRONG_PURPOSE, EXPIRED }
+
+    /**
+     * @param keys      key id to secret (at least 32 bytes); ids may not contain '.'
+     * @param activeKey the key new tokens are signed with; must be in {@code keys} when {@code issue} is set
+     * @param issue     whether the services hand out signed tokens; signed tokens are verified either way
+     */
+    public TokenSigner(Map<String, byte[]> keys, String activeKey, boolean issue, MeterRegistry registry) {
+        keys.forEach((id, secret) -> {
+            if (id.isEmpty() || id.indexOf('.') >= 0) throw new IllegalArgumentException("Invalid signing key id '" + id + "'");
+            if (secret.length < MIN_KEY_BYTES) {
+                throw new IllegalArgumentException("Signing key '" + id + "' is shorter than " + MIN_KEY_BYTES + " bytes");
+            }
+            SecretKeySpec spec = new SecretKeySpec(secret.clone(), "HmacSHA256");
+            ring.put(id, ThreadLocal.withInitial(() -> mac(spec)));
+        });
+        if (issue && !ring.containsKey(activeKey)) {
+            throw new IllegalArgumentException("Active signing key '" + activeKey + "' is not in the key ring");
+        }
+        this.activeKey = activeKey;
+        this.issue = issue;
+        for (Reason reason : Reason.values()) {
+            rejected.put(reason, Counter.builder("forgetpass.tokens.signed.rejected")
+                .tag("reason", reason.name().toLowerCase()).register(registry));
+        }
+    }
+
+    /** No keys: nothing is issued signed and every signed token is rejected. */
+    public static TokenSigner disabled() {
+        return new TokenSigner(Map.of(), null, false, new SimpleMeterRegistry());
+    }
+
+    public boolean issuesSignedTokens() {
+        return issue;
+    }
+
+    public static boolean isSigned(String token) {
+        return token.startsWith(PREFIX);
+    }
+
+    public String sign(Claims claims) {
+        ByteBuffer payload = ByteBuffer.allocate(CLAIMS_BYTES)
+            .put((byte) claims.purpose().ordinal())
+            .putLong(claims.tokenId().getMostSignificantBits()).putLong(claims.tokenId().getLeastSignificantBits())
+            .putLong(claims.patientId().getMostSignificantBits()).putLong(claims.patientId().getLeastSignificantBits())
+            .putLong(claims.expiresAt().getEpochSecond());
+        String signed = PREFIX + activeKey + "." + ENCODER.encodeToString(payload.array());
+        return signed + "." + ENCODER.encodeToString(ring.get(activeKey).get().doFinal(bytes(signed)));
+    }
+
+    /** The token's claims if it is signed by a key in the ring, for {@code purpose}, and not expired at {@code now}. */
+    public Optional<Claims> verify(String token, Purpose purpose, Instant now) {
+        int keyEnd = token.indexOf('.', PREFIX.length());
+        int claimsEnd = keyEnd < 0 ? -1 : token.indexOf('.', keyEnd + 1);
+        if (!isSigned(token) || claimsEnd < 0) return reject(Reason.MALFORMED);
+        ThreadLocal<Mac> key = ring.get(token.substring(PREFIX.length(), keyEnd));
+        if (key == null) return reject(Reason.UNKNOWN_KEY);
+
+        byte[] payload;
+        byte[] mac;
+        try {
+            payload = DECODER.decode(token.substring(keyEnd + 1, claimsEnd));
+            mac = DECODER.decode(token.substring(claimsEnd + 1));
+        } catch (IllegalArgumentException e) {
+            return reject(Reason.MALFORMED);
+        }
+        if (!MessageDigest.isEqual(key.get().doFinal(bytes(token.substring(0, claimsEnd))), mac)) {
+            return reject(Reason.BAD_SIGNATURE);
+        }
+        if (payload.length != CLAIMS_BYTES) return reject(Reason.MALFORMED);
+
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        int ordinal = in.get();
+        if (ordinal != purpose.ordinal()) return reject(Reason.WRONG_PURPOSE);
+        Claims claims = new Claims(purpose, new UUID(in.getLong(), in.getLong()), new UUID(in.getLong(), in.getLong()),
+            Instant.ofEpochSecond(in.getLong()));
+        if (!claims.expiresAt().isAfter(now)) return reject(Reason.EXPIRED);
+        return Optional.of(claims);
+    }
+
+    private Optional<Claims> reject(Reason reason) {
+        rejected.get(reason).increment();
+        return Optional.empty();
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static Mac mac(SecretKeySpec key) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 unavailable", e);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.forgetpass.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs mutating database work on one writer thread, which is the only user of the single writer
+ * connection. Callers hand over a unit of work and block until it has been committed. Everything
+ * queued while the previous commit was in progress (up to {@code maxBatch} units) runs in the same
+ * transaction, so concurrent requests share one commit instead of queueing for the SQLite write lock.
+ *
+ * <p>A unit that throws fails only its own caller: the batch is rolled back and the other units run
+ * again without it. Units may therefore run more than once and should only touch the database (side
+ * effects such as audit entries are deferred to commit). Work submitted from the writer thread, or
+ * from a thread that is already in a transaction, runs inline in that transaction.
+ */
+public class WriteLane {
+    private static final Logger log = LoggerFactory.getLogger(WriteLane.class);
+
+    private static final class Unit<T> {
+        final Supplier<T> work;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final long queuedAt = System.nanoTime();
+
+        Unit(Supplier<T> work) {
+            this.work = work;
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete(Object value) {
+            result.complete((T) value);
+        }
+    }
+
+    private final TransactionTemplate tx;
+    private final EntityManager entityManager;
+    private final BlockingQueue<Unit<?>> queue;
+    private final int maxBatch;
+    private final Thread writer;
+    private final DistributionSummary batchSize;
+    private final Timer queueWait;
+    private final Timer commitTimer;
+    private final Counter reruns;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param entityManager flushed after every unit so constraint violations are blamed on the unit that
+     *                      caused them rather than on the commit; may be null when work is plain JDBC
+     */
+    public WriteLane(PlatformTransactionManager transactionManager, EntityManager entityManager,
+                     int maxBatch, int queueCapacity, MeterRegistry registry) {
+        if (maxBatch <= 0) throw new IllegalArgumentException("maxBatch must be positive");
+        this.tx = new TransactionTemplate(transactionManager);
+        this.entityManager = entityManager;
+        this.maxBatch = maxBatch;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+
+        this.batchSize = DistributionSummary.builder("forgetpass.write-lane.batch.size")
+            .description("Units of work committed together")
+            .register(registry);
+        this.queueWait = Timer.builder("forgetpass.write-lane.queue.wait").register(registry);
+        this.commitTimer = Timer.builder("forgetpass.write-lane.batch.duration").register(registry);
+        this.reruns = Counter.builder("forgetpass.write-lane.reruns")
+            .description("Batches rolled back and run again because one unit failed")
+            .register(registry);
+        Gauge.builder("forgetpass.write-lane.queue.depth", queue, BlockingQueue::size).register(registry);
+
+        this.writer = new Thread(this::drain, "sqlite-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    private WriteLane(PlatformTransactionManager transactionManager) {
+        this.tx = transactionManager != null ? new TransactionTemplate(transactionManager) : null;
+        this.entityManager = null;
+        this.queue = null;
+        this.maxBatch = 1;
+        this.writer = null;
+        this.batchSize = null;
+        this.queueWait = null;
+        this.commitTimer = null;
+        this.reruns = null;
+    }
+
+    /**
+     * A lane without a writer thread: work runs on the caller's thread, in its own transaction when a
+     * transaction manager is given and as-is otherwise.
+     */
+    public static WriteLane direct(PlatformTransactionManager transactionManager) {
+        return new WriteLane(transactionManager);
+    }
+
+    /** Runs {@code work} in a write transaction and returns its result once committed. */
+    public <T> T execute(Supplier<T> work) {
+        if (writer == null) {
+            return tx == null ? work.get() : tx.execute(status -> work.get());
+        }
+        if (Thread.currentThread() == writer || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return work.get();
+        }
+        if (!running) throw new IllegalStateException("write lane is shut down");
+        Unit<T> unit = new Unit<>(work);
+        try {
+            queue.put(unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while queueing write", e);
+        }
+        try {
+            return unit.result.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error err) throw err;
+            throw e;
+        }
+    }
+
+    public void executeWithoutResult(Runnable work) {
+        execute(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public int queued() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    public void shutdown() {
+        if (writer == null) return;
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Unit<?> left;
+        while ((left = queue.poll()) != null) {
+            left.result.completeExceptionally(new IllegalStateException("write lane is shut down"));
+        }
+    }
+
+    private void drain() {
+        List<Unit<?>> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            Unit<?> first;
+            try {
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (first == null) continue;
+            batch.add(first);
+            queue.drainTo(batch, maxBatch - 1);
+            long start = System.nanoTime();
+            for (Unit<?> u : batch) queueWait.record(start - u.queuedAt, TimeUnit.NANOSECONDS);
+            batchSize.record(batch.size());
+            try {
+                run(batch);
+            } catch (Throwable t) {
+                // Never leave a caller hanging, whatever went wrong
+                log.error("WriteLane: batch of {} failed unexpectedly", batch.size(), t);
+                for (Unit<?> u : batch) u.result.completeExceptionally(t);
+            }
+            commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            batch.clear();
+        }
+    }
+
+    // Runs the units in one transaction. If one throws, it alone gets the exception and the rest are
+    // run again in a fresh transaction; a commit failure that can't be pinned on a unit splits the batch.
+    private void run(List<Unit<?>> batch) {
+        List<Unit<?>> pending = batch;
+        while (!pending.isEmpty()) {
+            List<Unit<?>> units = pending;
+            Object[] results = new Object[units.size()];
+            int[] failedAt = {-1};
+            RuntimeException[] failure = {null};
+            try {
+                tx.executeWithoutResult(status -> {
+                    for (int i = 0; i < units.size(); i++) {
+                        try {
+                            results[i] = units.get(i).work.get();
+                            if (entityManager != null) entityManager.flush();
+                        } catch (RuntimeException ex) {
+                            failedAt[0] = i;
+                            failure[0] = ex;
+                            status.setRollbackOnly();
+                            return;
+                        }
+                    }
+                });
+            } catch (RuntimeException commitFailure) {
+                if (failedAt[0] < 0) {
+                    if (units.size() == 1) {
+                        units.get(0).result.completeExceptionally(commitFailure);
+                    } else {
+                        reruns.increment();
+                        for (Unit<?> u : units) run(List.of(u));
+                    }
+                    return;
+                }
+            }
+            if (failedAt[0] < 0) {
+                for (int i = 0; i < units.size(); i++) units.get(i).complete(results[i]);
+                return;
+            }
+            units.get(failedAt[0]).result.completeExceptionally(failure[0]);
+            pending = new ArrayList<>(units);
+            pending.remove(failedAt[0]);
+            if (!pending.isEmpty()) reruns.increment();
+        }
+    }
+}
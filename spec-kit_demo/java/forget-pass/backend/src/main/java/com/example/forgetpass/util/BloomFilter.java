@@ -0,0 +1,117 @@
+package com.example.forgetpass.util;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over UUIDs and strings: {@link #mightContain} never answers false for something that
+ * was {@link #put}, and answers true for something that was not with roughly the configured probability
+ * while no more than the expected number of entries has been added. Bits are set with CAS, so adds and
+ * lookups are safe from any thread without locking. Entries cannot be removed. Hashes are keyed with a
+ * random per-instance seed so callers cannot precompute keys that collide with stored ones.
+ */
+public class BloomFilter {
+    private static final long UUID_SALT = 0x9E3779B97F4A7C15L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+    private final long seed;
+    private final AtomicLong bitsSet = new AtomicLong();
+
+    /** Sized so that {@code expectedEntries} entries give a false-positive rate of about {@code fpp}. */
+    public BloomFilter(long expectedEntries, double fpp) {
+        this(expectedEntries, fpp, new SecureRandom().nextLong());
+    }
+
+    BloomFilter(long expectedEntries, double fpp, long seed) {
+        if (expectedEntries <= 0) throw new IllegalArgumentException("expectedEntries must be positive");
+        if (!(fpp > 0 && fpp < 1)) throw new IllegalArgumentException("fpp must be between 0 and 1");
+        double ln2 = Math.log(2);
+        long bits = Math.max(64, (long) Math.ceil(-expectedEntries * Math.log(fpp) / (ln2 * ln2)));
+        long wordCount = (bits + 63) / 64;
+        if (wordCount > Integer.MAX_VALUE) throw new IllegalArgumentException("Filter too large");
+        this.words = new AtomicLongArray((int) wordCount);
+        this.bitCount = wordCount * 64;
+        this.hashCount = (int) Math.max(1, Math.round((double) bitCount / expectedEntries * ln2));
+        this.seed = seed;
+    }
+
+    public void put(UUID key) {
+        long h = mix(key.getMostSignificantBits() ^ seed);
+        put(h, mix(key.getLeastSignificantBits() ^ h ^ UUID_SALT));
+    }
+
+    public boolean mightContain(UUID key) {
+        long h = mix(key.getMostSignificantBits() ^ seed);
+        return mightContain(h, mix(key.getLeastSignificantBits() ^ h ^ UUID_SALT));
+    }
+
+    public void put(String key) {
+        long h = hash(key);
+        put(mix(h), mix(h ^ UUID_SALT));
+    }
+
+    public boolean mightContain(String key) {
+        long h = hash(key);
+        return mightContain(mix(h), mix(h ^ UUID_SALT));
+    }
+
+    /** Heap taken by the bit array. */
+    public long sizeInBytes() {
+        return words.length() * 8L;
+    }
+
+    public int hashCount() {
+        return hashCount;
+    }
+
+    /** False-positive rate at the current fill: the chance that all of a new key's bits are already set. */
+    public double expectedFpp() {
+        return Math.pow((double) bitsSet.get() / bitCount, hashCount);
+    }
+
+    // Kirsch-Mitzenmacher: the k indexes are h1 + i * h2, which is as good as k independent hashes;
+    // h2 is made odd so the indexes cannot collapse onto a few bits
+    private void put(long h1, long h2) {
+        h2 |= 1;
+        for (int i = 0; i < hashCount; i++) {
+            long index = Math.floorMod(h1 + i * h2, bitCount);
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long current;
+            do {
+                current = words.get(word);
+                if ((current & mask) != 0) break;
+            } while (!words.compareAndSet(word, current, current | mask));
+            if ((current & mask) == 0) bitsSet.incrementAndGet();
+        }
+    }
+
+    private boolean mightContain(long h1, long h2) {
+        h2 |= 1;
+        for (int i = 0; i < hashCount; i++) {
+            long index = Math.floorMod(h1 + i * h2, bitCount);
+            if ((words.get((int) (index >>> 6)) & (1L << index)) == 0) return false;
+        }
+        return true;
+    }
+
+    private long hash(String key) {
+        long h = seed;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    // splitmix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.forgetpass.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Count-based circuit breaker. The last {@code windowSize} calls are kept in a ring; once at least
+ * {@code minimumCalls} are recorded and either the failure rate or the slow-call rate reaches its
+ * threshold the circuit opens and calls are refused for {@code openDuration}. It then lets
+ * {@code halfOpenCalls} trial calls through: if they all succeed quickly it closes, otherwise it
+ * opens again.
+ *
+ * <p>Publishes {@code forgetpass.circuit.state} (0 closed, 1 open, 2 half-open),
+ * {@code forgetpass.circuit.transitions} and {@code forgetpass.circuit.rejected}, tagged by name.
+ */
+public class CircuitBreaker {
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    public record Config(int windowSize, int minimumCalls, double failureRateThreshold, Duration slowCallDuration,
+                         double slowCallRateThreshold, Duration openDuration, int halfOpenCalls) {
+        public static Config defaults() {
+            return new Config(20, 10, 0.5, Duration.ofSeconds(5), 0.8, Duration.ofSeconds(30), 3);
+        }
+    }
+
+    private static final byte OK = 0;
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    private final String name;
+    private final Config config;
+    private final LongSupplier nanoClock;
+    private final MeterRegistry registry;
+    private final Counter rejected;
+
+    private final byte[] window;
+    private int recorded;
+    private int next;
+    private int failures;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    public CircuitBreaker(String name, Config config, MeterRegistry registry) {
+        this(name, config, registry, System::nanoTime);
+    }
+
+    public CircuitBreaker(String name, Config config, MeterRegistry registry, LongSupplier nanoClock) {
+        this.name = name;
+        this.config = config;
+        this.registry = registry;
+        this.nanoClock = nanoClock;
+        this.window = new byte[config.windowSize()];
+        this.rejected = registry.counter("forgetpass.circuit.rejected", "name", name);
+        Gauge.builder("forgetpass.circuit.state", this, cb -> cb.state().ordinal()).tag("name", name).register(registry);
+    }
+
+    /** Whether a call may go ahead now. Every granted call must be followed by onResult or onIgnored. */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN && nanoClock.getAsLong() - openedAt >= config.openDuration().toNanos()) {
+            transitionTo(State.HALF_OPEN);
+        }
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (halfOpenPermits > 0) {
+                    halfOpenPermits--;
+                    return true;
+                }
+                break;
+            default:
+                break;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    public synchronized void onResult(Duration elapsed, boolean success) {
+        boolean slow = elapsed.compareTo(config.slowCallDuration()) >= 0;
+        if (state == State.HALF_OPEN) {
+            if (!success || slow) {
+                transitionTo(State.OPEN);
+            } else if (++halfOpenSuccesses >= config.halfOpenCalls()) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+        if (state == State.OPEN) return; // a call that started before the circuit opened
+        record(success ? (slow ? SLOW : OK) : FAILED);
+        if (recorded >= config.minimumCalls()
+            && (failures >= config.failureRateThreshold() * recorded || slowCalls >= config.slowCallRateThreshold() * recorded)) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    /** Returns a granted permission without an outcome, e.g. when the call was never made. */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN) halfOpenPermits++;
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    /** True while calls are refused; an expired open period counts as not open. */
+    public synchronized boolean isOpen() {
+        return state == State.OPEN && nanoClock.getAsLong() - openedAt < config.openDuration().toNanos();
+    }
+
+    private void record(byte outcome) {
+        if (recorded == window.length) {
+            byte evicted = window[next];
+            if (evicted == FAILED) failures--;
+            if (evicted == SLOW) slowCalls--;
+        } else {
+            recorded++;
+        }
+        window[next] = outcome;
+        next = (next + 1) % window.length;
+        if (outcome == FAILED) failures++;
+        if (outcome == SLOW) slowCalls++;
+    }
+
+    private void transitionTo(State target) {
+        State from = state;
+        state = target;
+        switch (target) {
+            case OPEN -> {
+                openedAt = nanoClock.getAsLong();
+                log.warn("Circuit '{}' opened (from {}): {} failed, {} slow of last {} calls", name, from, failures, slowCalls, recorded);
+            }
+            case HALF_OPEN -> {
+                halfOpenPermits = config.halfOpenCalls();
+                halfOpenSuccesses = 0;
+                log.info("Circuit '{}' half-open: allowing {} trial calls", name, config.halfOpenCalls());
+            }
+            case CLOSED -> {
+                recorded = 0;
+                next = 0;
+                failures = 0;
+                slowCalls = 0;
+                log.info("Circuit '{}' closed", name);
+            }
+        }
+        registry.counter("forgetpass.circuit.transitions", "name", name, "from", from.name(), "to", target.name()).increment();
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.forgetpass.util;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * The {@link SlidingWindowLimiter} algorithm over a memory-mapped file, so every process on the host that
+ * maps the same file shares one set of counters. The file holds a fixed hash table per policy: each slot
+ * is a 64-bit key tag (a seeded hash of the key; 0 is empty) and the same packed state the in-memory
+ * limiter keeps, both updated with CAS through a {@link VarHandle} on the mapping. A key is looked for in
+ * {@value #PROBES} slots from its home slot. A slot whose key has gone idle counts as zero and is reused
+ * by the next new key that needs one; tags are never cleared, so a key is always found before any empty
+ * slot. When all of a key's slots are live it is counted on the policy's shared overflow slot instead.
+ * <p>
+ * The file is created, or checked against the configured policies and size, under a file lock. Limits
+ * may change without recreating it; policy names, windows or the slot count may not. The counts live as
+ * long as the file and need no other persistence.
+ */
+public class MappedSlidingWindowLimiter implements RateLimiter {
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final long MAGIC = 0x464F5250524C4D31L; // "FORPRLM1"
+    private static final int HEADER_BYTES = 64;
+    private static final int SLOT_BYTES = 16;
+    static final int PROBES = 32;
+
+    private record Segment(SlidingWindowLimiter.Policy policy, long offset) {}
+
+    private final Map<String, Segment> segments = new HashMap<>();
+    private final MappedByteBuffer buffer;
+    private final int slots;
+    private final LongSupplier clock;
+    private final long seed;
+    private final AtomicLong overflowed = new AtomicLong();
+
+    /** @param slotsPerPolicy rounded up to a power of two */
+    @SuppressWarnings("try") // the file lock is only held across the setup block, never referenced in it
+    public MappedSlidingWindowLimiter(Path file, List<SlidingWindowLimiter.Policy> policies, int slotsPerPolicy,
+                                      LongSupplier clock) throws IOException {
+        if (slotsPerPolicy < PROBES) throw new IllegalArgumentException("slotsPerPolicy must be at least " + PROBES);
+        this.slots = Integer.highestOneBit(slotsPerPolicy - 1) << 1;
+        this.clock = clock;
+        List<SlidingWindowLimiter.Policy> ordered = policies.stream()
+            .sorted(Comparator.comparing(SlidingWindowLimiter.Policy::name)).toList();
+        long segmentBytes = (long) (slots + 1) * SLOT_BYTES; // the extra slot is the overflow slot
+        long size = HEADER_BYTES + segmentBytes * ordered.size();
+        if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("Rate limit file would exceed 2 GB");
+        for (int i = 0; i < ordered.size(); i++) {
+            SlidingWindowLimiter.Policy p = ordered.get(i);
+            if (segments.putIfAbsent(p.name(), new Segment(p, HEADER_BYTES + segmentBytes * i)) != null) {
+                throw new IllegalArgumentException("Duplicate policy '" + p.name() + "'");
+            }
+        }
+
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileLock ignored = channel.lock()) {
+            long existing = channel.size();
+            if (existing != 0 && existing != size) {
+                throw new IllegalStateException("Rate limit file " + file + " is " + existing + " bytes, expected " + size
+                    + "; it was created for other policies or slot count. Stop every process using it and delete it");
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.nativeOrder());
+            long layout = layoutHash(ordered, slots);
+            if (buffer.getLong(0) != MAGIC) {
+                buffer.putLong(8, layout);
+                buffer.putLong(16, new SecureRandom().nextLong());
+                buffer.putLong(0, MAGIC);
+                buffer.force();
+            } else if (buffer.getLong(8) != layout) {
+                throw new IllegalStateException("Rate limit file " + file + " was created for other policies or slot count."
+                    + " Stop every process using it and delete it");
+            }
+            this.seed = buffer.getLong(16);
+        }
+    }
+
+    @Override
+    public boolean hasPolicy(String policy) {
+        return segments.containsKey(policy);
+    }
+
+    @Override
+    public boolean tryAcquire(String policy, String key) {
+        Segment s = segments.get(policy);
+        if (s == null) throw new IllegalArgumentException("Unknown rate limit policy '" + policy + "'");
+        SlidingWindowLimiter.Policy p = s.policy();
+        long windowMillis = p.window().toMillis();
+        long now = clock.getAsLong();
+        long window = now / windowMillis;
+        double previousWeight = 1.0 - (double) (now % windowMillis) / windowMillis;
+        long tag = tag(key);
+        while (true) {
+            long slot = slot(s, tag, window);
+            long state;
+            long next;
+            do {
+                state = (long) LONGS.getVolatile(buffer, (int) slot + 8);
+                int previous = SlidingWindowLimiter.previous(state, window);
+                int current = SlidingWindowLimiter.current(state, window);
+                if (Math.ceil(previous * previousWeight) + current >= p.limit()) return false;
+                next = SlidingWindowLimiter.pack(window, previous, Math.min(current + 1, SlidingWindowLimiter.MAX_COUNT));
+            } while (!LONGS.compareAndSet(buffer, (int) slot + 8, state, next));
+            // A slot reused for another key under us keeps the hit (one too many for that key); count ours again
+            if (slot == overflowSlot(s) || (long) LONGS.getVolatile(buffer, (int) slot) == tag) return true;
+        }
+    }
+
+    /** Live keys across all policies; scans the whole file. */
+    @Override
+    public int size() {
+        long now = clock.getAsLong();
+        int live = 0;
+        for (Segment s : segments.values()) {
+            long window = now / s.policy().window().toMillis();
+            for (int i = 0; i < slots; i++) {
+                long slot = s.offset() + (long) i * SLOT_BYTES;
+                if ((long) LONGS.getVolatile(buffer, (int) slot) != 0 && !idle((long) LONGS.getVolatile(buffer, (int) slot + 8), window)) {
+                    live++;
+                }
+            }
+        }
+        return live;
+    }
+
+    /** Hits this process counted on an overflow slot because the key's slots were all taken. */
+    public long overflowed() {
+        return overflowed.get();
+    }
+
+    // The key's slot: its own, else the first empty one claimed for it, else an idle one taken over, else the overflow slot
+    private long slot(Segment s, long tag, long window) {
+        int home = (int) (mix(tag) & (slots - 1));
+        long idleSlot = -1;
+        long idleTag = 0;
+        for (int i = 0; i < PROBES; i++) {
+            long slot = s.offset() + (long) (home + i & slots - 1) * SLOT_BYTES;
+            long t = (long) LONGS.getVolatile(buffer, (int) slot);
+            if (t == tag) return slot;
+            if (t == 0) {
+                if (LONGS.compareAndSet(buffer, (int) slot, 0L, tag)) return slot;
+                if ((long) LONGS.getVolatile(buffer, (int) slot) == tag) return slot;
+                continue;
+            }
+            if (idleSlot < 0 && idle((long) LONGS.getVolatile(buffer, (int) slot + 8), window)) {
+                idleSlot = slot;
+                idleTag = t;
+            }
+        }
+        // An idle slot's counts already read as zero, so only the tag changes hands
+        if (idleSlot >= 0 && LONGS.compareAndSet(buffer, (int) idleSlot, idleTag, tag)) return idleSlot;
+        overflowed.incrementAndGet();
+        return overflowSlot(s);
+    }
+
+    private long overflowSlot(Segment s) {
+        return s.offset() + (long) slots * SLOT_BYTES;
+    }
+
+    private static boolean idle(long state, long window) {
+        return SlidingWindowLimiter.previous(state, window) == 0 && SlidingWindowLimiter.current(state, window) == 0;
+    }
+
+    // Seeded per file, so tags cannot be collided on purpose without reading the file
+    private long tag(String key) {
+        long h = seed ^ 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001B3L;
+        }
+        h = mix(h);
+        return h == 0 ? 1 : h;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static long layoutHash(List<SlidingWindowLimiter.Policy> ordered, int slots) {
+        long h = slots;
+        for (SlidingWindowLimiter.Policy p : ordered) {
+            for (byte b : p.name().getBytes(StandardCharsets.UTF_8)) h = h * 31 + b;
+            h = mix(h ^ p.window().toMillis());
+        }
+        return h;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.forgetpass.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free ring buffer for many producers and a single consumer. Each slot carries a
+ * sequence number (Vyukov's bounded queue): producers claim a slot with one CAS on the tail and
+ * publish it by advancing the slot's sequence, so {@link #offer} never blocks and fails fast when full.
+ * Only one thread may call {@link #poll} / {@link #drainTo}.
+ */
+public class MpscRingBuffer<E> {
+    private final int mask;
+    private final AtomicReferenceArray<E> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    /** @param capacity rounded up to the next power of two */
+    public MpscRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) sequences.set(i, i);
+    }
+
+    /** Adds {@code e} unless the buffer is full. */
+    public boolean offer(E e) {
+        while (true) {
+            long t = tail.get();
+            int idx = (int) (t & mask);
+            long diff = sequences.get(idx) - t;
+            if (diff == 0) {
+                if (tail.compareAndSet(t, t + 1)) {
+                    slots.set(idx, e);
+                    sequences.set(idx, t + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /** Next element, or null when empty or the next slot is claimed but not yet published. */
+    public E poll() {
+        long h = head.get();
+        int idx = (int) (h & mask);
+        if (sequences.get(idx) != h + 1) return null;
+        E e = slots.get(idx);
+        slots.set(idx, null);
+        sequences.set(idx, h + mask + 1);
+        head.set(h + 1);
+        return e;
+    }
+
+    /** Moves up to {@code max} elements to {@code sink}; returns how many were moved. */
+    public int drainTo(Consumer<? super E> sink, int max) {
+        int n = 0;
+        E e;
+        while (n < max && (e = poll()) != null) {
+            sink.accept(e);
+            n++;
+        }
+        return n;
+    }
+
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.forgetpass.util;
+
+/** Named rate-limit policies, each counting hits per key. */
+public interface RateLimiter {
+
+    boolean hasPolicy(String policy);
+
+    /** Counts a hit for {@code key} under {@code policy} and returns true, or returns false if the key is at its limit. */
+    boolean tryAcquire(String policy, String key);
+
+    /** Keys currently counting against a limit (approximate). */
+    int size();
+}
@@ -0,0 +1,33 @@
+package com.example.forgetpass.util;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * Exponential backoff with full jitter: the delay before attempt {@code n + 1} is uniform in
+ * {@code [0, min(maxDelay, initialDelay * 2^(n-1))]}. Retrying stops after {@code maxAttempts}
+ * attempts or once the next attempt would start later than {@code maxElapsed} after the first.
+ */
+public record RetryPolicy(int maxAttempts, Duration initialDelay, Duration maxDelay, Duration maxElapsed,
+                          Predicate<Throwable> retryOn) {
+
+    public RetryPolicy(int maxAttempts, Duration initialDelay, Duration maxDelay, Duration maxElapsed) {
+        this(maxAttempts, initialDelay, maxDelay, maxElapsed, ex -> true);
+    }
+
+    public RetryPolicy retryingOn(Predicate<Throwable> retryOn) {
+        return new RetryPolicy(maxAttempts, initialDelay, maxDelay, maxElapsed, retryOn);
+    }
+
+    /** Upper bound of the delay after {@code failedAttempts} failures. */
+    public Duration backoffCeiling(int failedAttempts) {
+        Duration ceiling = initialDelay.multipliedBy(1L << Math.min(failedAttempts - 1, 30));
+        return ceiling.compareTo(maxDelay) > 0 ? maxDelay : ceiling;
+    }
+
+    public Duration nextDelay(int failedAttempts) {
+        long ceilingNanos = backoffCeiling(failedAttempts).toNanos();
+        return ceilingNanos <= 0 ? Duration.ZERO : Duration.ofNanos(ThreadLocalRandom.current().nextLong(ceilingNanos + 1));
+    }
+}
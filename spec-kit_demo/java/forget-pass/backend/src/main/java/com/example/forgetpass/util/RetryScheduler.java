@@ -0,0 +1,170 @@
+package com.example.forgetpass.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs an operation with retries without parking a thread between attempts. The first attempt runs on
+ * the caller's thread; later attempts are put on a timer and run on a worker pool when their jittered
+ * delay expires. An asynchronous operation ({@link #executeAsync}) is started the same way and judged
+ * when its future completes. Publishes {@code forgetpass.retry.attempts}, {@code .successes} and
+ * {@code .giveups} tagged by operation.
+ */
+public class RetryScheduler {
+    private static final Logger log = LoggerFactory.getLogger(RetryScheduler.class);
+
+    private final ScheduledExecutorService timer;
+    private final ExecutorService workers;
+    private final MeterRegistry registry;
+
+    public RetryScheduler(int workerThreads, MeterRegistry registry) {
+        ScheduledThreadPoolExecutor stpe = new ScheduledThreadPoolExecutor(1, daemon("retry-timer-"));
+        stpe.setRemoveOnCancelPolicy(true);
+        this.timer = stpe;
+        this.workers = Executors.newFixedThreadPool(workerThreads, daemon("retry-worker-"));
+        this.registry = registry;
+    }
+
+    /**
+     * Runs {@code attempt} until it returns normally or the policy gives up. The returned future
+     * completes with the last failure when retries are exhausted or the failure is not retryable.
+     */
+    public <T> CompletableFuture<T> execute(String operation, RetryPolicy policy, Callable<T> attempt) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        run(operation, policy, attempt, result, 1, System.nanoTime());
+        return result;
+    }
+
+    /**
+     * Like {@link #execute}, but the first attempt runs on the worker pool as well, for callers whose own
+     * thread must not wait on the operation.
+     */
+    public <T> CompletableFuture<T> submit(String operation, RetryPolicy policy, Callable<T> attempt) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long startedAt = System.nanoTime();
+        try {
+            workers.execute(() -> run(operation, policy, attempt, result, 1, startedAt));
+        } catch (RejectedExecutionException ex) {
+            result.completeExceptionally(ex);
+        }
+        return result;
+    }
+
+    /**
+     * Like {@link #execute}, for an operation that is already asynchronous: each attempt starts it and
+     * the outcome is taken from the future it returns, so no thread waits on it. Cancelling the returned
+     * future cancels the attempt in progress and stops any further attempt.
+     */
+    public <T> CompletableFuture<T> executeAsync(String operation, RetryPolicy policy,
+                                                 Supplier<? extends CompletableFuture<T>> attempt) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        runAsync(operation, policy, attempt, result, 1, System.nanoTime());
+        return result;
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    private <T> void run(String operation, RetryPolicy policy, Callable<T> attempt, CompletableFuture<T> result,
+                         int attemptNo, long startedAt) {
+        if (result.isDone()) return;
+        counter("forgetpass.retry.attempts", operation).increment();
+        T value;
+        try {
+            value = attempt.call();
+        } catch (Throwable ex) {
+            retryOrGiveUp(operation, policy, result, attemptNo, startedAt, unwrap(ex),
+                () -> run(operation, policy, attempt, result, attemptNo + 1, startedAt));
+            return;
+        }
+        counter("forgetpass.retry.successes", operation).increment();
+        result.complete(value);
+    }
+
+    private <T> void runAsync(String operation, RetryPolicy policy, Supplier<? extends CompletableFuture<T>> attempt,
+                              CompletableFuture<T> result, int attemptNo, long startedAt) {
+        if (result.isDone()) return;
+        counter("forgetpass.retry.attempts", operation).increment();
+        CompletableFuture<T> pending;
+        try {
+            pending = attempt.get();
+        } catch (Throwable ex) {
+            pending = CompletableFuture.failedFuture(ex);
+        }
+        CompletableFuture<T> current = pending;
+        result.whenComplete((v, ex) -> {
+            if (result.isCancelled()) current.cancel(true);
+        });
+        current.whenComplete((value, ex) -> {
+            if (result.isDone()) return;
+            if (ex != null) {
+                retryOrGiveUp(operation, policy, result, attemptNo, startedAt, unwrap(ex),
+                    () -> runAsync(operation, policy, attempt, result, attemptNo + 1, startedAt));
+                return;
+            }
+            counter("forgetpass.retry.successes", operation).increment();
+            result.complete(value);
+        });
+    }
+
+    private void retryOrGiveUp(String operation, RetryPolicy policy, CompletableFuture<?> result,
+                               int attemptNo, long startedAt, Throwable failure, Runnable nextAttempt) {
+        String reason = null;
+        Duration delay = Duration.ZERO;
+        if (!policy.retryOn().test(failure)) {
+            reason = "not_retryable";
+        } else if (attemptNo >= policy.maxAttempts()) {
+            reason = "max_attempts";
+        } else {
+            delay = policy.nextDelay(attemptNo);
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - startedAt);
+            if (elapsed.plus(delay).compareTo(policy.maxElapsed()) > 0) reason = "max_elapsed";
+        }
+        if (reason != null) {
+            registry.counter("forgetpass.retry.giveups", "operation", operation, "reason", reason).increment();
+            log.debug("Giving up on {} after {} attempts ({}): {}", operation, attemptNo, reason, failure.toString());
+            result.completeExceptionally(failure);
+            return;
+        }
+        try {
+            timer.schedule(() -> workers.execute(nextAttempt), delay.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException ex) {
+            result.completeExceptionally(failure);
+        }
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+
+    private Counter counter(String name, String operation) {
+        return registry.counter(name, "operation", operation);
+    }
+
+    private static ThreadFactory daemon(String prefix) {
+        AtomicInteger seq = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
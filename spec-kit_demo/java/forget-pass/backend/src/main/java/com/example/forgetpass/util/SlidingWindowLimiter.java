@@ -0,0 +1,157 @@
+package com.example.forgetpass.util;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Approximate sliding-window rate limiter: a hit is admitted while the estimate of hits per key over the
+ * last {@code window} is under {@code limit}. The estimate is the current fixed window's count plus the
+ * previous one's weighted by how much of it still overlaps the sliding window, which assumes the
+ * previous hits were spread evenly. Hits bunched at the end of one window are discounted as it slides
+ * away, so up to about twice {@code limit} can get through within one window; use it where that is
+ * acceptable, not for small limits that must hold exactly. Each key's
+ * state is one packed long (window number and the two counts) updated with CAS, held in a
+ * {@link ConcurrentHashMap}, so hits on different keys never contend and hits on the same key never
+ * block. Keys that have seen no hit for two windows are idle and removed by {@link #evictIdle()};
+ * {@link #snapshot()} and {@link #restore} carry the state across restarts.
+ */
+public class SlidingWindowLimiter implements RateLimiter {
+
+    public record Policy(String name, int limit, Duration window) {
+        public Policy {
+            if (limit <= 0 || limit > MAX_COUNT) throw new IllegalArgumentException("Limit of '" + name + "' must be 1.." + MAX_COUNT);
+            if (window.toMillis() <= 0) throw new IllegalArgumentException("Window of '" + name + "' must be positive");
+        }
+    }
+
+    /** One key's counts: {@code previous} hits in window {@code window - 1}, {@code current} in {@code window}. */
+    public record Window(String policy, String key, long window, int previous, int current) {}
+
+    private record Key(String policy, String key) {}
+
+    static final int MAX_COUNT = 0xFFFF;
+
+    private final Map<String, Policy> policies;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<Key, AtomicLong> cells = new ConcurrentHashMap<>();
+
+    public SlidingWindowLimiter(List<Policy> policies, LongSupplier clock) {
+        Map<String, Policy> byName = new HashMap<>();
+        for (Policy p : policies) {
+            if (byName.putIfAbsent(p.name(), p) != null) throw new IllegalArgumentException("Duplicate policy '" + p.name() + "'");
+        }
+        this.policies = Map.copyOf(byName);
+        this.clock = clock;
+    }
+
+    @Override
+    public boolean hasPolicy(String policy) {
+        return policies.containsKey(policy);
+    }
+
+    @Override
+    public boolean tryAcquire(String policy, String key) {
+        Policy p = policies.get(policy);
+        if (p == null) throw new IllegalArgumentException("Unknown rate limit policy '" + policy + "'");
+        long windowMillis = p.window().toMillis();
+        long now = clock.getAsLong();
+        long window = now / windowMillis;
+        double previousWeight = 1.0 - (double) (now % windowMillis) / windowMillis;
+        Key k = new Key(policy, key);
+        while (true) {
+            AtomicLong cell = cells.computeIfAbsent(k, x -> new AtomicLong(pack(window, 0, 0)));
+            long state;
+            long next;
+            do {
+                state = cell.get();
+                int previous = previous(state, window);
+                int current = current(state, window);
+                if (Math.ceil(previous * previousWeight) + current >= p.limit()) return false;
+                next = pack(window, previous, Math.min(current + 1, MAX_COUNT));
+            } while (!cell.compareAndSet(state, next));
+            // An idle cell evicted under us lost the hit; count it again on the fresh cell
+            if (cells.get(k) == cell) return true;
+        }
+    }
+
+    /** Removes keys with no hits in the current or the previous window. */
+    public int evictIdle() {
+        long now = clock.getAsLong();
+        int before = cells.size();
+        cells.entrySet().removeIf(e -> idle(e.getKey(), e.getValue().get(), now));
+        return before - cells.size();
+    }
+
+    @Override
+    public int size() {
+        return cells.size();
+    }
+
+    /** Every key that still counts against its limit. */
+    public List<Window> snapshot() {
+        long now = clock.getAsLong();
+        List<Window> windows = new ArrayList<>(cells.size());
+        cells.forEach((k, cell) -> {
+            long state = cell.get();
+            if (!idle(k, state, now)) {
+                windows.add(new Window(k.policy(), k.key(), windowOf(state), (int) (state >>> 16 & MAX_COUNT), (int) (state & MAX_COUNT)));
+            }
+        });
+        return windows;
+    }
+
+    /** Adds saved counts to whatever has been counted since; windows of unknown policies or already idle are skipped. */
+    public int restore(List<Window> saved) {
+        long now = clock.getAsLong();
+        int restored = 0;
+        for (Window w : saved) {
+            Policy p = policies.get(w.policy());
+            if (p == null) continue;
+            long window = now / p.window().toMillis();
+            long savedState = pack(w.window(), w.previous(), w.current());
+            int previous = previous(savedState, window);
+            int current = current(savedState, window);
+            if (previous == 0 && current == 0) continue;
+            AtomicLong cell = cells.computeIfAbsent(new Key(w.policy(), w.key()), x -> new AtomicLong(pack(window, 0, 0)));
+            long state;
+            do {
+                state = cell.get();
+            } while (!cell.compareAndSet(state, pack(window, Math.min(previous(state, window) + previous, MAX_COUNT),
+                Math.min(current(state, window) + current, MAX_COUNT))));
+            restored++;
+        }
+        return restored;
+    }
+
+    private boolean idle(Key k, long state, long now) {
+        Policy p = policies.get(k.policy());
+        return p == null || windowOf(state) < now / p.window().toMillis() - 1;
+    }
+
+    // [window number: 32 bits][previous: 16][current: 16]; window numbers wrap after 2^32 windows, past 2106 for 1s windows
+    static long pack(long window, int previous, int current) {
+        return (window & 0xFFFFFFFFL) << 32 | (long) previous << 16 | current;
+    }
+
+    static long windowOf(long state) {
+        return state >>> 32;
+    }
+
+    // The state's counts as seen from `window`: rolled forward by one window, or zero if older than that
+    static int previous(long state, long window) {
+        long w = windowOf(state);
+        if (w == (window & 0xFFFFFFFFL)) return (int) (state >>> 16 & MAX_COUNT);
+        if (w == (window - 1 & 0xFFFFFFFFL)) return (int) (state & MAX_COUNT);
+        return 0;
+    }
+
+    static int current(long state, long window) {
+        return windowOf(state) == (window & 0xFFFFFFFFL) ? (int) (state & MAX_COUNT) : 0;
+    }
+}
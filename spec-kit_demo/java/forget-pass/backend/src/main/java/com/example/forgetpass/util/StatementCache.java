@@ -0,0 +1,176 @@
+package com.example.forgetpass.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-connection cache of prepared statements, for drivers (like sqlite-jdbc) that compile every
+ * {@code prepareStatement} call from scratch. {@link #wrap} returns a connection whose
+ * {@code prepareStatement(String)} hands out an idle statement for the same SQL when there is one;
+ * closing it resets its parameters and parks it for the next caller instead of finalizing it. At most
+ * {@code capacity} idle statements are kept, least recently used evicted first. They are closed for
+ * real when the connection is. Like the connection itself, not meant for concurrent use.
+ */
+public final class StatementCache implements InvocationHandler {
+
+    /** Hit and miss counts across all wrapped connections that share them. */
+    public static final class Stats {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        public long hits() {
+            return hits.sum();
+        }
+
+        public long misses() {
+            return misses.sum();
+        }
+    }
+
+    private final Connection connection;
+    private final int capacity;
+    private final Stats stats;
+    private final Map<String, PreparedStatement> idle;
+    private Connection proxy;
+
+    private StatementCache(Connection connection, int capacity, Stats stats) {
+        this.connection = connection;
+        this.capacity = capacity;
+        this.stats = stats;
+        this.idle = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= StatementCache.this.capacity) return false;
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    public static Connection wrap(Connection connection, int capacity, Stats stats) {
+        if (capacity <= 0) return connection;
+        StatementCache cache = new StatementCache(connection, capacity, stats);
+        cache.proxy = (Connection) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+            new Class<?>[]{Connection.class}, cache);
+        return cache.proxy;
+    }
+
+    @Override
+    public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "prepareStatement":
+                if (args.length == 1) return borrow((String) args[0]);
+                break;
+            case "close":
+                closeAll();
+                break;
+            case "unwrap":
+                if (((Class<?>) args[0]).isInstance(connection)) return connection;
+                break;
+            case "isWrapperFor":
+                if (((Class<?>) args[0]).isInstance(connection)) return true;
+                break;
+            case "equals":
+                return p == args[0];
+            case "hashCode":
+                return System.identityHashCode(p);
+            default:
+                break;
+        }
+        return call(connection, method, args);
+    }
+
+    private PreparedStatement borrow(String sql) throws SQLException {
+        PreparedStatement statement = idle.remove(sql);
+        if (statement != null) {
+            stats.hits.increment();
+        } else {
+            stats.misses.increment();
+            statement = connection.prepareStatement(sql);
+        }
+        return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+            new Class<?>[]{PreparedStatement.class}, new Borrowed(sql, statement));
+    }
+
+    private void giveBack(String sql, PreparedStatement statement) {
+        try {
+            ResultSet open = statement.getResultSet();
+            if (open != null) open.close();
+            statement.clearParameters();
+            statement.clearBatch();
+        } catch (SQLException e) {
+            closeQuietly(statement);
+            return;
+        }
+        // Another copy of the same statement may have been returned meanwhile; keep just one
+        PreparedStatement previous = idle.put(sql, statement);
+        if (previous != null) closeQuietly(previous);
+    }
+
+    private void closeAll() {
+        List<PreparedStatement> statements = new ArrayList<>(idle.values());
+        idle.clear();
+        statements.forEach(StatementCache::closeQuietly);
+    }
+
+    private final class Borrowed implements InvocationHandler {
+        private final String sql;
+        private final PreparedStatement statement;
+        private boolean closed;
+
+        Borrowed(String sql, PreparedStatement statement) {
+            this.sql = sql;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        giveBack(sql, statement);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || statement.isClosed();
+                case "getConnection":
+                    return proxy;
+                case "equals":
+                    return p == args[0];
+                case "hashCode":
+                    return System.identityHashCode(p);
+                default:
+                    if (closed) throw new SQLException("statement is closed");
+                    return call(statement, method, args);
+            }
+        }
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+            // Nothing useful to do; the connection is going away or the statement is broken
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.forgetpass.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel. The first level has {@code wheelSize} buckets of {@code tickMillis}
+ * each; deadlines beyond its span go to a coarser overflow wheel (created on demand) whose buckets
+ * cascade down as time reaches them. Adding and expiring are O(1) per item regardless of how many are
+ * tracked. Items fire after their deadline, at most one tick late, never early.
+ * Not thread-safe: callers synchronize.
+ */
+public class TimingWheel<E> {
+    private record Entry<E>(E item, long deadline) {}
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final long interval;
+    private final List<Entry<E>>[] buckets;
+    private long currentTime;
+    private TimingWheel<E> overflow;
+    private int size;
+
+    /** @param startMillis time the wheel starts at; rounded down to a tick */
+    public TimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        if (tickMillis <= 0 || wheelSize < 2) throw new IllegalArgumentException("tick must be positive and wheel size >= 2");
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.interval = tickMillis * wheelSize;
+        this.currentTime = startMillis - Math.floorMod(startMillis, tickMillis);
+        @SuppressWarnings("unchecked")
+        List<Entry<E>>[] b = (List<Entry<E>>[]) new List<?>[wheelSize];
+        this.buckets = b;
+    }
+
+    /**
+     * Schedules {@code item} to fire once {@code deadlineMillis} has passed. Returns false without
+     * storing it if its tick has already been processed, i.e. it is already due.
+     */
+    public boolean add(E item, long deadlineMillis) {
+        return add(new Entry<>(item, deadlineMillis));
+    }
+
+    /** Moves the wheel to {@code nowMillis}, passing every item whose tick has fully elapsed to {@code expired}. */
+    public void advance(long nowMillis, Consumer<? super E> expired) {
+        while (currentTime + tickMillis <= nowMillis) {
+            List<Entry<E>> due = takeBucket(currentTime);
+            if (due != null) {
+                size -= due.size();
+                for (Entry<E> e : due) expired.accept(e.item());
+            }
+            currentTime += tickMillis;
+            if (overflow != null && Math.floorMod(currentTime, overflow.tickMillis) == 0) {
+                overflow.cascade(currentTime, this);
+            }
+        }
+    }
+
+    /** Number of items waiting across all levels. */
+    public int size() {
+        return overflow == null ? size : size + overflow.size();
+    }
+
+    private boolean add(Entry<E> e) {
+        long tick = e.deadline() - Math.floorMod(e.deadline(), tickMillis);
+        if (tick < currentTime) return false;
+        if (tick < currentTime + interval) {
+            int slot = (int) Math.floorMod(tick / tickMillis, (long) wheelSize);
+            if (buckets[slot] == null) buckets[slot] = new ArrayList<>();
+            buckets[slot].add(e);
+            size++;
+            return true;
+        }
+        if (overflow == null) overflow = new TimingWheel<>(interval, wheelSize, currentTime);
+        return overflow.add(e);
+    }
+
+    // Called when the finer wheel reaches a tick boundary of this wheel: everything in the bucket that
+    // starts at `time` now fits into the finer wheel, so hand it down.
+    private void cascade(long time, TimingWheel<E> finer) {
+        currentTime = time;
+        if (overflow != null && Math.floorMod(time, overflow.tickMillis) == 0) {
+            overflow.cascade(time, this);
+        }
+        List<Entry<E>> due = takeBucket(time);
+        if (due == null) return;
+        size -= due.size();
+        for (Entry<E> e : due) finer.add(e);
+    }
+
+    private List<Entry<E>> takeBucket(long tick) {
+        int slot = (int) Math.floorMod(tick / tickMillis, (long) wheelSize);
+        List<Entry<E>> bucket = buckets[slot];
+        buckets[slot] = null;
+        return bucket;
+    }
+}
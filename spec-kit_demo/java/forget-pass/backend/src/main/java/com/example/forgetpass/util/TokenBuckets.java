@@ -0,0 +1,100 @@
+package com.example.forgetpass.util;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets per key, kept as one "theoretical arrival time" each (GCRA, which admits exactly what a
+ * token bucket of {@code capacity} refilled at {@code capacity / period} would). Admission is a read and
+ * a CAS on that value; the map is only written when a key is first seen. A bucket whose arrival time has
+ * passed is full again, so it carries no state and {@link #evictExpired()} drops it. The map holds at
+ * most {@code maxKeys} buckets: once full, and after an eviction pass that did not make room, new keys
+ * of a route share that route's overflow bucket until room frees up.
+ */
+public class TokenBuckets {
+
+    public record Limit(int capacity, Duration period) {
+        public Limit {
+            if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+            if (period.toNanos() <= 0) throw new IllegalArgumentException("period must be positive");
+        }
+
+        long intervalNanos() {
+            return period.toNanos() / capacity;
+        }
+    }
+
+    private record Key(String route, String client) {}
+
+    private static final String OVERFLOW = "*";
+    private static final long SWEEP_BACKOFF_NANOS = 1_000_000_000L;
+
+    private final ConcurrentHashMap<Key, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final int maxKeys;
+    private final LongSupplier nanoClock;
+    private final AtomicLong lastSweep;
+    private final AtomicLong overflowed = new AtomicLong();
+
+    public TokenBuckets(int maxKeys, LongSupplier nanoClock) {
+        if (maxKeys <= 0) throw new IllegalArgumentException("maxKeys must be positive");
+        this.maxKeys = maxKeys;
+        this.nanoClock = nanoClock;
+        this.lastSweep = new AtomicLong(nanoClock.getAsLong() - SWEEP_BACKOFF_NANOS);
+    }
+
+    /** Takes a token from {@code client}'s bucket for {@code route}: 0 if there was one, else nanoseconds until there is. */
+    public long tryAcquire(String route, String client, Limit limit) {
+        long now = nanoClock.getAsLong();
+        long interval = limit.intervalNanos();
+        long tolerance = interval * (limit.capacity() - 1);
+        Key key = new Key(route, client);
+        while (true) {
+            Key used = key;
+            AtomicLong bucket = buckets.get(used);
+            if (bucket == null) {
+                if (buckets.size() >= maxKeys && !makeRoom(now)) {
+                    overflowed.incrementAndGet();
+                    used = new Key(route, OVERFLOW);
+                }
+                bucket = buckets.computeIfAbsent(used, k -> new AtomicLong(now));
+            }
+            long tat;
+            long next;
+            do {
+                tat = bucket.get();
+                long start = tat - now > 0 ? tat : now;
+                if (start - now > tolerance) return start - now - tolerance;
+                next = start + interval;
+            } while (!bucket.compareAndSet(tat, next));
+            // A bucket evicted under us was full; take the token from its replacement instead
+            if (buckets.get(used) == bucket) return 0;
+        }
+    }
+
+    /** Drops buckets that have refilled completely. */
+    public int evictExpired() {
+        long now = nanoClock.getAsLong();
+        lastSweep.set(now);
+        int before = buckets.size();
+        buckets.values().removeIf(tat -> tat.get() - now <= 0);
+        return before - buckets.size();
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    /** Requests that were counted against an overflow bucket because the map was full. */
+    public long overflowed() {
+        return overflowed.get();
+    }
+
+    // At most one eviction pass per second, so a flood of new keys does not turn into a flood of scans
+    private boolean makeRoom(long now) {
+        long last = lastSweep.get();
+        if (now - last >= SWEEP_BACKOFF_NANOS && lastSweep.compareAndSet(last, now)) evictExpired();
+        return buckets.size() < maxKeys;
+    }
+}
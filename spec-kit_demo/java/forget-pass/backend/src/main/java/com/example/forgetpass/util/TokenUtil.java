@@ -3,10 +3,16 @@ package com.example.forgetpass.util;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import java.util.Optional;
+import java.util.UUID;
 
 public final class TokenUtil {
     private static final SecureRandom RNG = new SecureRandom();
+    private static final char SEPARATOR = '.'; // not in the base64url alphabet
+    private static final int SELECTOR_LENGTH = 22; // 16 bytes, base64url without padding
 
     public static String generateToken() {
         byte[] bytes = new byte[32]; // 32 bytes entropy
@@ -24,5 +30,38 @@ public final class TokenUtil {
         }
     }
 
+    /**
+     * A {@code selector.verifier} token: the selector is the token row's primary key, the verifier a
+     * fresh {@link #generateToken()} whose {@link #sha256} is stored on the row.
+     */
+    public static String selectorToken(UUID selector, String verifier) {
+        ByteBuffer bytes = ByteBuffer.allocate(16)
+            .putLong(selector.getMostSignificantBits())
+            .putLong(selector.getLeastSignificantBits());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.array()) + SEPARATOR + verifier;
+    }
+
+    /** The selector of a {@code selector.verifier} token; empty for legacy tokens and anything malformed. */
+    public static Optional<UUID> selector(String token) {
+        int dot = token.indexOf(SEPARATOR);
+        if (dot != SELECTOR_LENGTH) return Optional.empty();
+        try {
+            ByteBuffer bytes = ByteBuffer.wrap(Base64.getUrlDecoder().decode(token.substring(0, dot)));
+            return Optional.of(new UUID(bytes.getLong(), bytes.getLong()));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    public static String verifier(String token) {
+        return token.substring(token.indexOf(SEPARATOR) + 1);
+    }
+
+    /** Whether {@code sha256(secret)} equals {@code expectedHash}, in time independent of where they differ. */
+    public static boolean hashMatches(String secret, String expectedHash) {
+        return MessageDigest.isEqual(sha256(secret).getBytes(StandardCharsets.US_ASCII),
+            expectedHash.getBytes(StandardCharsets.US_ASCII));
+    }
+
     private TokenUtil() {}
 }
@@ -0,0 +1,113 @@
+package com.example.forgetpass.util;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resolves the client address of a request that may have come through reverse proxies. Only proxies
+ * in the trusted list (addresses or CIDR blocks, IPv4 or IPv6) are believed: X-Forwarded-For is read
+ * right to left, skipping trusted hops, and the first address that is not trusted is the client.
+ * Anything a client writes into the header itself sits to the left of that and is ignored. Addresses
+ * are parsed as literals only, never looked up.
+ */
+public class TrustedProxies {
+
+    private record Block(byte[] network, int prefix) {
+        boolean contains(byte[] address) {
+            if (address.length != network.length) return false;
+            int full = prefix / 8;
+            for (int i = 0; i < full; i++) {
+                if (address[i] != network[i]) return false;
+            }
+            int rest = prefix % 8;
+            if (rest == 0) return true;
+            int mask = 0xFF << (8 - rest) & 0xFF;
+            return (address[full] & mask) == (network[full] & mask);
+        }
+    }
+
+    private final List<Block> blocks = new ArrayList<>();
+
+    /** @param trusted addresses ({@code 10.0.0.1}) and CIDR blocks ({@code 10.0.0.0/8}, {@code fd00::/8}) */
+    public TrustedProxies(List<String> trusted) {
+        for (String entry : trusted) {
+            String s = entry.trim();
+            if (s.isEmpty()) continue;
+            int slash = s.indexOf('/');
+            byte[] network = parse(slash < 0 ? s : s.substring(0, slash));
+            if (network == null) throw new IllegalArgumentException("Not an IP address or CIDR block: '" + s + "'");
+            int prefix = slash < 0 ? network.length * 8 : Integer.parseInt(s.substring(slash + 1));
+            if (prefix < 0 || prefix > network.length * 8) throw new IllegalArgumentException("Bad prefix length in '" + s + "'");
+            blocks.add(new Block(network, prefix));
+        }
+    }
+
+    public boolean isTrusted(String address) {
+        if (blocks.isEmpty()) return false;
+        byte[] parsed = parse(address);
+        if (parsed == null) return false;
+        for (Block b : blocks) {
+            if (b.contains(parsed)) return true;
+        }
+        return false;
+    }
+
+    /** The client behind {@code remoteAddr}, given the request's X-Forwarded-For header (may be null). */
+    public String clientAddress(String remoteAddr, String forwardedFor) {
+        if (forwardedFor == null || !isTrusted(remoteAddr)) return remoteAddr;
+        String client = remoteAddr;
+        int end = forwardedFor.length();
+        while (end > 0) {
+            int comma = forwardedFor.lastIndexOf(',', end - 1);
+            String hop = forwardedFor.substring(comma + 1, end).trim();
+            end = comma < 0 ? 0 : comma;
+            if (hop.isEmpty()) continue;
+            if (parse(hop) == null) return client; // garbage: stop at the last hop we could vouch for
+            client = hop;
+            if (!isTrusted(hop)) return hop;
+        }
+        return client;
+    }
+
+    // IPv4 dotted quad or IPv6 literal (optionally bracketed, zone id dropped); null if it is neither
+    static byte[] parse(String address) {
+        if (address == null || address.isEmpty()) return null;
+        if (address.indexOf(':') < 0) return parseIpv4(address);
+        String s = address;
+        if (s.startsWith("[") && s.endsWith("]")) s = s.substring(1, s.length() - 1);
+        int zone = s.indexOf('%');
+        if (zone >= 0) s = s.substring(0, zone);
+        if (s.isEmpty()) return null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (!(c == ':' || c == '.' || Character.digit(c, 16) >= 0)) return null;
+        }
+        try {
+            return InetAddress.getByName(s).getAddress(); // a literal, so no lookup
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    private static byte[] parseIpv4(String s) {
+        byte[] out = new byte[4];
+        int part = 0;
+        int value = -1;
+        for (int i = 0; i <= s.length(); i++) {
+            char c = i < s.length() ? s.charAt(i) : '.';
+            if (c == '.') {
+                if (value < 0 || part > 3) return null;
+                out[part++] = (byte) value;
+                value = -1;
+            } else if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255) return null;
+            } else {
+                return null;
+            }
+        }
+        return part == 4 ? out : null;
+    }
+}
@@ -0,0 +1,65 @@
+-- Flyway migration: schema as previously generated by Hibernate (ddl-auto), before V1.
+-- Only runs on an empty database; existing databases are baselined at version 1 (spring.flyway.baseline-on-migrate).
+
+CREATE TABLE IF NOT EXISTS patients (
+    patient_id blob not null,
+    account_status varchar(50) not null,
+    created_at timestamp not null,
+    date_of_birth date not null,
+    email varchar(255) not null unique,
+    first_name varchar(100) not null,
+    last_login_at timestamp,
+    last_name varchar(100) not null,
+    phone_number varchar(20),
+    updated_at timestamp not null,
+    primary key (patient_id)
+);
+
+CREATE TABLE IF NOT EXISTS patient_credentials (
+    credential_id blob not null,
+    created_at timestamp not null,
+    failed_login_attempts integer,
+    locked_until timestamp,
+    password_changed_at timestamp not null,
+    password_hash varchar(255) not null,
+    updated_at timestamp not null,
+    patient_id blob not null unique,
+    primary key (credential_id)
+);
+
+CREATE TABLE IF NOT EXISTS email_verification_tokens (
+    token_id blob not null,
+    created_at timestamp not null,
+    expires_at timestamp not null,
+    resend_count integer,
+    token_hash varchar(255) not null,
+    verified_at timestamp,
+    patient_id blob not null,
+    ip_address varchar(255),
+    user_agent varchar(255),
+    primary key (token_id)
+);
+
+CREATE TABLE IF NOT EXISTS password_reset_tokens (
+    token_id blob not null,
+    created_at timestamp not null,
+    expires_at timestamp not null,
+    ip_address varchar(45),
+    token_hash varchar(255) not null,
+    used_at timestamp,
+    user_agent varchar(255),
+    patient_id blob not null,
+    primary key (token_id)
+);
+
+CREATE TABLE IF NOT EXISTS authentication_audit_logs (
+    log_id blob not null,
+    event_type varchar(50) not null,
+    ip_address varchar(45),
+    metadata varchar(255),
+    success boolean not null,
+    timestamp timestamp not null,
+    user_agent varchar(255),
+    patient_id blob,
+    primary key (log_id)
+);
@@ -0,0 +1,19 @@
+-- Flyway migration: transactional email outbox (see EmailOutboxMessage).
+-- IF NOT EXISTS because databases baselined at V1 may already have it from ddl-auto.
+
+CREATE TABLE IF NOT EXISTS email_outbox (
+    message_id blob not null,
+    attempts integer not null,
+    created_at timestamp not null,
+    last_error varchar(500),
+    link varchar(1024),
+    next_attempt_at timestamp not null,
+    recipient varchar(255) not null,
+    sent_at timestamp,
+    status varchar(20) not null,
+    template varchar(50) not null check (template in ('VERIFICATION','PASSWORD_RESET','PASSWORD_CHANGED')),
+    primary key (message_id)
+);
+
+-- Dispatcher poll: status = 'pending' and next_attempt_at <= now
+CREATE INDEX IF NOT EXISTS idx_email_outbox_status_next_attempt ON email_outbox (status, next_attempt_at);
@@ -0,0 +1,19 @@
+-- Flyway migration: indexes for token, patient and audit lookups (previously full table scans).
+
+-- findByTokenHash; hashes are SHA-256 of random tokens, so also enforce uniqueness
+CREATE UNIQUE INDEX IF NOT EXISTS ux_password_reset_tokens_token_hash ON password_reset_tokens (token_hash);
+CREATE UNIQUE INDEX IF NOT EXISTS ux_email_verification_tokens_token_hash ON email_verification_tokens (token_hash);
+
+-- findByPatient, countByPatientAndCreatedAtAfter
+CREATE INDEX IF NOT EXISTS idx_password_reset_tokens_patient_created ON password_reset_tokens (patient_id, created_at);
+CREATE INDEX IF NOT EXISTS idx_email_verification_tokens_patient_created ON email_verification_tokens (patient_id, created_at);
+
+-- findByPatientAndUsedAtIsNull
+CREATE INDEX IF NOT EXISTS idx_password_reset_tokens_patient_used ON password_reset_tokens (patient_id, used_at);
+
+-- Expiry: continuous expiry deletes and the nightly cleanup
+CREATE INDEX IF NOT EXISTS idx_password_reset_tokens_expires_at ON password_reset_tokens (expires_at);
+CREATE INDEX IF NOT EXISTS idx_email_verification_tokens_expires_at ON email_verification_tokens (expires_at);
+
+-- AuthenticationAuditLogRepository.findByPatient; timestamp second so a patient's history reads in time order
+CREATE INDEX IF NOT EXISTS idx_authentication_audit_logs_patient_timestamp ON authentication_audit_logs (patient_id, timestamp);
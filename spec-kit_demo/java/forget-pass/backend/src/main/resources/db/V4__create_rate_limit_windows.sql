@@ -0,0 +1,10 @@
+-- Flyway migration: saved rate limiter state (RateLimitService), rewritten every snapshot interval.
+-- window_index counts windows of the policy's length since the epoch; previous_count is for window_index - 1.
+CREATE TABLE IF NOT EXISTS rate_limit_windows (
+    policy varchar(64) not null,
+    limit_key varchar(128) not null,
+    window_index integer not null,
+    previous_count integer not null,
+    current_count integer not null,
+    primary key (policy, limit_key)
+) WITHOUT ROWID;
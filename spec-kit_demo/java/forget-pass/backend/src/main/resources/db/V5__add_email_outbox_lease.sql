@@ -0,0 +1,9 @@
+-- Flyway migration: lease on outbox rows (EmailOutboxDispatcher).
+-- A dispatcher claims due rows by setting lease_id and pushing next_attempt_at out to the lease expiry in one
+-- conditional UPDATE, then sends only the rows carrying its lease_id. The column is cleared when the row is saved
+-- after the send; a row whose dispatcher died becomes due again once next_attempt_at passes.
+ALTER TABLE email_outbox
+    ADD COLUMN lease_id varchar(64);
+
+-- Dispatcher reads back its claim: lease_id = ?
+CREATE INDEX IF NOT EXISTS idx_email_outbox_lease ON email_outbox (lease_id) WHERE lease_id IS NOT NULL;
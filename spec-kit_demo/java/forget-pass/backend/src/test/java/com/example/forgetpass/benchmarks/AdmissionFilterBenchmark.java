@@ -0,0 +1,86 @@
+package com.example.forgetpass.benchmarks;
+
+import com.example.forgetpass.config.AdmissionFilter;
+import com.example.forgetpass.util.TokenBuckets;
+import com.example.forgetpass.util.TrustedProxies;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * What the admission filter adds to every request, in nanoseconds: a path without a route, an admitted
+ * request from one of {@code bench.clients} addresses (direct and through a trusted proxy), and a rejected
+ * one. The chain is a counter, so this is the filter alone. Run with
+ * {@code mvn test -Pbenchmark -Dtest=AdmissionFilterBenchmark}.
+ */
+@Tag("benchmark")
+class AdmissionFilterBenchmark {
+
+    private static final int REQUESTS = Integer.getInteger("bench.requests", 2_000_000);
+    private static final int CLIENTS = Integer.getInteger("bench.clients", 10_000);
+
+    @Test
+    void overheadPerRequest() throws Exception {
+        AdmissionFilter filter = new AdmissionFilter(List.of(
+                new AdmissionFilter.Route("/api/v1/patients/register", new TokenBuckets.Limit(10, Duration.ofMinutes(1))),
+                new AdmissionFilter.Route("/api/v1/patients/password-reset", new TokenBuckets.Limit(30, Duration.ofMinutes(1))),
+                new AdmissionFilter.Route("/api/v1/open", new TokenBuckets.Limit(1_000_000_000, Duration.ofSeconds(1))),
+                new AdmissionFilter.Route("/api/v1/closed", new TokenBuckets.Limit(1, Duration.ofHours(1)))),
+            new TokenBuckets(100_000, System::nanoTime), new TrustedProxies(List.of("10.0.0.0/8")), new SimpleMeterRegistry());
+        AtomicInteger passed = new AtomicInteger();
+        FilterChain chain = (req, res) -> passed.incrementAndGet();
+
+        MockHttpServletRequest[] unmatched = requests("/api/v1/health", false);
+        MockHttpServletRequest[] direct = requests("/api/v1/open/x", false);
+        MockHttpServletRequest[] proxied = requests("/api/v1/open/x", true);
+        MockHttpServletRequest[] closed = requests("/api/v1/closed", false);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        System.out.printf("%n%-28s %10s%n", "request", "ns/request");
+        for (int round = 0; round < 2; round++) { // the first round warms up
+            double unmatchedNanos = run(filter, unmatched, response, chain);
+            double directNanos = run(filter, direct, response, chain);
+            double proxiedNanos = run(filter, proxied, response, chain);
+            passed.set(0);
+            double rejectedNanos = run(filter, closed, response, chain);
+            if (round == 1) {
+                System.out.printf("%-28s %10.0f%n", "no route", unmatchedNanos);
+                System.out.printf("%-28s %10.0f%n", "admitted", directNanos);
+                System.out.printf("%-28s %10.0f%n", "admitted, X-Forwarded-For", proxiedNanos);
+                System.out.printf("%-28s %10.0f%n", "rejected (429)", rejectedNanos);
+            }
+            // Only the first request of each client on the closed route gets through
+            assertThat(passed.get()).isLessThanOrEqualTo(CLIENTS);
+        }
+    }
+
+    private static double run(AdmissionFilter filter, MockHttpServletRequest[] requests, MockHttpServletResponse response,
+                              FilterChain chain) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            response.reset();
+            filter.doFilter(requests[i % requests.length], response, chain);
+        }
+        return (System.nanoTime() - start) / (double) REQUESTS;
+    }
+
+    private static MockHttpServletRequest[] requests(String path, boolean proxied) {
+        MockHttpServletRequest[] requests = new MockHttpServletRequest[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            String client = "198.51." + (i >> 8 & 0xFF) + "." + (i & 0xFF);
+            requests[i] = new MockHttpServletRequest("POST", path);
+            requests[i].setRemoteAddr(proxied ? "10.0.0.2" : client);
+            if (proxied) requests[i].addHeader("X-Forwarded-For", "203.0.113.9, " + client);
+        }
+        return requests;
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.forgetpass.benchmarks;
+
+import com.example.forgetpass.config.SqliteProfile;
+import com.example.forgetpass.util.StatementCache;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Token lookup and insert paths over plain JDBC, one connection, with the connection profile built
+ * up one setting at a time from the driver defaults to the profile in application.yml. Each step
+ * gets a fresh file migrated by Flyway and seeded with {@code bench.rows} tokens; lookups are by
+ * {@code token_hash} (prepare, execute, close, like Hibernate does), inserts are one commit each.
+ * Run with {@code mvn test -Pbenchmark -Dtest=ConnectionProfileBenchmark}.
+ */
+@Tag("benchmark")
+class ConnectionProfileBenchmark {
+
+    private static final int ROWS = Integer.getInteger("bench.rows", 50_000);
+    private static final int LOOKUPS = Integer.getInteger("bench.lookups", 200_000);
+    private static final int INSERTS = Integer.getInteger("bench.inserts", 2_000);
+
+    private static final String LOOKUP = "SELECT token_id, patient_id, expires_at, used_at FROM password_reset_tokens WHERE token_hash = ?";
+    private static final String INSERT = "INSERT INTO password_reset_tokens (token_id, created_at, expires_at, token_hash, patient_id) VALUES (?, ?, ?, ?, ?)";
+
+    @Test
+    void eachSettingInTurn() throws Exception {
+        Map<String, SqliteProfile> steps = new LinkedHashMap<>();
+        SqliteProfile p = SqliteProfile.driverDefaults();
+        steps.put("driver defaults", p);
+        steps.put("+ journal_mode=WAL", p = p.withJournalMode("WAL"));
+        steps.put("+ synchronous=NORMAL", p = new SqliteProfile(p.journalMode(), "NORMAL", null, null, null, null, 0));
+        steps.put("+ cache_size=16MB", p = p.withCacheSize(DataSize.ofMegabytes(16)));
+        steps.put("+ mmap_size=256MB", p = new SqliteProfile(p.journalMode(), p.synchronous(), p.cacheSize(),
+            DataSize.ofMegabytes(256), null, null, 0));
+        steps.put("+ temp_store=MEMORY", p = new SqliteProfile(p.journalMode(), p.synchronous(), p.cacheSize(),
+            p.mmapSize(), "MEMORY", Duration.ofSeconds(5), 0));
+        steps.put("+ statement cache (64)", new SqliteProfile(p.journalMode(), p.synchronous(), p.cacheSize(),
+            p.mmapSize(), p.tempStore(), p.busyTimeout(), 64));
+
+        System.out.printf("%n%-24s %14s %14s %10s%n", "profile", "lookups/s", "inserts/s", "cache hits");
+        for (Map.Entry<String, SqliteProfile> step : steps.entrySet()) {
+            Path dir = Files.createTempDirectory("connection-profile-bench");
+            dir.toFile().deleteOnExit();
+            StatementCache.Stats stats = new StatementCache.Stats();
+            DataSource dataSource = step.getValue().dataSource("jdbc:sqlite:" + dir.resolve("bench.db"), false, stats);
+            Flyway.configure().dataSource(dataSource).locations("classpath:db").load().migrate();
+
+            try (Connection connection = dataSource.getConnection()) {
+                List<String> hashes = seed(connection);
+                double lookups = lookups(connection, hashes);
+                double inserts = inserts(connection);
+                System.out.printf("%-24s %14.0f %14.0f %10d%n", step.getKey(), lookups, inserts, stats.hits());
+            }
+        }
+    }
+
+    private static List<String> seed(Connection connection) throws SQLException {
+        List<String> hashes = new ArrayList<>(ROWS);
+        connection.setAutoCommit(false);
+        try (PreparedStatement ps = connection.prepareStatement(INSERT)) {
+            for (int i = 0; i < ROWS; i++) {
+                String hash = UUID.randomUUID().toString();
+                bind(ps, hash);
+                ps.addBatch();
+                hashes.add(hash);
+            }
+            ps.executeBatch();
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+        return hashes;
+    }
+
+    private static double lookups(Connection connection, List<String> hashes) throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            try (PreparedStatement ps = connection.prepareStatement(LOOKUP)) {
+                ps.setString(1, hashes.get(random.nextInt(hashes.size())));
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) found++;
+                }
+            }
+        }
+        double perSecond = LOOKUPS / ((System.nanoTime() - start) / 1e9);
+        assertThat(found).isEqualTo(LOOKUPS);
+        return perSecond;
+    }
+
+    private static double inserts(Connection connection) throws SQLException {
+        long start = System.nanoTime();
+        for (int i = 0; i < INSERTS; i++) {
+            try (PreparedStatement ps = connection.prepareStatement(INSERT)) {
+                bind(ps, UUID.randomUUID().toString());
+                ps.executeUpdate();
+            }
+        }
+        return INSERTS / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static void bind(PreparedStatement ps, String hash) throws SQLException {
+        long now = System.currentTimeMillis();
+        ps.setBytes(1, uuid());
+        ps.setLong(2, now);
+        ps.setLong(3, now + 3_600_000);
+        ps.setString(4, hash);
+        ps.setBytes(5, uuid());
+    }
+
+    private static byte[] uuid() {
+        byte[] bytes = new byte[16];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.forgetpass.benchmarks;
+
+import com.example.forgetpass.services.SendGridTransport;
+import com.example.forgetpass.support.StubSendGridServer;
+import com.sendgrid.Client;
+import com.sendgrid.Method;
+import com.sendgrid.Request;
+import com.sendgrid.SendGrid;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Email send throughput against a local stub: new SendGrid client per send (old) vs the shared pooled
+ * transport. Plain HTTP, so the gap here is connection setup only; against the real API every new
+ * client also pays a TLS handshake. Run with {@code mvn test -Pbenchmark -Dtest=EmailTransportBenchmark}.
+ */
+@Tag("benchmark")
+class EmailTransportBenchmark {
+
+    private static final int SENDS = Integer.getInteger("bench.sends", 2000);
+    private static final int SENDERS = Integer.getInteger("bench.senders", 4);
+    private static final long DELAY_MS = Long.getLong("bench.stub.delay.ms", 2);
+
+    @Test
+    void sendThroughput() throws Exception {
+        try (StubSendGridServer stub = new StubSendGridServer(DELAY_MS);
+             SendGridTransport transport = new SendGridTransport(stub.host(), true, SENDERS, SENDERS,
+                 Duration.ofSeconds(2), Duration.ofSeconds(5), Duration.ofSeconds(30), Duration.ofSeconds(5),
+                 new SimpleMeterRegistry())) {
+            run("client-per-send", stub, () -> {
+                SendGrid sg = new SendGrid("k", new Client(true));
+                sg.setHost(stub.host());
+                return sg;
+            });
+            SendGrid shared = transport.newClient("k");
+            run("pooled", stub, () -> shared);
+        }
+    }
+
+    private static void run(String name, StubSendGridServer stub, Supplier<SendGrid> clients) throws Exception {
+        int connectionsBefore = stub.connections();
+        ExecutorService pool = Executors.newFixedThreadPool(SENDERS);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < SENDS; i++) {
+                results.add(pool.submit(() -> {
+                    clients.get().api(mailSend());
+                    return null;
+                }));
+            }
+            for (Future<?> f : results) f.get();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%-16s sends=%d senders=%d %8.0f sends/s connections=%d%n",
+                name, SENDS, SENDERS, SENDS / seconds, stub.connections() - connectionsBefore);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static Request mailSend() throws IOException {
+        Request request = new Request();
+        request.setMethod(Method.POST);
+        request.setEndpoint("mail/send");
+        request.setBody("{}");
+        return request;
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.forgetpass.benchmarks;
+
+import com.example.forgetpass.config.SqliteProfile;
+import com.example.forgetpass.util.BloomFilter;
+import com.example.forgetpass.util.StatementCache;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The lookup filter's footprint and accuracy, and what a definite miss saves. For each size in
+ * {@code bench.sizes} and each target rate: the bit array's size, the measured false-positive rate over
+ * {@code bench.probes} unknown emails and token ids, and nanoseconds per lookup. Then unknown emails
+ * against a patients table of {@code bench.patients} rows: the filter versus the index probe it replaces.
+ * Run with {@code mvn test -Pbenchmark -Dtest=LookupFilterBenchmark}.
+ */
+@Tag("benchmark")
+class LookupFilterBenchmark {
+
+    private static final int[] SIZES = Arrays.stream(System.getProperty("bench.sizes", "100000,1000000,10000000").split(","))
+        .mapToInt(Integer::parseInt).toArray();
+    private static final double[] RATES = {0.01, 0.001};
+    private static final int PROBES = Integer.getInteger("bench.probes", 1_000_000);
+    private static final int PATIENTS = Integer.getInteger("bench.patients", 200_000);
+
+    @Test
+    void footprintAndFalsePositiveRate() {
+        System.out.printf("%n%10s %8s %12s %10s %7s %14s %14s %12s%n",
+            "entries", "target", "bytes", "bits/entry", "hashes", "fpp (emails)", "fpp (tokens)", "ns/lookup");
+        String[] unknownEmails = new String[PROBES];
+        UUID[] unknownIds = new UUID[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            unknownEmails[i] = email("stranger", i);
+            unknownIds[i] = UUID.randomUUID();
+        }
+        for (int size : SIZES) {
+            for (double rate : RATES) {
+                BloomFilter emails = new BloomFilter(size, rate);
+                BloomFilter tokens = new BloomFilter(size, rate);
+                for (int i = 0; i < size; i++) {
+                    emails.put(email("patient", i));
+                    tokens.put(UUID.randomUUID());
+                }
+
+                int emailHits = 0;
+                int tokenHits = 0;
+                long start = System.nanoTime();
+                for (int i = 0; i < PROBES; i++) {
+                    if (emails.mightContain(unknownEmails[i])) emailHits++;
+                    if (tokens.mightContain(unknownIds[i])) tokenHits++;
+                }
+                double nanos = (System.nanoTime() - start) / (2.0 * PROBES);
+
+                System.out.printf("%10d %8.3f %12d %10.2f %7d %14.5f %14.5f %12.0f%n", size, rate, emails.sizeInBytes(),
+                    emails.sizeInBytes() * 8.0 / size, emails.hashCount(), (double) emailHits / PROBES,
+                    (double) tokenHits / PROBES, nanos);
+                assertThat((double) emailHits / PROBES).isLessThan(rate * 1.5);
+                assertThat((double) tokenHits / PROBES).isLessThan(rate * 1.5);
+            }
+        }
+    }
+
+    @Test
+    void unknownEmailFilterVersusIndexProbe() throws Exception {
+        Path dir = Files.createTempDirectory("lookup-filter-bench");
+        dir.toFile().deleteOnExit();
+        SqliteProfile profile = new SqliteProfile("WAL", "NORMAL", DataSize.ofMegabytes(16), DataSize.ofMegabytes(256),
+            "MEMORY", Duration.ofSeconds(5), 64);
+        DataSource dataSource = profile.dataSource("jdbc:sqlite:" + dir.resolve("bench.db"), false, new StatementCache.Stats());
+        Flyway.configure().dataSource(dataSource).locations("classpath:db").load().migrate();
+
+        BloomFilter filter = new BloomFilter(PATIENTS, 0.01);
+        try (Connection connection = dataSource.getConnection()) {
+            seed(connection, filter);
+            int lookups = Math.min(PROBES, 200_000);
+            for (int round = 0; round < 2; round++) { // the first round warms up
+                long start = System.nanoTime();
+                int found = 0;
+                for (int i = 0; i < lookups; i++) {
+                    if (exists(connection, email("stranger", i))) found++;
+                }
+                double probeNanos = (System.nanoTime() - start) / (double) lookups;
+
+                start = System.nanoTime();
+                int passed = 0;
+                for (int i = 0; i < lookups; i++) {
+                    if (!filter.mightContain(email("stranger", i))) passed++;
+                    else if (exists(connection, email("stranger", i))) found++;
+                }
+                double filterNanos = (System.nanoTime() - start) / (double) lookups;
+                if (round == 1) {
+                    System.out.printf("%nunknown email, %d patients: index probe %.0f ns, filter then probe %.0f ns (%d of %d answered by the filter)%n",
+                        PATIENTS, probeNanos, filterNanos, passed, lookups);
+                }
+                assertThat(found).isZero();
+            }
+        }
+    }
+
+    private static void seed(Connection connection, BloomFilter filter) throws Exception {
+        connection.setAutoCommit(false);
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO patients (patient_id, account_status, created_at, date_of_birth, email, first_name, last_name, updated_at) " +
+                "VALUES (?, 'active', ?, ?, ?, 'Bench', 'Mark', ?)")) {
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < PATIENTS; i++) {
+                UUID id = UUID.randomUUID();
+                ps.setBytes(1, ByteBuffer.allocate(16).putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits()).array());
+                ps.setLong(2, now);
+                ps.setString(3, "1990-01-01");
+                ps.setString(4, email("patient", i));
+                ps.setLong(5, now);
+                ps.addBatch();
+                filter.put(email("patient", i));
+            }
+            ps.executeBatch();
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+    }
+
+    private static boolean exists(Connection connection, String email) throws Exception {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT patient_id FROM patients WHERE email = ?")) {
+            ps.setString(1, email);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static String email(String prefix, int i) {
+        return prefix + i + "@example.com";
+    }
+}
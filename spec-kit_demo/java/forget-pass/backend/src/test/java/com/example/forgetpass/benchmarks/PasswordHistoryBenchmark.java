@@ -0,0 +1,76 @@
+package com.example.forgetpass.benchmarks;
+
+import com.example.forgetpass.services.PasswordHashingService;
+import com.example.forgetpass.services.PasswordHistoryVerifier;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Confirm-path hashing cost: sequential encode-then-match (old) vs concurrent early-exit history check.
+ * Run with {@code mvn test -Pbenchmark -Dtest=PasswordHistoryBenchmark}.
+ */
+@Tag("benchmark")
+class PasswordHistoryBenchmark {
+
+    private static final int STRENGTH = Integer.getInteger("bench.bcrypt.strength", 10);
+    private static final int ITERATIONS = Integer.getInteger("bench.iterations", 20);
+
+    @Test
+    void confirmHashingLatency() {
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(STRENGTH);
+        List<String> history = new ArrayList<>();
+        for (int i = 0; i < 6; i++) history.add(bcrypt.encode("Previous-" + i + "!"));
+        String reused = "Previous-3!";
+        String fresh = "Brand-new-9!";
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        PasswordHashingService hashing = new PasswordHashingService(bcrypt, threads, 64, Duration.ofMinutes(1), new SimpleMeterRegistry());
+        PasswordHistoryVerifier verifier = new PasswordHistoryVerifier(hashing);
+        try {
+            report("sequential/fresh", measure(() -> sequential(bcrypt, fresh, history)));
+            report("parallel/fresh", measure(() -> {
+                if (verifier.findMatch(fresh, history).isEmpty()) hashing.encode(fresh);
+            }));
+            report("sequential/reused", measure(() -> sequential(bcrypt, reused, history)));
+            report("parallel/reused", measure(() -> {
+                if (verifier.findMatch(reused, history).isEmpty()) hashing.encode(reused);
+            }));
+        } finally {
+            hashing.shutdown();
+        }
+    }
+
+    // The pre-change confirm flow: encode first, then one match at a time
+    private static void sequential(BCryptPasswordEncoder bcrypt, String raw, List<String> history) {
+        bcrypt.encode(raw);
+        for (String h : history) {
+            if (bcrypt.matches(raw, h)) return;
+        }
+    }
+
+    private static long[] measure(Runnable op) {
+        op.run(); // warm-up
+        long[] samples = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            op.run();
+            samples[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        return samples;
+    }
+
+    private static void report(String name, long[] sorted) {
+        long p50 = sorted[sorted.length / 2];
+        long p99 = sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * 0.99) - 1)];
+        System.out.printf("%-20s cores=%d strength=%d p50=%6.1f ms p99=%6.1f ms%n",
+            name, Runtime.getRuntime().availableProcessors(), STRENGTH, p50 / 1e6, p99 / 1e6);
+    }
+}
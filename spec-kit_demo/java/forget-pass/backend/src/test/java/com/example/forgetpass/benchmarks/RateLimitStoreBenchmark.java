@@ -0,0 +1,54 @@
+package com.example.forgetpass.benchmarks;
+
+import com.example.forgetpass.util.MappedSlidingWindowLimiter;
+import com.example.forgetpass.util.RateLimiter;
+import com.example.forgetpass.util.SlidingWindowLimiter;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Nanoseconds per rate-limit check over {@code bench.keys} keys: the in-memory limiter against the
+ * memory-mapped one that processes on a host share. Run with
+ * {@code mvn test -Pbenchmark -Dtest=RateLimitStoreBenchmark}.
+ */
+@Tag("benchmark")
+class RateLimitStoreBenchmark {
+
+    private static final int CHECKS = Integer.getInteger("bench.checks", 5_000_000);
+    private static final int KEYS = Integer.getInteger("bench.keys", 20_000);
+
+    @Test
+    void nanosPerCheck() throws Exception {
+        List<SlidingWindowLimiter.Policy> policies = List.of(new SlidingWindowLimiter.Policy("p", 1_000, Duration.ofDays(1)));
+        Path dir = Files.createTempDirectory("rate-limit-bench");
+        dir.toFile().deleteOnExit();
+        String[] keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) keys[i] = "key-" + i;
+
+        RateLimiter memory = new SlidingWindowLimiter(policies, System::currentTimeMillis);
+        RateLimiter mapped = new MappedSlidingWindowLimiter(dir.resolve("limits.map"), policies, 65_536, System::currentTimeMillis);
+        System.out.printf("%n%-10s %10s%n", "store", "ns/check");
+        for (int round = 0; round < 2; round++) { // the first round warms up
+            double memoryNanos = run(memory, keys);
+            double mappedNanos = run(mapped, keys);
+            if (round == 1) {
+                System.out.printf("%-10s %10.0f%n", "memory", memoryNanos);
+                System.out.printf("%-10s %10.0f%n", "mapped", mappedNanos);
+            }
+        }
+        assertThat(mapped.size()).isEqualTo(KEYS);
+    }
+
+    private static double run(RateLimiter limiter, String[] keys) {
+        long start = System.nanoTime();
+        for (int i = 0; i < CHECKS; i++) limiter.tryAcquire("p", keys[i % keys.length]);
+        return (System.nanoTime() - start) / (double) CHECKS;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.forgetpass.benchmarks;
+
+import com.example.forgetpass.controllers.PatientRegistrationController;
+import com.example.forgetpass.domain.Patient;
+import com.example.forgetpass.services.AuditService;
+import com.example.forgetpass.services.DefaultReCaptchaClient;
+import com.example.forgetpass.services.PatientRegistrationService;
+import com.example.forgetpass.services.ReCaptchaService;
+import com.example.forgetpass.support.StubReCaptchaServer;
+import com.example.forgetpass.util.RetryScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Registration latency with reCAPTCHA verified before the input checks (the old order) and alongside
+ * them. The verifier is a local stub answering after {@code bench.captcha-ms}; the checks and duplicate
+ * probe take {@code bench.checks-ms}, standing in for a cold database read. Hashing and the write are
+ * left out: they still wait for reCAPTCHA in both orders. Run with
+ * {@code mvn test -Pbenchmark -Dtest=RegistrationPipelineBenchmark}.
+ */
+@Tag("benchmark")
+class RegistrationPipelineBenchmark {
+
+    private static final int REQUESTS = Integer.getInteger("bench.requests", 30);
+    private static final long CAPTCHA_MS = Long.getLong("bench.captcha-ms", 80);
+    private static final long CHECKS_MS = Long.getLong("bench.checks-ms", 30);
+
+    private final RetryScheduler retryScheduler = new RetryScheduler(1, new SimpleMeterRegistry());
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty("RECAPTCHA_SECRET");
+        retryScheduler.shutdown();
+    }
+
+    @Test
+    void sequentialVersusOverlapped() throws Exception {
+        System.setProperty("RECAPTCHA_SECRET", "bench-secret");
+        try (StubReCaptchaServer stub = new StubReCaptchaServer(CAPTCHA_MS)) {
+            ReCaptchaService reCaptcha = new ReCaptchaService(new DefaultReCaptchaClient(stub.verifyUrl(), 64,
+                Duration.ofSeconds(3), Duration.ofSeconds(3), retryScheduler, new SimpleMeterRegistry()));
+            PatientRegistrationService registration = mock(PatientRegistrationService.class);
+            when(registration.precheck(anyString(), any(), anyString())).thenAnswer(inv -> {
+                Thread.sleep(CHECKS_MS);
+                return false;
+            });
+            Patient patient = new Patient();
+            patient.setPatientId(UUID.randomUUID());
+            when(registration.registerAndIssueVerification(anyString(), anyString(), anyString(), anyString(), any(),
+                anyString(), anyString())).thenReturn(patient);
+            PatientRegistrationController controller = new PatientRegistrationController(registration, mock(AuditService.class),
+                reCaptcha, Duration.ofSeconds(5));
+            PatientRegistrationController.RegisterRequest req = new PatientRegistrationController.RegisterRequest(
+                "Bench", "Mark", "bench@example.com", "+1 555-0000", LocalDate.now().minusYears(30), "Str0ngP@ss!");
+
+            System.out.printf("%n%-12s %10s   (reCAPTCHA %d ms, checks %d ms)%n", "order", "ms/request", CAPTCHA_MS, CHECKS_MS);
+            for (int round = 0; round < 2; round++) { // the first round warms up
+                long start = System.nanoTime();
+                for (int i = 0; i < REQUESTS; i++) {
+                    assertThat(reCaptcha.validate("token", "register")).isTrue();
+                    registration.precheck(req.email(), req.dateOfBirth(), req.password());
+                }
+                double sequentialMs = (System.nanoTime() - start) / 1e6 / REQUESTS;
+
+                start = System.nanoTime();
+                for (int i = 0; i < REQUESTS; i++) {
+                    ResponseEntity<?> response = controller.register(req, null, null, "token");
+                    assertThat(response.getStatusCode().value()).isEqualTo(201);
+                }
+                double overlappedMs = (System.nanoTime() - start) / 1e6 / REQUESTS;
+                if (round == 1) {
+                    System.out.printf("%-12s %10.1f%n", "sequential", sequentialMs);
+                    System.out.printf("%-12s %10.1f%n", "overlapped", overlappedMs);
+                }
+            }
+            assertThat(stub.connections()).isEqualTo(1);
+        }
+    }
+}
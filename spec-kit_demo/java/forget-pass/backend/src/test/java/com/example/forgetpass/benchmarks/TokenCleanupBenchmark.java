@@ -0,0 +1,157 @@
+package com.example.forgetpass.benchmarks;
+
+import com.example.forgetpass.domain.PasswordResetToken;
+import com.example.forgetpass.domain.Patient;
+import com.example.forgetpass.repositories.PasswordResetTokenRepository;
+import com.example.forgetpass.repositories.PatientRepository;
+import com.example.forgetpass.services.TokenCleanupService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Token cleanup on a seeded SQLite file: the old findAll + per-row delete loop (one commit per row, so
+ * only a small sample) vs chunked set-based deletes on {@code bench.rows} rows, 3 in 4 used or expired.
+ * A probe thread keeps writing during the chunked run to show how long writers wait for the lock.
+ * Run with {@code mvn test -Pbenchmark -Dtest=TokenCleanupBenchmark}.
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = "forgetpass.email.outbox.enabled=false")
+class TokenCleanupBenchmark {
+
+    private static final int ROWS = Integer.getInteger("bench.rows", 1_000_000);
+    private static final int LEGACY_ROWS = Integer.getInteger("bench.legacy.rows", 2_000);
+
+    private static final Path DB;
+
+    static {
+        try {
+            DB = Files.createTempFile("token-cleanup-bench", ".db");
+            DB.toFile().deleteOnExit();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void dataSource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> "jdbc:sqlite:" + DB);
+    }
+
+    @Autowired
+    private TokenCleanupService cleanupService;
+
+    @Autowired
+    private PasswordResetTokenRepository tokenRepository;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Test
+    void cleanupThroughput() throws Exception {
+        Patient patient = new Patient();
+        patient.setFirstName("Bench");
+        patient.setLastName("Mark");
+        patient.setEmail("bench@example.com");
+        patient.setDateOfBirth(LocalDate.of(1990, 1, 1));
+        patient = patientRepository.save(patient);
+        Instant now = Instant.now();
+        saveTemplate(patient, 0, now.plusSeconds(3600), null);
+        saveTemplate(patient, 1, now.minusSeconds(60), null);
+        saveTemplate(patient, 2, now.plusSeconds(3600), now.minusSeconds(10));
+        saveTemplate(patient, 3, now.minusSeconds(3600), null);
+
+        seed(LEGACY_ROWS);
+        long start = System.nanoTime();
+        long removed = legacyCleanup(now);
+        report("findAll+delete", removed, System.nanoTime() - start);
+
+        seed(ROWS);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong maxWriteNanos = new AtomicLong();
+        AtomicLong busyWrites = new AtomicLong();
+        Thread probe = new Thread(() -> {
+            while (running.get()) {
+                long t0 = System.nanoTime();
+                try {
+                    jdbc.update("UPDATE patients SET last_name = last_name WHERE email = 'bench@example.com'");
+                } catch (DataAccessException e) {
+                    busyWrites.incrementAndGet();
+                }
+                maxWriteNanos.accumulateAndGet(System.nanoTime() - t0, Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "bench-writer");
+        probe.start();
+        TokenCleanupService.Result result;
+        try {
+            result = cleanupService.cleanup(now);
+        } finally {
+            running.set(false);
+            probe.join();
+        }
+        report("chunked", result.total(), result.duration().toNanos());
+        System.out.printf("%-16s max concurrent write latency=%.1f ms, failed writes=%d%n",
+            "chunked", maxWriteNanos.get() / 1e6, busyWrites.get());
+        assertThat(result.passwordResetTokens()).isGreaterThanOrEqualTo(ROWS * 3L / 4);
+    }
+
+    // The pre-change loop: every row and its patient loaded, one delete transaction per row
+    private long legacyCleanup(Instant now) {
+        long removed = 0;
+        for (PasswordResetToken t : tokenRepository.findAll()) {
+            if (t.getTokenHash().startsWith("template-")) continue; // keep the seed rows for the next run
+            if (t.getUsedAt() != null || t.getExpiresAt() == null || t.getExpiresAt().isBefore(now)) {
+                tokenRepository.delete(t);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private void saveTemplate(Patient patient, int n, Instant expiresAt, Instant usedAt) {
+        PasswordResetToken t = new PasswordResetToken();
+        t.setPatient(patient);
+        t.setTokenHash("template-" + n);
+        t.setExpiresAt(expiresAt);
+        t.setUsedAt(usedAt);
+        tokenRepository.save(t);
+    }
+
+    // Copies the four template rows round-robin, so timestamps keep the encoding Hibernate wrote
+    private void seed(int rows) {
+        long start = System.nanoTime();
+        jdbc.update("WITH RECURSIVE seq(n) AS (SELECT 1 UNION ALL SELECT n + 1 FROM seq WHERE n < ?) " +
+            "INSERT INTO password_reset_tokens (token_id, created_at, expires_at, token_hash, used_at, patient_id) " +
+            "SELECT randomblob(16), t.created_at, t.expires_at, 'bench-' || seq.n, t.used_at, t.patient_id " +
+            "FROM seq JOIN password_reset_tokens t ON t.token_hash = 'template-' || (seq.n % 4)", rows);
+        System.out.printf("seeded %d rows in %d ms%n", rows, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void report(String name, long rows, long nanos) {
+        System.out.printf("%-16s rows=%d total=%d ms rate=%.0f rows/s%n",
+            name, rows, nanos / 1_000_000, rows * 1e9 / nanos);
+    }
+}
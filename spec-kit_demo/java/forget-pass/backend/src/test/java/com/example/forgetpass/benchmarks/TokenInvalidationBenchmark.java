@@ -0,0 +1,125 @@
+package com.example.forgetpass.benchmarks;
+
+import com.example.forgetpass.domain.PasswordResetToken;
+import com.example.forgetpass.domain.Patient;
+import com.example.forgetpass.repositories.PasswordResetTokenRepository;
+import com.example.forgetpass.repositories.PatientRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Invalidating a patient's outstanding reset tokens, for each size in {@code bench.sizes}: the old
+ * load + set usedAt + saveAll (one UPDATE per row, plus the entities) vs the single bulk UPDATE.
+ * Run with {@code mvn test -Pbenchmark -Dtest=TokenInvalidationBenchmark}.
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = {
+    "forgetpass.expiry.enabled=false",
+    "forgetpass.email.outbox.enabled=false"
+})
+class TokenInvalidationBenchmark {
+
+    private static final int[] SIZES = Arrays.stream(System.getProperty("bench.sizes", "1,10,100,1000,10000").split(","))
+        .mapToInt(Integer::parseInt).toArray();
+
+    private static final Path DB;
+
+    static {
+        try {
+            DB = Files.createTempFile("token-invalidation-bench", ".db");
+            Files.delete(DB);
+            DB.toFile().deleteOnExit();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void dataSource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> "jdbc:sqlite:" + DB);
+    }
+
+    @Autowired private PasswordResetTokenRepository tokenRepository;
+    @Autowired private PatientRepository patientRepository;
+    @Autowired private JdbcTemplate jdbc;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @PersistenceContext private EntityManager entityManager;
+
+    @Test
+    void invalidateOutstandingTokens() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        System.out.printf("%n%10s %16s %16s%n", "tokens", "saveAll ms", "bulk update ms");
+        for (int size : SIZES) {
+            Patient legacyPatient = seed(size);
+            long start = System.nanoTime();
+            Integer legacy = tx.execute(s -> legacyInvalidate(legacyPatient));
+            long legacyNanos = System.nanoTime() - start;
+
+            Patient bulkPatient = seed(size);
+            start = System.nanoTime();
+            Integer bulk = tx.execute(s -> tokenRepository.invalidateActive(bulkPatient, Instant.now()));
+            long bulkNanos = System.nanoTime() - start;
+
+            System.out.printf("%10d %16.2f %16.2f%n", size, legacyNanos / 1e6, bulkNanos / 1e6);
+            assertThat(legacy).isEqualTo(size);
+            assertThat(bulk).isEqualTo(size);
+        }
+    }
+
+    // The pre-change path: every active token loaded, marked used, and written back row by row
+    private int legacyInvalidate(Patient patient) {
+        List<PasswordResetToken> active = entityManager.createQuery(
+                "select t from PasswordResetToken t where t.patient = :patient and t.usedAt is null", PasswordResetToken.class)
+            .setParameter("patient", patient)
+            .getResultList();
+        for (PasswordResetToken t : active) {
+            t.setUsedAt(Instant.now());
+        }
+        tokenRepository.saveAll(active);
+        tokenRepository.flush();
+        return active.size();
+    }
+
+    // A patient with `size` active tokens: one saved through Hibernate, the rest copied from it in SQL
+    private Patient seed(int size) {
+        Patient patient = new Patient();
+        patient.setFirstName("Bench");
+        patient.setLastName("Mark");
+        patient.setEmail("bench-" + UUID.randomUUID() + "@example.com");
+        patient.setDateOfBirth(LocalDate.of(1990, 1, 1));
+        patient = patientRepository.save(patient);
+
+        PasswordResetToken template = new PasswordResetToken();
+        template.setPatient(patient);
+        template.setTokenHash(UUID.randomUUID().toString());
+        template.setExpiresAt(Instant.now().plusSeconds(3600));
+        template = tokenRepository.save(template);
+        if (size == 1) return patient;
+
+        jdbc.update("WITH RECURSIVE seq(n) AS (SELECT 1 UNION ALL SELECT n + 1 FROM seq WHERE n < ?) " +
+            "INSERT INTO password_reset_tokens (token_id, created_at, expires_at, token_hash, used_at, patient_id) " +
+            "SELECT randomblob(16), t.created_at, t.expires_at, t.token_hash || '-' || seq.n, NULL, t.patient_id " +
+            "FROM seq JOIN password_reset_tokens t ON t.token_hash = ?", size - 1, template.getTokenHash());
+        return patient;
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.forgetpass.benchmarks;
+
+import com.example.forgetpass.config.SqliteProfile;
+import com.example.forgetpass.util.StatementCache;
+import com.example.forgetpass.util.TokenUtil;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Reset token lookups on a file seeded with {@code bench.rows} tokens (10M by default; seeding takes a
+ * while): the legacy lookup by {@code token_hash} against the selector lookup by primary key followed
+ * by the constant-time verifier check. Both use the application's connection profile.
+ * Run with {@code mvn test -Pbenchmark -Dtest=TokenLookupBenchmark}.
+ */
+@Tag("benchmark")
+class TokenLookupBenchmark {
+
+    private static final int ROWS = Integer.getInteger("bench.rows", 10_000_000);
+    private static final int LOOKUPS = Integer.getInteger("bench.lookups", 100_000);
+
+    @Test
+    void hashLookupVersusSelectorLookup() throws Exception {
+        Path dir = Files.createTempDirectory("token-lookup-bench");
+        dir.toFile().deleteOnExit();
+        SqliteProfile profile = new SqliteProfile("WAL", "NORMAL", DataSize.ofMegabytes(16), DataSize.ofMegabytes(256),
+            "MEMORY", Duration.ofSeconds(5), 64);
+        DataSource dataSource = profile.dataSource("jdbc:sqlite:" + dir.resolve("bench.db"), false, new StatementCache.Stats());
+        Flyway.configure().dataSource(dataSource).locations("classpath:db").load().migrate();
+
+        try (Connection connection = dataSource.getConnection()) {
+            long start = System.nanoTime();
+            seed(connection);
+            System.out.printf("seeded %d rows in %d s%n", ROWS, (System.nanoTime() - start) / 1_000_000_000);
+
+            // Each sample is a stored token: its id, and a verifier whose sha256 is the stored hash
+            List<Object[]> samples = samples(connection);
+            long[] byHash = new long[LOOKUPS];
+            long[] bySelector = new long[LOOKUPS];
+            for (int round = 0; round < 2; round++) { // the first round warms up the JIT and the page cache
+                for (int i = 0; i < LOOKUPS; i++) {
+                    Object[] sample = samples.get(i);
+                    byHash[i] = time(() -> assertThat(byHash(connection, TokenUtil.sha256((String) sample[1]))).isTrue());
+                    String token = TokenUtil.selectorToken((UUID) sample[0], (String) sample[1]);
+                    bySelector[i] = time(() -> assertThat(bySelector(connection, token)).isTrue());
+                }
+            }
+            report("token_hash", byHash);
+            report("selector (pk)", bySelector);
+        }
+    }
+
+    private static boolean byHash(Connection connection, String hash) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT token_id, patient_id, expires_at, used_at FROM password_reset_tokens WHERE token_hash = ?")) {
+            ps.setString(1, hash);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static boolean bySelector(Connection connection, String token) throws SQLException {
+        UUID selector = TokenUtil.selector(token).orElseThrow();
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT token_hash, patient_id, expires_at, used_at FROM password_reset_tokens WHERE token_id = ?")) {
+            ps.setBytes(1, bytes(selector));
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && TokenUtil.hashMatches(TokenUtil.verifier(token), rs.getString(1));
+            }
+        }
+    }
+
+    // Rows whose hash is sha256 of a verifier derived from the row number, so samples can be rebuilt
+    private static void seed(Connection connection) throws SQLException {
+        connection.setAutoCommit(false);
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO password_reset_tokens (token_id, created_at, expires_at, token_hash, patient_id) VALUES (?, ?, ?, ?, ?)")) {
+            byte[] patient = bytes(UUID.randomUUID());
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < ROWS; i++) {
+                ps.setBytes(1, bytes(UUID.randomUUID()));
+                ps.setLong(2, now);
+                ps.setLong(3, now + 3_600_000);
+                ps.setString(4, TokenUtil.sha256(verifier(i)));
+                ps.setBytes(5, patient);
+                ps.addBatch();
+                if (i % 100_000 == 99_999) {
+                    ps.executeBatch();
+                    connection.commit();
+                }
+            }
+            ps.executeBatch();
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+        try (Statement s = connection.createStatement()) {
+            s.execute("PRAGMA optimize");
+        }
+    }
+
+    private static List<Object[]> samples(Connection connection) throws SQLException {
+        List<Object[]> samples = new ArrayList<>(LOOKUPS);
+        Random random = new Random(42);
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT token_id FROM password_reset_tokens WHERE rowid = ?")) {
+            for (int i = 0; i < LOOKUPS; i++) {
+                int row = random.nextInt(ROWS);
+                ps.setLong(1, row + 1L);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    ByteBuffer id = ByteBuffer.wrap(rs.getBytes(1));
+                    samples.add(new Object[]{new UUID(id.getLong(), id.getLong()), verifier(row)});
+                }
+            }
+        }
+        return samples;
+    }
+
+    private static String verifier(int row) {
+        return "verifier-" + row;
+    }
+
+    private static byte[] bytes(UUID id) {
+        return ByteBuffer.allocate(16).putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits()).array();
+    }
+
+    private interface Lookup {
+        void run() throws SQLException;
+    }
+
+    private static long time(Lookup lookup) throws SQLException {
+        long start = System.nanoTime();
+        lookup.run();
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String name, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-14s lookups=%d mean=%.1f us p50=%.1f us p99=%.1f us%n", name, sorted.length,
+            Arrays.stream(sorted).average().orElse(0) / 1e3, sorted[sorted.length / 2] / 1e3,
+            sorted[(int) (sorted.length * 0.99)] / 1e3);
+    }
+}
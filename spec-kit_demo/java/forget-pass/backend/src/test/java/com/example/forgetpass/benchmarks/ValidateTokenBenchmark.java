@@ -0,0 +1,117 @@
+package com.example.forgetpass.benchmarks;
+
+import com.example.forgetpass.domain.PasswordResetToken;
+import com.example.forgetpass.domain.Patient;
+import com.example.forgetpass.repositories.PasswordResetTokenRepository;
+import com.example.forgetpass.services.PasswordResetService;
+import com.example.forgetpass.services.PatientRegistrationService;
+import com.example.forgetpass.services.TokenSigner;
+import com.example.forgetpass.util.TokenUtil;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link PasswordResetService#validateToken} throughput, one caller, for each kind of token the reset
+ * page can present: a selector.verifier token (database read), a valid signed token (signature check,
+ * then the database read for single use), and expired or tampered signed tokens (signature check only).
+ * Run with {@code mvn test -Pbenchmark -Dtest=ValidateTokenBenchmark}.
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = {
+    "app.security.bcrypt-calibration.enabled=false",
+    "app.security.bcrypt-strength=4",
+    "forgetpass.expiry.enabled=false",
+    "forgetpass.email.outbox.enabled=false",
+    "forgetpass.tokens.signing.enabled=true",
+    "forgetpass.tokens.signing.active-key=bench",
+    "forgetpass.tokens.signing.keys=bench:MDEyMzQ1Njc4OWFiY2RlZjAxMjM0NTY3ODlhYmNkZWY="
+})
+class ValidateTokenBenchmark {
+
+    private static final int OPS = Integer.getInteger("bench.ops", 50_000);
+
+    private static final Path DB;
+
+    static {
+        try {
+            DB = Files.createTempFile("validate-token-bench", ".db");
+            Files.delete(DB);
+            DB.toFile().deleteOnExit();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void dataSource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> "jdbc:sqlite:" + DB);
+    }
+
+    @Autowired private PasswordResetService resetService;
+    @Autowired private PatientRegistrationService registrationService;
+    @Autowired private PasswordResetTokenRepository tokenRepository;
+    @Autowired private TokenSigner tokenSigner;
+
+    @Test
+    void validateTokenThroughput() {
+        Patient patient = registrationService.register("Bench", "Mark", "validate-bench@example.com", null,
+            LocalDate.of(1990, 1, 1), "Str0ng-Pass!");
+        Instant expires = Instant.now().plus(Duration.ofHours(1));
+
+        String verifier = TokenUtil.generateToken();
+        PasswordResetToken selectorRow = row(patient, expires);
+        selectorRow.setTokenHash(TokenUtil.sha256(verifier));
+        tokenRepository.save(selectorRow);
+        String selectorToken = TokenUtil.selectorToken(selectorRow.getTokenId(), verifier);
+
+        PasswordResetToken signedRow = row(patient, expires);
+        String signed = tokenSigner.sign(claims(signedRow.getTokenId(), patient, expires));
+        signedRow.setTokenHash(TokenUtil.sha256(signed));
+        tokenRepository.save(signedRow);
+
+        String expired = tokenSigner.sign(claims(UUID.randomUUID(), patient, Instant.now().minusSeconds(60)));
+        int i = signed.length() - 10;
+        String tampered = signed.substring(0, i) + (signed.charAt(i) == 'A' ? 'B' : 'A') + signed.substring(i + 1);
+
+        System.out.printf("%n%-18s %12s%n", "token", "validations/s");
+        run("selector.verifier", selectorToken, true);
+        run("signed", signed, true);
+        run("signed, expired", expired, false);
+        run("signed, tampered", tampered, false);
+    }
+
+    private void run(String name, String token, boolean expected) {
+        for (int i = 0; i < OPS / 2; i++) resetService.validateToken(token); // warm-up
+        long start = System.nanoTime();
+        for (int i = 0; i < OPS; i++) {
+            assertThat(resetService.validateToken(token)).isEqualTo(expected);
+        }
+        System.out.printf("%-18s %12.0f%n", name, OPS / ((System.nanoTime() - start) / 1e9));
+    }
+
+    private static PasswordResetToken row(Patient patient, Instant expires) {
+        PasswordResetToken t = new PasswordResetToken();
+        t.setTokenId(UUID.randomUUID());
+        t.setPatient(patient);
+        t.setExpiresAt(expires);
+        return t;
+    }
+
+    private static TokenSigner.Claims claims(UUID tokenId, Patient patient, Instant expires) {
+        return new TokenSigner.Claims(TokenSigner.Purpose.PASSWORD_RESET, tokenId, patient.getPatientId(), expires);
+    }
+}
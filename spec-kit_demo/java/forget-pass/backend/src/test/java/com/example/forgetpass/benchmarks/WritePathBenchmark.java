@@ -0,0 +1,131 @@
+package com.example.forgetpass.benchmarks;
+
+import com.example.forgetpass.ForgetPassApplication;
+import com.example.forgetpass.services.PasswordResetService;
+import com.example.forgetpass.services.PatientRegistrationService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Concurrent writes against a fresh SQLite file: {@code bench.clients} clients each alternate a
+ * registration and a password reset request. "pooled" is the previous setup (10 connections that
+ * all write, rollback journal, one transaction per request); "write-lane" is WAL with a single writer
+ * connection and group commit. Reports throughput, latency percentiles and failed requests.
+ * Run with {@code mvn test -Pbenchmark -Dtest=WritePathBenchmark}.
+ */
+@Tag("benchmark")
+class WritePathBenchmark {
+
+    private static final int CLIENTS = Integer.getInteger("bench.clients", 64);
+    private static final int OPS_PER_CLIENT = Integer.getInteger("bench.ops", 40);
+
+    @Test
+    void concurrentWrites() throws Exception {
+        Result pooled = run("pooled",
+            "forgetpass.datasource.journal-mode=DELETE",
+            "forgetpass.datasource.write-pool-size=10",
+            "forgetpass.datasource.read-pool-size=10",
+            "forgetpass.write-lane.enabled=false");
+        Result lane = run("write-lane");
+
+        assertThat(lane.failed()).isZero();
+        assertThat(lane.completed()).isEqualTo((long) CLIENTS * OPS_PER_CLIENT);
+        assertThat(pooled.completed()).isPositive();
+    }
+
+    private Result run(String name, String... overrides) throws Exception {
+        Path dir = Files.createTempDirectory("write-path-bench");
+        dir.toFile().deleteOnExit();
+        List<String> props = new ArrayList<>(List.of(
+            "spring.datasource.url=jdbc:sqlite:" + dir.resolve("bench.db"),
+            "server.port=0",
+            "app.security.bcrypt-calibration.enabled=false",
+            "app.security.bcrypt-strength=4",
+            "app.security.hashing.queue-capacity=" + CLIENTS,
+            "forgetpass.expiry.enabled=false",
+            "forgetpass.email.outbox.poll-interval-ms=3600000",
+            "forgetpass.audit.spill-file=" + dir.resolve("audit-spill.jsonl")));
+        props.addAll(Arrays.asList(overrides));
+
+        // As arguments rather than default properties, which application.yml would override
+        try (ConfigurableApplicationContext ctx = new SpringApplicationBuilder(ForgetPassApplication.class)
+                .run(props.stream().map(p -> "--" + p).toArray(String[]::new))) {
+            PatientRegistrationService registration = ctx.getBean(PatientRegistrationService.class);
+            PasswordResetService reset = ctx.getBean(PasswordResetService.class);
+            LocalDate dob = LocalDate.of(1990, 1, 1);
+            for (int c = 0; c < CLIENTS; c++) {
+                registration.register("Bench", "Client", "client" + c + "@example.com", null, dob, "Str0ng-Pass!");
+            }
+
+            long[] latencies = new long[CLIENTS * OPS_PER_CLIENT];
+            AtomicLong failed = new AtomicLong();
+            Map<String, Long> failures = new ConcurrentHashMap<>();
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService pool = Executors.newFixedThreadPool(CLIENTS);
+            List<Future<?>> clients = new ArrayList<>();
+            for (int c = 0; c < CLIENTS; c++) {
+                int client = c;
+                clients.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < OPS_PER_CLIENT; i++) {
+                        long t0 = System.nanoTime();
+                        try {
+                            if (i % 2 == 0) {
+                                registration.register("Bench", "User", "user" + client + "-" + i + "@example.com",
+                                    null, dob, "Str0ng-Pass!");
+                            } else {
+                                reset.requestReset("client" + client + "@example.com", "http://localhost");
+                            }
+                        } catch (RuntimeException e) {
+                            failed.incrementAndGet();
+                            failures.merge(e.getClass().getSimpleName(), 1L, Long::sum);
+                        }
+                        latencies[client * OPS_PER_CLIENT + i] = System.nanoTime() - t0;
+                    }
+                    return null;
+                }));
+            }
+            long t0 = System.nanoTime();
+            start.countDown();
+            for (Future<?> f : clients) f.get();
+            long elapsed = System.nanoTime() - t0;
+            pool.shutdown();
+
+            Arrays.sort(latencies);
+            long ops = latencies.length;
+            Result result = new Result(ops - failed.get(), failed.get());
+            System.out.printf("%-12s clients=%d ops=%d failed=%d throughput=%.0f ops/s p50=%.1f ms p99=%.1f ms max=%.1f ms %s%n",
+                name, CLIENTS, ops, failed.get(), ops * 1e9 / elapsed,
+                latencies[(int) (ops * 0.50)] / 1e6, latencies[(int) (ops * 0.99)] / 1e6, latencies[(int) ops - 1] / 1e6,
+                failures.isEmpty() ? "" : failures);
+            DistributionSummary batches = ctx.getBean(MeterRegistry.class).find("forgetpass.write-lane.batch.size").summary();
+            if (batches != null) {
+                System.out.printf("%-12s commits=%d mean batch=%.1f max batch=%.0f%n",
+                    name, batches.count(), batches.mean(), batches.max());
+            }
+            return result;
+        }
+    }
+
+    private record Result(long completed, long failed) {}
+}
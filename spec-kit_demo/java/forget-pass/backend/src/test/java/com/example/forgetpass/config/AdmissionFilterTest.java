@@ -0,0 +1,98 @@
+package com.example.forgetpass.config;
+
+import com.example.forgetpass.util.TokenBuckets;
+import com.example.forgetpass.util.TrustedProxies;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdmissionFilterTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000_000_000L);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AdmissionFilter filter = new AdmissionFilter(
+        AdmissionFilterConfig.parse("/api/v1/patients=100/1m, /api/v1/patients/register=2/1m"),
+        new TokenBuckets(1000, clock::get), new TrustedProxies(List.of("10.0.0.0/8")), registry);
+
+    @Test
+    void longestPrefixWinsAndRejectionsGet429WithRetryAfter() throws Exception {
+        assertThat(send("/api/v1/patients/register", "203.0.113.5", null).getStatus()).isEqualTo(200);
+        assertThat(send("/api/v1/patients/register", "203.0.113.5", null).getStatus()).isEqualTo(200);
+
+        MockHttpServletResponse rejected = send("/api/v1/patients/register", "203.0.113.5", null);
+        assertThat(rejected.getStatus()).isEqualTo(429);
+        assertThat(rejected.getHeader("Retry-After")).isEqualTo("30");
+        assertThat(rejected.getContentAsString()).contains("Too many requests");
+        assertThat(registry.counter("forgetpass.admission.rejected", "route", "/api/v1/patients/register").count()).isEqualTo(1);
+
+        // The shorter route has its own bucket, and other clients have theirs
+        assertThat(send("/api/v1/patients/verify-email", "203.0.113.5", null).getStatus()).isEqualTo(200);
+        assertThat(send("/api/v1/patients/register", "203.0.113.6", null).getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void pathsWithoutARouteAreNotLimited() throws Exception {
+        for (int i = 0; i < 500; i++) {
+            assertThat(send("/api/v1/health", "203.0.113.5", null).getStatus()).isEqualTo(200);
+        }
+        assertThat(registry.get("forgetpass.admission.clients").gauge().value()).isZero();
+    }
+
+    @Test
+    void prefixesMatchWholePathSegmentsOnly() throws Exception {
+        send("/api/v1/patients/register", "203.0.113.7", null);
+        send("/api/v1/patients/register", "203.0.113.7", null);
+        assertThat(send("/api/v1/patients/register/", "203.0.113.7", null).getStatus()).isEqualTo(429);
+        // Not under /register, so only the broader /api/v1/patients route applies
+        assertThat(send("/api/v1/patients/registerX", "203.0.113.7", null).getStatus()).isEqualTo(200);
+        assertThat(registry.counter("forgetpass.admission.rejected", "route", "/api/v1/patients").count()).isZero();
+    }
+
+    @Test
+    void clientsBehindTrustedProxiesAreLimitedSeparately() throws Exception {
+        MockHttpServletResponse first = send("/api/v1/patients/register", "10.0.0.2", "198.51.100.1");
+        send("/api/v1/patients/register", "10.0.0.2", "198.51.100.1");
+        assertThat(send("/api/v1/patients/register", "10.0.0.2", "198.51.100.1").getStatus()).isEqualTo(429);
+        assertThat(send("/api/v1/patients/register", "10.0.0.2", "198.51.100.2").getStatus()).isEqualTo(200);
+        assertThat(first.getStatus()).isEqualTo(200);
+        // A spoofed header from an untrusted client is ignored
+        send("/api/v1/patients/register", "203.0.113.9", "198.51.100.3");
+        send("/api/v1/patients/register", "203.0.113.9", "198.51.100.4");
+        assertThat(send("/api/v1/patients/register", "203.0.113.9", "198.51.100.5").getStatus()).isEqualTo(429);
+    }
+
+    @Test
+    void resolvedAddressIsLeftForTheHandlers() throws Exception {
+        MockHttpServletRequest request = request("/api/v1/patients/register", "10.0.0.2", "198.51.100.1");
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        assertThat(request.getAttribute(AdmissionFilter.CLIENT_ADDRESS)).isEqualTo("198.51.100.1");
+    }
+
+    @Test
+    void routesMustBePrefixCapacityAndPeriod() {
+        assertThat(AdmissionFilterConfig.parse(AdmissionFilterConfig.DEFAULT_ROUTES)).hasSize(4);
+        assertThat(AdmissionFilterConfig.parse("")).isEmpty();
+        assertThatThrownBy(() -> AdmissionFilterConfig.parse("/api=10")).isInstanceOf(IllegalStateException.class);
+    }
+
+    private MockHttpServletResponse send(String path, String remote, String forwardedFor) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request(path, remote, forwardedFor), response, new MockFilterChain());
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String path, String remote, String forwardedFor) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+        request.setRemoteAddr(remote);
+        if (forwardedFor != null) request.addHeader("X-Forwarded-For", forwardedFor);
+        return request;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.forgetpass.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.function.IntToDoubleFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BCryptCalibratorTest {
+
+    // Simulated host: 10 ms at cost 8, doubling per cost step
+    private static double simulated(int strength) {
+        return 10 * Math.pow(2, strength - 8);
+    }
+
+    @Test
+    void picksHighestStrengthWithinBudget() {
+        BCryptCalibrator calibrator = new BCryptCalibrator(10, 16, Duration.ofMillis(250), 4, BCryptCalibratorTest::simulated);
+
+        BCryptCalibrator.Result result = calibrator.calibrate();
+
+        assertThat(result.strength()).isEqualTo(12); // 160 ms; cost 13 would be 320 ms
+        assertThat(result.hashMillis()).isEqualTo(160.0);
+        assertThat(result.hashesPerSecond()).isEqualTo(25.0);
+        assertThat(result.calibrated()).isTrue();
+    }
+
+    @Test
+    void neverGoesBelowFloorOrAboveMax() {
+        BCryptCalibrator slowHost = new BCryptCalibrator(12, 14, Duration.ofMillis(50), 1, BCryptCalibratorTest::simulated);
+        assertThat(slowHost.calibrate().strength()).isEqualTo(12);
+
+        BCryptCalibrator fastHost = new BCryptCalibrator(10, 11, Duration.ofSeconds(10), 1, BCryptCalibratorTest::simulated);
+        assertThat(fastHost.calibrate().strength()).isEqualTo(11);
+    }
+
+    @Test
+    void stepsDownUntilARealHashFitsTheBudget() {
+        // The probe cost is 4x cheaper than the doubling rule predicts, so the estimate overshoots by two costs
+        IntToDoubleFunction skewed = strength -> strength == 8 ? 2.5 : simulated(strength);
+        BCryptCalibrator calibrator = new BCryptCalibrator(10, 16, Duration.ofMillis(250), 4, skewed);
+
+        BCryptCalibrator.Result result = calibrator.calibrate();
+
+        assertThat(result.strength()).isEqualTo(12);
+        assertThat(result.hashMillis()).isEqualTo(160.0);
+        assertThat(result.hashesPerSecond()).isEqualTo(25.0);
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.forgetpass.config;
+
+import com.example.forgetpass.repositories.PatientRepository;
+import com.example.forgetpass.services.DatabaseMaintenanceService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+    "forgetpass.expiry.enabled=false",
+    "forgetpass.email.outbox.enabled=false",
+    "forgetpass.datasource.read-cache-size=8MB"
+})
+class DataSourceConfigTest {
+
+    private static final Path DB;
+
+    static {
+        try {
+            DB = Files.createTempFile("routing", ".db");
+            Files.delete(DB);
+            DB.toFile().deleteOnExit();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void dataSource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> "jdbc:sqlite:" + DB);
+    }
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private DatabaseMaintenanceService maintenanceService;
+
+    @Test
+    void readOnlyTransactionsUseTheReadOnlyPool() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        Integer queryOnly = readOnly.execute(status -> jdbc.queryForObject("PRAGMA query_only", Integer.class));
+        Integer cacheSize = readOnly.execute(status -> jdbc.queryForObject("PRAGMA cache_size", Integer.class));
+
+        assertThat(queryOnly).isEqualTo(1);
+        assertThat(cacheSize).isEqualTo(-8 * 1024);
+        assertThatThrownBy(() -> readOnly.executeWithoutResult(status ->
+            jdbc.update("UPDATE patients SET last_name = last_name")))
+            .isInstanceOf(DataAccessException.class);
+    }
+
+    @Test
+    void derivedQueriesOutsideATransactionUseTheReadPool() {
+        double readBefore = connectionsServed("forget-pass-read");
+
+        patientRepository.findByEmail("nobody@example.com");
+        patientRepository.existsByEmail("nobody@example.com");
+
+        assertThat(connectionsServed("forget-pass-read") - readBefore).isEqualTo(2);
+    }
+
+    @Test
+    void writeTransactionsUseTheWalWriter() {
+        TransactionTemplate readWrite = new TransactionTemplate(transactionManager);
+
+        Integer queryOnly = readWrite.execute(status -> jdbc.queryForObject("PRAGMA query_only", Integer.class));
+        String journalMode = readWrite.execute(status -> jdbc.queryForObject("PRAGMA journal_mode", String.class));
+
+        assertThat(queryOnly).isZero();
+        assertThat(journalMode).isEqualToIgnoringCase("wal");
+        readWrite.executeWithoutResult(status -> jdbc.update("UPDATE patients SET last_name = last_name"));
+    }
+
+    @Test
+    void everyConnectionGetsThePragmaProfile() {
+        TransactionTemplate readWrite = new TransactionTemplate(transactionManager);
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        for (TransactionTemplate tx : new TransactionTemplate[]{readWrite, readOnly}) {
+            tx.executeWithoutResult(status -> {
+                assertThat(jdbc.queryForObject("PRAGMA synchronous", Integer.class)).isEqualTo(1); // NORMAL
+                assertThat(jdbc.queryForObject("PRAGMA temp_store", Integer.class)).isEqualTo(2); // MEMORY
+                assertThat(jdbc.queryForObject("PRAGMA mmap_size", Long.class)).isEqualTo(256L * 1024 * 1024);
+                assertThat(jdbc.queryForObject("PRAGMA busy_timeout", Integer.class)).isEqualTo(5000);
+            });
+        }
+        Integer writerCacheSize = readWrite.execute(status -> jdbc.queryForObject("PRAGMA cache_size", Integer.class));
+        assertThat(writerCacheSize).isEqualTo(-16 * 1024);
+    }
+
+    @Test
+    void repeatedQueriesReusePreparedStatements() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        for (int i = 0; i < 5; i++) {
+            String email = "nobody" + i + "@example.com";
+            readOnly.execute(status -> patientRepository.existsByEmail(email));
+        }
+
+        assertThat(meterRegistry.get("forgetpass.datasource.statement.cache")
+            .tag("pool", "forget-pass-read").tag("result", "hit").functionCounter().count())
+            .isGreaterThanOrEqualTo(4);
+    }
+
+    @Test
+    void optimizeRunsOnTheWriter() {
+        maintenanceService.optimize();
+
+        assertThat(meterRegistry.get("forgetpass.datasource.optimize").timer().count()).isEqualTo(1);
+    }
+
+    // Connections handed out and returned by the pool so far
+    private double connectionsServed(String pool) {
+        return meterRegistry.get("hikaricp.connections.usage").tag("pool", pool).timer().count();
+    }
+
+    @Test
+    void eachPoolPublishesItsOwnMetrics() {
+        assertThat(meterRegistry.get("hikaricp.connections.max").tag("pool", "forget-pass-write").gauge().value())
+            .isEqualTo(1);
+        assertThat(meterRegistry.get("hikaricp.connections.max").tag("pool", "forget-pass-read").gauge().value())
+            .isEqualTo(8);
+    }
+}
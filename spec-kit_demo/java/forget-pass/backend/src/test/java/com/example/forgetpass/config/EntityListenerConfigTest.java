@@ -0,0 +1,92 @@
+package com.example.forgetpass.config;
+
+import com.example.forgetpass.domain.Patient;
+import com.example.forgetpass.repositories.PasswordResetTokenRepository;
+import com.example.forgetpass.services.LookupFilterService;
+import com.example.forgetpass.services.PasswordResetService;
+import com.example.forgetpass.services.PatientRegistrationService;
+import com.example.forgetpass.services.TokenExpiryService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+    "forgetpass.email.outbox.enabled=false",
+    "forgetpass.expiry.tick-ms=3600000",
+    "forgetpass.lookup-filter.enabled=true"
+})
+class EntityListenerConfigTest {
+
+    private static final Path DB;
+
+    static {
+        try {
+            DB = Files.createTempFile("entity-listeners", ".db");
+            Files.delete(DB);
+            DB.toFile().deleteOnExit();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void dataSource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> "jdbc:sqlite:" + DB);
+    }
+
+    @Autowired
+    private PatientRegistrationService registrationService;
+
+    @Autowired
+    private PasswordResetService passwordResetService;
+
+    @Autowired
+    private TokenExpiryService expiryService;
+
+    @Autowired
+    private LookupFilterService lookupFilter;
+
+    @Autowired
+    private PasswordResetTokenRepository resetTokenRepository;
+
+    @Test
+    void insertedTokensAreTrackedForExpiry() {
+        registrationService.register("Entity", "Listener", "listener@example.com", null, LocalDate.of(1990, 1, 1),
+            "Str0ng-Pass!");
+        // Waits out the first tick, which seeds the index from the database
+        expiryService.expireDue();
+        int before = expiryService.tracked();
+
+        passwordResetService.requestReset("listener@example.com", "https://app.local");
+
+        assertThat(expiryService.tracked()).isEqualTo(before + 1);
+    }
+
+    @Test
+    void insertedPatientsAndTokensReachTheLookupFilters() throws InterruptedException {
+        // The first generation run seeds the filters; after that only the listener adds to them
+        long deadline = System.currentTimeMillis() + 5000;
+        while (lookupFilter.mayBeRegistered("nobody@example.com") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(lookupFilter.mayBeRegistered("nobody@example.com")).isFalse();
+
+        Patient patient = registrationService.register("Entity", "Filter", "filtered@example.com", null,
+            LocalDate.of(1990, 1, 1), "Str0ng-Pass!");
+        passwordResetService.requestReset("filtered@example.com", "https://app.local");
+
+        assertThat(lookupFilter.mayBeRegistered("filtered@example.com")).isTrue();
+        assertThat(resetTokenRepository.findByPatient(patient))
+            .isNotEmpty()
+            .allSatisfy(t -> assertThat(lookupFilter.mayBeLiveToken(t.getTokenId())).isTrue());
+    }
+}
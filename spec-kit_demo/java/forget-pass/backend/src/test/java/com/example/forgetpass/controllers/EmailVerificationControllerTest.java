@@ -1,8 +1,12 @@
 package com.example.forgetpass.controllers;
 
 import com.example.forgetpass.services.EmailVerificationService;
+import com.example.forgetpass.services.RateLimitService;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -12,7 +16,7 @@ class EmailVerificationControllerTest {
     @Test
     void verify_returnsOk_onSuccess() {
         EmailVerificationService service = mock(EmailVerificationService.class);
-        EmailVerificationController controller = new EmailVerificationController(service);
+        EmailVerificationController controller = new EmailVerificationController(service, RateLimitService.inMemory());
         when(service.verify("tok")).thenReturn(true);
         ResponseEntity<?> resp = controller.verify(new EmailVerificationController.VerifyRequest("tok"));
         assertThat(resp.getStatusCode().value()).isEqualTo(200);
@@ -21,7 +25,7 @@ class EmailVerificationControllerTest {
     @Test
     void verify_returnsBadRequest_onFailure() {
         EmailVerificationService service = mock(EmailVerificationService.class);
-        EmailVerificationController controller = new EmailVerificationController(service);
+        EmailVerificationController controller = new EmailVerificationController(service, RateLimitService.inMemory());
         when(service.verify("bad")).thenReturn(false);
         ResponseEntity<?> resp = controller.verify(new EmailVerificationController.VerifyRequest("bad"));
         assertThat(resp.getStatusCode().value()).isEqualTo(400);
@@ -30,7 +34,7 @@ class EmailVerificationControllerTest {
     @Test
     void resend_returnsOk_whenSent() {
         EmailVerificationService service = mock(EmailVerificationService.class);
-        EmailVerificationController controller = new EmailVerificationController(service);
+        EmailVerificationController controller = new EmailVerificationController(service, RateLimitService.inMemory());
         when(service.resend(eq("user@example.com"), anyString())).thenReturn(true);
         ResponseEntity<?> resp = controller.resend(new EmailVerificationController.ResendRequest("user@example.com"));
         assertThat(resp.getStatusCode().value()).isEqualTo(200);
@@ -39,9 +43,31 @@ class EmailVerificationControllerTest {
     @Test
     void resend_returnsBadRequest_whenLimitExceeded() {
         EmailVerificationService service = mock(EmailVerificationService.class);
-        EmailVerificationController controller = new EmailVerificationController(service);
+        EmailVerificationController controller = new EmailVerificationController(service, RateLimitService.inMemory());
         when(service.resend(eq("user@example.com"), anyString())).thenReturn(false);
         ResponseEntity<?> resp = controller.resend(new EmailVerificationController.ResendRequest("user@example.com"));
         assertThat(resp.getStatusCode().value()).isEqualTo(400);
     }
+
+    @Test
+    void resend_returnsTooManyRequests_onceTheClientAddressIsOverItsLimit() {
+        EmailVerificationService svc = mock(EmailVerificationService.class);
+        EmailVerificationController controller = new EmailVerificationController(svc, RateLimitService.inMemory());
+        when(svc.resend(anyString(), anyString())).thenReturn(true);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("203.0.113.7");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        try {
+            // verification-resend-ip allows 20 per hour
+            for (int i = 0; i < 20; i++) {
+                assertThat(controller.resend(new EmailVerificationController.ResendRequest("a" + i + "@example.com"))
+                    .getStatusCode().value()).isEqualTo(200);
+            }
+            ResponseEntity<?> resp = controller.resend(new EmailVerificationController.ResendRequest("b@example.com"));
+            assertThat(resp.getStatusCode().value()).isEqualTo(429);
+            verify(svc, never()).resend(eq("b@example.com"), anyString());
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
 }
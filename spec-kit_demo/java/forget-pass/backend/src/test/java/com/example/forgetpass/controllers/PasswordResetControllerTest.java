@@ -1,6 +1,7 @@
 package com.example.forgetpass.controllers;
 
 import com.example.forgetpass.services.PasswordResetService;
+import com.example.forgetpass.services.RateLimitService;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.ResponseEntity;
 
@@ -13,7 +14,7 @@ class PasswordResetControllerTest {
     void request_returnsGenericMessage_andInvokesService_whenReCaptchaValid() {
         PasswordResetService svc = mock(PasswordResetService.class);
         com.example.forgetpass.services.ReCaptchaService rc = mock(com.example.forgetpass.services.ReCaptchaService.class);
-        PasswordResetController controller = new PasswordResetController(svc, rc);
+        PasswordResetController controller = new PasswordResetController(svc, rc, RateLimitService.inMemory());
         when(rc.validate(anyString(), eq("password_reset_request"))).thenReturn(true);
 
         PasswordResetController.RequestDto dto = new PasswordResetController.RequestDto("user@example.com", "tok");
@@ -26,7 +27,7 @@ class PasswordResetControllerTest {
     void request_returnsBadRequest_whenReCaptchaInvalid() {
         PasswordResetService svc = mock(PasswordResetService.class);
         com.example.forgetpass.services.ReCaptchaService rc = mock(com.example.forgetpass.services.ReCaptchaService.class);
-        PasswordResetController controller = new PasswordResetController(svc, rc);
+        PasswordResetController controller = new PasswordResetController(svc, rc, RateLimitService.inMemory());
         when(rc.validate(anyString(), eq("password_reset_request"))).thenReturn(false);
 
         PasswordResetController.RequestDto dto = new PasswordResetController.RequestDto("user@example.com", "badtok");
@@ -39,7 +40,7 @@ class PasswordResetControllerTest {
     void validateToken_returnsOk_withValidity() {
         PasswordResetService svc = mock(PasswordResetService.class);
         com.example.forgetpass.services.ReCaptchaService rc = mock(com.example.forgetpass.services.ReCaptchaService.class);
-        PasswordResetController controller = new PasswordResetController(svc, rc);
+        PasswordResetController controller = new PasswordResetController(svc, rc, RateLimitService.inMemory());
         when(svc.validateToken("tok")).thenReturn(true);
         ResponseEntity<?> resp = controller.validateToken(new PasswordResetController.ValidateDto("tok"));
         assertThat(resp.getStatusCode().value()).isEqualTo(200);
@@ -49,7 +50,7 @@ class PasswordResetControllerTest {
     void confirm_returnsBadRequest_onFailure_andOk_onSuccess() {
         PasswordResetService svc = mock(PasswordResetService.class);
         com.example.forgetpass.services.ReCaptchaService rc = mock(com.example.forgetpass.services.ReCaptchaService.class);
-        PasswordResetController controller = new PasswordResetController(svc, rc);
+        PasswordResetController controller = new PasswordResetController(svc, rc, RateLimitService.inMemory());
         when(svc.confirm("bad", "NewP@ssw0rd!"))
             .thenReturn(false);
         ResponseEntity<?> bad = controller.confirm(new PasswordResetController.ConfirmDto("bad", "NewP@ssw0rd!"));
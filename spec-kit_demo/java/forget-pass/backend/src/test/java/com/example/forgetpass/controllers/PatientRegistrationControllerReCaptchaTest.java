@@ -2,6 +2,7 @@ package com.example.forgetpass.controllers;
 
 import com.example.forgetpass.services.AuditService;
 import com.example.forgetpass.services.PatientRegistrationService;
+import com.example.forgetpass.services.ReCaptchaSaturatedException;
 import com.example.forgetpass.services.ReCaptchaService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,9 +10,15 @@ import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
- 
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 class PatientRegistrationControllerReCaptchaTest {
@@ -27,14 +34,18 @@ class PatientRegistrationControllerReCaptchaTest {
         auditService = mock(AuditService.class);
         reCaptchaService = mock(ReCaptchaService.class);
 
-        PatientRegistrationController controller = new PatientRegistrationController(registrationService, auditService, reCaptchaService);
+        PatientRegistrationController controller = new PatientRegistrationController(registrationService, auditService, reCaptchaService,
+            Duration.ofSeconds(5));
 
         mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
     }
 
+    private static final String BODY = "{\"firstName\":\"John\",\"lastName\":\"Doe\",\"email\":\"john.doe@example.com\","
+        + "\"phoneNumber\":\"12345\",\"dateOfBirth\":\"1990-01-01\",\"password\":\"Str0ng!Pass\"}";
+
     @Test
     void register_rejects_when_recaptcha_fails() throws Exception {
-        when(reCaptchaService.validate(anyString(), anyString())).thenReturn(false);
+        when(reCaptchaService.validateAsync(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(false));
 
         String body = "{\n" +
             "  \"firstName\": \"John\",\n" +
@@ -53,4 +64,88 @@ class PatientRegistrationControllerReCaptchaTest {
 
         verify(auditService).log(eq("registration"), isNull(), nullable(String.class), nullable(String.class), eq(false), anyMap());
     }
-}
\ No newline at end of file
+
+    @Test
+    void register_doesNotRevealTakenEmail_whenRecaptchaFails() throws Exception {
+        when(reCaptchaService.validateAsync(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(false));
+        when(registrationService.precheck(eq("john.doe@example.com"), any(), anyString())).thenReturn(true);
+
+        mockMvc.perform(post("/api/v1/patients/register")
+            .contentType(MediaType.APPLICATION_JSON)
+            .header("X-ReCaptcha-Token", "bad-token")
+            .content(BODY))
+            .andExpect(status().isBadRequest());
+
+        verify(auditService).log(eq("registration"), isNull(), nullable(String.class), nullable(String.class), eq(false),
+            argThat(map -> "recaptcha_failed".equals(map.get("reason"))));
+        verify(registrationService, never()).registerAndIssueVerification(any(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void register_reportsRejectedInputOnlyAfterRecaptchaPasses() throws Exception {
+        CompletableFuture<Boolean> pending = new CompletableFuture<>();
+        when(reCaptchaService.validateAsync(anyString(), anyString())).thenReturn(pending);
+        when(registrationService.precheck(anyString(), any(), anyString())).thenThrow(new IllegalArgumentException("underage"));
+        CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS).execute(() -> pending.complete(true));
+
+        mockMvc.perform(post("/api/v1/patients/register")
+            .contentType(MediaType.APPLICATION_JSON)
+            .header("X-ReCaptcha-Token", "token")
+            .content(BODY))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.message").value("Patients must be at least 18 years old."));
+
+        assertThat(pending).isCompletedWithValue(true);
+        verify(registrationService, never()).registerAndIssueVerification(any(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void register_hidesRejectedInput_whenRecaptchaFails() throws Exception {
+        when(reCaptchaService.validateAsync(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(false));
+        when(registrationService.precheck(anyString(), any(), anyString())).thenThrow(new IllegalArgumentException("underage"));
+
+        mockMvc.perform(post("/api/v1/patients/register")
+            .contentType(MediaType.APPLICATION_JSON)
+            .header("X-ReCaptcha-Token", "bad-token")
+            .content(BODY))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.message").value("reCAPTCHA validation failed"));
+    }
+
+    @Test
+    void register_answers503_whenVerifierSaturated() throws Exception {
+        when(reCaptchaService.validateAsync(anyString(), anyString())).thenReturn(
+            CompletableFuture.failedFuture(new ReCaptchaSaturatedException("saturated")));
+        when(registrationService.precheck(anyString(), any(), anyString())).thenReturn(true);
+
+        mockMvc.perform(post("/api/v1/patients/register")
+            .contentType(MediaType.APPLICATION_JSON)
+            .header("X-ReCaptcha-Token", "token")
+            .content(BODY))
+            .andExpect(status().isServiceUnavailable())
+            .andExpect(header().string("Retry-After", "1"));
+
+        verifyNoInteractions(auditService);
+        verify(registrationService, never()).registerAndIssueVerification(any(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void register_failsRecaptcha_whenNoVerdictInTime() throws Exception {
+        CompletableFuture<Boolean> pending = new CompletableFuture<>();
+        when(reCaptchaService.validateAsync(anyString(), anyString())).thenReturn(pending);
+        when(registrationService.precheck(anyString(), any(), anyString())).thenReturn(true);
+        MockMvc impatient = MockMvcBuilders.standaloneSetup(new PatientRegistrationController(registrationService,
+            auditService, reCaptchaService, Duration.ofMillis(50))).build();
+
+        impatient.perform(post("/api/v1/patients/register")
+            .contentType(MediaType.APPLICATION_JSON)
+            .header("X-ReCaptcha-Token", "token")
+            .content(BODY))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.message").value("reCAPTCHA validation failed"));
+
+        assertThat(pending).isCancelled();
+        verify(auditService).log(eq("registration"), isNull(), nullable(String.class), nullable(String.class), eq(false),
+            argThat(map -> "recaptcha_failed".equals(map.get("reason"))));
+    }
+}
@@ -10,7 +10,9 @@ import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -32,13 +34,14 @@ class PatientRegistrationControllerSuccessTest {
         auditService = mock(AuditService.class);
         reCaptchaService = mock(ReCaptchaService.class);
 
-        PatientRegistrationController controller = new PatientRegistrationController(registrationService, auditService, reCaptchaService);
+        PatientRegistrationController controller = new PatientRegistrationController(registrationService, auditService, reCaptchaService,
+            Duration.ofSeconds(5));
         mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
     }
 
     @Test
     void register_success_triggersEmailAndAudit() throws Exception {
-        when(reCaptchaService.validate(anyString(), anyString())).thenReturn(true);
+        when(reCaptchaService.validateAsync(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(true));
 
         Patient p = new Patient();
         p.setPatientId(java.util.UUID.randomUUID());
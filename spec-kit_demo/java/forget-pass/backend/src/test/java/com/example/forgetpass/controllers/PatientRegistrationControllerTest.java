@@ -6,8 +6,10 @@ import com.example.forgetpass.services.PatientRegistrationService;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.ResponseEntity;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -19,8 +21,9 @@ class PatientRegistrationControllerTest {
         PatientRegistrationService registrationService = mock(PatientRegistrationService.class);
         AuditService auditService = mock(AuditService.class);
         com.example.forgetpass.services.ReCaptchaService reCaptchaService = mock(com.example.forgetpass.services.ReCaptchaService.class);
-        when(reCaptchaService.validate(anyString(), anyString())).thenReturn(true);
-        PatientRegistrationController controller = new PatientRegistrationController(registrationService, auditService, reCaptchaService);
+        when(reCaptchaService.validateAsync(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(true));
+        PatientRegistrationController controller = new PatientRegistrationController(registrationService, auditService, reCaptchaService,
+            Duration.ofSeconds(5));
 
         Patient p = new Patient();
                 p.setPatientId(java.util.UUID.randomUUID());
@@ -31,7 +34,7 @@ class PatientRegistrationControllerTest {
         PatientRegistrationController.RegisterRequest req = new PatientRegistrationController.RegisterRequest(
                 "New", "User", "new@example.com", "+1 555-1111", LocalDate.now().minusYears(30), "Str0ngP@ss!"
         );
-        ResponseEntity<?> response = controller.register(req, "203.0.113.10", "JUnit-Agent");
+        ResponseEntity<?> response = controller.register(req, "203.0.113.10", "JUnit-Agent", null);
 
         assertThat(response.getStatusCode().value()).isEqualTo(201);
         Map<?,?> body = (Map<?,?>) response.getBody();
@@ -46,8 +49,9 @@ class PatientRegistrationControllerTest {
         PatientRegistrationService registrationService = mock(PatientRegistrationService.class);
         AuditService auditService = mock(AuditService.class);
         com.example.forgetpass.services.ReCaptchaService reCaptchaService = mock(com.example.forgetpass.services.ReCaptchaService.class);
-        when(reCaptchaService.validate(anyString(), anyString())).thenReturn(true);
-        PatientRegistrationController controller = new PatientRegistrationController(registrationService, auditService, reCaptchaService);
+        when(reCaptchaService.validateAsync(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(true));
+        PatientRegistrationController controller = new PatientRegistrationController(registrationService, auditService, reCaptchaService,
+            Duration.ofSeconds(5));
 
         when(registrationService.registerAndIssueVerification(anyString(), anyString(), eq("exists@example.com"), anyString(), any(LocalDate.class), anyString(), anyString()))
                 .thenThrow(new IllegalStateException("email_already_exists"));
@@ -55,7 +59,7 @@ class PatientRegistrationControllerTest {
         PatientRegistrationController.RegisterRequest req = new PatientRegistrationController.RegisterRequest(
                 "New", "User", "exists@example.com", "+1 555-1111", LocalDate.now().minusYears(30), "Str0ngP@ss!"
         );
-        ResponseEntity<?> response = controller.register(req, "198.51.100.5", "JUnit-Agent");
+        ResponseEntity<?> response = controller.register(req, "198.51.100.5", "JUnit-Agent", null);
         assertThat(response.getStatusCode().value()).isEqualTo(409);
         verify(auditService, atLeastOnce()).log(eq("registration"), isNull(), eq("198.51.100.5"), eq("JUnit-Agent"), eq(false), any());
     }
@@ -65,8 +69,9 @@ class PatientRegistrationControllerTest {
         PatientRegistrationService registrationService = mock(PatientRegistrationService.class);
         AuditService auditService = mock(AuditService.class);
         com.example.forgetpass.services.ReCaptchaService reCaptchaService = mock(com.example.forgetpass.services.ReCaptchaService.class);
-        when(reCaptchaService.validate(anyString(), anyString())).thenReturn(true);
-        PatientRegistrationController controller = new PatientRegistrationController(registrationService, auditService, reCaptchaService);
+        when(reCaptchaService.validateAsync(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(true));
+        PatientRegistrationController controller = new PatientRegistrationController(registrationService, auditService, reCaptchaService,
+            Duration.ofSeconds(5));
 
         when(registrationService.registerAndIssueVerification(anyString(), anyString(), eq("bad@disposable.invalid"), anyString(), any(LocalDate.class), anyString(), anyString()))
                 .thenThrow(new IllegalArgumentException("invalid_email"));
@@ -74,7 +79,7 @@ class PatientRegistrationControllerTest {
         PatientRegistrationController.RegisterRequest req = new PatientRegistrationController.RegisterRequest(
                 "Bad", "User", "bad@disposable.invalid", "+1 555-2222", LocalDate.now().minusYears(25), "Str0ngP@ss!"
         );
-        ResponseEntity<?> response = controller.register(req, "198.51.100.6", "JUnit-Agent");
+        ResponseEntity<?> response = controller.register(req, "198.51.100.6", "JUnit-Agent", null);
         assertThat(response.getStatusCode().value()).isEqualTo(400);
         verify(auditService, atLeastOnce()).log(eq("registration"), isNull(), eq("198.51.100.6"), eq("JUnit-Agent"), eq(false), argThat(map -> "invalid_email".equals(map.get("reason"))));
     }
@@ -84,8 +89,9 @@ class PatientRegistrationControllerTest {
         PatientRegistrationService registrationService = mock(PatientRegistrationService.class);
         AuditService auditService = mock(AuditService.class);
         com.example.forgetpass.services.ReCaptchaService reCaptchaService = mock(com.example.forgetpass.services.ReCaptchaService.class);
-        when(reCaptchaService.validate(anyString(), anyString())).thenReturn(true);
-        PatientRegistrationController controller = new PatientRegistrationController(registrationService, auditService, reCaptchaService);
+        when(reCaptchaService.validateAsync(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(true));
+        PatientRegistrationController controller = new PatientRegistrationController(registrationService, auditService, reCaptchaService,
+            Duration.ofSeconds(5));
 
         when(registrationService.registerAndIssueVerification(anyString(), anyString(), eq("teen@example.com"), anyString(), any(LocalDate.class), anyString(), anyString()))
                 .thenThrow(new IllegalArgumentException("underage"));
@@ -93,7 +99,7 @@ class PatientRegistrationControllerTest {
         PatientRegistrationController.RegisterRequest req = new PatientRegistrationController.RegisterRequest(
                 "Young", "User", "teen@example.com", "+1 555-3333", LocalDate.now().minusYears(15), "Str0ngP@ss!"
         );
-        ResponseEntity<?> response = controller.register(req, "198.51.100.7", "JUnit-Agent");
+        ResponseEntity<?> response = controller.register(req, "198.51.100.7", "JUnit-Agent", null);
         assertThat(response.getStatusCode().value()).isEqualTo(400);
         verify(auditService, atLeastOnce()).log(eq("registration"), isNull(), eq("198.51.100.7"), eq("JUnit-Agent"), eq(false), argThat(map -> "underage".equals(map.get("reason"))));
     }
@@ -103,8 +109,9 @@ class PatientRegistrationControllerTest {
         PatientRegistrationService registrationService = mock(PatientRegistrationService.class);
         AuditService auditService = mock(AuditService.class);
         com.example.forgetpass.services.ReCaptchaService reCaptchaService = mock(com.example.forgetpass.services.ReCaptchaService.class);
-        when(reCaptchaService.validate(anyString(), anyString())).thenReturn(true);
-        PatientRegistrationController controller = new PatientRegistrationController(registrationService, auditService, reCaptchaService);
+        when(reCaptchaService.validateAsync(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(true));
+        PatientRegistrationController controller = new PatientRegistrationController(registrationService, auditService, reCaptchaService,
+            Duration.ofSeconds(5));
 
         when(registrationService.registerAndIssueVerification(anyString(), anyString(), eq("user@example.com"), anyString(), any(LocalDate.class), eq("weak"), anyString()))
                 .thenThrow(new IllegalArgumentException("weak_password"));
@@ -112,7 +119,7 @@ class PatientRegistrationControllerTest {
         PatientRegistrationController.RegisterRequest req = new PatientRegistrationController.RegisterRequest(
                 "Weak", "User", "user@example.com", "+1 555-4444", LocalDate.now().minusYears(25), "weak"
         );
-        ResponseEntity<?> response = controller.register(req, "198.51.100.8", "JUnit-Agent");
+        ResponseEntity<?> response = controller.register(req, "198.51.100.8", "JUnit-Agent", null);
         assertThat(response.getStatusCode().value()).isEqualTo(400);
                 verify(auditService, atLeastOnce()).log(eq("registration"), isNull(), eq("198.51.100.8"), eq("JUnit-Agent"), eq(false), argThat(map -> "weak_password".equals(map.get("reason"))));
     }
@@ -0,0 +1,161 @@
+package com.example.forgetpass.repositories;
+
+import com.example.forgetpass.domain.EmailOutboxMessage;
+import com.example.forgetpass.domain.EmailTemplate;
+import com.example.forgetpass.domain.Patient;
+import com.example.forgetpass.support.SqlCapture;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the repository lookups against a database built from scratch by the Flyway migrations and
+ * checks with EXPLAIN QUERY PLAN that the SQL Hibernate generates is answered from an index.
+ */
+@SpringBootTest(properties = {
+    "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.example.forgetpass.support.SqlCapture",
+    "forgetpass.expiry.enabled=false",
+    "forgetpass.email.outbox.enabled=false"
+})
+class RepositoryQueryPlanTest {
+
+    private static final Path DB;
+
+    static {
+        try {
+            DB = Files.createTempFile("query-plan", ".db");
+            Files.delete(DB);
+            DB.toFile().deleteOnExit();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void dataSource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> "jdbc:sqlite:" + DB);
+    }
+
+    @Autowired private PatientRepository patientRepository;
+    @Autowired private PasswordResetTokenRepository passwordResetTokenRepository;
+    @Autowired private EmailVerificationTokenRepository emailVerificationTokenRepository;
+    @Autowired private AuthenticationAuditLogRepository auditLogRepository;
+    @Autowired private EmailOutboxRepository outboxRepository;
+    @Autowired private JdbcTemplate jdbc;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    @Test
+    void freshDatabaseIsBuiltByMigrations() {
+        List<String> applied = jdbc.queryForList(
+            "SELECT version FROM flyway_schema_history WHERE success = 1 ORDER BY installed_rank", String.class);
+        assertThat(applied).containsExactly("0.1", "1", "2", "3", "4", "5");
+    }
+
+    @Test
+    void tokenHashLookupsUseUniqueIndexes() {
+        assertUsesIndex(() -> passwordResetTokenRepository.findByTokenHash("h"), "ux_password_reset_tokens_token_hash");
+        assertUsesIndex(() -> emailVerificationTokenRepository.findByTokenHash("h"), "ux_email_verification_tokens_token_hash");
+    }
+
+    @Test
+    void selectorLookupsAndConsumptionUsePrimaryKeys() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        assertUsesIndex(() -> passwordResetTokenRepository.findById(UUID.randomUUID()), "sqlite_autoindex_password_reset_tokens_1");
+        assertUsesIndex(() -> emailVerificationTokenRepository.findById(UUID.randomUUID()),
+            "sqlite_autoindex_email_verification_tokens_1");
+        assertUsesIndex(() -> tx.execute(s -> passwordResetTokenRepository.consume(UUID.randomUUID(), Instant.now())),
+            "sqlite_autoindex_password_reset_tokens_1");
+        assertUsesIndex(() -> tx.execute(s -> emailVerificationTokenRepository.consume(UUID.randomUUID(), Instant.now())),
+            "sqlite_autoindex_email_verification_tokens_1");
+    }
+
+    @Test
+    void patientTokenLookupsUseCompositeIndexes() {
+        Patient patient = patient();
+        Instant since = Instant.now().minusSeconds(3600);
+
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        assertUsesIndex(() -> tx.execute(s -> passwordResetTokenRepository.invalidateActive(patient, since)),
+            "idx_password_reset_tokens_patient_used");
+        assertUsesIndex(() -> passwordResetTokenRepository.countByPatientAndCreatedAtAfter(patient, since),
+            "idx_password_reset_tokens_patient_created");
+        assertUsesIndex(() -> emailVerificationTokenRepository.countByPatientAndCreatedAtAfter(patient, since),
+            "idx_email_verification_tokens_patient_created");
+        assertUsesIndex(() -> passwordResetTokenRepository.findByPatient(patient), "idx_password_reset_tokens_patient_");
+        assertUsesIndex(() -> emailVerificationTokenRepository.findByPatient(patient),
+            "idx_email_verification_tokens_patient_created");
+    }
+
+    @Test
+    void expiryDeletesUseIndexes() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        assertUsesIndex(() -> tx.execute(s -> emailVerificationTokenRepository.deleteExpired(Instant.now(), 10)),
+            "idx_email_verification_tokens_expires_at");
+        assertUsesIndex(() -> tx.execute(s ->
+                passwordResetTokenRepository.deleteExpiredByIds(List.of(UUID.randomUUID()), Instant.now())),
+            "sqlite_autoindex_password_reset_tokens_1"); // primary key
+    }
+
+    @Test
+    void outboxLeaseUsesPrimaryKeyAndLeaseIndex() {
+        EmailOutboxMessage message = new EmailOutboxMessage();
+        message.setTemplate(EmailTemplate.VERIFICATION);
+        message.setRecipient("lease@example.com");
+        UUID id = outboxRepository.save(message).getMessageId();
+        Instant now = Instant.now().plusSeconds(1);
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+
+        assertUsesIndex(() -> tx.execute(s -> outboxRepository.claim(List.of(id), "first", now, now.plusSeconds(600))),
+            "sqlite_autoindex_email_outbox_1");
+        assertUsesIndex(() -> outboxRepository.findIdsByLeaseId("first"), "idx_email_outbox_lease");
+        // Leased rows are no longer due, so a second dispatcher gets nothing
+        Integer second = tx.execute(s -> outboxRepository.claim(List.of(id), "second", now, now.plusSeconds(600)));
+        assertThat(second).isZero();
+        assertThat(outboxRepository.findIdsByLeaseId("first")).containsExactly(id);
+    }
+
+    @Test
+    void auditLookupByPatientUsesIndex() {
+        Patient patient = patient();
+        assertUsesIndex(() -> auditLogRepository.findByPatient(patient), "idx_authentication_audit_logs_patient_timestamp");
+    }
+
+    private Patient patient() {
+        Patient patient = new Patient();
+        patient.setFirstName("Plan");
+        patient.setLastName("Test");
+        patient.setEmail("plan-" + UUID.randomUUID() + "@example.com");
+        patient.setDateOfBirth(LocalDate.of(1990, 1, 1));
+        return patientRepository.save(patient);
+    }
+
+    private void assertUsesIndex(Runnable query, String index) {
+        SqlCapture.clear();
+        query.run();
+        List<String> statements = SqlCapture.statements();
+        assertThat(statements).as("captured SQL").isNotEmpty();
+        String sql = statements.get(statements.size() - 1);
+
+        Object[] params = new Object[(int) sql.chars().filter(c -> c == '?').count()];
+        List<String> plan = jdbc.query("EXPLAIN QUERY PLAN " + sql, (rs, i) -> rs.getString("detail"), params);
+
+        assertThat(plan).as("plan for %s", sql)
+            .anyMatch(step -> step.contains("USING") && step.contains(index))
+            .noneMatch(step -> step.startsWith("SCAN") && !step.contains("USING"));
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.forgetpass.services;
+
+import com.example.forgetpass.domain.AuthenticationAuditLog;
+import com.example.forgetpass.domain.Patient;
+import com.example.forgetpass.repositories.AuthenticationAuditLogRepository;
+import com.example.forgetpass.repositories.PatientRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AuditLogWriterTest {
+
+    @TempDir
+    Path dir;
+
+    private final AuthenticationAuditLogRepository repo = mock(AuthenticationAuditLogRepository.class);
+    private final PatientRepository patients = mock(PatientRepository.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private AuditLogWriter writer;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (writer != null) writer.shutdown();
+    }
+
+    @Test
+    void flushesWhenBatchSizeReached() {
+        writer = start(64, 2, Duration.ofHours(1), AuditLogWriter.OverflowPolicy.DROP);
+
+        writer.append(entry("a"));
+        writer.append(entry("b"));
+
+        verify(repo, timeout(2000)).saveAll(argThat(batch -> size(batch) == 2));
+    }
+
+    @Test
+    void flushesOnTimer_andOnShutdown() throws Exception {
+        writer = start(64, 100, Duration.ofMillis(50), AuditLogWriter.OverflowPolicy.DROP);
+        writer.append(entry("a"));
+        verify(repo, timeout(2000)).saveAll(argThat(batch -> size(batch) == 1));
+
+        AuditLogWriter idle = start(64, 100, Duration.ofHours(1), AuditLogWriter.OverflowPolicy.DROP);
+        idle.append(entry("x"));
+        idle.append(entry("y"));
+        idle.shutdown();
+        verify(repo).saveAll(argThat(batch -> size(batch) == 2));
+    }
+
+    @Test
+    void overflow_dropOrSpill_whenBufferFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(repo.saveAll(any())).thenAnswer(inv -> {
+            release.await(5, TimeUnit.SECONDS);
+            return List.of();
+        });
+        writer = start(4, 1, Duration.ofMillis(10), AuditLogWriter.OverflowPolicy.SPILL);
+        writer.append(entry("in-flight"));
+        verify(repo, timeout(2000)).saveAll(any());
+
+        for (int i = 0; i < 4; i++) writer.append(entry("buffered-" + i));
+        writer.append(entry("overflow"));
+
+        Path spill = dir.resolve("spill.jsonl");
+        assertThat(Files.readAllLines(spill)).singleElement().asString().contains("\"eventType\":\"overflow\"");
+        assertThat(registry.get("forgetpass.audit.spilled").counter().count()).isEqualTo(1.0);
+        release.countDown();
+    }
+
+    @Test
+    void failedBatch_isSpilled_andReplayedOnNextStart() throws Exception {
+        when(repo.saveAll(any())).thenThrow(new IllegalStateException("database is locked"));
+        writer = start(64, 1, Duration.ofHours(1), AuditLogWriter.OverflowPolicy.DROP);
+        UUID patientId = UUID.randomUUID();
+        AuthenticationAuditLog e = entry("registration");
+        Patient p = new Patient();
+        p.setPatientId(patientId);
+        e.setPatient(p);
+        when(patients.getReferenceById(patientId)).thenReturn(p);
+        writer.append(e);
+        Path spill = dir.resolve("spill.jsonl");
+        verify(repo, timeout(2000)).saveAll(any());
+        writer.shutdown();
+        writer = null;
+        assertThat(Files.readString(spill)).contains("registration").contains(patientId.toString());
+
+        reset(repo);
+        writer = start(64, 1, Duration.ofHours(1), AuditLogWriter.OverflowPolicy.DROP);
+
+        verify(repo).saveAll(argThat(batch -> {
+            AuthenticationAuditLog replayed = ((List<AuthenticationAuditLog>) batch).get(0);
+            return replayed.getEventType().equals("registration") && replayed.getPatient() == p
+                && replayed.getOccurredAt() != null;
+        }));
+        assertThat(spill).doesNotExist();
+    }
+
+    private AuditLogWriter start(int capacity, int batchSize, Duration interval, AuditLogWriter.OverflowPolicy policy) {
+        PlatformTransactionManager txManager = mock(PlatformTransactionManager.class);
+        when(txManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        AuditLogWriter w = new AuditLogWriter(repo, patients, WriteLane.direct(txManager), registry, capacity, batchSize, interval,
+            policy, Duration.ofMillis(20), dir.resolve("spill.jsonl"));
+        w.start();
+        return w;
+    }
+
+    private static AuthenticationAuditLog entry(String type) {
+        AuthenticationAuditLog e = new AuthenticationAuditLog();
+        e.setEventType(type);
+        e.setSuccess(true);
+        e.setOccurredAt(Instant.now());
+        return e;
+    }
+
+    private static int size(Iterable<?> batch) {
+        return ((List<?>) batch).size();
+    }
+}
@@ -1,54 +1,120 @@
 package com.example.forgetpass.services;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.forgetpass.support.StubReCaptchaServer;
+import com.example.forgetpass.util.RetryScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.Mockito;
-import org.springframework.web.client.RestTemplate;
 
+import java.net.ConnectException;
+import java.net.ServerSocket;
 import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.junit.jupiter.api.Assertions.assertThrows;
-import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyMap;
-import static org.mockito.Mockito.when;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class DefaultReCaptchaClientTest {
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final RetryScheduler retryScheduler = new RetryScheduler(1, registry);
+    private StubReCaptchaServer stub;
     private DefaultReCaptchaClient client;
-    private RestTemplate restTemplate;
 
     @BeforeEach
     void setUp() throws Exception {
-        restTemplate = Mockito.mock(RestTemplate.class);
-        // create a subclass to inject mock RestTemplate
-        client = new DefaultReCaptchaClient() {
-            { 
-                try {
-                    java.lang.reflect.Field f = DefaultReCaptchaClient.class.getDeclaredField("restTemplate");
-                    f.setAccessible(true);
-                    f.set(this, restTemplate);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-            }
-        };
-    }
-
-    @Test
-    void verify_parsesValidResponse() throws Exception {
-        String json = "{\"success\":true,\"score\":0.9,\"action\":\"x\"}";
-        when(restTemplate.postForObject(any(URI.class), anyMap(), any())).thenReturn(json);
-
-        ReCaptchaResponse r = client.verify("s", "t");
-        assertThat(r).isNotNull();
-        assertThat(r.isSuccess()).isTrue();
+        stub = new StubReCaptchaServer(0);
+        client = new DefaultReCaptchaClient(stub.verifyUrl(), 2, Duration.ofSeconds(1), Duration.ofSeconds(1),
+            retryScheduler, registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+        retryScheduler.shutdown();
+    }
+
+    @Test
+    void verify_parsesValidResponse() {
+        stub.respondWith(200, "{\"success\":false,\"score\":0.9,\"action\":\"x\",\"hostname\":\"h\","
+            + "\"error-codes\":[\"timeout-or-duplicate\"]}");
+
+        ReCaptchaResponse r = client.verify("s", "t").join();
+        assertThat(r.isSuccess()).isFalse();
         assertThat(r.getScore()).isEqualTo(0.9);
+        assertThat(r.getErrorCodes()).containsExactly("timeout-or-duplicate");
+    }
+
+    @Test
+    void verify_postsFormEncodedSecretAndToken() {
+        client.verify("s e&cret", "tok=en").join();
+
+        assertThat(stub.bodies()).containsExactly("secret=s+e%26cret&response=tok%3Den");
+    }
+
+    @Test
+    void verify_reusesTheConnection() {
+        for (int i = 0; i < 5; i++) client.verify("s", "t").join();
+
+        assertThat(stub.requests()).isEqualTo(5);
+        assertThat(stub.connections()).isEqualTo(1);
     }
 
     @Test
-    void verify_throwsOnMalformedJson() throws Exception {
-        when(restTemplate.postForObject(any(URI.class), anyMap(), any())).thenReturn("not-json");
-        assertThrows(Exception.class, () -> client.verify("s","t"));
+    void verify_doesNotRetryMalformedResponse() {
+        stub.respondWith(200, "not-json");
+
+        assertThatThrownBy(() -> client.verify("s", "t").join()).isInstanceOf(CompletionException.class);
+        assertThat(stub.requests()).isEqualTo(1);
+    }
+
+    @Test
+    void verify_doesNotResendATokenTheVerifierMayHaveSeen() {
+        stub.respondWith(503, "unavailable");
+
+        assertThatThrownBy(() -> client.verify("s", "t").join()).isInstanceOf(CompletionException.class);
+        assertThat(stub.requests()).isEqualTo(1);
+        assertThat(client.inFlight()).isZero();
+        assertThat(registry.get("forgetpass.retry.giveups").tag("operation", DefaultReCaptchaClient.OPERATION)
+            .tag("reason", "not_retryable").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void verify_retriesConnectFailures() throws Exception {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        DefaultReCaptchaClient unreachable = new DefaultReCaptchaClient(URI.create("http://127.0.0.1:" + closedPort + "/siteverify"),
+            2, Duration.ofSeconds(1), Duration.ofSeconds(1), retryScheduler, registry);
+
+        assertThatThrownBy(() -> unreachable.verify("s", "t").join()).hasCauseInstanceOf(ConnectException.class);
+        assertThat(registry.get("forgetpass.retry.attempts").tag("operation", DefaultReCaptchaClient.OPERATION)
+            .counter().count()).isEqualTo(DefaultReCaptchaClient.RETRY_POLICY.maxAttempts());
+        assertThat(unreachable.inFlight()).isZero();
+    }
+
+    @Test
+    void verify_failsFastWhenSaturated() {
+        stub.delay(300);
+        CompletableFuture<ReCaptchaResponse> first = client.verify("s", "t");
+        CompletableFuture<ReCaptchaResponse> second = client.verify("s", "t");
+
+        assertThatThrownBy(() -> client.verify("s", "t").join()).hasCauseInstanceOf(ReCaptchaSaturatedException.class);
+        assertThat(first.join().isSuccess()).isTrue();
+        assertThat(second.join().isSuccess()).isTrue();
+        assertThat(client.inFlight()).isZero();
+    }
+
+    @Test
+    void verify_cancelAbandonsTheExchange() {
+        stub.delay(500);
+        CompletableFuture<ReCaptchaResponse> pending = client.verify("s", "t");
+        pending.cancel(true);
+
+        assertThat(client.inFlight()).isZero();
+        assertThat(client.verify("s", "t").isCompletedExceptionally()).isFalse();
     }
 }
@@ -0,0 +1,271 @@
+package com.example.forgetpass.services;
+
+import com.example.forgetpass.domain.EmailOutboxMessage;
+import com.example.forgetpass.domain.EmailTemplate;
+import com.example.forgetpass.repositories.EmailOutboxRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class EmailOutboxDispatcherTest {
+
+    private EmailOutboxRepository repo;
+    private EmailService emailService;
+    private EmailOutboxDispatcher dispatcher;
+    private final Map<String, List<UUID>> claimed = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        repo = mock(EmailOutboxRepository.class);
+        emailService = mock(EmailService.class);
+        dispatcher = new EmailOutboxDispatcher(repo, emailService, WriteLane.direct(null), new SimpleMeterRegistry(),
+            true, 60_000, 10, 2, 3, Duration.ofSeconds(30), Duration.ofMinutes(1), Duration.ofHours(1), true, 3, Duration.ZERO, Duration.ofMinutes(10));
+        // Every due message is leased by this dispatcher unless a test says otherwise
+        when(repo.claim(anyCollection(), anyString(), any(), any())).thenAnswer(inv -> {
+            claimed.put(inv.getArgument(1), List.copyOf(inv.<Collection<UUID>>getArgument(0)));
+            return claimed.get(inv.<String>getArgument(1)).size();
+        });
+        when(repo.findIdsByLeaseId(anyString())).thenAnswer(inv -> claimed.getOrDefault(inv.<String>getArgument(0), List.of()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void drain_marksDeliveredMessagesSent_andClearsLink() {
+        EmailOutboxMessage m = message(0);
+        when(repo.findByStatusAndNextAttemptAtLessThanEqual(eq(EmailOutboxMessage.STATUS_PENDING), any(), any()))
+            .thenReturn(List.of(m));
+        when(emailService.deliver(eq("a@b.c"), anyString(), contains("https://x/reset"), eq(1))).thenReturn(null);
+
+        dispatcher.drain();
+
+        assertThat(m.getStatus()).isEqualTo(EmailOutboxMessage.STATUS_SENT);
+        assertThat(m.getSentAt()).isNotNull();
+        assertThat(m.getLink()).isNull();
+        verify(repo).save(m);
+    }
+
+    @Test
+    void drainBatch_failure_reschedulesWithBackoff() {
+        EmailOutboxMessage m = message(1);
+        when(repo.findByStatusAndNextAttemptAtLessThanEqual(any(), any(), any())).thenReturn(List.of(m));
+        when(emailService.deliver(anyString(), anyString(), anyString(), eq(2))).thenReturn("status 500");
+
+        Instant before = Instant.now();
+        assertThat(dispatcher.drainBatch(before)).isEqualTo(1);
+
+        assertThat(m.getStatus()).isEqualTo(EmailOutboxMessage.STATUS_PENDING);
+        assertThat(m.getAttempts()).isEqualTo(2);
+        assertThat(m.getLastError()).isEqualTo("status 500");
+        // Full jitter: anywhere up to the 60 s ceiling for a second failure
+        assertThat(m.getNextAttemptAt()).isBetween(before, Instant.now().plusSeconds(60));
+    }
+
+    @Test
+    void drainBatch_lastAttemptFailure_marksFailed() {
+        EmailOutboxMessage m = message(2);
+        when(repo.findByStatusAndNextAttemptAtLessThanEqual(any(), any(), any())).thenReturn(List.of(m));
+        when(emailService.deliver(anyString(), anyString(), anyString(), anyInt())).thenThrow(new IllegalStateException("boom"));
+
+        dispatcher.drainBatch(Instant.now());
+
+        assertThat(m.getStatus()).isEqualTo(EmailOutboxMessage.STATUS_FAILED);
+        assertThat(m.getLink()).isNull();
+        assertThat(m.getLastError()).contains("boom");
+    }
+
+    @Test
+    void drainBatch_sendsSameTemplateAsOneRequestPerChunk() {
+        List<EmailOutboxMessage> due = List.of(message(0), message(0), message(0), message(0));
+        when(repo.findByStatusAndNextAttemptAtLessThanEqual(any(), any(), any())).thenReturn(due);
+        when(emailService.deliverBatch(eq(EmailTemplate.PASSWORD_RESET), anyList(), anyInt())).thenReturn(null);
+        when(emailService.deliver(anyString(), anyString(), anyString(), anyInt())).thenReturn(null);
+
+        assertThat(dispatcher.drainBatch(Instant.now())).isEqualTo(4);
+
+        // max-recipients is 3: one batched request plus a single send for the remainder
+        verify(emailService).deliverBatch(eq(EmailTemplate.PASSWORD_RESET), argThat(r -> r.size() == 3), eq(1));
+        verify(emailService, times(1)).deliver(anyString(), anyString(), anyString(), anyInt());
+        assertThat(due).allMatch(m -> EmailOutboxMessage.STATUS_SENT.equals(m.getStatus()) && m.getAttempts() == 1);
+    }
+
+    @Test
+    void drainBatch_failedBatch_fallsBackToIndividualRetries() {
+        EmailOutboxMessage good = message(0);
+        EmailOutboxMessage bad = message(0);
+        bad.setRecipient("bad@b.c");
+        when(repo.findByStatusAndNextAttemptAtLessThanEqual(any(), any(), any())).thenReturn(List.of(good, bad));
+        when(emailService.deliverBatch(any(), anyList(), anyInt())).thenReturn("status 400");
+        when(emailService.deliver(eq("a@b.c"), anyString(), anyString(), eq(1))).thenReturn(null);
+        when(emailService.deliver(eq("bad@b.c"), anyString(), anyString(), eq(1))).thenReturn("status 400");
+
+        dispatcher.drainBatch(Instant.now());
+
+        assertThat(good.getStatus()).isEqualTo(EmailOutboxMessage.STATUS_SENT);
+        assertThat(bad.getStatus()).isEqualTo(EmailOutboxMessage.STATUS_PENDING);
+        assertThat(bad.getAttempts()).isEqualTo(1);
+        assertThat(bad.getNextAttemptAt()).isAfter(Instant.now());
+    }
+
+    @Test
+    void drainBatch_holdsSmallGroupsWithinWindow() {
+        EmailOutboxDispatcher windowed = new EmailOutboxDispatcher(repo, emailService, WriteLane.direct(null), new SimpleMeterRegistry(),
+            true, 60_000, 10, 2, 3, Duration.ofSeconds(30), Duration.ofMinutes(1), Duration.ofHours(1), true, 3, Duration.ofMinutes(5), Duration.ofMinutes(10));
+        try {
+            EmailOutboxMessage fresh = message(0);
+            when(repo.findByStatusAndNextAttemptAtLessThanEqual(any(), any(), any())).thenReturn(List.of(fresh));
+
+            assertThat(windowed.drainBatch(Instant.now())).isZero();
+            verify(emailService, never()).deliver(anyString(), anyString(), anyString(), anyInt());
+
+            fresh.setCreatedAt(Instant.now().minus(Duration.ofMinutes(6)));
+            when(emailService.deliver(anyString(), anyString(), anyString(), anyInt())).thenReturn(null);
+            assertThat(windowed.drainBatch(Instant.now())).isEqualTo(1);
+        } finally {
+            windowed.shutdown();
+        }
+    }
+
+    @Test
+    void drain_leavesMessagesPending_whileCircuitOpen() {
+        when(emailService.circuitOpen()).thenReturn(true);
+
+        assertThat(dispatcher.drainBatch(Instant.now())).isZero();
+
+        verifyNoInteractions(repo);
+        verify(emailService, never()).deliver(anyString(), anyString(), anyString(), anyInt());
+    }
+
+    @Test
+    void drainBatch_refusedByOpenCircuit_doesNotUseAnAttempt() {
+        EmailOutboxMessage m = message(1);
+        Instant due = m.getNextAttemptAt();
+        when(repo.findByStatusAndNextAttemptAtLessThanEqual(any(), any(), any())).thenReturn(List.of(m));
+        when(emailService.deliver(anyString(), anyString(), anyString(), anyInt())).thenReturn(EmailService.CIRCUIT_OPEN);
+
+        dispatcher.drainBatch(Instant.now());
+
+        assertThat(m.getAttempts()).isEqualTo(1);
+        assertThat(m.getStatus()).isEqualTo(EmailOutboxMessage.STATUS_PENDING);
+        // Saved as fetched: the lease is released and the message is due again right away
+        verify(repo).save(m);
+        assertThat(m.getLeaseId()).isNull();
+        assertThat(m.getNextAttemptAt()).isEqualTo(due);
+    }
+
+    @Test
+    void drainBatch_sendsOnlyMessagesItLeased() {
+        EmailOutboxMessage ours = message(0);
+        EmailOutboxMessage theirs = message(0);
+        theirs.setRecipient("other@b.c");
+        when(repo.findByStatusAndNextAttemptAtLessThanEqual(any(), any(), any())).thenReturn(List.of(ours, theirs));
+        // Another process leased the second message between our fetch and our claim
+        when(repo.claim(anyCollection(), anyString(), any(), any())).thenAnswer(inv -> {
+            claimed.put(inv.getArgument(1), List.of(ours.getMessageId()));
+            return 1;
+        });
+        when(emailService.deliver(anyString(), anyString(), anyString(), anyInt())).thenReturn(null);
+
+        Instant now = Instant.now();
+        dispatcher.drainBatch(now);
+
+        verify(repo).claim(argThat(ids -> ids.containsAll(List.of(ours.getMessageId(), theirs.getMessageId()))),
+            anyString(), eq(now), eq(now.plus(Duration.ofMinutes(10))));
+        verify(emailService).deliver(eq("a@b.c"), anyString(), anyString(), eq(1));
+        verify(emailService, never()).deliver(eq("other@b.c"), anyString(), anyString(), anyInt());
+        verify(repo, never()).save(theirs);
+        assertThat(ours.getStatus()).isEqualTo(EmailOutboxMessage.STATUS_SENT);
+    }
+
+    @Test
+    void drainBatch_heldBackMessagesAreNotLeased() {
+        EmailOutboxDispatcher windowed = new EmailOutboxDispatcher(repo, emailService, WriteLane.direct(null), new SimpleMeterRegistry(),
+            true, 60_000, 10, 2, 3, Duration.ofSeconds(30), Duration.ofMinutes(1), Duration.ofHours(1), true, 3, Duration.ofMinutes(5), Duration.ofMinutes(10));
+        try {
+            when(repo.findByStatusAndNextAttemptAtLessThanEqual(any(), any(), any())).thenReturn(List.of(message(0)));
+
+            assertThat(windowed.drainBatch(Instant.now())).isZero();
+            verify(repo, never()).claim(anyCollection(), anyString(), any(), any());
+        } finally {
+            windowed.shutdown();
+        }
+    }
+
+    @Test
+    void drainBatch_failureBeyondMaxElapsed_marksFailed() {
+        EmailOutboxMessage m = message(0);
+        m.setCreatedAt(Instant.now().minus(Duration.ofHours(2)));
+        when(repo.findByStatusAndNextAttemptAtLessThanEqual(any(), any(), any())).thenReturn(List.of(m));
+        when(emailService.deliver(anyString(), anyString(), anyString(), anyInt())).thenReturn("status 503");
+
+        dispatcher.drainBatch(Instant.now());
+
+        assertThat(m.getStatus()).isEqualTo(EmailOutboxMessage.STATUS_FAILED);
+        assertThat(m.getAttempts()).isEqualTo(1);
+    }
+
+    @Test
+    void start_pollsOnItsOwnThread_andSurvivesAFailedRun() {
+        EmailOutboxDispatcher polling = new EmailOutboxDispatcher(repo, emailService, WriteLane.direct(null), new SimpleMeterRegistry(),
+            true, 10, 10, 2, 3, Duration.ofSeconds(30), Duration.ofMinutes(1), Duration.ofHours(1), true, 3, Duration.ZERO, Duration.ofMinutes(10));
+        List<String> threads = new CopyOnWriteArrayList<>();
+        when(repo.findByStatusAndNextAttemptAtLessThanEqual(any(), any(), any())).thenAnswer(inv -> {
+            threads.add(Thread.currentThread().getName());
+            if (threads.size() == 1) throw new IllegalStateException("database is locked");
+            return List.of();
+        });
+        try {
+            polling.start();
+            verify(repo, timeout(5000).atLeast(2)).findByStatusAndNextAttemptAtLessThanEqual(any(), any(), any());
+            assertThat(threads).allMatch("email-outbox-poller"::equals);
+        } finally {
+            polling.shutdown();
+        }
+    }
+
+    @Test
+    void pendingGauge_reportsTheLastDrain_withoutQueryingOnScrape() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        EmailOutboxDispatcher counted = new EmailOutboxDispatcher(repo, emailService, WriteLane.direct(null), registry,
+            true, 60_000, 10, 2, 3, Duration.ofSeconds(30), Duration.ofMinutes(1), Duration.ofHours(1), true, 3, Duration.ZERO, Duration.ofMinutes(10));
+        when(repo.findByStatusAndNextAttemptAtLessThanEqual(any(), any(), any())).thenReturn(List.of());
+        when(repo.countByStatus(EmailOutboxMessage.STATUS_PENDING)).thenReturn(7L);
+        try {
+            assertThat(registry.get("forgetpass.email.outbox.pending").gauge().value()).isZero();
+            counted.drain();
+            assertThat(registry.get("forgetpass.email.outbox.pending").gauge().value()).isEqualTo(7.0);
+            assertThat(registry.get("forgetpass.email.outbox.pending").gauge().value()).isEqualTo(7.0);
+            verify(repo, times(1)).countByStatus(EmailOutboxMessage.STATUS_PENDING);
+        } finally {
+            counted.shutdown();
+        }
+    }
+
+    private static EmailOutboxMessage message(int attempts) {
+        EmailOutboxMessage m = new EmailOutboxMessage();
+        m.setMessageId(UUID.randomUUID());
+        m.setNextAttemptAt(Instant.now().minusSeconds(1));
+        m.setTemplate(EmailTemplate.PASSWORD_RESET);
+        m.setRecipient("a@b.c");
+        m.setLink("https://x/reset?token=t");
+        m.setAttempts(attempts);
+        return m;
+    }
+}
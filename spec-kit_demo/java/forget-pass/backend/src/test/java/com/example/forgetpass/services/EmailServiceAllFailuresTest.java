@@ -1,13 +1,19 @@
 package com.example.forgetpass.services;
 
+import com.example.forgetpass.util.CircuitBreaker;
+import com.example.forgetpass.util.RetryScheduler;
 import com.sendgrid.Response;
 import com.sendgrid.SendGrid;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 
 import static org.assertj.core.api.Assertions.assertThatCode;
 
 class EmailServiceAllFailuresTest {
 
+    // Direct sends go out through a retry scheduler; its threads are daemons
+    private static final RetryScheduler RETRY = new RetryScheduler(1, new SimpleMeterRegistry());
+
     static class AlwaysFailSendGrid extends SendGrid {
         private final Response response;
 
@@ -26,8 +32,10 @@ class EmailServiceAllFailuresTest {
         private final SendGrid sg;
 
         TestableEmailService(SendGrid sg) {
+            super(null, null, RETRY, new CircuitBreaker("sendgrid", CircuitBreaker.Config.defaults(), new SimpleMeterRegistry()), false);
             this.sg = sg;
             this.apiKey = "k"; // ensure non-empty so dispatch proceeds
+            this.retryInitialDelay = java.time.Duration.ZERO; // retry immediately in unit tests
             this.maxAttempts = 3;
         }
 
@@ -35,11 +43,6 @@ class EmailServiceAllFailuresTest {
         protected SendGrid createSendGrid(String apiKey) {
             return sg;
         }
-
-        @Override
-        protected void backoff(int attempt) {
-            // avoid sleeping in unit tests
-        }
     }
 
     @Test
@@ -0,0 +1,80 @@
+package com.example.forgetpass.services;
+
+import com.example.forgetpass.support.StubSendGridServer;
+import com.example.forgetpass.util.CircuitBreaker;
+import com.example.forgetpass.util.RetryScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EmailServiceCircuitBreakerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private StubSendGridServer stub;
+    private SendGridTransport transport;
+    private RetryScheduler retryScheduler;
+    private CircuitBreaker breaker;
+    private EmailService svc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new StubSendGridServer(0);
+        transport = new SendGridTransport(stub.host(), true, 2, 2, Duration.ofSeconds(2), Duration.ofSeconds(5),
+            Duration.ofSeconds(30), Duration.ofSeconds(5), registry);
+        retryScheduler = new RetryScheduler(1, registry);
+        breaker = new CircuitBreaker("sendgrid", new CircuitBreaker.Config(4, 4, 0.5, Duration.ofMillis(200), 0.5,
+            Duration.ofMillis(300), 1), registry);
+        svc = new EmailService(null, transport, retryScheduler, breaker, false);
+        svc.apiKey = "k";
+        svc.maxAttempts = 1;
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        retryScheduler.shutdown();
+        transport.close();
+        stub.close();
+    }
+
+    @Test
+    void providerErrors_openCircuit_spillAndFlushAfterRecovery() throws Exception {
+        stub.respondWith(503);
+        for (int i = 0; i < 4; i++) svc.sendPasswordChangedConfirmation("u" + i + "@example.com");
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(svc.circuitOpen()).isTrue();
+
+        svc.sendPasswordChangedConfirmation("late1@example.com");
+        svc.sendPasswordChangedConfirmation("late2@example.com");
+        assertThat(stub.requests()).isEqualTo(4);
+        assertThat(svc.spilloverSize()).isEqualTo(2);
+        assertThat(svc.flushSpillover()).isZero();
+
+        stub.respondWith(202);
+        Thread.sleep(350);
+        assertThat(svc.flushSpillover()).isEqualTo(2);
+        assertThat(stub.requests()).isEqualTo(6);
+        assertThat(svc.spilloverSize()).isZero();
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void clientErrors_doNotOpenCircuit() {
+        stub.respondWith(400);
+        for (int i = 0; i < 6; i++) svc.sendPasswordChangedConfirmation("u" + i + "@example.com");
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(stub.requests()).isEqualTo(6);
+    }
+
+    @Test
+    void slowProvider_opensCircuit() {
+        stub.delay(250);
+        for (int i = 0; i < 4; i++) svc.sendPasswordChangedConfirmation("u" + i + "@example.com");
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(registry.get("forgetpass.circuit.state").tag("name", "sendgrid").gauge().value()).isEqualTo(1.0);
+    }
+}
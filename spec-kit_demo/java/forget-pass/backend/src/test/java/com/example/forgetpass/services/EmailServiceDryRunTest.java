@@ -1,5 +1,9 @@
 package com.example.forgetpass.services;
 
+import com.example.forgetpass.util.CircuitBreaker;
+import com.example.forgetpass.util.RetryScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
 import java.lang.reflect.Field;
@@ -8,9 +12,17 @@ import static org.assertj.core.api.Assertions.assertThatCode;
 
 public class EmailServiceDryRunTest {
 
+    private final RetryScheduler retryScheduler = new RetryScheduler(1, new SimpleMeterRegistry());
+
+    @AfterEach
+    void tearDown() {
+        retryScheduler.shutdown();
+    }
+
     @Test
     void dispatch_is_dry_run_when_api_key_missing() throws Exception {
-        EmailService svc = new EmailService();
+        EmailService svc = new EmailService(null, null, retryScheduler,
+            new CircuitBreaker("sendgrid", CircuitBreaker.Config.defaults(), new SimpleMeterRegistry()), false);
 
         Field f = EmailService.class.getDeclaredField("apiKey");
         f.setAccessible(true);
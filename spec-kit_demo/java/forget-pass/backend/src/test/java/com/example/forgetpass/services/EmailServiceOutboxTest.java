@@ -0,0 +1,172 @@
+package com.example.forgetpass.services;
+
+import com.example.forgetpass.domain.EmailOutboxMessage;
+import com.example.forgetpass.domain.EmailTemplate;
+import com.example.forgetpass.repositories.EmailOutboxRepository;
+import com.example.forgetpass.util.CircuitBreaker;
+import com.example.forgetpass.util.RetryScheduler;
+import com.sendgrid.Request;
+import com.sendgrid.Response;
+import com.sendgrid.SendGrid;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.*;
+
+class EmailServiceOutboxTest {
+
+    private final RetryScheduler retryScheduler = new RetryScheduler(1, new SimpleMeterRegistry());
+    private final CircuitBreaker breaker =
+        new CircuitBreaker("sendgrid", CircuitBreaker.Config.defaults(), new SimpleMeterRegistry());
+
+    @AfterEach
+    void tearDown() {
+        retryScheduler.shutdown();
+    }
+
+    @Test
+    void send_withOutbox_onlyEnqueues() {
+        EmailOutboxRepository repo = mock(EmailOutboxRepository.class);
+        EmailService svc = new EmailService(repo, null, retryScheduler, breaker, true) {
+            @Override
+            protected SendGrid createSendGrid(String apiKey) {
+                return fail("must not call SendGrid on the request path");
+            }
+        };
+        svc.apiKey = "k";
+
+        svc.sendPasswordResetEmail("a@b.c", "https://app.local/reset?token=t");
+        svc.sendPasswordChangedConfirmation("a@b.c");
+
+        ArgumentCaptor<EmailOutboxMessage> captor = ArgumentCaptor.forClass(EmailOutboxMessage.class);
+        verify(repo, times(2)).save(captor.capture());
+        EmailOutboxMessage reset = captor.getAllValues().get(0);
+        assertThat(reset.getTemplate()).isEqualTo(EmailTemplate.PASSWORD_RESET);
+        assertThat(reset.getRecipient()).isEqualTo("a@b.c");
+        assertThat(reset.getLink()).isEqualTo("https://app.local/reset?token=t");
+        assertThat(reset.getStatus()).isEqualTo(EmailOutboxMessage.STATUS_PENDING);
+        assertThat(captor.getAllValues().get(1).getTemplate()).isEqualTo(EmailTemplate.PASSWORD_CHANGED);
+    }
+
+    @Test
+    void send_withOutboxDisabled_callsSendGridDirectly() {
+        EmailOutboxRepository repo = mock(EmailOutboxRepository.class);
+        List<String> bodies = new ArrayList<>();
+        EmailService svc = new EmailService(repo, null, retryScheduler, breaker, false) {
+            @Override
+            protected SendGrid createSendGrid(String apiKey) {
+                return new SendGrid((String) null) {
+                    @Override
+                    public Response api(Request request) {
+                        bodies.add(request.getBody());
+                        return new Response(202, "", Map.of());
+                    }
+                };
+            }
+        };
+        svc.apiKey = "k";
+
+        svc.sendPasswordResetEmail("a@b.c", "https://app.local/reset?token=t");
+
+        verifyNoInteractions(repo);
+        assertThat(bodies).hasSize(1);
+        assertThat(bodies.get(0)).contains("a@b.c").contains("https://app.local/reset?token=t");
+    }
+
+    @Test
+    void send_inTransaction_goesOutAfterCommit_offTheCommittingThread() throws Exception {
+        CompletableFuture<String> sender = new CompletableFuture<>();
+        EmailService svc = new EmailService(null, null, retryScheduler, breaker, false) {
+            @Override
+            protected SendGrid createSendGrid(String apiKey) {
+                return new SendGrid((String) null) {
+                    @Override
+                    public Response api(Request request) {
+                        sender.complete(Thread.currentThread().getName());
+                        return new Response(202, "", Map.of());
+                    }
+                };
+            }
+        };
+        svc.apiKey = "k";
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            svc.sendPasswordChangedConfirmation("a@b.c");
+            assertThat(sender).isNotDone();
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertThat(sender.get(5, TimeUnit.SECONDS)).startsWith("retry-worker-");
+    }
+
+    @Test
+    void send_inRolledBackTransaction_sendsNothing() {
+        EmailService svc = new EmailService(null, null, retryScheduler, breaker, false) {
+            @Override
+            protected SendGrid createSendGrid(String apiKey) {
+                return fail("must not send for a rolled-back transaction");
+            }
+        };
+        svc.apiKey = "k";
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            svc.sendPasswordChangedConfirmation("a@b.c");
+            TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void deliverBatch_sendsOnePersonalizationPerRecipient() {
+        List<String> bodies = new ArrayList<>();
+        EmailService svc = new EmailService(null, null, retryScheduler, breaker, false) {
+            @Override
+            protected SendGrid createSendGrid(String apiKey) {
+                return new SendGrid((String) null) {
+                    @Override
+                    public Response api(Request request) {
+                        bodies.add(request.getBody());
+                        return new Response(202, "", Map.of());
+                    }
+                };
+            }
+        };
+        svc.apiKey = "k";
+
+        String error = svc.deliverBatch(EmailTemplate.VERIFICATION, List.of(
+            new EmailService.Recipient("a@b.c", "https://x/verify?token=1"),
+            new EmailService.Recipient("d@e.f", "https://x/verify?token=2")), 1);
+
+        assertThat(error).isNull();
+        assertThat(bodies).hasSize(1);
+        assertThat(bodies.get(0))
+            .contains("\"personalizations\":[{\"to\":[{\"email\":\"a@b.c\"}]")
+            .contains("\"-link-\":\"https://x/verify?token=1\"")
+            .contains("\"-link-\":\"https://x/verify?token=2\"")
+            .contains("clicking: -link-");
+    }
+
+    @Test
+    void templates_renderLink() {
+        assertThat(EmailTemplate.VERIFICATION.render("L")).contains("clicking: L");
+        assertThat(EmailTemplate.PASSWORD_CHANGED.render(null)).doesNotContain("null");
+    }
+}
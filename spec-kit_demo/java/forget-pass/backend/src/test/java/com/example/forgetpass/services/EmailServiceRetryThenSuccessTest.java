@@ -1,16 +1,23 @@
 package com.example.forgetpass.services;
 
+import com.example.forgetpass.util.CircuitBreaker;
+import com.example.forgetpass.util.RetryScheduler;
 import com.sendgrid.Response;
 import com.sendgrid.SendGrid;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatCode;
 
 class EmailServiceRetryThenSuccessTest {
 
+    // Direct sends go out through a retry scheduler; its threads are daemons
+    private static final RetryScheduler RETRY = new RetryScheduler(1, new SimpleMeterRegistry());
+
     static class CyclingSendGrid extends SendGrid {
         private final Response[] responses;
-        private int idx = 0;
+        private volatile int idx = 0;
 
         CyclingSendGrid(Response... responses) {
             super((String) null);
@@ -29,8 +36,10 @@ class EmailServiceRetryThenSuccessTest {
         private final SendGrid sg;
 
         TestableEmailService(SendGrid sg) {
+            super(null, null, RETRY, new CircuitBreaker("sendgrid", CircuitBreaker.Config.defaults(), new SimpleMeterRegistry()), false);
             this.sg = sg;
             this.apiKey = "k"; // ensure non-empty
+            this.retryInitialDelay = java.time.Duration.ZERO; // retry immediately in unit tests
             this.maxAttempts = 4;
         }
 
@@ -38,20 +47,22 @@ class EmailServiceRetryThenSuccessTest {
         protected SendGrid createSendGrid(String apiKey) {
             return sg;
         }
-
-        @Override
-        protected void backoff(int attempt) {
-            // avoid sleeping in tests
-        }
     }
 
     @Test
-    void dispatch_retries_then_succeeds() {
+    void dispatch_retries_then_succeeds() throws Exception {
         Response fail = new Response(500, "err", java.util.Map.of());
         Response ok = new Response(202, "OK", java.util.Map.of());
         SendGrid sg = new CyclingSendGrid(fail, fail, ok);
         TestableEmailService svc = new TestableEmailService(sg);
 
         assertThatCode(() -> svc.sendVerificationEmail("a@b.c", "link")).doesNotThrowAnyException();
+
+        // Retries run on the retry scheduler, not on the caller's thread
+        long deadline = System.currentTimeMillis() + 5000;
+        while (((CyclingSendGrid) sg).idx < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(((CyclingSendGrid) sg).idx).isEqualTo(3);
     }
 }
@@ -1,7 +1,10 @@
 package com.example.forgetpass.services;
 
+import com.example.forgetpass.util.CircuitBreaker;
+import com.example.forgetpass.util.RetryScheduler;
 import com.sendgrid.Response;
 import com.sendgrid.SendGrid;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
@@ -10,6 +13,9 @@ import static org.assertj.core.api.Assertions.assertThatCode;
 
 class EmailServiceSendGridTest {
 
+    // Direct sends go out through a retry scheduler; its threads are daemons
+    private static final RetryScheduler RETRY = new RetryScheduler(1, new SimpleMeterRegistry());
+
     static class FakeSendGrid extends SendGrid {
         private final Response response;
 
@@ -28,20 +34,17 @@ class EmailServiceSendGridTest {
         private final SendGrid sg;
 
         TestableEmailService(SendGrid sg) {
+            super(null, null, RETRY, new CircuitBreaker("sendgrid", CircuitBreaker.Config.defaults(), new SimpleMeterRegistry()), false);
             this.sg = sg;
             // Ensure apiKey is non-blank so dispatch proceeds
             this.apiKey = "test-key";
+            this.retryInitialDelay = java.time.Duration.ZERO; // retry immediately in unit tests
         }
 
         @Override
         protected SendGrid createSendGrid(String apiKey) {
             return sg;
         }
-
-        @Override
-        protected void backoff(int attempt) {
-            // no sleep during tests
-        }
     }
 
     @Test
@@ -2,15 +2,26 @@ package com.example.forgetpass.services;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.example.forgetpass.util.CircuitBreaker;
+import com.example.forgetpass.util.RetryScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 
 import static org.assertj.core.api.Assertions.assertThatCode;
 
 class EmailServiceTest {
 
+    // Direct sends go out through a retry scheduler; its threads are daemons
+    private static final RetryScheduler RETRY = new RetryScheduler(1, new SimpleMeterRegistry());
+
+    private static EmailService directService() {
+        return new EmailService(null, null, RETRY,
+            new CircuitBreaker("sendgrid", CircuitBreaker.Config.defaults(), new SimpleMeterRegistry()), false);
+    }
+
     @Test
     void abbreviateNullAndShort() throws Exception {
-        EmailService s = new EmailService();
+        EmailService s = directService();
         java.lang.reflect.Method m = EmailService.class.getDeclaredMethod("abbreviate", String.class);
         m.setAccessible(true);
         assertEquals("", m.invoke(s, (Object) null));
@@ -19,13 +30,13 @@ class EmailServiceTest {
 
     @Test
     void dispatchDryRunWhenNoApiKey() throws Exception {
-        EmailService s = new EmailService();
+        EmailService s = directService();
         s.sendPasswordChangedConfirmation("nobody@example.com");
     }
 
     @Test
     void dryRunMode_noApiKey_doesNotThrow() {
-        EmailService svc = new EmailService();
+        EmailService svc = directService();
         assertThatCode(() -> svc.sendVerificationEmail("alice@example.com", "https://app.local/verify?t=abc"))
             .doesNotThrowAnyException();
         assertThatCode(() -> svc.sendPasswordResetEmail("bob@example.com", "https://app.local/reset?t=xyz"))
@@ -9,7 +9,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 class EmailServiceUnitTest {
     @Test
     void abbreviate_handlesNullShortAndLong() throws Exception {
-        EmailService svc = new EmailService();
+        // abbreviate() needs no collaborators
+        EmailService svc = new EmailService(null, null, null, null, false);
         Method m = EmailService.class.getDeclaredMethod("abbreviate", String.class);
         m.setAccessible(true);
 
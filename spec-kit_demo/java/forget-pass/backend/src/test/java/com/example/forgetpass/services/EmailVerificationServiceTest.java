@@ -9,7 +9,6 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -30,13 +29,16 @@ class EmailVerificationServiceTest {
     @Mock EmailService emailService;
     @Mock AuditService auditService;
 
-    @InjectMocks EmailVerificationService service;
+    EmailVerificationService service;
 
     private Patient patient;
 
     @BeforeEach
     void setUp() {
+        service = new EmailVerificationService(patientRepository, tokenRepository, emailService, auditService,
+            WriteLane.direct(null), TokenSigner.disabled(), LookupFilterService.disabled());
         patient = new Patient();
+        patient.setPatientId(java.util.UUID.randomUUID());
         patient.setEmail("alice@example.com");
     }
 
@@ -61,13 +63,14 @@ class EmailVerificationServiceTest {
         EmailVerificationToken evt = new EmailVerificationToken();
         evt.setPatient(patient);
         evt.setExpiresAt(Instant.now().plus(Duration.ofHours(2)));
+        when(tokenRepository.consume(any(), any(Instant.class))).thenReturn(1);
         when(tokenRepository.findByTokenHash(hash)).thenReturn(Optional.of(evt));
 
         boolean ok = service.verify(token);
         assertThat(ok).isTrue();
-        assertThat(evt.getVerifiedAt()).isNotNull();
         assertThat(patient.getAccountStatus()).isEqualTo("active");
-        verify(tokenRepository).save(evt);
+        verify(tokenRepository).consume(any(), any(Instant.class));
+        verify(tokenRepository, never()).save(evt);
         verify(patientRepository).save(patient);
         // audit log invocation omitted from assertion (focus on functional behavior)
     }
@@ -77,19 +80,34 @@ class EmailVerificationServiceTest {
     @Test
     void resend_enforcesAtMost3Resends_per24h() {
         when(patientRepository.findByEmail("alice@example.com")).thenReturn(Optional.of(patient));
-        // Simulate 4 tokens created within last 24h -> block
+        // Simulate 4 tokens created within last 24h (the first issuance and 3 resends) -> block
         when(tokenRepository.countByPatientAndCreatedAtAfter(eq(patient), any(Instant.class))).thenReturn(4L);
         boolean blocked = service.resend("alice@example.com", "https://app.local");
         assertThat(blocked).isFalse();
         verifyNoInteractions(emailService);
-        // audit log invocation omitted from assertion (focus on functional behavior)
+        verify(auditService).log(eq("verification_resend"), eq(patient), any(), any(), eq(false),
+            eq(java.util.Map.of("reason", "limit_exceeded")));
 
         // Allow when under limit
         when(tokenRepository.countByPatientAndCreatedAtAfter(eq(patient), any(Instant.class))).thenReturn(2L);
         boolean sent = service.resend("alice@example.com", "https://app.local");
         assertThat(sent).isTrue();
         verify(emailService, times(1)).sendVerificationEmail(eq("alice@example.com"), anyString());
-        // audit log invocation omitted from assertion (focus on functional behavior)
+    }
+
+    @Test
+    void resend_countsInsideTheLaneUnit() {
+        WriteLane lane = mock(WriteLane.class);
+        when(lane.execute(any())).thenReturn(false);
+        EmailVerificationService svc = new EmailVerificationService(patientRepository, tokenRepository, emailService,
+            auditService, lane, TokenSigner.disabled(), LookupFilterService.disabled());
+        when(patientRepository.findByEmail("alice@example.com")).thenReturn(Optional.of(patient));
+
+        svc.resend("alice@example.com", "https://app.local");
+
+        // The count is taken by the unit on the writer, not on the caller's thread
+        verify(lane).execute(any());
+        verify(tokenRepository, never()).countByPatientAndCreatedAtAfter(any(), any());
     }
 
     @Test
@@ -0,0 +1,102 @@
+package com.example.forgetpass.services;
+
+import com.example.forgetpass.repositories.EmailVerificationTokenRepository;
+import com.example.forgetpass.repositories.PasswordResetTokenRepository;
+import com.example.forgetpass.repositories.PatientRepository;
+import com.example.forgetpass.repositories.TokenExpiry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class LookupFilterServiceTest {
+
+    private static final long DAY_MS = 86_400_000;
+
+    private final PatientRepository patientRepo = mock(PatientRepository.class);
+    private final PasswordResetTokenRepository prtRepo = mock(PasswordResetTokenRepository.class);
+    private final EmailVerificationTokenRepository evtRepo = mock(EmailVerificationTokenRepository.class);
+    private final PlatformTransactionManager txManager = mock(PlatformTransactionManager.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        when(txManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(patientRepo.findEmailsAfter(any(), any())).thenReturn(List.of());
+        when(prtRepo.findUnexpiredAfter(any(), any(), any())).thenReturn(List.of());
+        when(evtRepo.findUnexpiredAfter(any(), any(), any())).thenReturn(List.of());
+    }
+
+    private LookupFilterService service() {
+        return new LookupFilterService(patientRepo, prtRepo, evtRepo, txManager, registry, true, 10_000, 10_000, 0.01, DAY_MS);
+    }
+
+    @Test
+    void everythingGoesToTheDatabaseUntilSeeded() {
+        LookupFilterService svc = service();
+
+        assertThat(svc.mayBeRegistered("nobody@example.com")).isTrue();
+        assertThat(svc.mayBeLiveToken(UUID.randomUUID())).isTrue();
+        assertThat(LookupFilterService.disabled().mayBeRegistered("nobody@example.com")).isTrue();
+    }
+
+    @Test
+    void seedsEmailsAndUnexpiredTokensFromTheDatabase() {
+        UUID reset = UUID.randomUUID();
+        UUID verification = UUID.randomUUID();
+        when(patientRepo.findEmailsAfter(eq(""), any())).thenReturn(List.of("a@example.com", "b@example.com"));
+        when(prtRepo.findUnexpiredAfter(any(), any(), any())).thenReturn(List.of(expiry(reset)));
+        when(evtRepo.findUnexpiredAfter(any(), any(), any())).thenReturn(List.of(expiry(verification)));
+        LookupFilterService svc = service();
+
+        svc.rotate();
+
+        assertThat(svc.mayBeRegistered("a@example.com")).isTrue();
+        assertThat(svc.mayBeRegistered("b@example.com")).isTrue();
+        assertThat(svc.mayBeLiveToken(reset)).isTrue();
+        assertThat(svc.mayBeLiveToken(verification)).isTrue();
+        assertThat(svc.mayBeRegistered("nobody@example.com")).isFalse();
+        assertThat(svc.mayBeLiveToken(UUID.randomUUID())).isFalse();
+        assertThat(registry.get("forgetpass.lookup-filter.skipped").tag("filter", "emails").counter().count()).isEqualTo(1);
+        assertThat(registry.get("forgetpass.lookup-filter.bytes").tag("filter", "emails").gauge().value()).isPositive();
+    }
+
+    @Test
+    void tokensAreKeptForOneFullGeneration() {
+        LookupFilterService svc = service();
+        svc.rotate();
+        UUID id = UUID.randomUUID();
+        svc.tokenAdded(id);
+        svc.emailAdded("new@example.com");
+
+        svc.rotate();
+        assertThat(svc.mayBeLiveToken(id)).isTrue();
+        svc.rotate();
+        assertThat(svc.mayBeLiveToken(id)).isFalse();
+        assertThat(svc.mayBeRegistered("new@example.com")).isTrue();
+    }
+
+    @Test
+    void rejectsGenerationsShorterThanATokenLifetime() {
+        assertThatThrownBy(() -> new LookupFilterService(patientRepo, prtRepo, evtRepo, txManager, registry,
+            true, 10, 10, 0.01, DAY_MS / 2)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static TokenExpiry expiry(UUID id) {
+        return new TokenExpiry() {
+            public UUID getTokenId() { return id; }
+            public Instant getExpiresAt() { return Instant.now().plusSeconds(60); }
+        };
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.forgetpass.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PasswordHashingServiceTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private PasswordHashingService svc;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (svc != null) svc.shutdown();
+    }
+
+    @Test
+    void encodeAndMatches_runOnPool_andRecordLatency() throws Exception {
+        svc = new PasswordHashingService(new BCryptPasswordEncoder(4), 2, 4, Duration.ofSeconds(5), registry);
+
+        String hash = svc.encode("Str0ng!Passw0rd");
+        assertThat(svc.matches("Str0ng!Passw0rd", hash)).isTrue();
+        assertThat(svc.matchesAsync("other", hash).get()).isFalse();
+        assertThat(registry.get("forgetpass.hashing.duration").tag("op", "encode").timer().count()).isEqualTo(1);
+        assertThat(registry.get("forgetpass.hashing.duration").tag("op", "matches").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    void rejectsImmediately_whenQueueIsFull() {
+        svc = new PasswordHashingService(blockingEncoder(), 1, 1, Duration.ofSeconds(5), registry);
+
+        svc.encodeAsync("running");
+        svc.encodeAsync("queued");
+
+        assertThatThrownBy(() -> svc.encode("rejected")).isInstanceOf(HashingUnavailableException.class);
+        assertThat(registry.get("forgetpass.hashing.rejected").counter().count()).isEqualTo(1.0);
+        assertThat(svc.queueDepth()).isEqualTo(1);
+    }
+
+    @Test
+    void blockingCall_timesOut() {
+        svc = new PasswordHashingService(blockingEncoder(), 1, 4, Duration.ofMillis(50), registry);
+
+        assertThatThrownBy(() -> svc.encode("slow")).isInstanceOf(HashingUnavailableException.class);
+        assertThat(registry.get("forgetpass.hashing.timeouts").counter().count()).isEqualTo(1.0);
+    }
+
+    private PasswordEncoder blockingEncoder() {
+        return new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "hash";
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                return false;
+            }
+        };
+    }
+}
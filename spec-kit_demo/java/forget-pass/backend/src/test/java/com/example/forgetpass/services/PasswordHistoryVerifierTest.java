@@ -0,0 +1,50 @@
+package com.example.forgetpass.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PasswordHistoryVerifierTest {
+
+    private final BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(4);
+    private PasswordHashingService hashing;
+    private PasswordHistoryVerifier verifier;
+
+    @BeforeEach
+    void setUp() {
+        hashing = new PasswordHashingService(bcrypt, 2, 16, Duration.ofSeconds(5), new SimpleMeterRegistry());
+        verifier = new PasswordHistoryVerifier(hashing);
+    }
+
+    @AfterEach
+    void tearDown() {
+        hashing.shutdown();
+    }
+
+    @Test
+    void findMatch_returnsIndexOfMatchingHash() {
+        List<String> hashes = List.of(bcrypt.encode("Current1!"), bcrypt.encode("Old1!"), bcrypt.encode("Old2!"));
+
+        assertThat(verifier.findMatch("Old2!", hashes)).hasValue(2);
+        assertThat(verifier.findMatch("Current1!", hashes)).hasValue(0);
+    }
+
+    @Test
+    void findMatch_isEmpty_whenNothingMatches_andSkipsBlankEntries() {
+        List<String> hashes = new ArrayList<>();
+        hashes.add(bcrypt.encode("Current1!"));
+        hashes.add(null);
+        hashes.add("");
+
+        assertThat(verifier.findMatch("Brand-new-1!", hashes)).isEmpty();
+        assertThat(verifier.findMatch("anything", List.of())).isEmpty();
+    }
+}
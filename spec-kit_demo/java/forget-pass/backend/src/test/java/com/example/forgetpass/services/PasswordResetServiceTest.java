@@ -11,16 +11,16 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
 import java.time.Duration;
 import java.time.Instant;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -33,16 +33,20 @@ class PasswordResetServiceTest {
     @Mock PasswordResetTokenRepository tokenRepository;
     @Mock PatientCredentialRepository credentialRepository;
     @Mock PasswordEncoder passwordEncoder;
+    @Mock PasswordHistoryVerifier passwordHistoryVerifier;
     @Mock EmailService emailService;
     @Mock AuditService auditService;
     @Mock PasswordValidationService passwordValidationService;
 
-    @InjectMocks PasswordResetService service;
+    PasswordResetService service;
 
     private Patient patient;
 
     @BeforeEach
     void setUp() {
+        service = new PasswordResetService(patientRepository, tokenRepository, credentialRepository, passwordEncoder,
+            passwordHistoryVerifier, emailService, passwordValidationService, auditService, WriteLane.direct(null),
+            TokenSigner.disabled(), LookupFilterService.disabled());
         patient = new Patient();
         patient.setEmail("jane.doe@example.com");
     }
@@ -50,19 +54,15 @@ class PasswordResetServiceTest {
     @Test
     void requestReset_invalidatesPreviousAndSendsEmail_whenPatientExists() {
         when(patientRepository.findByEmail("jane.doe@example.com")).thenReturn(Optional.of(patient));
-        List<PasswordResetToken> active = new ArrayList<>();
-        PasswordResetToken old = new PasswordResetToken();
-        old.setPatient(patient);
-        active.add(old);
-        when(tokenRepository.findByPatientAndUsedAtIsNull(patient)).thenReturn(active);
+        when(tokenRepository.invalidateActive(eq(patient), any(Instant.class))).thenReturn(3);
 
         ArgumentCaptor<PasswordResetToken> prtCaptor = ArgumentCaptor.forClass(PasswordResetToken.class);
 
         service.requestReset("jane.doe@example.com", "https://app.local");
 
-        // previous tokens invalidated
-        assertThat(old.getUsedAt()).isNotNull();
-        verify(tokenRepository).saveAll(active);
+        // previous tokens invalidated in one statement
+        verify(tokenRepository).invalidateActive(eq(patient), any(Instant.class));
+        verify(tokenRepository, never()).saveAll(any());
 
         // new token saved with 1h expiry
         verify(tokenRepository).save(prtCaptor.capture());
@@ -71,9 +71,14 @@ class PasswordResetServiceTest {
         assertThat(saved.getExpiresAt()).isAfter(Instant.now());
         assertThat(Duration.between(Instant.now(), saved.getExpiresAt()).toMinutes()).isBetween(59L, 61L);
 
-        // email dispatched
-        verify(emailService, times(1)).sendPasswordResetEmail(eq("jane.doe@example.com"), anyString());
-        verify(auditService, atLeastOnce()).log(eq("password_reset_request"), eq(patient), any(), any(), eq(true), any());
+        // email dispatched, with a selector.verifier token for the saved row
+        ArgumentCaptor<String> link = ArgumentCaptor.forClass(String.class);
+        verify(emailService, times(1)).sendPasswordResetEmail(eq("jane.doe@example.com"), link.capture());
+        String token = link.getValue().substring(link.getValue().indexOf("token=") + "token=".length());
+        assertThat(TokenUtil.selector(token)).contains(saved.getTokenId());
+        assertThat(TokenUtil.hashMatches(TokenUtil.verifier(token), saved.getTokenHash())).isTrue();
+        verify(auditService, atLeastOnce()).log(eq("password_reset_request"), eq(patient), any(), any(), eq(true),
+            eq(java.util.Map.of("invalidatedTokens", 3)));
     }
 
     @Test
@@ -97,6 +102,85 @@ class PasswordResetServiceTest {
         assertThat(service.validateToken(token)).isTrue();
     }
 
+    @Test
+    void validateToken_fetchesSelectorTokensById_andChecksTheVerifier() {
+        UUID id = UUID.randomUUID();
+        String verifier = TokenUtil.generateToken();
+        PasswordResetToken t = new PasswordResetToken();
+        t.setTokenId(id);
+        t.setTokenHash(TokenUtil.sha256(verifier));
+        t.setExpiresAt(Instant.now().plus(Duration.ofMinutes(30)));
+        when(tokenRepository.findById(id)).thenReturn(Optional.of(t));
+
+        assertThat(service.validateToken(TokenUtil.selectorToken(id, verifier))).isTrue();
+        assertThat(service.validateToken(TokenUtil.selectorToken(id, TokenUtil.generateToken()))).isFalse();
+        verify(tokenRepository, never()).findByTokenHash(any());
+    }
+
+    @Test
+    void validateToken_rejectsExpiredOrTamperedSignedTokens_withoutTheDatabase() {
+        TokenSigner signer = new TokenSigner(java.util.Map.of("k1", new byte[32]), "k1", true,
+            new io.micrometer.core.instrument.simple.SimpleMeterRegistry());
+        PasswordResetService signing = new PasswordResetService(patientRepository, tokenRepository, credentialRepository,
+            passwordEncoder, passwordHistoryVerifier, emailService, passwordValidationService, auditService, WriteLane.direct(null), signer, LookupFilterService.disabled());
+        UUID id = UUID.randomUUID();
+        String valid = signer.sign(new TokenSigner.Claims(TokenSigner.Purpose.PASSWORD_RESET, id, UUID.randomUUID(),
+            Instant.now().plus(Duration.ofMinutes(30))));
+        String expired = signer.sign(new TokenSigner.Claims(TokenSigner.Purpose.PASSWORD_RESET, id, UUID.randomUUID(),
+            Instant.now().minus(Duration.ofMinutes(1))));
+
+        assertThat(signing.validateToken(expired)).isFalse();
+        int i = valid.length() - 10;
+        String tampered = valid.substring(0, i) + (valid.charAt(i) == 'A' ? 'B' : 'A') + valid.substring(i + 1);
+        assertThat(signing.validateToken(tampered)).isFalse();
+        verifyNoInteractions(tokenRepository);
+
+        PasswordResetToken t = new PasswordResetToken();
+        t.setTokenId(id);
+        t.setTokenHash(TokenUtil.sha256(valid));
+        t.setExpiresAt(Instant.now().plus(Duration.ofMinutes(30)));
+        when(tokenRepository.findById(id)).thenReturn(Optional.of(t));
+        assertThat(signing.validateToken(valid)).isTrue();
+    }
+
+    @Test
+    void unknownEmailsAndTokenIds_areTurnedAwayByTheLookupFilter_withoutTheDatabase() {
+        LookupFilterService filter = new LookupFilterService(mock(PatientRepository.class),
+            mock(PasswordResetTokenRepository.class), mock(com.example.forgetpass.repositories.EmailVerificationTokenRepository.class),
+            mock(org.springframework.transaction.PlatformTransactionManager.class),
+            new io.micrometer.core.instrument.simple.SimpleMeterRegistry(), true, 1000, 1000, 0.01, 86_400_000);
+        filter.rotate();
+        PasswordResetService filtered = new PasswordResetService(patientRepository, tokenRepository, credentialRepository,
+            passwordEncoder, passwordHistoryVerifier, emailService, passwordValidationService, auditService, WriteLane.direct(null), TokenSigner.disabled(), filter);
+
+        filtered.requestReset("stranger@example.com", "https://app.local");
+        assertThat(filtered.validateToken(TokenUtil.selectorToken(UUID.randomUUID(), TokenUtil.generateToken()))).isFalse();
+
+        verifyNoInteractions(patientRepository, tokenRepository, emailService);
+        // Same audit entry as for an email the database does not have
+        verify(auditService).log(eq("password_reset_request"), isNull(), isNull(), isNull(), eq(true),
+            eq(java.util.Map.of("requestedEmailHash", TokenUtil.sha256("stranger@example.com"))));
+
+        UUID known = UUID.randomUUID();
+        filter.tokenAdded(known);
+        when(tokenRepository.findById(known)).thenReturn(Optional.empty());
+        assertThat(filtered.validateToken(TokenUtil.selectorToken(known, TokenUtil.generateToken()))).isFalse();
+        verify(tokenRepository).findById(known);
+    }
+
+    @Test
+    void requestReset_enforcesAtMost3Requests_perHour() {
+        when(patientRepository.findByEmail("jane.doe@example.com")).thenReturn(Optional.of(patient));
+        when(tokenRepository.countByPatientAndCreatedAtAfter(eq(patient), any(Instant.class))).thenReturn(3L);
+
+        service.requestReset("jane.doe@example.com", "https://app.local");
+
+        verify(tokenRepository, never()).save(any());
+        verifyNoInteractions(emailService);
+        verify(auditService).log(eq("password_reset_request"), eq(patient), isNull(), isNull(), eq(false),
+            eq(java.util.Map.of("reason", "rate_limited")));
+    }
+
     @Test
     void validateToken_returnsFalse_forExpiredOrUsedOrMissing() {
         String token = "expired";
@@ -186,11 +270,8 @@ class PasswordResetServiceTest {
         when(credentialRepository.findByPatient(p)).thenReturn(Optional.of(cred));
         when(passwordEncoder.encode("StrongP@ssw0rd!")).thenReturn("ENCODED_HASH");
 
-        List<PasswordResetToken> others = new ArrayList<>();
-        PasswordResetToken o1 = new PasswordResetToken(); o1.setPatient(p);
-        PasswordResetToken o2 = new PasswordResetToken(); o2.setPatient(p);
-        others.add(o1); others.add(o2);
-        when(tokenRepository.findByPatientAndUsedAtIsNull(p)).thenReturn(others);
+        when(tokenRepository.invalidateActive(eq(p), any(Instant.class))).thenReturn(2);
+        when(tokenRepository.consume(any(), any(Instant.class))).thenReturn(1);
 
         boolean ok = service.confirm(token, "StrongP@ssw0rd!");
         assertThat(ok).isTrue();
@@ -199,15 +280,66 @@ class PasswordResetServiceTest {
         assertThat(cred.getPasswordHash()).isEqualTo("ENCODED_HASH");
         verify(credentialRepository, times(1)).save(cred);
 
-        // this token and others invalidated
-        assertThat(t.getUsedAt()).isNotNull();
-        assertThat(o1.getUsedAt()).isNotNull();
-        assertThat(o2.getUsedAt()).isNotNull();
-        verify(tokenRepository, times(1)).save(t);
-        verify(tokenRepository, times(1)).saveAll(others);
+        // this token claimed by the conditional update, others invalidated
+        verify(tokenRepository, times(1)).consume(any(), any(Instant.class));
+        verify(tokenRepository, never()).save(t);
+        verify(tokenRepository, times(1)).invalidateActive(eq(p), any(Instant.class));
 
         // confirmation email
         verify(emailService, times(1)).sendPasswordChangedConfirmation("jane.doe@example.com");
         verify(auditService, atLeastOnce()).log(eq("password_reset_confirm"), eq(p), isNull(), isNull(), eq(true), any());
     }
+
+    @Test
+    void confirm_leavesCredentialAlone_whenTokenClaimedConcurrently() {
+        String token = "tok-raced";
+        String hash = TokenUtil.sha256(token);
+
+        when(passwordValidationService.meetsPolicy("StrongP@ssw0rd!")).thenReturn(true);
+
+        PasswordResetToken t = new PasswordResetToken();
+        t.setExpiresAt(Instant.now().plus(Duration.ofMinutes(10)));
+        Patient p = new Patient();
+        p.setEmail("jane.doe@example.com");
+        t.setPatient(p);
+        when(tokenRepository.findByTokenHash(hash)).thenReturn(Optional.of(t));
+        PatientCredential cred = new PatientCredential();
+        cred.setPatient(p);
+        when(credentialRepository.findByPatient(p)).thenReturn(Optional.of(cred));
+        when(passwordEncoder.encode("StrongP@ssw0rd!")).thenReturn("ENCODED_HASH");
+        // Another confirm used the token between the lookup and the update
+        when(tokenRepository.consume(any(), any(Instant.class))).thenReturn(0);
+
+        assertThat(service.confirm(token, "StrongP@ssw0rd!")).isFalse();
+        verify(credentialRepository, never()).save(any());
+        verify(emailService, never()).sendPasswordChangedConfirmation(any());
+        verify(auditService).log(eq("password_reset_confirm"), eq(p), isNull(), isNull(), eq(false),
+            eq(java.util.Map.of("reason", "token_used")));
+    }
+
+    @Test
+    void confirm_rejectsReuse_withoutEncodingNewHash() {
+        String token = "tok-reuse";
+        String hash = TokenUtil.sha256(token);
+        when(passwordValidationService.meetsPolicy("StrongP@ssw0rd!")).thenReturn(true);
+
+        PasswordResetToken t = new PasswordResetToken();
+        t.setExpiresAt(Instant.now().plus(Duration.ofMinutes(10)));
+        Patient p = new Patient();
+        t.setPatient(p);
+        when(tokenRepository.findByTokenHash(hash)).thenReturn(Optional.of(t));
+
+        PatientCredential cred = new PatientCredential();
+        cred.setPasswordHash("CURRENT");
+        cred.setPreviousPasswordHashes(List.of("OLD1", "OLD2"));
+        when(credentialRepository.findByPatient(p)).thenReturn(Optional.of(cred));
+        when(passwordHistoryVerifier.findMatch("StrongP@ssw0rd!", List.of("CURRENT", "OLD1", "OLD2")))
+                .thenReturn(OptionalInt.of(2));
+
+        assertThrows(IllegalArgumentException.class, () -> service.confirm(token, "StrongP@ssw0rd!"));
+        verify(passwordEncoder, never()).encode(any());
+        verify(auditService).log(eq("password_reset_confirm"), eq(p), isNull(), isNull(), eq(false),
+                eq(java.util.Map.of("reason", "password_reuse")));
+        assertThat(t.getUsedAt()).isNull();
+    }
 }
@@ -0,0 +1,63 @@
+package com.example.forgetpass.services;
+
+import com.example.forgetpass.repositories.PatientRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.doReturn;
+
+/**
+ * A registration that passes the email precheck but loses the insert to another one (simulated by hiding the
+ * existing patient from the precheck) must be reported as a taken email, not as a database error.
+ */
+@SpringBootTest(properties = {
+    "forgetpass.expiry.enabled=false",
+    "forgetpass.email.outbox.enabled=false"
+})
+class PatientRegistrationServiceDuplicateEmailTest {
+
+    private static final Path DB;
+
+    static {
+        try {
+            DB = Files.createTempFile("duplicate-email", ".db");
+            Files.delete(DB);
+            DB.toFile().deleteOnExit();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void dataSource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> "jdbc:sqlite:" + DB);
+    }
+
+    @Autowired private PatientRegistrationService registrationService;
+    @SpyBean private PatientRepository patientRepository;
+
+    @Test
+    void losingTheInsertReportsEmailTaken() {
+        String email = "race.register@example.com";
+        registrationService.register("First", "Winner", email, null, LocalDate.of(1990, 1, 1), "Str0ng-Pass!");
+        doReturn(Optional.empty()).when(patientRepository).findByEmail(email);
+
+        assertThatThrownBy(() -> registrationService.registerAndIssueVerification("Second", "Loser", email, null,
+                LocalDate.of(1990, 1, 1), "Str0ng-Pass!", "http://localhost"))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessage("email_already_exists");
+        assertThat(patientRepository.count()).isEqualTo(1);
+    }
+}
@@ -49,7 +49,9 @@ class PatientRegistrationServiceRegisterAndVerifyTest {
             emailValidationService,
             passwordValidationService,
             emailVerificationService,
-            auditService
+            auditService,
+            WriteLane.direct(null),
+            LookupFilterService.disabled()
         );
     }
 
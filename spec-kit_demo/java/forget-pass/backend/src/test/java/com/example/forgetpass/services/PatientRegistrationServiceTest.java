@@ -8,11 +8,11 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
 import java.time.LocalDate;
@@ -32,7 +32,10 @@ class PatientRegistrationServiceTest {
     @Mock EmailValidationService emailValidationService;
     @Mock PasswordValidationService passwordValidationService;
 
-    @InjectMocks PatientRegistrationService service;
+    @Mock EmailVerificationService emailVerificationService;
+    @Mock AuditService auditService;
+
+    PatientRegistrationService service;
 
     private final String email = "john.smith@example.com";
     private final String phone = "+1 (555) 123-4567";
@@ -41,6 +44,9 @@ class PatientRegistrationServiceTest {
     @BeforeEach
     void setup() {
         // no global stubbing; each test will stub only what it uses to avoid UnnecessaryStubbingException
+        service = new PatientRegistrationService(patientRepository, credentialRepository, passwordEncoder,
+            emailValidationService, passwordValidationService, emailVerificationService, auditService,
+            WriteLane.direct(null), LookupFilterService.disabled());
     }
 
     @Test
@@ -91,6 +97,22 @@ class PatientRegistrationServiceTest {
                 service.register("John", "Smith", email, phone, LocalDate.now().minusYears(30), strongPassword));
     }
 
+    @Test
+    void register_reportsEmailTaken_whenAnotherRegistrationWinsTheInsert() {
+        when(emailValidationService.isValidFormat(email)).thenReturn(true);
+        when(emailValidationService.isDisposable(email)).thenReturn(false);
+        when(passwordValidationService.meetsPolicy(strongPassword)).thenReturn(true);
+        when(patientRepository.findByEmail(email)).thenReturn(Optional.empty());
+        when(passwordEncoder.encode(strongPassword)).thenReturn("BC_HASH");
+        when(patientRepository.save(any(Patient.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        doThrow(new DataIntegrityViolationException("UNIQUE constraint failed: patients.email")).when(patientRepository).flush();
+
+        IllegalStateException ex = assertThrows(IllegalStateException.class, () ->
+                service.register("John", "Smith", email, phone, LocalDate.now().minusYears(30), strongPassword));
+        assertThat(ex.getMessage()).isEqualTo("email_already_exists");
+        verify(credentialRepository, never()).save(any());
+    }
+
     @Test
     void register_savesPatient_andCredential_withEncodedPassword() {
         LocalDate dob = LocalDate.now().minusYears(25);
@@ -125,4 +147,16 @@ class PatientRegistrationServiceTest {
         verify(passwordEncoder).encode(strongPassword);
         verify(patientRepository).findByEmail(email);
     }
+
+    @Test
+    void precheck_reportsTakenEmailWithoutThrowingOrHashing() {
+        when(emailValidationService.isValidFormat(anyString())).thenReturn(true);
+        when(emailValidationService.isDisposable(email)).thenReturn(false);
+        when(passwordValidationService.meetsPolicy(strongPassword)).thenReturn(true);
+        when(patientRepository.findByEmail(email)).thenReturn(Optional.of(new Patient()));
+
+        assertThat(service.precheck(email, LocalDate.now().minusYears(30), strongPassword)).isTrue();
+        assertThat(service.precheck("new@example.com", LocalDate.now().minusYears(30), strongPassword)).isFalse();
+        verifyNoInteractions(passwordEncoder);
+    }
 }
@@ -0,0 +1,93 @@
+package com.example.forgetpass.services;
+
+import com.example.forgetpass.util.MappedSlidingWindowLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RateLimitServiceTest {
+
+    @TempDir Path dir;
+
+    private final AtomicLong clock = new AtomicLong(1_000L * 86_400_000);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:sqlite:" + dir.resolve("limits.db"));
+        Flyway.configure().dataSource(dataSource).locations("classpath:db").load().migrate();
+        jdbc = new JdbcTemplate(dataSource);
+    }
+
+    private RateLimitService service(String policies) {
+        return new RateLimitService(jdbc, registry, RateLimitService.parse(policies), clock::get);
+    }
+
+    @Test
+    void limitsSurviveARestart() {
+        RateLimitService first = service("password-reset-ip=2/1h");
+        first.snapshot(); // first run: restore (nothing saved yet)
+        assertThat(first.tryAcquire(RateLimitService.PASSWORD_RESET_IP, "hash")).isTrue();
+        assertThat(first.tryAcquire(RateLimitService.PASSWORD_RESET_IP, "hash")).isTrue();
+        assertThat(first.tryAcquire(RateLimitService.PASSWORD_RESET_IP, "hash")).isFalse();
+        first.shutdown();
+        assertThat(jdbc.queryForObject("SELECT count(*) FROM rate_limit_windows", Integer.class)).isEqualTo(1);
+
+        RateLimitService second = service("password-reset-ip=2/1h");
+        second.snapshot();
+        assertThat(second.tryAcquire(RateLimitService.PASSWORD_RESET_IP, "hash")).isFalse();
+        assertThat(second.tryAcquire(RateLimitService.PASSWORD_RESET_IP, "other")).isTrue();
+        assertThat(registry.get("forgetpass.ratelimit.rejected").tag("policy", "password-reset-ip").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void snapshotsDropIdleKeys() {
+        RateLimitService svc = service("password-reset-ip=2/1h");
+        svc.snapshot();
+        svc.tryAcquire(RateLimitService.PASSWORD_RESET_IP, "hash");
+        svc.snapshot();
+        assertThat(jdbc.queryForObject("SELECT count(*) FROM rate_limit_windows", Integer.class)).isEqualTo(1);
+
+        clock.addAndGet(2 * 3_600_000);
+        svc.snapshot();
+        assertThat(jdbc.queryForObject("SELECT count(*) FROM rate_limit_windows", Integer.class)).isZero();
+        assertThat(registry.get("forgetpass.ratelimit.keys").gauge().value()).isZero();
+    }
+
+    @Test
+    void policiesLeftOutAreNotEnforced() {
+        RateLimitService svc = service("verification-resend-ip=1/24h");
+
+        assertThat(svc.tryAcquire(RateLimitService.VERIFICATION_RESEND_IP, "p")).isTrue();
+        assertThat(svc.tryAcquire(RateLimitService.VERIFICATION_RESEND_IP, "p")).isFalse();
+        for (int i = 0; i < 10; i++) assertThat(svc.tryAcquire(RateLimitService.PASSWORD_RESET_IP, "10.0.0.1")).isTrue();
+        assertThatThrownBy(() -> RateLimitService.parse("password-reset=3")).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void sharedFileIsUsedInsteadOfSnapshots() throws Exception {
+        MappedSlidingWindowLimiter shared = new MappedSlidingWindowLimiter(dir.resolve("limits.map"),
+            RateLimitService.parse("password-reset-ip=2/1h"), 64, clock::get);
+        RateLimitService first = new RateLimitService(jdbc, registry, shared);
+        RateLimitService second = new RateLimitService(jdbc, new SimpleMeterRegistry(), new MappedSlidingWindowLimiter(
+            dir.resolve("limits.map"), RateLimitService.parse("password-reset-ip=2/1h"), 64, clock::get));
+
+        assertThat(first.tryAcquire(RateLimitService.PASSWORD_RESET_IP, "hash")).isTrue();
+        assertThat(second.tryAcquire(RateLimitService.PASSWORD_RESET_IP, "hash")).isTrue();
+        assertThat(first.tryAcquire(RateLimitService.PASSWORD_RESET_IP, "hash")).isFalse();
+        first.snapshot();
+        first.shutdown();
+        assertThat(jdbc.queryForObject("SELECT count(*) FROM rate_limit_windows", Integer.class)).isZero();
+    }
+}
@@ -5,6 +5,10 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
@@ -38,7 +42,7 @@ class ReCaptchaServiceTest {
         System.setProperty("RECAPTCHA_SECRET", "s");
         ReCaptchaResponse resp = new ReCaptchaResponse();
         resp.setSuccess(false);
-        when(client.verify(anyString(), anyString())).thenReturn(resp);
+        when(client.verify(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(resp));
 
         assertThat(service.validate("t", "a")).isFalse();
     }
@@ -50,7 +54,7 @@ class ReCaptchaServiceTest {
         resp.setSuccess(true);
         resp.setAction("login");
         resp.setScore(0.1);
-        when(client.verify(anyString(), anyString())).thenReturn(resp);
+        when(client.verify(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(resp));
 
         assertThat(service.validate("token", "register")).isFalse();
     }
@@ -64,7 +68,7 @@ class ReCaptchaServiceTest {
         resp.setSuccess(true);
         resp.setAction("act");
         resp.setScore(0.85);
-        when(client.verify(anyString(), anyString())).thenReturn(resp);
+        when(client.verify(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(resp));
 
         assertThat(service.validate("t", "act")).isFalse();
 
@@ -80,4 +84,16 @@ class ReCaptchaServiceTest {
 
         assertThat(service.validate("t", "a")).isFalse();
     }
+
+    @Test
+    void validateAsync_passesSaturationThrough() {
+        System.setProperty("RECAPTCHA_SECRET", "s");
+        when(client.verify(anyString(), anyString())).thenReturn(
+            CompletableFuture.failedFuture(new ReCaptchaSaturatedException("saturated")));
+
+        assertThat(service.validateAsync("t", "a"))
+            .failsWithin(Duration.ofSeconds(1))
+            .withThrowableOfType(ExecutionException.class)
+            .withCauseInstanceOf(ReCaptchaSaturatedException.class);
+    }
 }
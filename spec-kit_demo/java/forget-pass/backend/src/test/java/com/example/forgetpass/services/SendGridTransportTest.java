@@ -0,0 +1,104 @@
+package com.example.forgetpass.services;
+
+import com.example.forgetpass.support.StubSendGridServer;
+import com.example.forgetpass.util.CircuitBreaker;
+import com.sendgrid.Method;
+import com.sendgrid.Request;
+import com.sendgrid.Response;
+import com.sendgrid.SendGrid;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SendGridTransportTest {
+
+    @Test
+    void reusesPooledConnections() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try (StubSendGridServer stub = new StubSendGridServer(0);
+             SendGridTransport transport = transport(stub, 2, 2, Duration.ofSeconds(5), registry)) {
+            SendGrid sg = transport.newClient("k");
+            for (int i = 0; i < 20; i++) {
+                assertThat(sg.api(mailSend()).getStatusCode()).isEqualTo(202);
+            }
+
+            assertThat(stub.requests()).isEqualTo(20);
+            assertThat(stub.connections()).isEqualTo(1);
+            assertThat(transport.poolStats().getAvailable()).isEqualTo(1);
+            assertThat(registry.get("forgetpass.email.transport.connections.available").gauge().value()).isEqualTo(1.0);
+        }
+    }
+
+    @Test
+    void boundsRequestsInFlight() throws Exception {
+        try (StubSendGridServer stub = new StubSendGridServer(300);
+             SendGridTransport transport = transport(stub, 4, 1, Duration.ofMillis(50), new SimpleMeterRegistry())) {
+            SendGrid sg = transport.newClient("k");
+            ExecutorService pool = Executors.newFixedThreadPool(2);
+            try {
+                CompletableFuture<Response> slow = CompletableFuture.supplyAsync(() -> call(sg), pool);
+                Thread.sleep(100);
+                assertThat(transport.inFlight()).isEqualTo(1);
+                assertThatThrownBy(() -> sg.api(mailSend())).isInstanceOf(IOException.class).hasMessageContaining("saturated");
+                assertThat(slow.join().getStatusCode()).isEqualTo(202);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    void emailService_sharesOneClientAcrossSends() throws Exception {
+        try (StubSendGridServer stub = new StubSendGridServer(0);
+             SendGridTransport transport = transport(stub, 2, 2, Duration.ofSeconds(5), new SimpleMeterRegistry())) {
+            List<SendGrid> created = new ArrayList<>();
+            EmailService svc = new EmailService(null, transport, null,
+                new CircuitBreaker("sendgrid", CircuitBreaker.Config.defaults(), new SimpleMeterRegistry()), false) {
+                @Override
+                protected SendGrid createSendGrid(String apiKey) {
+                    SendGrid sg = super.createSendGrid(apiKey);
+                    created.add(sg);
+                    return sg;
+                }
+            };
+            svc.apiKey = "k";
+            for (int i = 0; i < 5; i++) {
+                assertThat(svc.deliver("a@b.c", "s", "body", 1)).isNull();
+            }
+            assertThat(created).hasSize(1);
+            assertThat(stub.requests()).isEqualTo(5);
+        }
+    }
+
+    private static SendGridTransport transport(StubSendGridServer stub, int connections, int inFlight,
+                                               Duration acquireTimeout, SimpleMeterRegistry registry) {
+        return new SendGridTransport(stub.host(), true, connections, inFlight, Duration.ofSeconds(2),
+            Duration.ofSeconds(5), Duration.ofSeconds(30), acquireTimeout, registry);
+    }
+
+    private static Response call(SendGrid sg) {
+        try {
+            return sg.api(mailSend());
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static Request mailSend() {
+        Request request = new Request();
+        request.setMethod(Method.POST);
+        request.setEndpoint("mail/send");
+        request.setBody("{}");
+        return request;
+    }
+}
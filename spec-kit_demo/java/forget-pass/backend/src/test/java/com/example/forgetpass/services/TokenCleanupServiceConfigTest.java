@@ -1,22 +1,121 @@
 package com.example.forgetpass.services;
 
+import com.example.forgetpass.domain.EmailVerificationToken;
+import com.example.forgetpass.domain.PasswordResetToken;
+import com.example.forgetpass.domain.Patient;
+import com.example.forgetpass.repositories.EmailVerificationTokenRepository;
+import com.example.forgetpass.repositories.PasswordResetTokenRepository;
+import com.example.forgetpass.repositories.PatientRepository;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.TestPropertySource;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.UUID;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 @SpringBootTest
-@TestPropertySource(properties = "forgetpass.cleanup.cron=0 5 4 * * *")
+// The expiry engine ticks once at startup and then stays out of the way of these tests
+@TestPropertySource(properties = {"forgetpass.cleanup.cron=0 5 4 * * *", "forgetpass.cleanup.chunk-size=2",
+    "forgetpass.expiry.tick-ms=3600000"})
 public class TokenCleanupServiceConfigTest {
 
     @Autowired
     private TokenCleanupService tokenCleanupService;
 
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private PasswordResetTokenRepository passwordResetTokenRepository;
+
+    @Autowired
+    private EmailVerificationTokenRepository emailVerificationTokenRepository;
+
+    @Autowired
+    private TokenExpiryService tokenExpiryService;
+
+    @BeforeEach
+    void waitForStartupExpiryTick() {
+        tokenExpiryService.expireDue();
+    }
+
     @Test
     void serviceShouldBindConfiguredCron() {
         assertThat(tokenCleanupService).isNotNull();
         assertThat(tokenCleanupService.getCleanupCron()).isEqualTo("0 5 4 * * *");
     }
+
+    @Test
+    void cleanupShouldDeleteOnlyUsedOrExpiredRows() {
+        Patient patient = patientRepository.save(patient());
+        Instant now = Instant.now();
+
+        PasswordResetToken live = passwordResetTokenRepository.save(resetToken(patient, now.plusSeconds(3600), null));
+        for (int i = 0; i < 3; i++) passwordResetTokenRepository.save(resetToken(patient, now.minusSeconds(60), null));
+        passwordResetTokenRepository.save(resetToken(patient, now.plusSeconds(3600), now.minusSeconds(10)));
+        EmailVerificationToken liveEvt = emailVerificationTokenRepository.save(verificationToken(patient, now.plusSeconds(3600)));
+        emailVerificationTokenRepository.save(verificationToken(patient, now.minusSeconds(100)));
+
+        try {
+            TokenCleanupService.Result result = tokenCleanupService.cleanup(now);
+
+            assertThat(result.passwordResetTokens()).isEqualTo(4);
+            assertThat(result.emailVerificationTokens()).isEqualTo(1);
+            assertThat(passwordResetTokenRepository.findByPatient(patient))
+                .extracting(PasswordResetToken::getTokenId).containsExactly(live.getTokenId());
+            assertThat(emailVerificationTokenRepository.findByPatient(patient))
+                .extracting(EmailVerificationToken::getTokenId).containsExactly(liveEvt.getTokenId());
+        } finally {
+            passwordResetTokenRepository.deleteAll(passwordResetTokenRepository.findByPatient(patient));
+            emailVerificationTokenRepository.deleteAll(emailVerificationTokenRepository.findByPatient(patient));
+            patientRepository.delete(patient);
+        }
+    }
+
+    @Test
+    void insertedTokensShouldBeIndexedForExpiry() {
+        Patient patient = patientRepository.save(patient());
+        int before = tokenExpiryService.tracked();
+        try {
+            passwordResetTokenRepository.save(resetToken(patient, Instant.now().plusSeconds(3600), null));
+            emailVerificationTokenRepository.save(verificationToken(patient, Instant.now().plusSeconds(3600)));
+
+            assertThat(tokenExpiryService.tracked()).isEqualTo(before + 2);
+        } finally {
+            passwordResetTokenRepository.deleteAll(passwordResetTokenRepository.findByPatient(patient));
+            emailVerificationTokenRepository.deleteAll(emailVerificationTokenRepository.findByPatient(patient));
+            patientRepository.delete(patient);
+        }
+    }
+
+    private static Patient patient() {
+        Patient patient = new Patient();
+        patient.setFirstName("Cleanup");
+        patient.setLastName("Test");
+        patient.setEmail("cleanup-" + UUID.randomUUID() + "@example.com");
+        patient.setDateOfBirth(LocalDate.of(1990, 1, 1));
+        return patient;
+    }
+
+    private static PasswordResetToken resetToken(Patient patient, Instant expiresAt, Instant usedAt) {
+        PasswordResetToken t = new PasswordResetToken();
+        t.setPatient(patient);
+        t.setTokenHash(UUID.randomUUID().toString());
+        t.setExpiresAt(expiresAt);
+        t.setUsedAt(usedAt);
+        return t;
+    }
+
+    private static EmailVerificationToken verificationToken(Patient patient, Instant expiresAt) {
+        EmailVerificationToken t = new EmailVerificationToken();
+        t.setPatient(patient);
+        t.setTokenHash(UUID.randomUUID().toString());
+        t.setExpiresAt(expiresAt);
+        return t;
+    }
 }
@@ -1,49 +1,70 @@
 package com.example.forgetpass.services;
 
-import com.example.forgetpass.domain.EmailVerificationToken;
-import com.example.forgetpass.domain.PasswordResetToken;
 import com.example.forgetpass.repositories.EmailVerificationTokenRepository;
 import com.example.forgetpass.repositories.PasswordResetTokenRepository;
 import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
 
+import java.time.Duration;
 import java.time.Instant;
-import java.util.List;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.*;
 
 class TokenCleanupServiceTest {
 
-    @Test
-    void cleanup_removesExpiredAndUsedTokens() {
-        PasswordResetTokenRepository prtRepo = mock(PasswordResetTokenRepository.class);
-        EmailVerificationTokenRepository evtRepo = mock(EmailVerificationTokenRepository.class);
+    private final PasswordResetTokenRepository prtRepo = mock(PasswordResetTokenRepository.class);
+    private final EmailVerificationTokenRepository evtRepo = mock(EmailVerificationTokenRepository.class);
+    private final PlatformTransactionManager txManager = mock(PlatformTransactionManager.class);
 
-        PasswordResetToken good = new PasswordResetToken();
-        good.setExpiresAt(Instant.now().plusSeconds(3600));
+    private TokenCleanupService service(int chunkSize) {
+        when(txManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        return new TokenCleanupService(prtRepo, evtRepo, WriteLane.direct(txManager), "0 0 3 * * *", chunkSize, Duration.ZERO);
+    }
 
-        PasswordResetToken expired = new PasswordResetToken();
-        expired.setExpiresAt(Instant.now().minusSeconds(60));
+    @Test
+    void cleanup_deletesInChunksUntilAShortChunk() {
+        Instant now = Instant.now();
+        when(prtRepo.deleteUsedOrExpired(now, 100)).thenReturn(100, 100, 42);
+        when(evtRepo.deleteExpired(now, 100)).thenReturn(7);
 
-        PasswordResetToken used = new PasswordResetToken();
-        used.setExpiresAt(Instant.now().plusSeconds(3600));
-        used.setUsedAt(Instant.now().minusSeconds(10));
+        TokenCleanupService.Result result = service(100).cleanup(now);
 
-        when(prtRepo.findAll()).thenReturn(List.of(good, expired, used));
+        assertThat(result.passwordResetTokens()).isEqualTo(242);
+        assertThat(result.emailVerificationTokens()).isEqualTo(7);
+        assertThat(result.total()).isEqualTo(249);
+        verify(prtRepo, times(3)).deleteUsedOrExpired(now, 100);
+        verify(evtRepo, times(1)).deleteExpired(now, 100);
+        // One transaction per chunk
+        verify(txManager, times(4)).commit(any());
+    }
 
-        EmailVerificationToken evtGood = new EmailVerificationToken();
-        evtGood.setExpiresAt(Instant.now().plusSeconds(3600));
-        EmailVerificationToken evtExpired = new EmailVerificationToken();
-        evtExpired.setExpiresAt(Instant.now().minusSeconds(100));
-        when(evtRepo.findAll()).thenReturn(List.of(evtGood, evtExpired));
+    @Test
+    void cleanup_neverLoadsTokens() {
+        service(5000).cleanupExpiredAndUsedTokens();
 
-        TokenCleanupService svc = new TokenCleanupService(prtRepo, evtRepo, "0 0 3 * * *");
-        svc.cleanupExpiredAndUsedTokens();
+        verify(prtRepo).deleteUsedOrExpired(any(), eq(5000));
+        verify(evtRepo).deleteExpired(any(), eq(5000));
+        verify(prtRepo, never()).findAll();
+        verify(evtRepo, never()).findAll();
+    }
 
-        verify(prtRepo, times(1)).delete(expired);
-        verify(prtRepo, times(1)).delete(used);
-        verify(prtRepo, times(0)).delete(good);
+    @Test
+    void cleanup_stopsWhenInterruptedBetweenChunks() {
+        when(prtRepo.deleteUsedOrExpired(any(), anyInt())).thenReturn(10);
+        TokenCleanupService svc = new TokenCleanupService(prtRepo, evtRepo, WriteLane.direct(txManager), "0 0 3 * * *", 10, Duration.ofSeconds(5));
+        when(txManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
 
-        verify(evtRepo, times(1)).delete(evtExpired);
-        verify(evtRepo, times(0)).delete(evtGood);
+        Thread.currentThread().interrupt();
+        try {
+            TokenCleanupService.Result result = svc.cleanup(Instant.now());
+            assertThat(result.passwordResetTokens()).isEqualTo(10);
+        } finally {
+            Thread.interrupted();
+        }
+        verify(prtRepo, times(1)).deleteUsedOrExpired(any(), anyInt());
     }
 }
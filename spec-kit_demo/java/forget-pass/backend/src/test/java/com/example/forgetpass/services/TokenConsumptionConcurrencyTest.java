@@ -0,0 +1,151 @@
+package com.example.forgetpass.services;
+
+import com.example.forgetpass.domain.EmailVerificationToken;
+import com.example.forgetpass.domain.PasswordResetToken;
+import com.example.forgetpass.domain.Patient;
+import com.example.forgetpass.domain.PatientCredential;
+import com.example.forgetpass.repositories.EmailVerificationTokenRepository;
+import com.example.forgetpass.repositories.PasswordResetTokenRepository;
+import com.example.forgetpass.repositories.PatientCredentialRepository;
+import com.example.forgetpass.repositories.PatientRepository;
+import com.example.forgetpass.util.TokenUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Hammers a single token from {@link #THREADS} threads at once; the conditional update must let
+ * exactly one of them through.
+ */
+@SpringBootTest(properties = {
+    "app.security.hashing.queue-capacity=256",
+    "forgetpass.expiry.enabled=false",
+    "forgetpass.email.outbox.enabled=false"
+})
+class TokenConsumptionConcurrencyTest {
+
+    private static final int THREADS = 100;
+    private static final Path DB;
+
+    static {
+        try {
+            DB = Files.createTempFile("token-consumption", ".db");
+            Files.delete(DB);
+            DB.toFile().deleteOnExit();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void dataSource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> "jdbc:sqlite:" + DB);
+    }
+
+    @Autowired private PatientRegistrationService registrationService;
+    @Autowired private PasswordResetService passwordResetService;
+    @Autowired private EmailVerificationService emailVerificationService;
+    @Autowired private PatientRepository patientRepository;
+    @Autowired private PatientCredentialRepository credentialRepository;
+    @Autowired private PasswordResetTokenRepository resetTokenRepository;
+    @Autowired private EmailVerificationTokenRepository verificationTokenRepository;
+    @Autowired private PasswordEncoder passwordEncoder;
+
+    @Test
+    void resetTokenIsConsumedExactlyOnce() throws Exception {
+        Patient patient = registrationService.register("Race", "Reset", "race.reset@example.com", null,
+            LocalDate.of(1990, 1, 1), "Str0ng-Pass!");
+        String verifier = TokenUtil.generateToken();
+        PasswordResetToken prt = new PasswordResetToken();
+        prt.setTokenId(UUID.randomUUID());
+        prt.setPatient(patient);
+        prt.setTokenHash(TokenUtil.sha256(verifier));
+        prt.setExpiresAt(Instant.now().plus(Duration.ofHours(1)));
+        resetTokenRepository.save(prt);
+        String token = TokenUtil.selectorToken(prt.getTokenId(), verifier);
+
+        // A different password per thread, so a late caller that sees the winner's password is not refused as reuse
+        AtomicInteger attempt = new AtomicInteger();
+        List<Boolean> outcomes = hammer(() -> passwordResetService.confirm(token, "N3w-Str0ng-Pass!" + attempt.incrementAndGet()));
+
+        assertThat(outcomes).containsOnlyOnce(true).hasSize(THREADS);
+        assertThat(resetTokenRepository.findById(prt.getTokenId()).orElseThrow().getUsedAt()).isNotNull();
+        PatientCredential credential = credentialRepository.findByPatient(patient).orElseThrow();
+        assertThat(passwordEncoder.matches("Str0ng-Pass!", credential.getPasswordHash())).isFalse();
+        assertThat(credential.getPreviousPasswordHashes()).hasSize(1);
+    }
+
+    // Tokens issued before the selector.verifier format are still looked up by hash
+    @Test
+    void verificationTokenIsConsumedExactlyOnce() throws Exception {
+        Patient patient = registrationService.register("Race", "Verify", "race.verify@example.com", null,
+            LocalDate.of(1990, 1, 1), "Str0ng-Pass!");
+        String token = TokenUtil.generateToken();
+        EmailVerificationToken evt = new EmailVerificationToken();
+        evt.setPatient(patient);
+        evt.setTokenHash(TokenUtil.sha256(token));
+        evt.setExpiresAt(Instant.now().plus(Duration.ofHours(24)));
+        verificationTokenRepository.save(evt);
+
+        List<Boolean> outcomes = hammer(() -> emailVerificationService.verify(token));
+
+        assertThat(outcomes).containsOnlyOnce(true).hasSize(THREADS);
+        assertThat(patientRepository.findById(patient.getPatientId()).orElseThrow().getAccountStatus()).isEqualTo("active");
+    }
+
+    @Test
+    void expiredTokenIsNeverConsumed() throws Exception {
+        Patient patient = registrationService.register("Race", "Expired", "race.expired@example.com", null,
+            LocalDate.of(1990, 1, 1), "Str0ng-Pass!");
+        String token = TokenUtil.generateToken();
+        EmailVerificationToken evt = new EmailVerificationToken();
+        evt.setPatient(patient);
+        evt.setTokenHash(TokenUtil.sha256(token));
+        evt.setExpiresAt(Instant.now().minus(Duration.ofMinutes(1)));
+        verificationTokenRepository.save(evt);
+
+        assertThat(hammer(() -> emailVerificationService.verify(token))).containsOnly(false);
+        assertThat(verificationTokenRepository.findByTokenHash(TokenUtil.sha256(token)).orElseThrow().getVerifiedAt()).isNull();
+    }
+
+    private static List<Boolean> hammer(Callable<Boolean> attempt) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return attempt.call();
+                }));
+            }
+            start.countDown();
+            List<Boolean> outcomes = new ArrayList<>();
+            for (Future<Boolean> f : futures) outcomes.add(f.get());
+            return outcomes;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.forgetpass.services;
+
+import com.example.forgetpass.repositories.EmailVerificationTokenRepository;
+import com.example.forgetpass.repositories.PasswordResetTokenRepository;
+import com.example.forgetpass.repositories.TokenExpiry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.example.forgetpass.services.TokenExpiryService.TokenTable.EMAIL_VERIFICATION;
+import static com.example.forgetpass.services.TokenExpiryService.TokenTable.PASSWORD_RESET;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class TokenExpiryServiceTest {
+
+    private final PasswordResetTokenRepository prtRepo = mock(PasswordResetTokenRepository.class);
+    private final EmailVerificationTokenRepository evtRepo = mock(EmailVerificationTokenRepository.class);
+    private final PlatformTransactionManager txManager = mock(PlatformTransactionManager.class);
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    @BeforeEach
+    void setUp() {
+        when(txManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(prtRepo.deleteExpiredByIds(anyCollection(), any())).thenAnswer(inv -> ((Collection<?>) inv.getArgument(0)).size());
+        when(evtRepo.deleteExpiredByIds(anyCollection(), any())).thenAnswer(inv -> ((Collection<?>) inv.getArgument(0)).size());
+    }
+
+    private TokenExpiryService service(int sliceSize, int maxDeletesPerSecond, int maxTracked) {
+        return new TokenExpiryService(prtRepo, evtRepo, WriteLane.direct(txManager), new SimpleMeterRegistry(),
+            true, 1000, 60, sliceSize, maxDeletesPerSecond, maxTracked, clock::get);
+    }
+
+    private Instant in(long millis) {
+        return Instant.ofEpochMilli(clock.get() + millis);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void deletesTrackedTokensOnlyOnceTheyExpire() {
+        TokenExpiryService svc = service(100, 500, 1000);
+        UUID soon = UUID.randomUUID();
+        UUID later = UUID.randomUUID();
+        UUID evt = UUID.randomUUID();
+        svc.track(PASSWORD_RESET, soon, in(1_500));
+        svc.track(PASSWORD_RESET, later, in(3 * 3_600_000));
+        svc.track(EMAIL_VERIFICATION, evt, in(2_500));
+
+        assertThat(svc.expireDue()).isZero(); // first tick seeds and sweeps the (empty) backlog
+        verify(prtRepo, never()).deleteExpiredByIds(anyCollection(), any());
+
+        clock.addAndGet(3_000);
+        assertThat(svc.expireDue()).isEqualTo(2);
+
+        ArgumentCaptor<Collection<UUID>> ids = ArgumentCaptor.forClass(Collection.class);
+        verify(prtRepo).deleteExpiredByIds(ids.capture(), any());
+        assertThat(ids.getValue()).containsExactly(soon);
+        verify(evtRepo).deleteExpiredByIds(ids.capture(), any());
+        assertThat(ids.getValue()).containsExactly(evt);
+        assertThat(svc.tracked()).isEqualTo(1);
+
+        clock.addAndGet(3 * 3_600_000);
+        assertThat(svc.expireDue()).isEqualTo(1);
+        assertThat(svc.tracked()).isZero();
+    }
+
+    @Test
+    void respectsTheDeleteBudgetAndCarriesOverTheRest() {
+        TokenExpiryService svc = service(10, 25, 1000); // 25 per 1s tick, 10 per transaction
+        svc.expireDue();
+        for (int i = 0; i < 60; i++) svc.track(PASSWORD_RESET, UUID.randomUUID(), in(500));
+
+        clock.addAndGet(1_000);
+        assertThat(svc.expireDue()).isEqualTo(25);
+        assertThat(svc.pendingDeletes()).isEqualTo(35);
+        verify(prtRepo, times(3)).deleteExpiredByIds(anyCollection(), any());
+
+        clock.addAndGet(1_000);
+        assertThat(svc.expireDue()).isEqualTo(25);
+        clock.addAndGet(1_000);
+        assertThat(svc.expireDue()).isEqualTo(10);
+        assertThat(svc.pendingDeletes()).isZero();
+    }
+
+    @Test
+    void seedsFromTheDatabaseInKeysetPages() {
+        List<TokenExpiry> page1 = new ArrayList<>();
+        for (int i = 0; i < 10; i++) page1.add(expiry(UUID.randomUUID(), in(60_000)));
+        List<TokenExpiry> page2 = List.of(expiry(UUID.randomUUID(), in(60_000)));
+        UUID lastOfPage1 = page1.get(9).getTokenId();
+        when(prtRepo.findUnexpiredAfter(any(), eq(new UUID(0, 0)), any())).thenReturn(page1);
+        when(prtRepo.findUnexpiredAfter(any(), eq(lastOfPage1), any())).thenReturn(page2);
+        when(evtRepo.findUnexpiredAfter(any(), any(), any())).thenReturn(List.of());
+
+        TokenExpiryService svc = service(1, 500, 1000); // pages of 10
+        svc.expireDue();
+
+        assertThat(svc.tracked()).isEqualTo(11);
+    }
+
+    @Test
+    void sweepsUntrackedBacklogUntilATableComesUpShort() {
+        when(prtRepo.deleteUsedOrExpired(any(), anyInt())).thenReturn(50, 50, 3);
+        when(evtRepo.deleteExpired(any(), anyInt())).thenReturn(0);
+        TokenExpiryService svc = service(50, 100, 1000);
+
+        assertThat(svc.expireDue()).isEqualTo(50);
+        assertThat(svc.expireDue()).isEqualTo(50);
+        assertThat(svc.expireDue()).isEqualTo(3);
+        assertThat(svc.expireDue()).isZero();
+        verify(prtRepo, times(3)).deleteUsedOrExpired(any(), eq(50));
+    }
+
+    @Test
+    void stopsTrackingAtCapacityAndFallsBackToTheSweep() {
+        when(prtRepo.deleteUsedOrExpired(any(), anyInt())).thenReturn(0);
+        TokenExpiryService svc = service(100, 500, 2);
+        svc.expireDue();
+        verify(prtRepo, times(1)).deleteUsedOrExpired(any(), anyInt());
+
+        for (int i = 0; i < 3; i++) svc.track(PASSWORD_RESET, UUID.randomUUID(), in(60_000));
+        assertThat(svc.tracked()).isEqualTo(2);
+
+        svc.expireDue();
+        verify(prtRepo, times(2)).deleteUsedOrExpired(any(), anyInt());
+    }
+
+    private static TokenExpiry expiry(UUID id, Instant expiresAt) {
+        return new TokenExpiry() {
+            public UUID getTokenId() { return id; }
+            public Instant getExpiresAt() { return expiresAt; }
+        };
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.forgetpass.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.example.forgetpass.services.TokenSigner.Purpose.EMAIL_VERIFICATION;
+import static com.example.forgetpass.services.TokenSigner.Purpose.PASSWORD_RESET;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TokenSignerTest {
+
+    private static final byte[] OLD_KEY = key(1);
+    private static final byte[] NEW_KEY = key(2);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+    private final TokenSigner.Claims claims =
+        new TokenSigner.Claims(PASSWORD_RESET, UUID.randomUUID(), UUID.randomUUID(), now.plus(Duration.ofHours(1)));
+
+    @Test
+    void signedClaimsVerify() {
+        TokenSigner signer = signer(Map.of("k1", OLD_KEY), "k1");
+
+        String token = signer.sign(claims);
+
+        assertThat(TokenSigner.isSigned(token)).isTrue();
+        assertThat(signer.verify(token, PASSWORD_RESET, now)).contains(claims);
+    }
+
+    @Test
+    void expiredTamperedAndMisusedTokensAreRejected() {
+        TokenSigner signer = signer(Map.of("k1", OLD_KEY), "k1");
+        String token = signer.sign(claims);
+        String claimsPart = token.split("\\.")[2];
+        char flipped = claimsPart.charAt(5) == 'A' ? 'B' : 'A';
+        String tampered = token.replace(claimsPart, claimsPart.substring(0, 5) + flipped + claimsPart.substring(6));
+
+        assertThat(signer.verify(token, PASSWORD_RESET, claims.expiresAt())).isEmpty();
+        assertThat(signer.verify(tampered, PASSWORD_RESET, now)).isEmpty();
+        assertThat(signer.verify(token, EMAIL_VERIFICATION, now)).isEmpty();
+        assertThat(signer.verify(token + "x", PASSWORD_RESET, now)).isEmpty();
+        assertThat(signer.verify("t1.k1", PASSWORD_RESET, now)).isEmpty();
+        assertThat(signer.verify("t1.k1.!!.!!", PASSWORD_RESET, now)).isEmpty();
+
+        assertThat(rejected("expired")).isEqualTo(1);
+        assertThat(rejected("bad_signature")).isEqualTo(2);
+        assertThat(rejected("wrong_purpose")).isEqualTo(1);
+        assertThat(rejected("malformed")).isEqualTo(2);
+    }
+
+    @Test
+    void rotatedOutKeysStillVerifyUntilRemoved() {
+        String oldToken = signer(Map.of("k1", OLD_KEY), "k1").sign(claims);
+
+        Map<String, byte[]> both = new LinkedHashMap<>();
+        both.put("k1", OLD_KEY);
+        both.put("k2", NEW_KEY);
+        TokenSigner rotated = signer(both, "k2");
+        String newToken = rotated.sign(claims);
+
+        assertThat(newToken).startsWith("t1.k2.");
+        assertThat(rotated.verify(oldToken, PASSWORD_RESET, now)).contains(claims);
+        assertThat(rotated.verify(newToken, PASSWORD_RESET, now)).contains(claims);
+
+        TokenSigner retired = signer(Map.of("k2", NEW_KEY), "k2");
+        assertThat(retired.verify(oldToken, PASSWORD_RESET, now)).isEmpty();
+        assertThat(rejected("unknown_key")).isEqualTo(1);
+    }
+
+    @Test
+    void keyRingIsValidated() {
+        assertThatThrownBy(() -> signer(Map.of("k1", new byte[16]), "k1")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> signer(Map.of("k.1", OLD_KEY), "k.1")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> signer(Map.of("k1", OLD_KEY), "k2")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void disabledSignerRejectsEverySignedToken() {
+        String token = signer(Map.of("k1", OLD_KEY), "k1").sign(claims);
+
+        assertThat(TokenSigner.disabled().issuesSignedTokens()).isFalse();
+        assertThat(TokenSigner.disabled().verify(token, PASSWORD_RESET, now)).isEmpty();
+    }
+
+    private TokenSigner signer(Map<String, byte[]> keys, String active) {
+        return new TokenSigner(keys, active, true, registry);
+    }
+
+    private double rejected(String reason) {
+        return registry.get("forgetpass.tokens.signed.rejected").tag("reason", reason).counter().count();
+    }
+
+    private static byte[] key(int fill) {
+        byte[] key = new byte[32];
+        Arrays.fill(key, (byte) fill);
+        return key;
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.forgetpass.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class WriteLaneTest {
+
+    private final PlatformTransactionManager txManager = mock(PlatformTransactionManager.class);
+    private final List<SimpleTransactionStatus> transactions = new CopyOnWriteArrayList<>();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ExecutorService callers = Executors.newFixedThreadPool(8);
+    private WriteLane lane;
+
+    private WriteLane lane(int maxBatch) {
+        when(txManager.getTransaction(any())).thenAnswer(inv -> {
+            SimpleTransactionStatus status = new SimpleTransactionStatus();
+            transactions.add(status);
+            return status;
+        });
+        lane = new WriteLane(txManager, null, maxBatch, 100, registry);
+        return lane;
+    }
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+        if (lane != null) lane.shutdown();
+    }
+
+    @Test
+    void queuedUnitsShareOneCommit() throws Exception {
+        WriteLane lane = lane(64);
+        CountDownLatch writerBusy = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> first = callers.submit(() -> lane.execute(() -> {
+            writerBusy.countDown();
+            await(release);
+            return "first";
+        }));
+        assertThat(writerBusy.await(5, TimeUnit.SECONDS)).isTrue();
+
+        List<Future<Integer>> queued = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            int n = i;
+            queued.add(callers.submit(() -> lane.execute(() -> n)));
+        }
+        while (lane.queued() < 7) Thread.sleep(5);
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("first");
+        for (int i = 0; i < 7; i++) assertThat(queued.get(i).get(5, TimeUnit.SECONDS)).isEqualTo(i);
+        verify(txManager, times(2)).commit(any());
+        assertThat(registry.get("forgetpass.write-lane.batch.size").summary().max()).isEqualTo(7);
+    }
+
+    @Test
+    void failingUnitFailsAloneAndTheRestAreCommittedWithoutIt() throws Exception {
+        WriteLane lane = lane(64);
+        CountDownLatch writerBusy = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        callers.submit(() -> lane.execute(() -> {
+            writerBusy.countDown();
+            await(release);
+            return null;
+        }));
+        assertThat(writerBusy.await(5, TimeUnit.SECONDS)).isTrue();
+
+        AtomicInteger okRuns = new AtomicInteger();
+        Future<String> ok = callers.submit(() -> lane.execute(() -> {
+            okRuns.incrementAndGet();
+            return "ok";
+        }));
+        while (lane.queued() < 1) Thread.sleep(5);
+        Future<Object> bad = callers.submit(() -> lane.execute(() -> {
+            throw new IllegalStateException("email_already_exists");
+        }));
+        while (lane.queued() < 2) Thread.sleep(5);
+        release.countDown();
+
+        assertThat(ok.get(5, TimeUnit.SECONDS)).isEqualTo("ok");
+        assertThatThrownBy(() -> bad.get(5, TimeUnit.SECONDS))
+            .hasCauseInstanceOf(IllegalStateException.class)
+            .hasRootCauseMessage("email_already_exists");
+        // The first attempt at the batch was rolled back, so the good unit ran again on its own
+        assertThat(okRuns.get()).isEqualTo(2);
+        assertThat(transactions).hasSize(3);
+        assertThat(transactions.get(1).isRollbackOnly()).isTrue();
+        assertThat(transactions.get(2).isRollbackOnly()).isFalse();
+        assertThat(registry.get("forgetpass.write-lane.reruns").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void workSubmittedFromTheWriterRunsInline() {
+        WriteLane lane = lane(64);
+        AtomicReference<String> innerThread = new AtomicReference<>();
+        String outerThread = lane.execute(() -> {
+            lane.executeWithoutResult(() -> innerThread.set(Thread.currentThread().getName()));
+            return Thread.currentThread().getName();
+        });
+
+        assertThat(outerThread).isEqualTo("sqlite-writer");
+        assertThat(innerThread.get()).isEqualTo("sqlite-writer");
+        verify(txManager, times(1)).commit(any());
+    }
+
+    @Test
+    void directLaneRunsOnTheCallerInItsOwnTransaction() {
+        when(txManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        WriteLane direct = WriteLane.direct(txManager);
+
+        String thread = direct.execute(() -> Thread.currentThread().getName());
+
+        assertThat(thread).isEqualTo(Thread.currentThread().getName());
+        verify(txManager).commit(any());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.forgetpass.support;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for the reCAPTCHA siteverify endpoint: answers POST /recaptcha/api/siteverify with the
+ * configured status and JSON body after an optional delay. Any of them can be changed while running.
+ */
+public class StubReCaptchaServer implements AutoCloseable {
+    public static final String PASSING = "{\"success\":true,\"score\":0.9,\"action\":\"register\","
+        + "\"challenge_ts\":\"2024-01-01T00:00:00Z\",\"hostname\":\"localhost\"}";
+
+    static {
+        // Otherwise the response headers and body go out as two segments and every exchange waits out a delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final List<String> bodies = new CopyOnWriteArrayList<>();
+    private volatile int status = 200;
+    private volatile String response = PASSING;
+    private volatile long delayMillis;
+
+    public StubReCaptchaServer(long delayMillis) throws IOException {
+        this.delayMillis = delayMillis;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/recaptcha/api/siteverify", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                bodies.add(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            requests.incrementAndGet();
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            long delay = this.delayMillis;
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byte[] out = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, out.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(out);
+            }
+        });
+        server.start();
+    }
+
+    public void respondWith(int status, String body) {
+        this.status = status;
+        this.response = body;
+    }
+
+    public void delay(long millis) {
+        this.delayMillis = millis;
+    }
+
+    public URI verifyUrl() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/recaptcha/api/siteverify");
+    }
+
+    public int requests() {
+        return requests.get();
+    }
+
+    /** Request bodies received, in order. */
+    public List<String> bodies() {
+        return bodies;
+    }
+
+    /** Distinct client ports seen, i.e. TCP connections opened against the stub. */
+    public int connections() {
+        return clientPorts.size();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.forgetpass.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BloomFilterTest {
+
+    @Test
+    void neverLosesAnEntry() {
+        BloomFilter filter = new BloomFilter(50_000, 0.01);
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            UUID id = UUID.randomUUID();
+            ids.add(id);
+            filter.put(id);
+            filter.put("patient" + i + "@example.com");
+        }
+
+        assertThat(ids).allMatch(filter::mightContain);
+        for (int i = 0; i < 50_000; i++) {
+            assertThat(filter.mightContain("patient" + i + "@example.com")).isTrue();
+        }
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTheTargetAtCapacity() {
+        BloomFilter uuids = new BloomFilter(100_000, 0.01);
+        BloomFilter emails = new BloomFilter(100_000, 0.01);
+        for (int i = 0; i < 100_000; i++) {
+            uuids.put(UUID.randomUUID());
+            emails.put("patient" + i + "@example.com");
+        }
+
+        int uuidHits = 0;
+        int emailHits = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (uuids.mightContain(UUID.randomUUID())) uuidHits++;
+            if (emails.mightContain("stranger" + i + "@example.com")) emailHits++;
+        }
+        assertThat(uuidHits / 100_000.0).isLessThan(0.015);
+        assertThat(emailHits / 100_000.0).isLessThan(0.015);
+        assertThat(uuids.expectedFpp()).isBetween(0.005, 0.015);
+    }
+
+    @Test
+    void isSizedFromExpectedEntriesAndRate() {
+        // -ln(0.01) / ln(2)^2 = 9.59 bits per entry, 7 hashes
+        BloomFilter filter = new BloomFilter(1_000_000, 0.01);
+        assertThat(filter.sizeInBytes()).isBetween(1_190_000L, 1_210_000L);
+        assertThat(filter.hashCount()).isEqualTo(7);
+        assertThat(filter.expectedFpp()).isZero();
+
+        assertThatThrownBy(() -> new BloomFilter(0, 0.01)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new BloomFilter(10, 1.0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void seedsChangeWhichKeysCollide() {
+        BloomFilter a = new BloomFilter(100, 0.01, 1);
+        BloomFilter b = new BloomFilter(100, 0.01, 2);
+        for (int i = 0; i < 100; i++) {
+            a.put("patient" + i + "@example.com");
+            b.put("patient" + i + "@example.com");
+        }
+
+        List<String> collideInA = new ArrayList<>();
+        for (int i = 0; collideInA.size() < 20; i++) {
+            if (a.mightContain("stranger" + i + "@example.com")) collideInA.add("stranger" + i + "@example.com");
+        }
+        assertThat(collideInA.stream().filter(b::mightContain).count()).isLessThan(5);
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.forgetpass.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    private static final Duration FAST = Duration.ofMillis(10);
+    private static final Duration SLOW = Duration.ofSeconds(2);
+
+    private final AtomicLong clock = new AtomicLong();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final CircuitBreaker breaker = new CircuitBreaker("test",
+        new CircuitBreaker.Config(4, 4, 0.5, Duration.ofSeconds(1), 0.75, Duration.ofSeconds(30), 2), registry, clock::get);
+
+    @Test
+    void opensOnFailureRate_onlyAfterMinimumCalls() {
+        call(true, FAST);
+        call(false, FAST);
+        call(false, FAST);
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        call(true, FAST); // 2 of 4 failed
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.isOpen()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isFalse();
+        assertThat(registry.get("forgetpass.circuit.rejected").counter().count()).isEqualTo(1.0);
+        assertThat(registry.get("forgetpass.circuit.state").gauge().value()).isEqualTo(1.0);
+    }
+
+    @Test
+    void opensOnSlowCallRate() {
+        call(true, SLOW);
+        call(true, SLOW);
+        call(true, FAST);
+        call(true, SLOW);
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void slidingWindowForgetsOldFailures() {
+        call(false, FAST);
+        for (int i = 0; i < 4; i++) call(true, FAST);
+        call(false, FAST); // window is now ok, ok, ok, failed
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void halfOpen_closesAfterSuccessfulTrials_orReopensOnFailure() {
+        tripOpen();
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+
+        assertThat(breaker.isOpen()).isFalse();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isFalse(); // only two trial calls
+        breaker.onResult(FAST, true);
+        breaker.onResult(FAST, true);
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        tripOpen();
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+        call(false, FAST);
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(registry.get("forgetpass.circuit.transitions").tag("from", "HALF_OPEN").tag("to", "OPEN")
+            .counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void ignoredCall_returnsHalfOpenPermit() {
+        tripOpen();
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        breaker.onIgnored();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+    }
+
+    private void tripOpen() {
+        for (int i = 0; i < 4; i++) call(false, FAST);
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    private void call(boolean success, Duration elapsed) {
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        breaker.onResult(elapsed, success);
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.forgetpass.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MappedSlidingWindowLimiterTest {
+
+    private static final long HOUR = 3_600_000;
+
+    @TempDir Path dir;
+
+    private final AtomicLong clock = new AtomicLong(1_000 * HOUR);
+
+    private MappedSlidingWindowLimiter limiter(int limit, int slots) throws Exception {
+        return new MappedSlidingWindowLimiter(dir.resolve("limits.map"),
+            List.of(new SlidingWindowLimiter.Policy("p", limit, Duration.ofHours(1))), slots, clock::get);
+    }
+
+    @Test
+    void countsLikeTheInMemoryLimiter() throws Exception {
+        MappedSlidingWindowLimiter limiter = limiter(4, 64);
+        for (int i = 0; i < 4; i++) assertThat(limiter.tryAcquire("p", "a")).isTrue();
+        assertThat(limiter.tryAcquire("p", "a")).isFalse();
+        assertThat(limiter.tryAcquire("p", "b")).isTrue();
+        assertThat(limiter.size()).isEqualTo(2);
+
+        clock.addAndGet(HOUR + HOUR / 2);
+        assertThat(limiter.tryAcquire("p", "a")).isTrue();
+        assertThat(limiter.tryAcquire("p", "a")).isTrue();
+        assertThat(limiter.tryAcquire("p", "a")).isFalse();
+        assertThatThrownBy(() -> limiter.tryAcquire("other", "a")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void everyMappingOfTheFileSharesTheCounts() throws Exception {
+        MappedSlidingWindowLimiter first = limiter(3, 64);
+        MappedSlidingWindowLimiter second = limiter(3, 64);
+
+        assertThat(first.tryAcquire("p", "a")).isTrue();
+        assertThat(second.tryAcquire("p", "a")).isTrue();
+        assertThat(first.tryAcquire("p", "a")).isTrue();
+        assertThat(second.tryAcquire("p", "a")).isFalse();
+    }
+
+    @Test
+    void idleSlotsAreReusedAndAFullTableOverflows() throws Exception {
+        MappedSlidingWindowLimiter limiter = limiter(2, 32);
+        for (int i = 0; i < 32; i++) assertThat(limiter.tryAcquire("p", "key-" + i)).isTrue();
+        assertThat(limiter.size()).isEqualTo(32);
+
+        // Every slot is live: new keys share the overflow slot
+        assertThat(limiter.tryAcquire("p", "late-1")).isTrue();
+        assertThat(limiter.tryAcquire("p", "late-2")).isTrue();
+        assertThat(limiter.tryAcquire("p", "late-3")).isFalse();
+        assertThat(limiter.overflowed()).isEqualTo(3);
+
+        // Two windows on the old keys are idle and their slots go to new ones
+        clock.addAndGet(2 * HOUR);
+        assertThat(limiter.size()).isZero();
+        assertThat(limiter.tryAcquire("p", "late-3")).isTrue();
+        assertThat(limiter.tryAcquire("p", "late-3")).isTrue();
+        assertThat(limiter.tryAcquire("p", "late-3")).isFalse();
+        assertThat(limiter.overflowed()).isEqualTo(3);
+    }
+
+    @Test
+    void fileOfAnotherLayoutIsRefused() throws Exception {
+        limiter(3, 64);
+        // A different limit is fine, a different slot count or window is not
+        assertThat(limiter(5, 64).tryAcquire("p", "a")).isTrue();
+        assertThatThrownBy(() -> limiter(3, 128)).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> new MappedSlidingWindowLimiter(dir.resolve("limits.map"),
+            List.of(new SlidingWindowLimiter.Policy("p", 3, Duration.ofMinutes(1))), 64, clock::get))
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void concurrentHitsNeverExceedTheLimit() throws Exception {
+        MappedSlidingWindowLimiter limiter = limiter(50, 1024);
+        AtomicInteger admitted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            for (int t = 0; t < 8; t++) {
+                pool.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    for (int i = 0; i < 1000; i++) {
+                        if (limiter.tryAcquire("p", "key-" + i % 10)) admitted.incrementAndGet();
+                    }
+                });
+            }
+            start.countDown();
+        } finally {
+            pool.shutdown();
+            assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        }
+        assertThat(admitted.get()).isEqualTo(10 * 50);
+    }
+
+    @Test
+    void limitsHoldAcrossProcesses() throws Exception {
+        Path file = dir.resolve("shared.map");
+        int processes = 4;
+        int keys = 200;
+        int limit = 3;
+        List<Process> children = new ArrayList<>();
+        for (int i = 0; i < processes; i++) {
+            children.add(new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), Hammer.class.getName(),
+                file.toString(), Integer.toString(limit), Integer.toString(keys))
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start());
+        }
+        int admitted = 0;
+        for (Process child : children) {
+            assertThat(child.waitFor(60, TimeUnit.SECONDS)).isTrue();
+            assertThat(child.exitValue()).isZero();
+            admitted += Integer.parseInt(new String(child.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim());
+        }
+        // Each process alone would have let limit hits per key through
+        assertThat(admitted).isEqualTo(keys * limit);
+    }
+
+    /** One process of {@link #limitsHoldAcrossProcesses}: hits every key ten times and prints how many got through. */
+    static class Hammer {
+        public static void main(String[] args) throws Exception {
+            MappedSlidingWindowLimiter limiter = new MappedSlidingWindowLimiter(Path.of(args[0]),
+                List.of(new SlidingWindowLimiter.Policy("p", Integer.parseInt(args[1]), Duration.ofDays(1))), 4096,
+                System::currentTimeMillis);
+            int keys = Integer.parseInt(args[2]);
+            int admitted = 0;
+            for (int round = 0; round < 10; round++) {
+                for (int k = 0; k < keys; k++) {
+                    if (limiter.tryAcquire("p", "key-" + k)) admitted++;
+                }
+            }
+            System.out.println(admitted);
+        }
+    }
+}
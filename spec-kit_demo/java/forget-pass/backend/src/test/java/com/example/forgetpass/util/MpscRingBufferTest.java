@@ -0,0 +1,63 @@
+package com.example.forgetpass.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MpscRingBufferTest {
+
+    @Test
+    void rejectsWhenFull_andReusesSlotsAfterPoll() {
+        MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(4);
+        assertThat(ring.capacity()).isEqualTo(4);
+        for (int i = 0; i < 4; i++) assertThat(ring.offer(i)).isTrue();
+        assertThat(ring.offer(4)).isFalse();
+
+        assertThat(ring.poll()).isZero();
+        assertThat(ring.offer(4)).isTrue();
+        List<Integer> drained = new java.util.ArrayList<>();
+        assertThat(ring.drainTo(drained::add, 10)).isEqualTo(4);
+        assertThat(drained).containsExactly(1, 2, 3, 4);
+        assertThat(ring.poll()).isNull();
+        assertThat(ring.size()).isZero();
+    }
+
+    @Test
+    void manyProducers_singleConsumer_loseNothing() throws Exception {
+        MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(1024);
+        int producers = 4;
+        int perProducer = 20_000;
+        ExecutorService pool = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    while (!ring.offer(base + i)) Thread.onSpinWait();
+                }
+            });
+        }
+        start.countDown();
+        Set<Integer> seen = new HashSet<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while (seen.size() < producers * perProducer && System.nanoTime() < deadline) {
+            Integer v = ring.poll();
+            if (v != null) assertThat(seen.add(v)).isTrue();
+        }
+        pool.shutdownNow();
+        assertThat(seen).hasSize(producers * perProducer);
+    }
+}
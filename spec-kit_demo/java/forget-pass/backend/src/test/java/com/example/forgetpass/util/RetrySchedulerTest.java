@@ -0,0 +1,133 @@
+package com.example.forgetpass.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RetrySchedulerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final RetryScheduler scheduler = new RetryScheduler(1, registry);
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void retriesUntilSuccess_offTheCallerThread() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Thread caller = Thread.currentThread();
+        RetryPolicy policy = new RetryPolicy(5, Duration.ofMillis(5), Duration.ofMillis(20), Duration.ofSeconds(5));
+
+        CompletableFuture<String> result = scheduler.execute("op", policy, () -> {
+            if (calls.incrementAndGet() < 3) {
+                assertThat(calls.get() == 1).isEqualTo(Thread.currentThread() == caller);
+                throw new IOException("transient");
+            }
+            return "ok";
+        });
+
+        assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("ok");
+        assertThat(calls.get()).isEqualTo(3);
+        assertThat(registry.get("forgetpass.retry.attempts").tag("operation", "op").counter().count()).isEqualTo(3.0);
+        assertThat(registry.get("forgetpass.retry.successes").tag("operation", "op").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void submit_runsTheFirstAttemptOnAWorker() throws Exception {
+        Thread caller = Thread.currentThread();
+        RetryPolicy policy = new RetryPolicy(1, Duration.ZERO, Duration.ZERO, Duration.ofSeconds(5));
+
+        CompletableFuture<Boolean> onCaller = scheduler.submit("op", policy, () -> Thread.currentThread() == caller);
+
+        assertThat(onCaller.get(5, TimeUnit.SECONDS)).isFalse();
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() {
+        RetryPolicy policy = new RetryPolicy(2, Duration.ZERO, Duration.ZERO, Duration.ofSeconds(5));
+
+        CompletableFuture<Object> result = scheduler.execute("op", policy, () -> {
+            throw new IOException("down");
+        });
+
+        assertThatThrownBy(result::join).isInstanceOf(CompletionException.class).hasCauseInstanceOf(IOException.class);
+        assertThat(registry.get("forgetpass.retry.giveups").tag("reason", "max_attempts").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void givesUpImmediately_whenNotRetryableOrOutOfTime() {
+        RetryPolicy notRetryable = new RetryPolicy(5, Duration.ZERO, Duration.ZERO, Duration.ofSeconds(5))
+            .retryingOn(ex -> ex instanceof IOException);
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<Object> result = scheduler.execute("op", notRetryable, () -> {
+            calls.incrementAndGet();
+            throw new IllegalArgumentException("bad input");
+        });
+        assertThatThrownBy(result::join).hasCauseInstanceOf(IllegalArgumentException.class);
+        assertThat(calls.get()).isEqualTo(1);
+
+        RetryPolicy tightBudget = new RetryPolicy(5, Duration.ofSeconds(10), Duration.ofSeconds(10), Duration.ofMillis(1));
+        CompletableFuture<Object> late = scheduler.execute("op", tightBudget, () -> {
+            Thread.sleep(5);
+            throw new IOException("slow");
+        });
+        assertThatThrownBy(late::join).hasCauseInstanceOf(IOException.class);
+        assertThat(registry.get("forgetpass.retry.giveups").tag("reason", "max_elapsed").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void executeAsync_judgesEachAttemptByItsFuture() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        RetryPolicy policy = new RetryPolicy(5, Duration.ofMillis(5), Duration.ofMillis(20), Duration.ofSeconds(5))
+            .retryingOn(ex -> ex instanceof IOException);
+
+        CompletableFuture<String> result = scheduler.executeAsync("async", policy, () -> calls.incrementAndGet() < 3
+            ? CompletableFuture.failedFuture(new IOException("transient")) : CompletableFuture.completedFuture("ok"));
+
+        assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("ok");
+        assertThat(registry.get("forgetpass.retry.attempts").tag("operation", "async").counter().count()).isEqualTo(3.0);
+        assertThat(registry.get("forgetpass.retry.successes").tag("operation", "async").counter().count()).isEqualTo(1.0);
+
+        CompletableFuture<Object> refused = scheduler.executeAsync("async", policy,
+            () -> CompletableFuture.failedFuture(new IllegalStateException("no")));
+        assertThatThrownBy(refused::join).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(registry.get("forgetpass.retry.giveups").tag("operation", "async").tag("reason", "not_retryable")
+            .counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void executeAsync_cancelCancelsTheAttemptInProgress() {
+        CompletableFuture<String> attempt = new CompletableFuture<>();
+        RetryPolicy policy = new RetryPolicy(5, Duration.ZERO, Duration.ZERO, Duration.ofSeconds(5));
+
+        CompletableFuture<String> result = scheduler.executeAsync("async", policy, () -> attempt);
+        result.cancel(true);
+
+        assertThat(attempt.isCancelled()).isTrue();
+        assertThat(registry.get("forgetpass.retry.attempts").tag("operation", "async").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void fullJitter_staysWithinCappedCeiling() {
+        RetryPolicy policy = new RetryPolicy(10, Duration.ofMillis(100), Duration.ofMillis(500), Duration.ofMinutes(1));
+
+        assertThat(policy.backoffCeiling(1)).isEqualTo(Duration.ofMillis(100));
+        assertThat(policy.backoffCeiling(3)).isEqualTo(Duration.ofMillis(400));
+        assertThat(policy.backoffCeiling(8)).isEqualTo(Duration.ofMillis(500));
+        for (int i = 0; i < 100; i++) {
+            assertThat(policy.nextDelay(3)).isBetween(Duration.ZERO, Duration.ofMillis(400));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.forgetpass.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SlidingWindowLimiterTest {
+
+    private static final long HOUR = 3_600_000;
+
+    private final AtomicLong clock = new AtomicLong(1_000 * HOUR);
+
+    private SlidingWindowLimiter limiter(int limit) {
+        return new SlidingWindowLimiter(List.of(new SlidingWindowLimiter.Policy("p", limit, Duration.ofHours(1))), clock::get);
+    }
+
+    @Test
+    void allowsUpToTheLimitPerKey() {
+        SlidingWindowLimiter limiter = limiter(3);
+
+        for (int i = 0; i < 3; i++) assertThat(limiter.tryAcquire("p", "a")).isTrue();
+        assertThat(limiter.tryAcquire("p", "a")).isFalse();
+        assertThat(limiter.tryAcquire("p", "b")).isTrue();
+        assertThatThrownBy(() -> limiter.tryAcquire("other", "a")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void previousWindowCountsByHowMuchItStillOverlaps() {
+        SlidingWindowLimiter limiter = limiter(4);
+        for (int i = 0; i < 4; i++) assertThat(limiter.tryAcquire("p", "a")).isTrue();
+
+        // Just into the next window the 4 earlier hits still weigh ~4
+        clock.addAndGet(HOUR + 1);
+        assertThat(limiter.tryAcquire("p", "a")).isFalse();
+        // Halfway through they weigh 2: two more fit
+        clock.addAndGet(HOUR / 2);
+        assertThat(limiter.tryAcquire("p", "a")).isTrue();
+        assertThat(limiter.tryAcquire("p", "a")).isTrue();
+        assertThat(limiter.tryAcquire("p", "a")).isFalse();
+        // Two windows on, nothing counts
+        clock.addAndGet(2 * HOUR);
+        assertThat(limiter.tryAcquire("p", "a")).isTrue();
+    }
+
+    @Test
+    void evictsKeysIdleForTwoWindows() {
+        SlidingWindowLimiter limiter = limiter(3);
+        limiter.tryAcquire("p", "old");
+        clock.addAndGet(HOUR);
+        limiter.tryAcquire("p", "recent");
+
+        assertThat(limiter.evictIdle()).isZero();
+        clock.addAndGet(HOUR);
+        assertThat(limiter.evictIdle()).isEqualTo(1);
+        assertThat(limiter.size()).isEqualTo(1);
+    }
+
+    @Test
+    void snapshotRestoresIntoAFreshLimiter() {
+        SlidingWindowLimiter limiter = limiter(3);
+        for (int i = 0; i < 3; i++) limiter.tryAcquire("p", "a");
+        limiter.tryAcquire("p", "b");
+        List<SlidingWindowLimiter.Window> saved = limiter.snapshot();
+        assertThat(saved).hasSize(2);
+
+        SlidingWindowLimiter restarted = limiter(3);
+        restarted.tryAcquire("p", "b"); // counted before the restore ran
+        assertThat(restarted.restore(saved)).isEqualTo(2);
+        assertThat(restarted.tryAcquire("p", "a")).isFalse();
+        assertThat(restarted.tryAcquire("p", "b")).isTrue();
+        assertThat(restarted.tryAcquire("p", "b")).isFalse();
+
+        // Saved windows that have gone idle in the meantime are dropped
+        clock.addAndGet(2 * HOUR);
+        assertThat(limiter(3).restore(saved)).isZero();
+    }
+
+    @Test
+    void concurrentHitsNeverExceedTheLimit() throws Exception {
+        SlidingWindowLimiter limiter = limiter(1000);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger allowed = new AtomicInteger();
+        for (int t = 0; t < 8; t++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 500; i++) {
+                    if (limiter.tryAcquire("p", "hot")) allowed.incrementAndGet();
+                    if (i % 50 == 0) limiter.evictIdle();
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertThat(pool.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(allowed.get()).isEqualTo(1000);
+    }
+}
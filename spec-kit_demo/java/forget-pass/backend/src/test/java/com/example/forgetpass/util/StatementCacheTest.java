@@ -0,0 +1,118 @@
+package com.example.forgetpass.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StatementCacheTest {
+
+    private final StatementCache.Stats stats = new StatementCache.Stats();
+    private Connection raw;
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        raw = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement s = raw.createStatement()) {
+            s.execute("CREATE TABLE t (id INTEGER PRIMARY KEY, name TEXT)");
+        }
+        connection = StatementCache.wrap(raw, 2, stats);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    void closedStatementIsReusedForTheSameSql() throws SQLException {
+        insert(1, "a");
+        insert(2, "b");
+
+        assertThat(stats.misses()).isEqualTo(1);
+        assertThat(stats.hits()).isEqualTo(1);
+        assertThat(name(2)).isEqualTo("b");
+        assertThat(name(1)).isEqualTo("a");
+        assertThat(stats.hits()).isEqualTo(2);
+    }
+
+    @Test
+    void parametersDoNotLeakIntoTheNextUse() throws SQLException {
+        insert(1, "a");
+        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO t (id, name) VALUES (?, ?)")) {
+            ps.setInt(1, 2);
+            // name left unbound: must be NULL, not the "a" from the previous use
+            ps.executeUpdate();
+        }
+        assertThat(name(2)).isNull();
+    }
+
+    @Test
+    void statementInUseIsNotHandedOutTwice() throws SQLException {
+        insert(1, "a");
+        try (PreparedStatement outer = connection.prepareStatement("SELECT name FROM t WHERE id = ?");
+             PreparedStatement inner = connection.prepareStatement("SELECT name FROM t WHERE id = ?")) {
+            assertThat(inner).isNotSameAs(outer);
+            outer.setInt(1, 1);
+            inner.setInt(1, 1);
+            try (ResultSet a = outer.executeQuery(); ResultSet b = inner.executeQuery()) {
+                assertThat(a.next()).isTrue();
+                assertThat(b.next()).isTrue();
+            }
+        }
+    }
+
+    @Test
+    void closedHandleCannotBeUsedAgain() throws SQLException {
+        PreparedStatement ps = connection.prepareStatement("SELECT 1");
+        ps.close();
+
+        assertThat(ps.isClosed()).isTrue();
+        assertThatThrownBy(ps::executeQuery).isInstanceOf(SQLException.class);
+    }
+
+    @Test
+    void leastRecentlyUsedStatementIsEvictedBeyondCapacity() throws SQLException {
+        connection.prepareStatement("SELECT 1").close();
+        connection.prepareStatement("SELECT 2").close();
+        connection.prepareStatement("SELECT 3").close();
+        connection.prepareStatement("SELECT 3").close();
+        connection.prepareStatement("SELECT 1").close();
+
+        assertThat(stats.hits()).isEqualTo(1);
+        assertThat(stats.misses()).isEqualTo(4);
+    }
+
+    @Test
+    void unwrapReachesTheDriverConnection() throws SQLException {
+        assertThat(connection.unwrap(org.sqlite.SQLiteConnection.class)).isSameAs(raw);
+        assertThat(connection.prepareStatement("SELECT 1").getConnection()).isSameAs(connection);
+    }
+
+    private void insert(int id, String name) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO t (id, name) VALUES (?, ?)")) {
+            ps.setInt(1, id);
+            ps.setString(2, name);
+            ps.executeUpdate();
+        }
+    }
+
+    private String name(int id) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT name FROM t WHERE id = ?")) {
+            ps.setInt(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.forgetpass.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimingWheelTest {
+
+    @Test
+    void firesAfterDeadlineWithinOneTick() {
+        TimingWheel<String> wheel = new TimingWheel<>(100, 8, 1_000);
+        wheel.add("a", 1_250);
+        List<String> fired = new ArrayList<>();
+
+        wheel.advance(1_250, fired::add);
+        assertThat(fired).isEmpty();
+        wheel.advance(1_299, fired::add);
+        assertThat(fired).isEmpty();
+        wheel.advance(1_300, fired::add);
+        assertThat(fired).containsExactly("a");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void rejectsDeadlinesInTicksAlreadyProcessed() {
+        TimingWheel<String> wheel = new TimingWheel<>(100, 8, 1_000);
+        wheel.advance(1_500, s -> {});
+
+        assertThat(wheel.add("past", 1_420)).isFalse();
+        assertThat(wheel.add("current", 1_520)).isTrue();
+        assertThat(wheel.size()).isEqualTo(1);
+    }
+
+    @Test
+    void cascadesFarDeadlinesThroughOverflowLevels() {
+        // 10ms x 4 slots: level spans are 40ms, 160ms, 640ms, 2560ms...
+        TimingWheel<Long> wheel = new TimingWheel<>(10, 4, 0);
+        Random random = new Random(42);
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            long deadline = random.nextInt(5_000);
+            deadlines.add(deadline);
+            assertThat(wheel.add(deadline, deadline)).isTrue();
+        }
+        assertThat(wheel.size()).isEqualTo(2_000);
+
+        List<Long> fired = new ArrayList<>();
+        for (long now = 0; now <= 5_100; now += 7) {
+            long at = now;
+            wheel.advance(now, d -> {
+                assertThat(at).as("fired early").isGreaterThan(d);
+                assertThat(at - d).as("fired late").isLessThanOrEqualTo(10 + 7);
+                fired.add(d);
+            });
+        }
+        assertThat(fired).containsExactlyInAnyOrderElementsOf(deadlines);
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void acceptsNewItemsAfterLongIdleAdvance() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 4, 0);
+        wheel.advance(100_000, s -> {});
+        wheel.add("later", 100_500);
+        List<String> fired = new ArrayList<>();
+
+        wheel.advance(100_505, fired::add);
+        assertThat(fired).isEmpty();
+        wheel.advance(100_510, fired::add);
+        assertThat(fired).containsExactly("later");
+    }
+}
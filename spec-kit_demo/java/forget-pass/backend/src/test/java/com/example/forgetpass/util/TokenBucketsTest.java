@@ -0,0 +1,106 @@
+package com.example.forgetpass.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketsTest {
+
+    private static final long SECOND = 1_000_000_000L;
+    private static final TokenBuckets.Limit FIVE_PER_MINUTE = new TokenBuckets.Limit(5, Duration.ofMinutes(1));
+
+    private final AtomicLong clock = new AtomicLong(123 * SECOND);
+
+    @Test
+    void burstOfCapacityThenOneTokenPerInterval() {
+        TokenBuckets buckets = new TokenBuckets(100, clock::get);
+
+        for (int i = 0; i < 5; i++) assertThat(buckets.tryAcquire("r", "a", FIVE_PER_MINUTE)).isZero();
+        // Empty: the next token is 12 s away
+        assertThat(buckets.tryAcquire("r", "a", FIVE_PER_MINUTE)).isEqualTo(12 * SECOND);
+        clock.addAndGet(10 * SECOND);
+        assertThat(buckets.tryAcquire("r", "a", FIVE_PER_MINUTE)).isEqualTo(2 * SECOND);
+        clock.addAndGet(2 * SECOND);
+        assertThat(buckets.tryAcquire("r", "a", FIVE_PER_MINUTE)).isZero();
+        assertThat(buckets.tryAcquire("r", "a", FIVE_PER_MINUTE)).isPositive();
+    }
+
+    @Test
+    void bucketsArePerRouteAndClient() {
+        TokenBuckets buckets = new TokenBuckets(100, clock::get);
+        for (int i = 0; i < 5; i++) buckets.tryAcquire("r", "a", FIVE_PER_MINUTE);
+
+        assertThat(buckets.tryAcquire("r", "a", FIVE_PER_MINUTE)).isPositive();
+        assertThat(buckets.tryAcquire("r", "b", FIVE_PER_MINUTE)).isZero();
+        assertThat(buckets.tryAcquire("other", "a", FIVE_PER_MINUTE)).isZero();
+    }
+
+    @Test
+    void refilledBucketsAreEvicted() {
+        TokenBuckets buckets = new TokenBuckets(100, clock::get);
+        buckets.tryAcquire("r", "a", FIVE_PER_MINUTE);
+        for (int i = 0; i < 5; i++) buckets.tryAcquire("r", "b", FIVE_PER_MINUTE);
+
+        clock.addAndGet(30 * SECOND);
+        assertThat(buckets.evictExpired()).isEqualTo(1);
+        assertThat(buckets.size()).isEqualTo(1);
+        clock.addAndGet(30 * SECOND);
+        assertThat(buckets.evictExpired()).isEqualTo(1);
+        assertThat(buckets.size()).isZero();
+    }
+
+    @Test
+    void fullMapSendsNewClientsToTheRoutesOverflowBucket() {
+        TokenBuckets buckets = new TokenBuckets(2, clock::get);
+        buckets.tryAcquire("r", "a", FIVE_PER_MINUTE);
+        buckets.tryAcquire("r", "b", FIVE_PER_MINUTE);
+
+        // Nothing has refilled, so the strangers share one bucket
+        for (int i = 0; i < 5; i++) assertThat(buckets.tryAcquire("r", "stranger-" + i, FIVE_PER_MINUTE)).isZero();
+        assertThat(buckets.tryAcquire("r", "stranger-5", FIVE_PER_MINUTE)).isPositive();
+        assertThat(buckets.overflowed()).isEqualTo(6);
+        // Known clients keep their own buckets
+        assertThat(buckets.tryAcquire("r", "a", FIVE_PER_MINUTE)).isZero();
+
+        // Once the sweep can drop refilled buckets, new clients get their own again
+        clock.addAndGet(2 * 60 * SECOND);
+        assertThat(buckets.tryAcquire("r", "c", FIVE_PER_MINUTE)).isZero();
+        assertThat(buckets.overflowed()).isEqualTo(6);
+    }
+
+    @Test
+    void concurrentRequestsNeverTakeMoreThanCapacity() throws Exception {
+        TokenBuckets buckets = new TokenBuckets(100, clock::get);
+        TokenBuckets.Limit limit = new TokenBuckets.Limit(50, Duration.ofHours(1));
+        AtomicInteger admitted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            for (int t = 0; t < 8; t++) {
+                pool.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    for (int i = 0; i < 100; i++) {
+                        if (buckets.tryAcquire("r", "a", limit) == 0) admitted.incrementAndGet();
+                    }
+                });
+            }
+            start.countDown();
+        } finally {
+            pool.shutdown();
+            assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        }
+        assertThat(admitted.get()).isEqualTo(50);
+    }
+}
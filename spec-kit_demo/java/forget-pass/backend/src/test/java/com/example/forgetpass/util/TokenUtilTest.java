@@ -0,0 +1,39 @@
+package com.example.forgetpass.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenUtilTest {
+
+    @Test
+    void selectorTokenRoundTrips() {
+        UUID id = UUID.randomUUID();
+        String verifier = TokenUtil.generateToken();
+
+        String token = TokenUtil.selectorToken(id, verifier);
+
+        assertThat(token).hasSize(22 + 1 + 43);
+        assertThat(TokenUtil.selector(token)).contains(id);
+        assertThat(TokenUtil.verifier(token)).isEqualTo(verifier);
+    }
+
+    @Test
+    void legacyAndMalformedTokensHaveNoSelector() {
+        assertThat(TokenUtil.selector(TokenUtil.generateToken())).isEmpty();
+        assertThat(TokenUtil.selector("short.verifier")).isEmpty();
+        assertThat(TokenUtil.selector("!!!!!!!!!!!!!!!!!!!!!!.verifier")).isEmpty();
+        assertThat(TokenUtil.selector("")).isEmpty();
+    }
+
+    @Test
+    void hashMatchesOnlyTheSameSecret() {
+        String hash = TokenUtil.sha256("secret");
+
+        assertThat(TokenUtil.hashMatches("secret", hash)).isTrue();
+        assertThat(TokenUtil.hashMatches("secreT", hash)).isFalse();
+        assertThat(TokenUtil.hashMatches("secret", hash.substring(1))).isFalse();
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.forgetpass.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TrustedProxiesTest {
+
+    private final TrustedProxies proxies = new TrustedProxies(List.of("10.0.0.0/8", "192.168.1.7", "fd00::/8"));
+
+    @Test
+    void matchesAddressesAndBlocks() {
+        assertThat(proxies.isTrusted("10.20.30.40")).isTrue();
+        assertThat(proxies.isTrusted("11.0.0.1")).isFalse();
+        assertThat(proxies.isTrusted("192.168.1.7")).isTrue();
+        assertThat(proxies.isTrusted("192.168.1.8")).isFalse();
+        assertThat(proxies.isTrusted("fd12::1")).isTrue();
+        assertThat(proxies.isTrusted("fe80::1")).isFalse();
+        assertThat(proxies.isTrusted("not-an-address")).isFalse();
+    }
+
+    @Test
+    void headerIsIgnoredUnlessTheRemoteIsTrusted() {
+        assertThat(proxies.clientAddress("203.0.113.5", "198.51.100.1")).isEqualTo("203.0.113.5");
+        assertThat(proxies.clientAddress("10.0.0.2", null)).isEqualTo("10.0.0.2");
+        assertThat(new TrustedProxies(List.of()).clientAddress("10.0.0.2", "198.51.100.1")).isEqualTo("10.0.0.2");
+    }
+
+    @Test
+    void clientIsTheRightmostUntrustedHop() {
+        assertThat(proxies.clientAddress("10.0.0.2", "198.51.100.1")).isEqualTo("198.51.100.1");
+        assertThat(proxies.clientAddress("10.0.0.2", "198.51.100.1, 192.168.1.7")).isEqualTo("198.51.100.1");
+        // Whatever the client wrote in front of its own address is not believed
+        assertThat(proxies.clientAddress("10.0.0.2", "1.2.3.4, 198.51.100.1, 10.9.9.9")).isEqualTo("198.51.100.1");
+        assertThat(proxies.clientAddress("10.0.0.2", "2001:db8::1")).isEqualTo("2001:db8::1");
+    }
+
+    @Test
+    void garbageStopsAtTheLastHopVouchedFor() {
+        assertThat(proxies.clientAddress("10.0.0.2", "evil.example, 10.1.1.1")).isEqualTo("10.1.1.1");
+        assertThat(proxies.clientAddress("10.0.0.2", "unknown")).isEqualTo("10.0.0.2");
+        assertThat(proxies.clientAddress("10.0.0.2", "10.1.1.1")).isEqualTo("10.1.1.1");
+    }
+
+    @Test
+    void parsesLiteralsOnly() {
+        assertThat(TrustedProxies.parse("127.0.0.1")).containsExactly(127, 0, 0, 1);
+        assertThat(TrustedProxies.parse("[::1]")).hasSize(16);
+        assertThat(TrustedProxies.parse("256.1.1.1")).isNull();
+        assertThat(TrustedProxies.parse("1.2.3")).isNull();
+        assertThat(TrustedProxies.parse("localhost")).isNull();
+        assertThat(TrustedProxies.parse("[]")).isNull();
+        assertThatThrownBy(() -> new TrustedProxies(List.of("10.0.0.0/33"))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new TrustedProxies(List.of("proxy.internal"))).isInstanceOf(IllegalArgumentException.class);
+    }
+}